@@ -8,18 +8,29 @@ import org.fusesource.jansi.Ansi.Color;
 import org.fusesource.jansi.AnsiConsole;
 
 import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Parameters, cached values and output of a single build.
+ * Context can be used from multiple threads and multiple contexts can be used in the same JVM.
+ */
 public class Context implements Closeable {
-	private final Map<String, String> parameters = new HashMap<String, String>();
-	private final Map<String, Object> cache = new HashMap<String, Object>();
+	//concurrent maps don't support null, so parameters without a value are stored as a marker
+	private static final String NO_VALUE = new String("");
 
-	private PrintStream console;
+	private final ConcurrentMap<String, String> parameters = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, Object> cache = new ConcurrentHashMap<String, Object>();
+	private final ConcurrentMap<String, Object> loading = new ConcurrentHashMap<String, Object>();
+	private final Object output = new Object();
+	private final ThreadLocal<ParameterScheduler.Turn> turn = new ThreadLocal<ParameterScheduler.Turn>();
 
-	private boolean withLog;
-	private boolean noPrompt;
-	private boolean withColor = true;
+	private volatile PrintStream console;
+
+	private volatile boolean withLog;
+	private volatile boolean noPrompt;
+	private volatile boolean withColor = true;
 
 	public Context() {
 		this(AnsiConsole.out());
@@ -38,11 +49,11 @@ public class Context implements Closeable {
 			withColor = false;
 			console = System.out;
 		}
-		parameters.put(parameter.getAlias(), value);
+		parameters.put(parameter.getAlias(), value != null ? value : NO_VALUE);
 	}
 
 	public void put(final String parameter, final String value) {
-		parameters.put(parameter.toLowerCase(), value);
+		parameters.put(parameter.toLowerCase(), value != null ? value : NO_VALUE);
 	}
 
 	public boolean contains(final CompileParameter parameter) {
@@ -53,16 +64,24 @@ public class Context implements Closeable {
 		return parameters.containsKey(parameter);
 	}
 
+	private static String unwrap(final String value) {
+		return value == NO_VALUE ? null : value;
+	}
+
 	public String get(final CompileParameter parameter) {
-		return parameters.get(parameter.getAlias());
+		return unwrap(parameters.get(parameter.getAlias()));
 	}
 
 	public String get(final String parameter) {
-		return parameters.get(parameter.toLowerCase());
+		return unwrap(parameters.get(parameter.toLowerCase()));
 	}
 
 	public void cache(final String name, final Object value) {
-		cache.put(name, value);
+		if (value == null) {
+			cache.remove(name);
+		} else {
+			cache.put(name, value);
+		}
 	}
 
 	public <T> T notify(final String action, final T target) {
@@ -75,25 +94,89 @@ public class Context implements Closeable {
 		return (T) cache.get(name);
 	}
 
-	private static synchronized void write(final PrintStream console, final boolean newLine, final String... values) {
-		if (values.length == 0) {
-			console.println();
+	/**
+	 * Load cached value or create it if it doesn't exist yet.
+	 * Factory is invoked at most once per name, even when multiple threads ask for the same value.
+	 * Null results are not cached.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T load(final String name, final Callable<T> factory) throws ExitException {
+		final T existing = (T) cache.get(name);
+		if (existing != null) {
+			return existing;
+		}
+		final Object lock = new Object();
+		final Object previous = loading.putIfAbsent(name, lock);
+		synchronized (previous != null ? previous : lock) {
+			final T current = (T) cache.get(name);
+			if (current != null) {
+				return current;
+			}
+			final T created;
+			try {
+				created = factory.call();
+			} catch (ExitException ex) {
+				throw ex;
+			} catch (RuntimeException ex) {
+				throw ex;
+			} catch (Exception ex) {
+				error(ex);
+				throw new ExitException();
+			}
+			cache(name, created);
+			return created;
+		}
+	}
+
+	void enter(final ParameterScheduler.Turn value) {
+		if (value == null) {
+			turn.remove();
 		} else {
-			if (newLine) {
-				for (final String v : values) {
-					console.println(v);
-				}
+			turn.set(value);
+		}
+	}
+
+	void print(final String value) {
+		final PrintStream out = console;
+		synchronized (output) {
+			out.print(value);
+			out.flush();
+		}
+	}
+
+	private void awaitTurn() {
+		final ParameterScheduler.Turn current = turn.get();
+		if (current != null) {
+			current.awaitTurn();
+		}
+	}
+
+	private void write(final boolean newLine, final String... values) {
+		final ParameterScheduler.Turn current = turn.get();
+		if (current != null && current.buffer(newLine, values)) {
+			return;
+		}
+		final PrintStream out = console;
+		synchronized (output) {
+			if (values.length == 0) {
+				out.println();
 			} else {
-				for (final String v : values) {
-					console.print(v);
+				if (newLine) {
+					for (final String v : values) {
+						out.println(v);
+					}
+				} else {
+					for (final String v : values) {
+						out.print(v);
+					}
 				}
 			}
+			out.flush();
 		}
-		console.flush();
 	}
 
 	public void show(final String... values) {
-		write(console, true, values);
+		write(true, values);
 	}
 
 	public static String inColor(final Ansi.Color color, final String message) {
@@ -102,20 +185,20 @@ public class Context implements Closeable {
 
 	public void log(final String value) {
 		if (withLog) {
-			write(console, true, withColor ? inColor(Color.YELLOW, value) : value);
+			write(true, withColor ? inColor(Color.YELLOW, value) : value);
 		}
 	}
 
 	public void log(final char[] value, final int len) {
 		if (withLog) {
 			final String msg = new String(value, 0, len);
-			write(console, false, withColor ? inColor(Color.YELLOW, msg) : msg);
+			write(false, withColor ? inColor(Color.YELLOW, msg) : msg);
 		}
 	}
 
 
 	public void warning(final String value) {
-		write(console, true, withColor ? inColor(Color.MAGENTA, value) : value);
+		write(true, withColor ? inColor(Color.MAGENTA, value) : value);
 	}
 
 	public void warning(final Exception ex) {
@@ -128,7 +211,7 @@ public class Context implements Closeable {
 	}
 
 	public void error(final String value) {
-		write(console, true, withColor ? inColor(Color.RED, value) : value);
+		write(true, withColor ? inColor(Color.RED, value) : value);
 	}
 
 	public void error(final Exception ex) {
@@ -144,27 +227,45 @@ public class Context implements Closeable {
 		return System.console() != null && !noPrompt;
 	}
 
-	public String ask(final String question) {
+	private boolean isDiscarded() {
+		final ParameterScheduler.Turn current = turn.get();
+		return current != null && current.isDiscarded();
+	}
+
+	/**
+	 * Ask user for input.
+	 * When parameter was canceled since an earlier parameter failed, input is not available,
+	 * so the parameter is stopped instead.
+	 */
+	public String ask(final String question) throws ExitException {
+		awaitTurn();
+		if (isDiscarded()) {
+			throw new ExitException();
+		}
 		if (withColor) {
-			write(console, false, Ansi.ansi().fgBright(Color.DEFAULT).bold().a(question + " ").boldOff().reset().toString());
+			write(false, Ansi.ansi().fgBright(Color.DEFAULT).bold().a(question + " ").boldOff().reset().toString());
 		} else {
-			write(console, false, question + " ");
+			write(false, question + " ");
 		}
 		return System.console().readLine();
 	}
 
-	public char[] askSecret(final String question) {
+	public char[] askSecret(final String question) throws ExitException {
+		awaitTurn();
+		if (isDiscarded()) {
+			throw new ExitException();
+		}
 		if (withColor) {
-			write(console, false, Ansi.ansi().fgBright(Color.CYAN).bold().a(question + " ").boldOff().reset().toString());
+			write(false, Ansi.ansi().fgBright(Color.CYAN).bold().a(question + " ").boldOff().reset().toString());
 		} else {
-			write(console, false, question + " ");
+			write(false, question + " ");
 		}
 		return System.console().readPassword();
 	}
 
 	@Override
 	public void close() {
-		for (Object it : cache.values()) {
+		for (final Object it : cache.values()) {
 			if (it instanceof Closeable) {
 				try {
 					((Closeable) it).close();
@@ -0,0 +1,15 @@
+package com.dslplatform.compiler.client;
+
+/**
+ * Parameter which declares on which other parameters it depends.
+ * Such parameter is checked (and run) as soon as its dependencies are done,
+ * in parallel with other independent parameters.
+ * Parameters which don't implement this interface are processed only after all previous parameters.
+ */
+public interface DependentParameter extends CompileParameter {
+	CompileParameter[] NONE = new CompileParameter[0];
+
+	CompileParameter[] getCheckDependencies();
+
+	CompileParameter[] getRunDependencies();
+}
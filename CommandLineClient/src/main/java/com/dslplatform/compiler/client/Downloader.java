@@ -0,0 +1,458 @@
+package com.dslplatform.compiler.client;
+
+import com.dslplatform.compiler.client.parameters.Offline;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.nio.channels.FileLock;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Downloads remote file into a temporary .part file next to the target.
+ * Interrupted transfers are resumed with HTTP Range requests instead of restarted.
+ * Large files are fetched over several ranges in parallel when server supports ranges and provides a validator,
+ * with a fallback to a single stream when server responds with the whole file instead.
+ * Size and optional SHA-1 checksum are verified before the file is moved into place.
+ */
+public class Downloader {
+	public static class Result {
+		public final File file;
+		public final long size;
+		public final long lastModified;
+		public final String sha1;
+
+		Result(final File file, final long size, final long lastModified, final String sha1) {
+			this.file = file;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.sha1 = sha1;
+		}
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Context context;
+	private final int retries;
+	private final long parallelThreshold;
+	private final int parallelParts;
+	private final int timeout;
+
+	private static final int DEFAULT_TIMEOUT = 30000;
+
+	public Downloader(final Context context) {
+		this(context, DEFAULT_TIMEOUT);
+	}
+
+	public Downloader(final Context context, final int timeout) {
+		this(context, 3, 8 * 1024 * 1024, 4, timeout);
+	}
+
+	public Downloader(
+			final Context context,
+			final int retries,
+			final long parallelThreshold,
+			final int parallelParts,
+			final int timeout) {
+		this.context = context;
+		this.retries = retries;
+		this.parallelThreshold = parallelThreshold;
+		this.parallelParts = parallelParts;
+		this.timeout = timeout;
+	}
+
+	private static class RemoteInfo {
+		final long length;
+		final long lastModified;
+		final String etag;
+		final boolean acceptsRanges;
+
+		RemoteInfo(final long length, final long lastModified, final String etag, final boolean acceptsRanges) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.etag = etag;
+			this.acceptsRanges = acceptsRanges;
+		}
+
+		//If-Range accepts only strong validators
+		String validator() {
+			if (etag != null && !etag.startsWith("W/")) {
+				return etag;
+			}
+			return lastModified > 0 ? httpDate(lastModified) : null;
+		}
+	}
+
+	private static final ConcurrentMap<String, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<String, ReentrantLock>();
+
+	/**
+	 * Exclusive access to a shared download location, both from other threads and from other processes.
+	 * Lock is held until the returned object is closed.
+	 */
+	public static Closeable lock(final File target) throws IOException {
+		final File lockFile = new File(target.getAbsolutePath() + ".lock");
+		final ReentrantLock newLock = new ReentrantLock();
+		final ReentrantLock existing = LOCAL_LOCKS.putIfAbsent(lockFile.getAbsolutePath(), newLock);
+		final ReentrantLock local = existing != null ? existing : newLock;
+		local.lock();
+		final RandomAccessFile raf;
+		final FileLock fileLock;
+		try {
+			raf = new RandomAccessFile(lockFile, "rw");
+			try {
+				fileLock = raf.getChannel().lock();
+			} catch (IOException ex) {
+				raf.close();
+				throw ex;
+			}
+		} catch (IOException ex) {
+			local.unlock();
+			throw ex;
+		}
+		return new Closeable() {
+			@Override
+			public void close() throws IOException {
+				try {
+					fileLock.release();
+				} finally {
+					try {
+						raf.close();
+					} finally {
+						local.unlock();
+					}
+				}
+			}
+		};
+	}
+
+	private URLConnection open(final URL url) throws IOException {
+		final URLConnection connection = url.openConnection();
+		connection.setConnectTimeout(timeout);
+		connection.setReadTimeout(timeout);
+		connection.setUseCaches(false);
+		return connection;
+	}
+
+	private RemoteInfo remoteInfo(final URL url) {
+		try {
+			final URLConnection connection = open(url);
+			if (!(connection instanceof HttpURLConnection)) {
+				return new RemoteInfo(-1, 0, null, false);
+			}
+			final HttpURLConnection http = (HttpURLConnection) connection;
+			http.setRequestMethod("HEAD");
+			final int code = http.getResponseCode();
+			if (code != HttpURLConnection.HTTP_OK) {
+				http.disconnect();
+				return new RemoteInfo(-1, 0, null, false);
+			}
+			final RemoteInfo info = new RemoteInfo(
+					contentLength(http),
+					http.getLastModified(),
+					http.getHeaderField("ETag"),
+					"bytes".equalsIgnoreCase(http.getHeaderField("Accept-Ranges")));
+			http.disconnect();
+			return info;
+		} catch (IOException ex) {
+			context.log("Unable to check download info for " + url + ": " + ex.getMessage());
+			return new RemoteInfo(-1, 0, null, false);
+		}
+	}
+
+	//getContentLength is an int which overflows on files larger than 2GB
+	private static long contentLength(final URLConnection connection) {
+		final String header = connection.getHeaderField("Content-Length");
+		if (header == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(header.trim());
+		} catch (NumberFormatException ignore) {
+			return -1;
+		}
+	}
+
+	public Either<Result> download(final URL url, final File target) {
+		return download(url, target, null);
+	}
+
+	public Either<Result> download(final URL url, final File target, final String expectedSha1) {
+		final File partial = new File(target.getAbsoluteFile().getParentFile(), target.getName() + ".part");
+		final boolean isHttp = "http".equals(url.getProtocol()) || "https".equals(url.getProtocol());
+		if (!"file".equals(url.getProtocol()) && context.contains(Offline.INSTANCE)) {
+			return Either.fail("Offline mode. Unable to download " + url);
+		}
+		final RemoteInfo info = isHttp ? remoteInfo(url) : new RemoteInfo(-1, 0, null, false);
+		long lastModified = info.lastModified;
+		try {
+			final String validator = info.validator();
+			//without a validator parts of different file versions could be mixed together
+			final boolean parallel = info.acceptsRanges
+					&& validator != null
+					&& info.length >= parallelThreshold
+					&& parallelParts > 1
+					&& downloadParallel(url, partial, info.length, validator);
+			if (!parallel) {
+				final long modified = downloadResumable(url, partial, validator);
+				if (lastModified == 0) {
+					lastModified = modified;
+				}
+			}
+		} catch (IOException ex) {
+			return Either.fail(ex);
+		}
+		final long size = partial.length();
+		if (info.length >= 0 && size != info.length) {
+			deletePartial(partial);
+			return Either.fail("Downloaded size of " + url + " (" + size + ") doesn't match expected size (" + info.length + ")");
+		}
+		final String sha1;
+		try {
+			sha1 = sha1(partial);
+		} catch (IOException ex) {
+			return Either.fail(ex);
+		}
+		if (expectedSha1 != null && !expectedSha1.equalsIgnoreCase(sha1)) {
+			deletePartial(partial);
+			return Either.fail("Checksum mismatch for " + url + ". Expected: " + expectedSha1 + ", found: " + sha1);
+		}
+		if (!moveInPlace(partial, target)) {
+			return Either.fail("Unable to move downloaded file to " + target.getAbsolutePath());
+		}
+		if (lastModified > 0 && !target.setLastModified(lastModified)) {
+			context.log("Unable to set last modified info on: " + target.getAbsolutePath());
+		}
+		context.log("Downloaded " + url + " (" + (size / 1024) + "kB)");
+		return Either.success(new Result(target, size, lastModified, sha1));
+	}
+
+	private void deletePartial(final File partial) {
+		if (partial.exists() && !partial.delete()) {
+			context.log("Failed to clean up: " + partial.getAbsolutePath());
+		}
+	}
+
+	static boolean moveInPlace(final File source, final File target) {
+		if (source.renameTo(target)) {
+			return true;
+		}
+		//rename doesn't replace existing file on Windows
+		return target.exists() && target.delete() && source.renameTo(target);
+	}
+
+	private long downloadResumable(final URL url, final File partial, final String validator) throws IOException {
+		IOException lastError = null;
+		for (int attempt = 0; attempt <= retries; attempt++) {
+			try {
+				return transfer(url, partial, validator);
+			} catch (IOException ex) {
+				lastError = ex;
+				if (attempt < retries) {
+					context.warning("Retrying download... from " + url + " (" + partial.length() + " bytes already downloaded)");
+				}
+			}
+		}
+		throw lastError;
+	}
+
+	private static String httpDate(final long time) {
+		final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(time));
+	}
+
+	private long transfer(final URL url, final File partial, final String validator) throws IOException {
+		final URLConnection connection = open(url);
+		final HttpURLConnection http = connection instanceof HttpURLConnection ? (HttpURLConnection) connection : null;
+		if (http != null && partial.exists() && validator == null) {
+			//without a validator changed remote file could be appended to a stale prefix
+			deletePartial(partial);
+		}
+		final long existing = partial.exists() ? partial.length() : 0;
+		if (http != null && existing > 0) {
+			http.setRequestProperty("Range", "bytes=" + existing + "-");
+			//if file changed on the server since partial download, whole file will be sent instead
+			http.setRequestProperty("If-Range", validator);
+		}
+		final boolean append;
+		if (http != null) {
+			final int code = http.getResponseCode();
+			if (code == 416) {
+				//already have everything server can provide, so restart from scratch and let size check decide
+				http.disconnect();
+				deletePartial(partial);
+				throw new IOException("Requested range not satisfiable for " + url);
+			}
+			if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+				http.disconnect();
+				throw new FileNotFoundException("Unexpected response " + code + " for " + url);
+			}
+			append = code == HttpURLConnection.HTTP_PARTIAL;
+		} else {
+			append = false;
+		}
+		final InputStream stream = new BufferedInputStream(connection.getInputStream());
+		try {
+			//without partial response whole file is resent, so previous content must be truncated
+			final FileOutputStream fos = new FileOutputStream(partial, append);
+			try {
+				final byte[] buffer = new byte[BUFFER_SIZE];
+				int len;
+				while ((len = stream.read(buffer)) != -1) {
+					fos.write(buffer, 0, len);
+				}
+			} finally {
+				fos.close();
+			}
+		} finally {
+			stream.close();
+		}
+		return connection.getLastModified();
+	}
+
+	private static class RangeIgnoredException extends IOException {
+		RangeIgnoredException(final String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Download file over several ranges in parallel.
+	 * Returns false when server responds with the whole file instead of a range,
+	 * either since ranges are not really supported or since the file changed on the server,
+	 * in which case partial file is removed and file should be downloaded as a single stream.
+	 */
+	private boolean downloadParallel(
+			final URL url,
+			final File partial,
+			final long length,
+			final String validator) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(partial, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+		final long chunk = (length + parallelParts - 1) / parallelParts;
+		final ExecutorService executor = Executors.newFixedThreadPool(parallelParts);
+		final List<Future<Void>> parts = new ArrayList<Future<Void>>(parallelParts);
+		try {
+			for (long start = 0; start < length; start += chunk) {
+				final long from = start;
+				final long to = Math.min(length, start + chunk) - 1;
+				parts.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						downloadRange(url, partial, from, to, validator);
+						return null;
+					}
+				}));
+			}
+			//all parts are awaited before the partial file is removed, so that none of them writes into it afterwards
+			Throwable failure = null;
+			for (final Future<Void> f : parts) {
+				try {
+					f.get();
+				} catch (ExecutionException ex) {
+					if (failure == null || ex.getCause() instanceof RangeIgnoredException) {
+						failure = ex.getCause();
+					}
+				} catch (InterruptedException ex) {
+					failure = new IOException("Download interrupted");
+				}
+			}
+			if (failure instanceof RangeIgnoredException) {
+				deletePartial(partial);
+				context.log(failure.getMessage() + ". Downloading as a single stream.");
+				return false;
+			} else if (failure != null) {
+				deletePartial(partial);
+				throw failure instanceof IOException ? (IOException) failure : new IOException(failure.getMessage());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return true;
+	}
+
+	private void downloadRange(
+			final URL url,
+			final File partial,
+			final long from,
+			final long to,
+			final String validator) throws IOException {
+		long position = from;
+		IOException lastError = null;
+		for (int attempt = 0; attempt <= retries && position <= to; attempt++) {
+			try {
+				final HttpURLConnection http = (HttpURLConnection) open(url);
+				http.setRequestProperty("Range", "bytes=" + position + "-" + to);
+				//if file changed since the download started, whole file will be sent instead of the range
+				http.setRequestProperty("If-Range", validator);
+				if (http.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+					http.disconnect();
+					throw new RangeIgnoredException("Server ignored range request for " + url);
+				}
+				final InputStream stream = http.getInputStream();
+				final RandomAccessFile raf = new RandomAccessFile(partial, "rw");
+				try {
+					raf.seek(position);
+					final byte[] buffer = new byte[BUFFER_SIZE];
+					int len;
+					while (position <= to && (len = stream.read(buffer, 0, (int) Math.min(buffer.length, to - position + 1))) != -1) {
+						raf.write(buffer, 0, len);
+						position += len;
+					}
+				} finally {
+					raf.close();
+					stream.close();
+				}
+			} catch (RangeIgnoredException ex) {
+				throw ex;
+			} catch (IOException ex) {
+				lastError = ex;
+			}
+		}
+		if (position <= to) {
+			throw lastError != null ? lastError : new IOException("Incomplete range download for " + url);
+		}
+	}
+
+	public static String sha1(final File file) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException(ex.getMessage());
+		}
+		final InputStream stream = new FileInputStream(file);
+		try {
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int len;
+			while ((len = stream.read(buffer)) != -1) {
+				digest.update(buffer, 0, len);
+			}
+		} finally {
+			stream.close();
+		}
+		return toHex(digest.digest());
+	}
+
+	public static String toHex(final byte[] bytes) {
+		final StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			final int v = b & 0xFF;
+			if (v < 16) {
+				sb.append('0');
+			}
+			sb.append(Integer.toHexString(v));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,248 @@
+package com.dslplatform.compiler.client;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Coordinates external compilers (javac, scalac, csc, jar...) started from the same JVM.
+ * Each job takes one CPU slot and a tool specific amount of memory (in MB).
+ * Jobs are started in the order of submission once both budgets allow it.
+ * Job which is larger than the whole memory budget is started only when nothing else is running.
+ * Global scheduler is shared by all runs in the JVM and can be configured only once,
+ * while metrics are also collected for each context separately.
+ */
+public class JobScheduler {
+	private static final Map<String, Integer> DEFAULT_WEIGHTS = new HashMap<String, Integer>();
+
+	static {
+		DEFAULT_WEIGHTS.put("javac", 512);
+		DEFAULT_WEIGHTS.put("jar", 128);
+		DEFAULT_WEIGHTS.put("scalac", 1536);
+		DEFAULT_WEIGHTS.put("csc", 512);
+		DEFAULT_WEIGHTS.put("mvn", 512);
+	}
+
+	private static final int DEFAULT_WEIGHT = 256;
+
+	private static JobScheduler global = new JobScheduler(
+			Runtime.getRuntime().availableProcessors(),
+			defaultMemoryBudget(),
+			new HashMap<String, Integer>());
+
+	private static boolean configured;
+
+	public static synchronized JobScheduler global() {
+		return global;
+	}
+
+	/**
+	 * Configure the scheduler shared by the whole JVM. First configuration wins,
+	 * since other runs can already be holding leases of the current scheduler.
+	 * Returns false when scheduler was already configured with different limits.
+	 */
+	public static synchronized boolean configureGlobal(final int slots, final int memory, final Map<String, Integer> weights) {
+		final JobScheduler candidate = new JobScheduler(slots, memory, weights);
+		if (configured) {
+			return global.sameLimits(candidate);
+		}
+		configured = true;
+		global = candidate;
+		return true;
+	}
+
+	/**
+	 * Usage of the scheduler from jobs started with the specified context.
+	 */
+	public static Usage usage(final Context context) {
+		try {
+			return context.load("job_scheduler_usage", new Callable<Usage>() {
+				@Override
+				public Usage call() {
+					return new Usage();
+				}
+			});
+		} catch (ExitException ignore) {
+			return new Usage();
+		}
+	}
+
+	static int defaultMemoryBudget() {
+		try {
+			final Class<?> bean = Class.forName("com.sun.management.OperatingSystemMXBean");
+			final Method total = bean.getMethod("getTotalPhysicalMemorySize");
+			final long bytes = (Long) total.invoke(ManagementFactory.getOperatingSystemMXBean());
+			//leave some room for the OS and this JVM
+			return (int) Math.max(1024, bytes / 1024 / 1024 * 3 / 4);
+		} catch (Exception ignore) {
+			return 4096;
+		}
+	}
+
+	public static class Metrics {
+		public final int jobs;
+		public final long totalWait;
+		public final long maxWait;
+		public final long busySlotTime;
+		public final long elapsed;
+		public final int slots;
+
+		Metrics(final int jobs, final long totalWait, final long maxWait, final long busySlotTime, final long elapsed, final int slots) {
+			this.jobs = jobs;
+			this.totalWait = totalWait;
+			this.maxWait = maxWait;
+			this.busySlotTime = busySlotTime;
+			this.elapsed = elapsed;
+			this.slots = slots;
+		}
+
+		public double utilization() {
+			return elapsed <= 0 ? 0 : (double) busySlotTime / (slots * elapsed);
+		}
+
+		@Override
+		public String toString() {
+			return jobs + " jobs, " + slots + " slots, wait total " + totalWait + "ms (max " + maxWait + "ms), utilization "
+					+ Math.round(utilization() * 100) + "%";
+		}
+	}
+
+	public static class Usage {
+		private long firstJobAt;
+		private int jobs;
+		private long totalWait;
+		private long maxWait;
+		private long busySlotTime;
+
+		synchronized void started(final long start, final long waited) {
+			if (jobs == 0) {
+				firstJobAt = start;
+			}
+			jobs++;
+			totalWait += waited;
+			maxWait = Math.max(maxWait, waited);
+		}
+
+		synchronized void finished(final long busy) {
+			busySlotTime += busy;
+		}
+
+		public synchronized Metrics metrics(final int slots) {
+			final long elapsed = jobs == 0 ? 0 : System.currentTimeMillis() - firstJobAt;
+			return new Metrics(jobs, totalWait, maxWait, busySlotTime, elapsed, slots);
+		}
+	}
+
+	public class Lease {
+		private final String tool;
+		private final int memory;
+		private final long acquiredAt;
+		private final Usage usage;
+		public final long waited;
+		private boolean released;
+
+		private Lease(final String tool, final int memory, final long acquiredAt, final long waited, final Usage usage) {
+			this.tool = tool;
+			this.memory = memory;
+			this.acquiredAt = acquiredAt;
+			this.waited = waited;
+			this.usage = usage;
+		}
+
+		public void release() {
+			synchronized (JobScheduler.this) {
+				if (released) {
+					return;
+				}
+				released = true;
+				usedSlots--;
+				usedMemory -= memory;
+				final long busy = System.currentTimeMillis() - acquiredAt;
+				total.finished(busy);
+				if (usage != null) {
+					usage.finished(busy);
+				}
+				JobScheduler.this.notifyAll();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return tool;
+		}
+	}
+
+	private final int slots;
+	private final int memory;
+	private final Map<String, Integer> weights;
+	private final LinkedList<Object> queue = new LinkedList<Object>();
+	private final Usage total = new Usage();
+	private int usedSlots;
+	private int usedMemory;
+
+	public JobScheduler(final int slots, final int memory, final Map<String, Integer> weights) {
+		this.slots = Math.max(1, slots);
+		this.memory = Math.max(1, memory);
+		this.weights = new HashMap<String, Integer>(DEFAULT_WEIGHTS);
+		this.weights.putAll(weights);
+	}
+
+	public int weight(final String tool) {
+		final Integer w = weights.get(tool);
+		return w != null ? w : DEFAULT_WEIGHT;
+	}
+
+	public int getSlots() {
+		return slots;
+	}
+
+	public int getMemory() {
+		return memory;
+	}
+
+	boolean sameLimits(final JobScheduler other) {
+		return slots == other.slots && memory == other.memory && weights.equals(other.weights);
+	}
+
+	private boolean fits(final int weight) {
+		if (usedSlots == 0) {
+			return true;
+		}
+		return usedSlots < slots && usedMemory + weight <= memory;
+	}
+
+	public Lease acquire(final String tool) throws InterruptedException {
+		return acquire(tool, null);
+	}
+
+	public synchronized Lease acquire(final String tool, final Usage usage) throws InterruptedException {
+		final int weight = weight(tool);
+		final Object ticket = new Object();
+		final long start = System.currentTimeMillis();
+		queue.add(ticket);
+		try {
+			while (queue.getFirst() != ticket || !fits(weight)) {
+				wait();
+			}
+		} finally {
+			queue.remove(ticket);
+			notifyAll();
+		}
+		usedSlots++;
+		usedMemory += weight;
+		final long now = System.currentTimeMillis();
+		final long waited = now - start;
+		total.started(start, waited);
+		if (usage != null) {
+			usage.started(start, waited);
+		}
+		return new Lease(tool, weight, now, waited, usage);
+	}
+
+	public Metrics metrics() {
+		return total.metrics(slots);
+	}
+}
@@ -63,14 +63,24 @@ public class Main {
 			DslPath.INSTANCE,
 			SqlPath.INSTANCE,
 			Download.INSTANCE,
+			Mirror.INSTANCE,
+			Offline.INSTANCE,
+			UpdateInterval.INSTANCE,
+			Jobs.INSTANCE,
+			Incremental.INSTANCE,
+			BuildCache.INSTANCE,
+			InMemory.INSTANCE,
+			SrcJar.INSTANCE,
 			Dependencies.INSTANCE,
 			DotNet.INSTANCE,
+			DotNetServer.INSTANCE,
 			Mono.INSTANCE,
 			TempPath.INSTANCE,
 			DslCompiler.INSTANCE,
 			Maven.INSTANCE,
 			JavaPath.INSTANCE,
 			ScalaPath.INSTANCE,
+			ScalaServer.INSTANCE,
 			Namespace.INSTANCE,
 			Version.INSTANCE,
 			Settings.INSTANCE,
@@ -83,6 +93,9 @@ public class Main {
 			Force.INSTANCE,
 			Migration.INSTANCE,
 			ApplyMigration.INSTANCE,
+			Tenants.INSTANCE,
+			TenantLimit.INSTANCE,
+			LockMonitor.INSTANCE,
 			DisableColors.INSTANCE,
 			LogOutput.INSTANCE,
 			VarraySize.INSTANCE,
@@ -92,19 +105,17 @@ public class Main {
 	public static boolean processContext(final Context context, final List<CompileParameter> parameters) {
 		try {
 			context.notify("PROCESS", parameters);
-			for (final CompileParameter cp : parameters) {
-				if (!cp.check(context)) {
-					if (cp.getDetailedDescription() != null) {
-						context.show();
-						context.show();
-						context.show(cp.getDetailedDescription());
-					}
-					return false;
+			final ParameterScheduler scheduler = new ParameterScheduler(context, parameters);
+			final CompileParameter failed = scheduler.execute(ParameterScheduler.CHECK);
+			if (failed != null) {
+				if (failed.getDetailedDescription() != null) {
+					context.show();
+					context.show();
+					context.show(failed.getDetailedDescription());
 				}
+				return false;
 			}
-			for (final CompileParameter cp : parameters) {
-				cp.run(context);
-			}
+			scheduler.execute(ParameterScheduler.RUN);
 			return true;
 		} catch (ExitException ex) {
 			return false;
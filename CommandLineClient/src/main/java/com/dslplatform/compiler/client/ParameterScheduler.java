@@ -0,0 +1,361 @@
+package com.dslplatform.compiler.client;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Processes parameter checks and runs as a dependency graph.
+ * Output of each parameter is buffered until all parameters before it are done,
+ * so console output is in the same order as when parameters are processed one by one.
+ * When a parameter fails, parameters after it are not started and their output is discarded.
+ * Parameters which were already started are waited for, so nothing is processed once the phase is over.
+ * Output from threads started by parameters is not buffered.
+ */
+final class ParameterScheduler {
+
+	interface Phase {
+		String name();
+
+		CompileParameter[] dependencies(DependentParameter parameter);
+
+		boolean execute(CompileParameter parameter, Context context) throws ExitException;
+	}
+
+	static final Phase CHECK = new Phase() {
+		@Override
+		public String name() {
+			return "check";
+		}
+
+		@Override
+		public CompileParameter[] dependencies(final DependentParameter parameter) {
+			return parameter.getCheckDependencies();
+		}
+
+		@Override
+		public boolean execute(final CompileParameter parameter, final Context context) throws ExitException {
+			return parameter.check(context);
+		}
+	};
+
+	static final Phase RUN = new Phase() {
+		@Override
+		public String name() {
+			return "run";
+		}
+
+		@Override
+		public CompileParameter[] dependencies(final DependentParameter parameter) {
+			return parameter.getRunDependencies();
+		}
+
+		@Override
+		public boolean execute(final CompileParameter parameter, final Context context) throws ExitException {
+			parameter.run(context);
+			return true;
+		}
+	};
+
+	/**
+	 * Console output of a single parameter.
+	 * Output is written directly once all previous parameters are done.
+	 */
+	static final class Turn {
+		private final Object lock;
+		private final StringBuilder buffer = new StringBuilder();
+		private boolean live;
+		private boolean closed;
+		private boolean discarded;
+
+		private Turn(final Object lock) {
+			this.lock = lock;
+		}
+
+		boolean buffer(final boolean newLine, final String... values) {
+			synchronized (lock) {
+				if (live || closed) {
+					return false;
+				}
+				if (discarded) {
+					return true;
+				}
+				if (values.length == 0) {
+					buffer.append(LINE_SEPARATOR);
+				}
+				for (final String v : values) {
+					buffer.append(v);
+					if (newLine) {
+						buffer.append(LINE_SEPARATOR);
+					}
+				}
+				return true;
+			}
+		}
+
+		void awaitTurn() {
+			synchronized (lock) {
+				while (!live && !closed && !discarded) {
+					try {
+						lock.wait();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Parameter was started before an earlier parameter failed.
+		 * Its output will never be shown, so it must not prompt the user.
+		 */
+		boolean isDiscarded() {
+			synchronized (lock) {
+				return discarded && !live;
+			}
+		}
+	}
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	private static final class Task {
+		final CompileParameter parameter;
+		final int index;
+		final List<Task> dependencies = new ArrayList<Task>();
+		final Turn turn;
+		boolean started;
+		boolean done;
+		boolean success;
+		boolean canceled;
+		Throwable failure;
+
+		Task(final CompileParameter parameter, final int index, final Object lock) {
+			this.parameter = parameter;
+			this.index = index;
+			this.turn = new Turn(lock);
+		}
+
+		boolean isReady() {
+			for (final Task d : dependencies) {
+				if (!d.done || !d.success) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private final Context context;
+	private final List<CompileParameter> parameters;
+	private final Object lock = new Object();
+
+	ParameterScheduler(final Context context, final List<CompileParameter> parameters) {
+		this.context = context;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Orders parameters so that dependencies are processed first.
+	 * Parameters keep their relative order when that's possible.
+	 * Parameters which don't declare dependencies depend on all previous parameters.
+	 */
+	private List<Task> plan(final Phase phase) {
+		final int size = parameters.size();
+		final List<Set<Integer>> edges = new ArrayList<Set<Integer>>(size);
+		int barrier = -1;
+		for (int i = 0; i < size; i++) {
+			final Set<Integer> dependsOn = new HashSet<Integer>();
+			final CompileParameter cp = parameters.get(i);
+			if (cp instanceof DependentParameter) {
+				for (final CompileParameter d : phase.dependencies((DependentParameter) cp)) {
+					final int index = parameters.indexOf(d);
+					if (index != -1 && index != i) {
+						dependsOn.add(index);
+					}
+				}
+				if (barrier != -1) {
+					dependsOn.add(barrier);
+				}
+			} else {
+				for (int j = 0; j < i; j++) {
+					dependsOn.add(j);
+				}
+				barrier = i;
+			}
+			edges.add(dependsOn);
+		}
+		final List<Integer> order = new ArrayList<Integer>(size);
+		final boolean[] added = new boolean[size];
+		while (order.size() < size) {
+			int next = -1;
+			for (int i = 0; i < size && next == -1; i++) {
+				if (!added[i]) {
+					boolean ready = true;
+					for (final Integer d : edges.get(i)) {
+						ready = ready && added[d];
+					}
+					if (ready) {
+						next = i;
+					}
+				}
+			}
+			if (next == -1) {
+				break;
+			}
+			added[next] = true;
+			order.add(next);
+		}
+		final List<Task> tasks = new ArrayList<Task>(size);
+		if (order.size() < size) {
+			context.warning("Circular dependency between parameters detected. Parameters will be processed one by one.");
+			for (int i = 0; i < size; i++) {
+				final Task task = new Task(parameters.get(i), i, lock);
+				if (i > 0) {
+					task.dependencies.add(tasks.get(i - 1));
+				}
+				tasks.add(task);
+			}
+			return tasks;
+		}
+		final Task[] byIndex = new Task[size];
+		for (final Integer i : order) {
+			byIndex[i] = new Task(parameters.get(i), i, lock);
+			tasks.add(byIndex[i]);
+		}
+		for (int i = 0; i < size; i++) {
+			for (final Integer d : edges.get(i)) {
+				byIndex[i].dependencies.add(byIndex[d]);
+			}
+		}
+		return tasks;
+	}
+
+	/**
+	 * Process all parameters in the specified phase.
+	 * Returns parameter which failed the check or null when all parameters were processed.
+	 * When several parameters fail, the first one in the parameter list is reported.
+	 * Exceptions are rethrown after output of previous parameters was written.
+	 */
+	CompileParameter execute(final Phase phase) throws ExitException {
+		final List<Task> tasks = plan(phase);
+		final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread t = new Thread(r, "parameter-" + phase.name());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		int head = 0;
+		Task failed = null;
+		try {
+			synchronized (lock) {
+				int stopAt = tasks.size();
+				boolean active = true;
+				while (active) {
+					for (int i = 0; i < stopAt; i++) {
+						final Task task = tasks.get(i);
+						if (task.done && !task.success) {
+							stopAt = i;
+						}
+					}
+					for (int i = stopAt + 1; i < tasks.size(); i++) {
+						final Task task = tasks.get(i);
+						if (!task.turn.live && !task.turn.discarded) {
+							task.turn.discarded = true;
+							lock.notifyAll();
+						}
+					}
+					active = false;
+					for (int i = 0; i < tasks.size(); i++) {
+						final Task task = tasks.get(i);
+						if (i < stopAt && !task.started && task.isReady()) {
+							task.started = true;
+							executor.execute(new Runnable() {
+								@Override
+								public void run() {
+									process(phase, task);
+								}
+							});
+						}
+						active = active || task.started && !task.done;
+					}
+					while (head < tasks.size()) {
+						final Task task = tasks.get(head);
+						if (!task.turn.live) {
+							if (task.turn.buffer.length() > 0) {
+								context.print(task.turn.buffer.toString());
+								task.turn.buffer.setLength(0);
+							}
+							task.turn.live = true;
+							lock.notifyAll();
+						}
+						if (!task.done || !task.success) {
+							break;
+						}
+						head++;
+					}
+					if (active) {
+						try {
+							lock.wait();
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+							throw new ExitException();
+						}
+					}
+				}
+				for (final Task task : tasks) {
+					if (task.done && !task.success && !task.canceled
+							&& (failed == null || task.index < failed.index)) {
+						failed = task;
+					}
+				}
+				if (failed != null && !failed.turn.live && failed.turn.buffer.length() > 0) {
+					context.print(failed.turn.buffer.toString());
+				}
+				for (final Task task : tasks) {
+					task.turn.closed = true;
+				}
+				lock.notifyAll();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		if (failed == null) {
+			return null;
+		}
+		if (failed.failure instanceof ExitException) {
+			throw (ExitException) failed.failure;
+		} else if (failed.failure instanceof RuntimeException) {
+			throw (RuntimeException) failed.failure;
+		} else if (failed.failure instanceof Error) {
+			throw (Error) failed.failure;
+		} else if (failed.failure != null) {
+			throw new RuntimeException(failed.failure);
+		}
+		return failed.parameter;
+	}
+
+	private void process(final Phase phase, final Task task) {
+		boolean success = false;
+		Throwable failure = null;
+		context.enter(task.turn);
+		try {
+			success = phase.execute(task.parameter, context);
+		} catch (Throwable ex) {
+			failure = ex;
+		} finally {
+			context.enter(null);
+		}
+		synchronized (lock) {
+			task.success = success;
+			task.failure = failure;
+			//failures of parameters which were already discarded are not reported
+			task.canceled = !success && task.turn.discarded;
+			task.done = true;
+			lock.notifyAll();
+		}
+	}
+}
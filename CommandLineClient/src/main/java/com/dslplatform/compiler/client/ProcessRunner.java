@@ -0,0 +1,332 @@
+package com.dslplatform.compiler.client;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs external processes with bounded output capture.
+ * Output streams are drained on shared daemon threads (virtual threads when the JVM supports them).
+ * Only the last captureLimit characters of each stream are kept in memory;
+ * when full output is requested, once the limit is exceeded the whole standard output is spilled into a temporary file,
+ * which is removed once it's read through {@link Utils.CommandResult#fullOutput()} or discarded.
+ * Process can be given a timeout after which it will be destroyed.
+ * Output is decoded with the charset explicitly provided for each process,
+ * since tools write in different encodings (UTF-8 for DSL compiler, encoding of the operating system for JVM tools).
+ */
+public class ProcessRunner {
+	public static final int DEFAULT_CAPTURE_LIMIT = 4 * 1024 * 1024;
+
+	public static final Charset UTF_8 = Charset.forName("UTF-8");
+	/**
+	 * Encoding of the operating system, used by JVM tools and scripts when writing into a pipe.
+	 * Unlike the default charset, it's not changed by file.encoding setting of the current JVM.
+	 */
+	public static final Charset NATIVE = nativeCharset();
+
+	private static Charset nativeCharset() {
+		final String name = System.getProperty("sun.jnu.encoding");
+		try {
+			if (name != null && Charset.isSupported(name)) {
+				return Charset.forName(name);
+			}
+		} catch (IllegalArgumentException ignore) {
+		}
+		return Charset.defaultCharset();
+	}
+
+	private static final ExecutorService DRAINERS = createDrainers();
+	private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread t = new Thread(r, "process-watchdog");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private static ExecutorService createDrainers() {
+		try {
+			final Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtual.invoke(null);
+		} catch (Exception ignore) {
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread t = new Thread(r, "process-drainer");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	private final Context context;
+	private final Charset charset;
+	private long timeoutMillis;
+	private int captureLimit = DEFAULT_CAPTURE_LIMIT;
+	private boolean logOutput = true;
+	private boolean spillOutput;
+	private String tool;
+
+	public ProcessRunner(final Context context, final Charset charset) {
+		this.context = context;
+		this.charset = charset;
+	}
+
+	public ProcessRunner timeout(final long millis) {
+		this.timeoutMillis = millis;
+		return this;
+	}
+
+	public ProcessRunner captureLimit(final int chars) {
+		this.captureLimit = chars;
+		return this;
+	}
+
+	public ProcessRunner logOutput(final boolean value) {
+		this.logOutput = value;
+		return this;
+	}
+
+	/**
+	 * Keep complete standard output in a temporary file when it exceeds the capture limit.
+	 * Caller is responsible for reading it with fullOutput or removing it with discard.
+	 */
+	public ProcessRunner spillOutput(final boolean value) {
+		this.spillOutput = value;
+		return this;
+	}
+
+	/**
+	 * Run the process as a job of the global scheduler, so it can't oversubscribe the machine.
+	 */
+	public ProcessRunner schedule(final String toolName) {
+		this.tool = toolName;
+		return this;
+	}
+
+	static class Capture implements Callable<Capture> {
+		private final Reader reader;
+		private final Context context;
+		private final int limit;
+		private final boolean canSpill;
+		private char[] ring;
+		private int start;
+		private int length;
+		private long total;
+		private Writer spill;
+		private File spillFile;
+		private boolean closed;
+		private boolean discarded;
+
+		Capture(final InputStream stream, final Charset charset, final Context context, final int limit, final boolean canSpill) {
+			this.reader = new InputStreamReader(stream, charset);
+			this.context = context;
+			this.limit = limit;
+			this.canSpill = canSpill;
+			this.ring = new char[Math.min(limit, 8192)];
+		}
+
+		void append(final char[] chunk, final int len) throws IOException {
+			total += len;
+			if (canSpill && spill == null && length + len > limit) {
+				spillFile = File.createTempFile("process-output", ".log");
+				spill = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), "UTF-8"));
+				spill.write(text());
+			}
+			if (spill != null) {
+				spill.write(chunk, 0, len);
+			}
+			if (length + len > ring.length && ring.length < limit) {
+				final char[] bigger = new char[Math.min(limit, Math.max(length + len, ring.length * 2))];
+				final String current = text();
+				current.getChars(0, current.length(), bigger, 0);
+				ring = bigger;
+				start = 0;
+			}
+			final int capacity = ring.length;
+			for (int i = Math.max(0, len - capacity); i < len; i++) {
+				ring[(start + length) % capacity] = chunk[i];
+				if (length < capacity) {
+					length++;
+				} else {
+					start = (start + 1) % capacity;
+				}
+			}
+		}
+
+		String text() {
+			final int capacity = ring.length;
+			final int end = start + length;
+			if (end <= capacity) {
+				return new String(ring, start, length);
+			}
+			return new String(ring, start, capacity - start) + new String(ring, 0, end - capacity);
+		}
+
+		File file() {
+			return spillFile;
+		}
+
+		/**
+		 * Remove the spill file. When the stream is still being drained, file is removed once it's closed.
+		 */
+		synchronized void discard() {
+			discarded = true;
+			if (closed) {
+				deleteSpill();
+			}
+		}
+
+		private synchronized void finished() {
+			closed = true;
+			if (discarded) {
+				deleteSpill();
+			}
+		}
+
+		private void deleteSpill() {
+			if (spillFile != null && spillFile.exists() && !spillFile.delete()) {
+				spillFile.deleteOnExit();
+			}
+		}
+
+		long total() {
+			return total;
+		}
+
+		int buffered() {
+			return length;
+		}
+
+		@Override
+		public Capture call() throws IOException {
+			final char[] chunk = new char[8192];
+			int len;
+			try {
+				while ((len = reader.read(chunk)) != -1) {
+					append(chunk, len);
+					if (context != null) {
+						context.log(chunk, len);
+					}
+				}
+			} finally {
+				try {
+					reader.close();
+					if (spill != null) {
+						spill.close();
+					}
+				} finally {
+					finished();
+				}
+			}
+			return this;
+		}
+	}
+
+	public Either<Utils.CommandResult> run(final String command, final File path, final List<String> arguments) {
+		final List<String> commandAndArgs = new ArrayList<String>();
+		commandAndArgs.add(command);
+		commandAndArgs.addAll(arguments);
+		final ProcessBuilder pb = new ProcessBuilder(commandAndArgs);
+		if (path != null) {
+			pb.directory(path);
+		}
+		final StringBuilder description = new StringBuilder("Running: ");
+		for (final String arg : pb.command()) {
+			description.append(arg).append(" ");
+		}
+		final JobScheduler.Lease lease;
+		if (tool != null) {
+			try {
+				lease = JobScheduler.global().acquire(tool, JobScheduler.usage(context));
+			} catch (InterruptedException ex) {
+				return Either.fail(ex);
+			}
+			if (lease.waited > 0) {
+				context.log("Waited " + lease.waited + "ms for " + tool + " job slot");
+			}
+		} else {
+			lease = null;
+		}
+		try {
+			return start(pb, command, description.toString());
+		} finally {
+			if (lease != null) {
+				lease.release();
+			}
+		}
+	}
+
+	private Either<Utils.CommandResult> start(final ProcessBuilder pb, final String command, final String description) {
+		context.log(description);
+		context.notify("EXEC", pb);
+		final long startAt = System.currentTimeMillis();
+		final Process process;
+		try {
+			process = pb.start();
+		} catch (IOException ex) {
+			return Either.fail(ex);
+		}
+		//stdin is not used, so it's closed to avoid processes waiting on input
+		try {
+			process.getOutputStream().close();
+		} catch (IOException ignore) {
+		}
+		final Context logTo = logOutput ? context : null;
+		final Capture outCapture = new Capture(process.getInputStream(), charset, logTo, captureLimit, spillOutput);
+		final Future<Capture> output = DRAINERS.submit(outCapture);
+		final Future<Capture> error = DRAINERS.submit(new Capture(process.getErrorStream(), charset, logTo, captureLimit, false));
+		final AtomicBoolean timedOut = new AtomicBoolean();
+		final ScheduledFuture<?> watchdog = timeoutMillis <= 0 ? null : WATCHDOG.schedule(new Runnable() {
+			@Override
+			public void run() {
+				timedOut.set(true);
+				process.destroy();
+			}
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+		try {
+			final int exitCode = process.waitFor();
+			if (timedOut.get()) {
+				//child processes can still hold the streams open, so don't wait for them
+				output.cancel(true);
+				error.cancel(true);
+				outCapture.discard();
+				return Either.fail(command + " did not finish in " + timeoutMillis + "ms and was stopped.");
+			}
+			final Capture out = output.get();
+			final Capture err = error.get();
+			final long duration = System.currentTimeMillis() - startAt;
+			if (out.file() != null) {
+				context.log(command + " produced " + ((out.total() + err.total()) / 1024) + "kB of output. Full output saved to: "
+						+ out.file());
+			}
+			return Either.success(new Utils.CommandResult(
+					out.text(),
+					err.text(),
+					exitCode,
+					duration,
+					out.total() + err.total(),
+					out.buffered() + err.buffered(),
+					out.file(),
+					null));
+		} catch (InterruptedException ex) {
+			process.destroy();
+			outCapture.discard();
+			return Either.fail(ex);
+		} catch (ExecutionException ex) {
+			process.destroy();
+			outCapture.discard();
+			return Either.fail(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+		} finally {
+			if (watchdog != null) {
+				watchdog.cancel(false);
+			}
+		}
+	}
+}
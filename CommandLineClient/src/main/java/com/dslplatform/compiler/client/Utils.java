@@ -1,36 +1,55 @@
 package com.dslplatform.compiler.client;
 
+import com.dslplatform.compiler.client.parameters.Mirror;
+import com.dslplatform.compiler.client.parameters.Offline;
+import com.dslplatform.compiler.client.parameters.UpdateInterval;
 import org.w3c.dom.Document;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 public abstract class Utils {
-	private static final String REMOTE_URL = "https://compiler.dsl-platform.com:8443/platform/download/";
+	private static String remoteUrl(final Context context, final String file) {
+		return Mirror.url(context, Mirror.Repository.DSL_PLATFORM) + "/" + file + ".zip";
+	}
 
 	public static long downloadAndUnpack(final Context context, final String file, final File path) throws IOException {
-		final URL server = new URL(REMOTE_URL + file + ".zip");
+		final URL server = new URL(remoteUrl(context, file));
 		context.show("Downloading " + file + ".zip from DSL Platform...");
 		return unpackZip(context, path, server);
 	}
 
 	public static Either<Long> lastModified(final Context context, final String file, final String name, final long current) {
+		if (context.contains(Offline.INSTANCE)) {
+			context.log("Offline mode. Skipping last modified check for " + file + ".zip");
+			return Either.success(current);
+		}
+		final Long recent = UpdateInterval.recentCheck(context, file);
+		if (recent != null) {
+			context.log("Last modified info for " + file + ".zip checked recently. Skipping check due to update interval");
+			return Either.success(recent);
+		}
 		try {
-			final URL server = new URL(REMOTE_URL + file + ".zip");
+			final URL server = new URL(remoteUrl(context, file));
 			context.log("Checking last modified info for " + file + ".zip from DSL Platform...");
-			final HttpURLConnection connection = (HttpURLConnection) server.openConnection();
-			connection.setRequestMethod("HEAD");
+			final URLConnection connection = server.openConnection();
+			if (connection instanceof HttpURLConnection) {
+				((HttpURLConnection) connection).setRequestMethod("HEAD");
+			}
 			final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
 			final long latest = connection.getLastModified();
-			if (latest == 0 && connection.getResponseCode() == -1) {
+			if (latest == 0 && connection instanceof HttpURLConnection
+					&& ((HttpURLConnection) connection).getResponseCode() == -1) {
 				return Either.fail("Unable to check " + file + " version on DSL Platform. Internet connection not available?");
 			}
+			UpdateInterval.rememberCheck(context, file, latest);
 			if (current == latest && current != 0) {
 				context.show(name + " at latest version (" + sdf.format(latest) + ")");
 			} else if (current > 0 && latest > 0) {
@@ -88,6 +107,24 @@ public abstract class Utils {
 		}
 	}
 
+	public static void copyFile(final File source, final File target) throws IOException {
+		final FileInputStream fis = new FileInputStream(source);
+		try {
+			final FileOutputStream fos = new FileOutputStream(target);
+			try {
+				final byte[] buffer = new byte[8192];
+				int len;
+				while ((len = fis.read(buffer)) != -1) {
+					fos.write(buffer, 0, len);
+				}
+			} finally {
+				fos.close();
+			}
+		} finally {
+			fis.close();
+		}
+	}
+
 	public static List<File> findFiles(final Context context, final File path, final List<String> extensions) {
 		context.log("Searching for files...");
 		for (final String ext : extensions) {
@@ -116,38 +153,65 @@ public abstract class Utils {
 	}
 
 	public static long unpackZip(final Context context, final File path, final URL remoteUrl) throws IOException {
-		return unpackZip(context, path, remoteUrl, new ArrayList<File>(), 3);
+		//stable name, so interrupted download can be resumed on the next run
+		final File archive = new File(
+				System.getProperty("java.io.tmpdir"),
+				"dsl-download-" + Integer.toHexString(remoteUrl.toString().hashCode()) + ".zip");
+		//archive location is shared between concurrent runs
+		final Closeable lock = Downloader.lock(archive);
+		try {
+			final Either<Downloader.Result> download = new Downloader(context).download(remoteUrl, archive);
+			if (!download.isSuccess()) {
+				final Exception ex = download.whyNot();
+				throw ex instanceof IOException ? (IOException) ex : new IOException(ex.getMessage());
+			}
+			try {
+				unzip(context, archive, path);
+			} finally {
+				if (!archive.delete()) {
+					context.log("Failed to clean up: " + archive);
+				}
+			}
+			return download.get().lastModified;
+		} finally {
+			lock.close();
+		}
 	}
 
-	private static long unpackZip(
-			final Context context,
-			final File path,
-			final URL remoteUrl,
-			final ArrayList<File> unpackedFiles,
-			final int retry) throws IOException {
+	public static List<File> unzip(final Context context, final File archive, final File path) throws IOException {
+		final List<File> unpackedFiles = new ArrayList<File>();
+		final String root = path.getCanonicalPath() + File.separator;
+		final ZipInputStream zip = new ZipInputStream(new BufferedInputStream(new FileInputStream(archive)));
 		try {
-			final URLConnection connection = remoteUrl.openConnection();
-			final long lastModified = connection.getLastModified();
-			final InputStream response = connection.getInputStream();
-			final ZipInputStream zip = new ZipInputStream(new BufferedInputStream(response));
 			ZipEntry entry;
 			final byte[] buffer = new byte[8192];
 			while ((entry = zip.getNextEntry()) != null) {
-				long size = 0;
 				final File file = new File(path, entry.getName());
+				if (!file.getCanonicalPath().startsWith(root)) {
+					throw new IOException("Invalid zip entry: " + entry.getName());
+				}
+				if (entry.isDirectory()) {
+					if (!file.exists() && !file.mkdirs()) {
+						throw new IOException("Unable to create folder: " + file);
+					}
+					continue;
+				}
 				unpackedFiles.add(file);
+				long size = 0;
 				final FileOutputStream fos = new FileOutputStream(file);
-				int len;
-				while ((len = zip.read(buffer)) != -1) {
-					fos.write(buffer, 0, len);
-					size += len;
+				try {
+					int len;
+					while ((len = zip.read(buffer)) != -1) {
+						fos.write(buffer, 0, len);
+						size += len;
+					}
+				} finally {
+					fos.close();
 				}
-				fos.close();
 				context.log("Unpacked: " + entry.getName() + ". Size: " + (size / 1024) + "kB");
 				zip.closeEntry();
 			}
-			zip.close();
-			return lastModified;
+			return unpackedFiles;
 		} catch (IOException io) {
 			context.error(io);
 			for (final File f : unpackedFiles) {
@@ -157,37 +221,21 @@ public abstract class Utils {
 					context.log("Failed to clean up: " + f);
 				}
 			}
-			if (retry > 0) {
-				context.warning("Retrying download... from " + remoteUrl);
-				return unpackZip(context, path, remoteUrl, new ArrayList<File>(), retry - 1);
-			}
 			throw io;
+		} finally {
+			zip.close();
 		}
 	}
 
-	public static void downloadFile(final File file, final URL url) throws IOException {
-		downloadFileAndRetry(file, url, 3);
+	public static void downloadFile(final Context context, final File file, final URL url) throws IOException {
+		downloadFile(context, file, url, null);
 	}
 
-	private static void downloadFileAndRetry(final File file, final URL url, final int retry) throws IOException {
-		final FileOutputStream fos = new FileOutputStream(file);
-		try {
-			final byte[] buffer = new byte[8192];
-			final InputStream stream = new BufferedInputStream(url.openConnection().getInputStream());
-			try {
-				int len;
-				while ((len = stream.read(buffer)) != -1) {
-					fos.write(buffer, 0, len);
-				}
-			} finally {
-				stream.close();
-			}
-		} catch (IOException io) {
-			if (retry > 0) {
-				downloadFileAndRetry(file, url, retry - 1);
-			} else throw io;
-		} finally {
-			fos.close();
+	public static void downloadFile(final Context context, final File file, final URL url, final String sha1) throws IOException {
+		final Either<Downloader.Result> download = new Downloader(context).download(url, file, sha1);
+		if (!download.isSuccess()) {
+			final Exception ex = download.whyNot();
+			throw ex instanceof IOException ? (IOException) ex : new IOException(ex.getMessage());
 		}
 	}
 
@@ -209,69 +257,67 @@ public abstract class Utils {
 		public final String output;
 		public final String error;
 		public final int exitCode;
+		public final long duration;
+		public final long outputSize;
+		public final long peakBuffered;
+		public final File outputFile;
+		public final File errorFile;
 
 		public CommandResult(final String output, final String error, final int exitCode) {
+			this(output, error, exitCode, 0, output.length() + error.length(), output.length() + error.length(), null, null);
+		}
+
+		public CommandResult(
+				final String output,
+				final String error,
+				final int exitCode,
+				final long duration,
+				final long outputSize,
+				final long peakBuffered,
+				final File outputFile,
+				final File errorFile) {
 			this.output = output;
 			this.error = error;
 			this.exitCode = exitCode;
+			this.duration = duration;
+			this.outputSize = outputSize;
+			this.peakBuffered = peakBuffered;
+			this.outputFile = outputFile;
+			this.errorFile = errorFile;
 		}
-	}
-
-	private static class ConsumeStream extends Thread {
-		private final BufferedReader reader;
-		private final Context context;
-		private final StringBuilder output = new StringBuilder();
-		private IOException exception;
 
-		private ConsumeStream(final InputStream stream, final Context context) {
-			this.reader = new BufferedReader(new InputStreamReader(stream));
-			this.context = context;
-		}
-
-		private ConsumeStream() {
-			this.reader = null;
-			this.context = null;
-		}
-
-		static ConsumeStream start(final InputStream stream, final Context context) {
-			if (stream == null) {
-				return new ConsumeStream();
+		/**
+		 * Complete standard output. When output was too large to be kept in memory,
+		 * output field contains only its end, while the whole output is read from the spill file.
+		 * Spill file is removed after it's read, so full output can be read only once.
+		 */
+		public String fullOutput() throws IOException {
+			if (outputFile == null) {
+				return output;
 			}
-			final ConsumeStream cs = new ConsumeStream(stream, context);
-			cs.start();
-			return cs;
-		}
-
-		@Override
-		public void run() {
-			if (reader == null) {
-				return;
-			}
-			final char[] buffer = new char[8192];
-			int len;
 			try {
-				while ((len = reader.read(buffer)) != -1) {
-					output.append(buffer, 0, len);
-					if (context != null) {
-						context.log(buffer, len);
-					}
+				final Either<String> content = readFile(outputFile);
+				if (!content.isSuccess()) {
+					throw new IOException(content.explainError());
 				}
-				reader.close();
-			} catch (IOException ex) {
-				exception = ex;
+				return content.get();
+			} finally {
+				discard();
 			}
 		}
-	}
 
-	private static void logCommand(final Context context, final ProcessBuilder builder) {
-		final StringBuilder description = new StringBuilder("Running: ");
-		for (final String arg : builder.command()) {
-			description.append(arg).append(" ");
+		/**
+		 * Remove the spill file when full output is not needed.
+		 */
+		public void discard() {
+			if (outputFile != null && outputFile.exists() && !outputFile.delete()) {
+				outputFile.deleteOnExit();
+			}
 		}
-		context.log(description.toString());
-		context.notify("EXEC", builder);
 	}
 
+	private static final long PROBE_TIMEOUT = 30000;
+
 	public static Either<String> findCommand(final Context context, final String path, final String name, final String contains) {
 		final String simple = path != null ? new File(path, name).getAbsolutePath() : name;
 		if (testCommand(context, simple, contains, new ArrayList<String>())) {
@@ -298,56 +344,31 @@ public abstract class Utils {
 	}
 
 	public static boolean testCommand(final Context context, final String command, final String contains, final List<String> arguments) {
-		try {
-			final List<String> commandAndArgs = new ArrayList<String>();
-			commandAndArgs.add(command);
-			commandAndArgs.addAll(arguments);
-			final ProcessBuilder pb = new ProcessBuilder(commandAndArgs);
-			logCommand(context, pb);
-			final Process compilation = pb.start();
-			final ConsumeStream result = ConsumeStream.start(compilation.getInputStream(), null);
-			final ConsumeStream error = ConsumeStream.start(compilation.getErrorStream(), null);
-			compilation.waitFor();
-			result.join();
-			error.join();
-			return error.output.toString().contains(contains) || result.output.toString().contains(contains);
-		} catch (IOException ex) {
-			context.log(ex.getMessage());
-			return false;
-		} catch (InterruptedException ex) {
-			context.log(ex.getMessage());
+		final Either<CommandResult> result =
+				new ProcessRunner(context, ProcessRunner.NATIVE)
+						.timeout(PROBE_TIMEOUT)
+						.captureLimit(1024 * 1024)
+						.logOutput(false)
+						.run(command, null, arguments);
+		if (!result.isSuccess()) {
+			context.log(result.explainError());
 			return false;
 		}
+		return result.get().error.contains(contains) || result.get().output.contains(contains);
 	}
 
 	public static Either<CommandResult> runCommand(final Context context, final String command, final File path, final List<String> arguments) {
-		try {
-			final List<String> commandAndArgs = new ArrayList<String>();
-			commandAndArgs.add(command);
-			commandAndArgs.addAll(arguments);
-			final ProcessBuilder pb = new ProcessBuilder(commandAndArgs);
-			if (path != null) {
-				pb.directory(path);
-			}
-			logCommand(context, pb);
-			final Process compilation = pb.start();
-			final ConsumeStream result = ConsumeStream.start(compilation.getInputStream(), context);
-			final ConsumeStream error = ConsumeStream.start(compilation.getErrorStream(), context);
-			final int exitCode = compilation.waitFor();
-			result.join();
-			error.join();
-			if (result.exception != null) {
-				return Either.fail(result.exception);
-			}
-			if (error.exception != null) {
-				return Either.fail(error.exception);
-			}
-			return Either.success(new CommandResult(result.output.toString(), error.output.toString(), exitCode));
-		} catch (IOException ex) {
-			return Either.fail(ex);
-		} catch (InterruptedException ex) {
-			return Either.fail(ex);
-		}
+		return new ProcessRunner(context, ProcessRunner.NATIVE).run(command, path, arguments);
+	}
+
+	public static Either<CommandResult> runTool(
+			final Context context,
+			final String tool,
+			final String command,
+			final File path,
+			final List<String> arguments,
+			final Charset charset) {
+		return new ProcessRunner(context, charset).schedule(tool).run(command, path, arguments);
 	}
 
 	public static void deletePath(final File path) throws IOException {
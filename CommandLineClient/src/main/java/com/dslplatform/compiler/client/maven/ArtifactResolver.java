@@ -0,0 +1,385 @@
+package com.dslplatform.compiler.client.maven;
+
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.Utils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Lightweight replacement for mvn dependency:copy-dependencies.
+ * Resolves compile and runtime dependencies of a single artifact using nearest-wins mediation
+ * and downloads them into the local Maven repository layout.
+ * POM features which are not supported (version ranges, profiles with dependencies, relocations, ...)
+ * are reported as failure, so caller can fall back to Maven.
+ */
+public class ArtifactResolver {
+	private static final int DOWNLOAD_THREADS = 4;
+
+	private final Context context;
+	private final File localRepository;
+	private final List<String> repositories;
+	private final ConcurrentMap<String, Either<Pom>> effectivePoms = new ConcurrentHashMap<String, Either<Pom>>();
+	private final ConcurrentMap<String, Object> fileLocks = new ConcurrentHashMap<String, Object>();
+
+	public ArtifactResolver(final Context context, final File localRepository, final List<String> repositories) {
+		this.context = context;
+		this.localRepository = localRepository;
+		this.repositories = new ArrayList<String>(repositories.size());
+		for (final String r : repositories) {
+			this.repositories.add(r.endsWith("/") ? r.substring(0, r.length() - 1) : r);
+		}
+	}
+
+	public static File defaultLocalRepository() {
+		return new File(new File(System.getProperty("user.home"), ".m2"), "repository");
+	}
+
+	public Either<String> findRelease(final String groupId, final String artifactId) {
+		final String path = groupId.replace('.', '/') + "/" + artifactId + "/maven-metadata.xml";
+		for (final String repository : repositories) {
+			final Either<Document> doc;
+			try {
+				final InputStream stream = new URL(repository + "/" + path).openConnection().getInputStream();
+				try {
+					doc = Utils.readXml(stream);
+				} finally {
+					stream.close();
+				}
+			} catch (IOException ex) {
+				context.log("Unable to read " + path + " from " + repository + ": " + ex.getMessage());
+				continue;
+			}
+			if (!doc.isSuccess()) {
+				context.log("Invalid metadata for " + groupId + ":" + artifactId + " in " + repository);
+				continue;
+			}
+			final Element root = doc.get().getDocumentElement();
+			final Element versioning = (Element) root.getElementsByTagName("versioning").item(0);
+			if (versioning == null) {
+				continue;
+			}
+			final NodeList release = versioning.getElementsByTagName("release");
+			if (release.getLength() > 0) {
+				return Either.success(release.item(0).getTextContent().trim());
+			}
+			final NodeList versions = versioning.getElementsByTagName("version");
+			if (versions.getLength() > 0) {
+				return Either.success(versions.item(versions.getLength() - 1).getTextContent().trim());
+			}
+		}
+		final String local = findLocalRelease(groupId, artifactId);
+		if (local != null) {
+			context.log("Using locally cached version " + local + " of " + groupId + ":" + artifactId);
+			return Either.success(local);
+		}
+		return Either.fail("Unable to find release version for " + groupId + ":" + artifactId);
+	}
+
+	private String findLocalRelease(final String groupId, final String artifactId) {
+		final File folder = new File(localRepository, groupId.replace('.', '/') + "/" + artifactId);
+		final File[] versions = folder.listFiles();
+		if (versions == null) {
+			return null;
+		}
+		String latest = null;
+		for (final File v : versions) {
+			if (v.isDirectory()
+					&& !v.getName().endsWith("-SNAPSHOT")
+					&& new File(v, artifactId + "-" + v.getName() + ".pom").exists()
+					&& (latest == null || compareVersions(v.getName(), latest) > 0)) {
+				latest = v.getName();
+			}
+		}
+		return latest;
+	}
+
+	static int compareVersions(final String left, final String right) {
+		final String[] l = left.split("[.-]");
+		final String[] r = right.split("[.-]");
+		for (int i = 0; i < Math.max(l.length, r.length); i++) {
+			final String a = i < l.length ? l[i] : "0";
+			final String b = i < r.length ? r[i] : "0";
+			final int diff;
+			if (a.matches("\\d+") && b.matches("\\d+")) {
+				diff = a.length() != b.length() ? a.length() - b.length() : a.compareTo(b);
+			} else {
+				diff = a.compareTo(b);
+			}
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Resolve artifact with all its compile and runtime dependencies.
+	 * Returned files are located in the local repository, with the requested artifact first.
+	 */
+	public Either<List<File>> resolve(final String groupId, final String artifactId, final String version) {
+		final Dependency root = new Dependency(groupId, artifactId, version, "jar", null, "compile", false, Collections.<String>emptySet());
+		final Either<Pom> rootPom = loadEffective(root);
+		if (!rootPom.isSuccess()) {
+			return Either.fail(rootPom.whyNot());
+		}
+		final Map<String, Dependency> managed = rootPom.get().management;
+		final Map<String, Dependency> selected = new LinkedHashMap<String, Dependency>();
+		selected.put(root.key(), root);
+		List<Dependency> level = Collections.singletonList(root);
+		final Map<Dependency, Pom> levelPoms = new HashMap<Dependency, Pom>();
+		levelPoms.put(root, rootPom.get());
+		final ExecutorService executor = Executors.newFixedThreadPool(DOWNLOAD_THREADS);
+		try {
+			while (!level.isEmpty()) {
+				final List<Dependency> next = new ArrayList<Dependency>();
+				for (final Dependency node : level) {
+					final Pom pom = levelPoms.get(node);
+					for (final Dependency child : pom.dependencies) {
+						if (child.optional
+								|| "test".equals(child.scope)
+								|| "provided".equals(child.scope)
+								|| "system".equals(child.scope)
+								|| "import".equals(child.scope)
+								|| child.isExcludedBy(node.exclusions)
+								|| selected.containsKey(child.key())) {
+							continue;
+						}
+						final Dependency management = managed.get(child.managementKey());
+						final String childVersion = management != null && management.version != null
+								? management.version
+								: child.version != null ? child.version : versionFrom(pom, child);
+						if (childVersion == null) {
+							return Either.fail("Unable to detect version for " + child.key() + " in " + node);
+						}
+						final Dependency resolved = child.withVersion(childVersion);
+						if (resolved.hasVersionRange()) {
+							return Either.fail("Unsupported POM feature in " + node + ": version range " + childVersion + " for " + child.key());
+						}
+						if (!"jar".equals(resolved.type) && !"bundle".equals(resolved.type) && !"pom".equals(resolved.type)) {
+							return Either.fail("Unsupported dependency type " + resolved.type + " for " + resolved);
+						}
+						final Set<String> exclusions = new HashSet<String>(node.exclusions);
+						exclusions.addAll(child.exclusions);
+						final String scope = "compile".equals(node.scope) && "compile".equals(child.scope) ? "compile" : "runtime";
+						final Dependency transitive = resolved.withScope(scope).withExclusions(exclusions);
+						selected.put(transitive.key(), transitive);
+						next.add(transitive);
+					}
+				}
+				final Either<Map<Dependency, Pom>> nextPoms = loadAll(executor, next);
+				if (!nextPoms.isSuccess()) {
+					return Either.fail(nextPoms.whyNot());
+				}
+				levelPoms.clear();
+				levelPoms.putAll(nextPoms.get());
+				level = next;
+			}
+			final List<Dependency> jars = new ArrayList<Dependency>(selected.size());
+			for (final Dependency d : selected.values()) {
+				if (!"pom".equals(d.type)) {
+					jars.add(d);
+				}
+			}
+			return downloadAll(executor, jars);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static String versionFrom(final Pom pom, final Dependency dependency) {
+		final Dependency management = pom.management.get(dependency.managementKey());
+		return management != null ? management.version : null;
+	}
+
+	private Either<Map<Dependency, Pom>> loadAll(final ExecutorService executor, final List<Dependency> dependencies) {
+		final Map<Dependency, Future<Either<Pom>>> futures = new LinkedHashMap<Dependency, Future<Either<Pom>>>();
+		for (final Dependency d : dependencies) {
+			futures.put(d, executor.submit(new Callable<Either<Pom>>() {
+				@Override
+				public Either<Pom> call() {
+					return loadEffective(d);
+				}
+			}));
+		}
+		final Map<Dependency, Pom> result = new HashMap<Dependency, Pom>();
+		for (final Map.Entry<Dependency, Future<Either<Pom>>> kv : futures.entrySet()) {
+			final Either<Pom> pom = await(kv.getValue());
+			if (!pom.isSuccess()) {
+				return Either.fail(pom.whyNot());
+			}
+			result.put(kv.getKey(), pom.get());
+		}
+		return Either.success(result);
+	}
+
+	private Either<List<File>> downloadAll(final ExecutorService executor, final List<Dependency> dependencies) {
+		final List<Future<Either<File>>> futures = new ArrayList<Future<Either<File>>>(dependencies.size());
+		for (final Dependency d : dependencies) {
+			futures.add(executor.submit(new Callable<Either<File>>() {
+				@Override
+				public Either<File> call() {
+					return fetch(d.path("jar"));
+				}
+			}));
+		}
+		final List<File> files = new ArrayList<File>(futures.size());
+		for (final Future<Either<File>> f : futures) {
+			final Either<File> file = await(f);
+			if (!file.isSuccess()) {
+				return Either.fail(file.whyNot());
+			}
+			files.add(file.get());
+		}
+		return Either.success(files);
+	}
+
+	private static <T> Either<T> await(final Future<Either<T>> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException ex) {
+			return Either.fail(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+		} catch (InterruptedException ex) {
+			return Either.fail(ex);
+		}
+	}
+
+	private Either<Pom> loadEffective(final Dependency dependency) {
+		final String key = dependency.groupId + ":" + dependency.artifactId + ":" + dependency.version;
+		final Either<Pom> cached = effectivePoms.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		final Either<Pom> pom = buildEffective(dependency, 0);
+		effectivePoms.putIfAbsent(key, pom);
+		return pom;
+	}
+
+	private Either<Pom> buildEffective(final Dependency dependency, final int depth) {
+		final Either<Pom> inherited = buildInherited(dependency, depth);
+		if (!inherited.isSuccess()) {
+			return inherited;
+		}
+		Pom pom = inherited.get();
+		if (pom.unsupported != null) {
+			return Either.fail("Unsupported POM feature in " + dependency + ": " + pom.unsupported);
+		}
+		//properties are interpolated only once the whole hierarchy is merged,
+		//so inherited sections are resolved with properties and coordinates of this project
+		final Either<Pom> interpolated = pom.interpolate();
+		if (!interpolated.isSuccess()) {
+			return interpolated;
+		}
+		pom = interpolated.get();
+		final Map<String, Dependency> imported = new LinkedHashMap<String, Dependency>();
+		final Iterator<Dependency> iterator = pom.management.values().iterator();
+		while (iterator.hasNext()) {
+			final Dependency d = iterator.next();
+			if ("import".equals(d.scope) && "pom".equals(d.type)) {
+				iterator.remove();
+				final Either<Pom> bom = buildEffective(d, depth + 1);
+				if (!bom.isSuccess()) {
+					return bom;
+				}
+				for (final Map.Entry<String, Dependency> kv : bom.get().management.entrySet()) {
+					if (!imported.containsKey(kv.getKey())) {
+						imported.put(kv.getKey(), kv.getValue());
+					}
+				}
+			}
+		}
+		return Either.success(imported.isEmpty() ? pom : pom.withManagement(imported));
+	}
+
+	private Either<Pom> buildInherited(final Dependency dependency, final int depth) {
+		if (depth > 20) {
+			return Either.fail("Too deep POM hierarchy for " + dependency);
+		}
+		final Either<File> file = fetch(dependency.path("pom"));
+		if (!file.isSuccess()) {
+			return Either.fail(file.whyNot());
+		}
+		final Either<Document> doc;
+		try {
+			final InputStream stream = new FileInputStream(file.get());
+			try {
+				doc = Utils.readXml(stream);
+			} finally {
+				stream.close();
+			}
+		} catch (IOException ex) {
+			return Either.fail(ex);
+		}
+		if (!doc.isSuccess()) {
+			return Either.fail("Invalid POM for " + dependency + ": " + doc.whyNot().getMessage());
+		}
+		Pom pom = Pom.parse(doc.get());
+		if (pom.parent != null) {
+			final Either<Pom> parent = buildInherited(pom.parent, depth + 1);
+			if (!parent.isSuccess()) {
+				return parent;
+			}
+			pom = pom.inherit(parent.get());
+		}
+		return Either.success(pom);
+	}
+
+	private Object lockFor(final String path) {
+		final Object lock = new Object();
+		final Object previous = fileLocks.putIfAbsent(path, lock);
+		return previous != null ? previous : lock;
+	}
+
+	private String remoteChecksum(final String repository, final String path) {
+		try {
+			final InputStream stream = new URL(repository + "/" + path + ".sha1").openConnection().getInputStream();
+			try {
+				//checksum files can contain file name after the hash
+				final String content = Utils.read(stream).trim();
+				final int space = content.indexOf(' ');
+				final String hash = space == -1 ? content : content.substring(0, space);
+				return hash.length() == 40 ? hash : null;
+			} finally {
+				stream.close();
+			}
+		} catch (IOException ex) {
+			context.log("Checksum not available for " + path + " in " + repository);
+			return null;
+		}
+	}
+
+	private Either<File> fetch(final String path) {
+		final File local = new File(localRepository, path);
+		synchronized (lockFor(path)) {
+			if (local.exists()) {
+				return Either.success(local);
+			}
+			final File folder = local.getParentFile();
+			if (!folder.exists() && !folder.mkdirs() && !folder.exists()) {
+				return Either.fail("Unable to create folder in local repository: " + folder.getAbsolutePath());
+			}
+			IOException lastError = null;
+			for (final String repository : repositories) {
+				try {
+					context.log("Downloading " + repository + "/" + path);
+					Utils.downloadFile(context, local, new URL(repository + "/" + path), remoteChecksum(repository, path));
+					return Either.success(local);
+				} catch (IOException ex) {
+					lastError = ex;
+				}
+			}
+			return lastError != null
+					? Either.<File>fail("Unable to download " + path, lastError)
+					: Either.<File>fail("No repository defined for " + path);
+		}
+	}
+}
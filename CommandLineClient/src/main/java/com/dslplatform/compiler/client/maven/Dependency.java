@@ -0,0 +1,74 @@
+package com.dslplatform.compiler.client.maven;
+
+import java.util.*;
+
+class Dependency {
+	final String groupId;
+	final String artifactId;
+	final String version;
+	final String type;
+	final String classifier;
+	final String scope;
+	final boolean optional;
+	final Set<String> exclusions;
+
+	Dependency(
+			final String groupId,
+			final String artifactId,
+			final String version,
+			final String type,
+			final String classifier,
+			final String scope,
+			final boolean optional,
+			final Set<String> exclusions) {
+		this.groupId = groupId;
+		this.artifactId = artifactId;
+		this.version = version;
+		this.type = type == null || type.length() == 0 ? "jar" : type;
+		this.classifier = classifier == null || classifier.length() == 0 ? null : classifier;
+		this.scope = scope == null || scope.length() == 0 ? "compile" : scope;
+		this.optional = optional;
+		this.exclusions = exclusions;
+	}
+
+	String key() {
+		return groupId + ":" + artifactId;
+	}
+
+	String managementKey() {
+		return groupId + ":" + artifactId + ":" + type + (classifier != null ? ":" + classifier : "");
+	}
+
+	Dependency withVersion(final String newVersion) {
+		return new Dependency(groupId, artifactId, newVersion, type, classifier, scope, optional, exclusions);
+	}
+
+	Dependency withScope(final String newScope) {
+		return new Dependency(groupId, artifactId, version, type, classifier, newScope, optional, exclusions);
+	}
+
+	Dependency withExclusions(final Set<String> newExclusions) {
+		return new Dependency(groupId, artifactId, version, type, classifier, scope, optional, newExclusions);
+	}
+
+	boolean isExcludedBy(final Set<String> excluded) {
+		return excluded.contains(key())
+				|| excluded.contains(groupId + ":*")
+				|| excluded.contains("*:" + artifactId)
+				|| excluded.contains("*:*");
+	}
+
+	boolean hasVersionRange() {
+		return version != null && (version.startsWith("[") || version.startsWith("(") || version.contains(","));
+	}
+
+	String path(final String extension) {
+		return groupId.replace('.', '/') + "/" + artifactId + "/" + version + "/"
+				+ artifactId + "-" + version + (classifier != null ? "-" + classifier : "") + "." + extension;
+	}
+
+	@Override
+	public String toString() {
+		return groupId + ":" + artifactId + ":" + version + (classifier != null ? ":" + classifier : "");
+	}
+}
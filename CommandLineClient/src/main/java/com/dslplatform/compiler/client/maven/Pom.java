@@ -0,0 +1,259 @@
+package com.dslplatform.compiler.client.maven;
+
+import com.dslplatform.compiler.client.Either;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.*;
+
+class Pom {
+	final String groupId;
+	final String artifactId;
+	final String version;
+	final String packaging;
+	final Dependency parent;
+	final Map<String, String> properties;
+	final List<Dependency> dependencies;
+	final Map<String, Dependency> management;
+	final String unsupported;
+
+	private Pom(
+			final String groupId,
+			final String artifactId,
+			final String version,
+			final String packaging,
+			final Dependency parent,
+			final Map<String, String> properties,
+			final List<Dependency> dependencies,
+			final Map<String, Dependency> management,
+			final String unsupported) {
+		this.groupId = groupId;
+		this.artifactId = artifactId;
+		this.version = version;
+		this.packaging = packaging == null || packaging.length() == 0 ? "jar" : packaging;
+		this.parent = parent;
+		this.properties = properties;
+		this.dependencies = dependencies;
+		this.management = management;
+		this.unsupported = unsupported;
+	}
+
+	private static Element child(final Element element, final String name) {
+		if (element == null) {
+			return null;
+		}
+		final NodeList nodes = element.getChildNodes();
+		for (int i = 0; i < nodes.getLength(); i++) {
+			final Node node = nodes.item(i);
+			if (node.getNodeType() == Node.ELEMENT_NODE && name.equals(node.getNodeName())) {
+				return (Element) node;
+			}
+		}
+		return null;
+	}
+
+	private static List<Element> children(final Element element, final String name) {
+		final List<Element> result = new ArrayList<Element>();
+		if (element == null) {
+			return result;
+		}
+		final NodeList nodes = element.getChildNodes();
+		for (int i = 0; i < nodes.getLength(); i++) {
+			final Node node = nodes.item(i);
+			if (node.getNodeType() == Node.ELEMENT_NODE && name.equals(node.getNodeName())) {
+				result.add((Element) node);
+			}
+		}
+		return result;
+	}
+
+	private static String text(final Element element, final String name) {
+		final Element found = child(element, name);
+		return found == null ? null : found.getTextContent().trim();
+	}
+
+	private static List<Dependency> parseDependencies(final Element dependencies) {
+		final List<Dependency> result = new ArrayList<Dependency>();
+		for (final Element dep : children(dependencies, "dependency")) {
+			final Set<String> exclusions = new HashSet<String>();
+			for (final Element ex : children(child(dep, "exclusions"), "exclusion")) {
+				exclusions.add(text(ex, "groupId") + ":" + text(ex, "artifactId"));
+			}
+			result.add(new Dependency(
+					text(dep, "groupId"),
+					text(dep, "artifactId"),
+					text(dep, "version"),
+					text(dep, "type"),
+					text(dep, "classifier"),
+					text(dep, "scope"),
+					"true".equals(text(dep, "optional")),
+					exclusions));
+		}
+		return result;
+	}
+
+	static Pom parse(final Document document) {
+		final Element project = document.getDocumentElement();
+		final Element parentElement = child(project, "parent");
+		final Dependency parent = parentElement == null
+				? null
+				: new Dependency(
+				text(parentElement, "groupId"),
+				text(parentElement, "artifactId"),
+				text(parentElement, "version"),
+				"pom",
+				null,
+				null,
+				false,
+				Collections.<String>emptySet());
+		final Map<String, String> properties = new HashMap<String, String>();
+		final Element props = child(project, "properties");
+		if (props != null) {
+			final NodeList nodes = props.getChildNodes();
+			for (int i = 0; i < nodes.getLength(); i++) {
+				final Node node = nodes.item(i);
+				if (node.getNodeType() == Node.ELEMENT_NODE) {
+					properties.put(node.getNodeName(), node.getTextContent().trim());
+				}
+			}
+		}
+		final Map<String, Dependency> management = new LinkedHashMap<String, Dependency>();
+		for (final Dependency d : parseDependencies(child(child(project, "dependencyManagement"), "dependencies"))) {
+			management.put(d.managementKey(), d);
+		}
+		String unsupported = null;
+		for (final Element profile : children(child(project, "profiles"), "profile")) {
+			if (child(profile, "dependencies") != null || child(profile, "dependencyManagement") != null) {
+				unsupported = "dependencies defined in profile " + text(profile, "id");
+			}
+		}
+		if (child(child(project, "distributionManagement"), "relocation") != null) {
+			unsupported = "artifact relocation";
+		}
+		return new Pom(
+				text(project, "groupId"),
+				text(project, "artifactId"),
+				text(project, "version"),
+				text(project, "packaging"),
+				parent,
+				properties,
+				parseDependencies(child(project, "dependencies")),
+				management,
+				unsupported);
+	}
+
+	Pom inherit(final Pom base) {
+		final Map<String, String> mergedProperties = new HashMap<String, String>(base.properties);
+		mergedProperties.putAll(properties);
+		final Map<String, Dependency> mergedManagement = new LinkedHashMap<String, Dependency>(base.management);
+		mergedManagement.putAll(management);
+		final Map<String, Dependency> mergedDependencies = new LinkedHashMap<String, Dependency>();
+		for (final Dependency d : base.dependencies) {
+			mergedDependencies.put(d.managementKey(), d);
+		}
+		for (final Dependency d : dependencies) {
+			mergedDependencies.put(d.managementKey(), d);
+		}
+		return new Pom(
+				groupId != null ? groupId : parent.groupId,
+				artifactId,
+				version != null ? version : parent.version,
+				packaging,
+				parent,
+				mergedProperties,
+				new ArrayList<Dependency>(mergedDependencies.values()),
+				mergedManagement,
+				unsupported != null ? unsupported : base.unsupported);
+	}
+
+	private static String interpolate(final String value, final Map<String, String> properties) throws IllegalArgumentException {
+		if (value == null || !value.contains("${")) {
+			return value;
+		}
+		String result = value;
+		for (int depth = 0; depth < 10 && result.contains("${"); depth++) {
+			final StringBuilder sb = new StringBuilder();
+			int last = 0;
+			int start;
+			while ((start = result.indexOf("${", last)) != -1) {
+				final int end = result.indexOf('}', start);
+				if (end == -1) {
+					break;
+				}
+				final String name = result.substring(start + 2, end);
+				final String replacement = properties.get(name);
+				if (replacement == null) {
+					throw new IllegalArgumentException("unknown property ${" + name + "}");
+				}
+				sb.append(result, last, start).append(replacement);
+				last = end + 1;
+			}
+			sb.append(result.substring(last));
+			result = sb.toString();
+		}
+		if (result.contains("${")) {
+			throw new IllegalArgumentException("unable to resolve " + value);
+		}
+		return result;
+	}
+
+	private static Dependency interpolate(final Dependency dependency, final Map<String, String> properties) {
+		return new Dependency(
+				interpolate(dependency.groupId, properties),
+				interpolate(dependency.artifactId, properties),
+				interpolate(dependency.version, properties),
+				interpolate(dependency.type, properties),
+				interpolate(dependency.classifier, properties),
+				interpolate(dependency.scope, properties),
+				dependency.optional,
+				dependency.exclusions);
+	}
+
+	Either<Pom> interpolate() {
+		final Map<String, String> all = new HashMap<String, String>(properties);
+		all.put("project.groupId", groupId);
+		all.put("project.artifactId", artifactId);
+		all.put("project.version", version);
+		all.put("pom.groupId", groupId);
+		all.put("pom.artifactId", artifactId);
+		all.put("pom.version", version);
+		all.put("groupId", groupId);
+		all.put("version", version);
+		if (parent != null) {
+			all.put("project.parent.groupId", parent.groupId);
+			all.put("project.parent.version", parent.version);
+			all.put("parent.version", parent.version);
+		}
+		try {
+			final List<Dependency> resolvedDependencies = new ArrayList<Dependency>(dependencies.size());
+			for (final Dependency d : dependencies) {
+				resolvedDependencies.add(interpolate(d, all));
+			}
+			final Map<String, Dependency> resolvedManagement = new LinkedHashMap<String, Dependency>();
+			for (final Dependency d : management.values()) {
+				final Dependency resolved = interpolate(d, all);
+				resolvedManagement.put(resolved.managementKey(), resolved);
+			}
+			return Either.success(new Pom(
+					groupId,
+					artifactId,
+					version,
+					packaging,
+					parent,
+					properties,
+					resolvedDependencies,
+					resolvedManagement,
+					unsupported));
+		} catch (IllegalArgumentException ex) {
+			return Either.fail("Unsupported POM feature in " + groupId + ":" + artifactId + ":" + version + ": " + ex.getMessage());
+		}
+	}
+
+	Pom withManagement(final Map<String, Dependency> imported) {
+		final Map<String, Dependency> merged = new LinkedHashMap<String, Dependency>(imported);
+		merged.putAll(management);
+		return new Pom(groupId, artifactId, version, packaging, parent, properties, dependencies, merged, unsupported);
+	}
+}
@@ -3,8 +3,11 @@ package com.dslplatform.compiler.client.parameters;
 import com.dslplatform.compiler.client.*;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 
-public enum ApplyMigration implements CompileParameter {
+public enum ApplyMigration implements DependentParameter, ParameterParser {
 	INSTANCE;
 
 	@Override
@@ -14,10 +17,36 @@ public enum ApplyMigration implements CompileParameter {
 
 	@Override
 	public String getUsage() {
-		return null;
+		return TIMED + "|" + DRY_RUN + "|" + ONLINE;
 	}
 
-	private static boolean hasDestructive(final String[] descriptions) {
+	@Override
+	public Either<Boolean> tryParse(final String name, final String value, final Context context) {
+		if ("apply".equals(name)) {
+			context.put(INSTANCE, value);
+			return Either.success(true);
+		} else {
+			return Either.success(false);
+		}
+	}
+
+	private static final String TIMED = "timed";
+	private static final String DRY_RUN = "dry-run";
+	private static final String ONLINE = "online";
+
+	static boolean isTimed(final Context context) {
+		return TIMED.equals(context.get(INSTANCE));
+	}
+
+	static boolean isOnline(final Context context) {
+		return ONLINE.equals(context.get(INSTANCE));
+	}
+
+	static boolean isDryRun(final Context context) {
+		return DRY_RUN.equals(context.get(INSTANCE));
+	}
+
+	static boolean hasDestructive(final String[] descriptions) {
 		for (int i = 1; i < descriptions.length; i += 2) {
 			final String desc = descriptions[i];
 			if (desc.startsWith("--REMOVE:") || desc.startsWith("--UNKNOWN:")) {
@@ -27,15 +56,41 @@ public enum ApplyMigration implements CompileParameter {
 		return false;
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return new CompileParameter[]{Migration.INSTANCE};
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return new CompileParameter[]{Migration.INSTANCE, Targets.INSTANCE};
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		if (context.contains(INSTANCE)) {
 			if (!context.contains(PostgresConnection.INSTANCE)
-					&& !context.contains(OracleConnection.INSTANCE)) {
+					&& !context.contains(OracleConnection.INSTANCE)
+					&& !context.contains(Tenants.INSTANCE)) {
 				context.error("Connection string is required to apply migration script.\n" +
 						"Neither Oracle od Postgres connection string was defined.");
 				throw new ExitException();
 			}
+			final String mode = context.get(INSTANCE);
+			if (mode != null && mode.length() > 0 && !TIMED.equals(mode) && !DRY_RUN.equals(mode) && !ONLINE.equals(mode)) {
+				context.error("Unknown apply mode: " + mode + ". Supported modes: " + TIMED + ", " + DRY_RUN + ", " + ONLINE);
+				return false;
+			}
+			if (DRY_RUN.equals(mode) && (context.contains(OracleConnection.INSTANCE) || context.contains(Tenants.INSTANCE))) {
+				context.error("Dry run is supported only for a single Postgres database, since it relies on transactional DDL.");
+				return false;
+			}
+			if ((TIMED.equals(mode) || ONLINE.equals(mode)) && context.contains(OracleConnection.INSTANCE)) {
+				context.warning("Apply mode " + mode + " is supported only for Postgres. Oracle migration will be applied in batches as usual.");
+			}
+			if ((TIMED.equals(mode) || ONLINE.equals(mode)) && context.contains(Tenants.INSTANCE)) {
+				context.warning("Apply mode " + mode + " is not used for tenants. Tenant migrations will be applied as a single script.");
+			}
 			if (!context.contains(Migration.INSTANCE)) {
 				context.put(Migration.INSTANCE, null);
 			}
@@ -49,6 +104,12 @@ public enum ApplyMigration implements CompileParameter {
 			final File postgres = Migration.getPostgresMigrationFile(context);
 			final File oracle = Migration.getOracleMigrationFile(context);
 			if (postgres == null && oracle == null) {
+				//tenant databases are migrated separately
+				if (context.contains(Tenants.INSTANCE)
+						&& !context.contains(PostgresConnection.INSTANCE)
+						&& !context.contains(OracleConnection.INSTANCE)) {
+					return;
+				}
 				context.error("Can't find SQL migration file. Unable to apply database migration.");
 				throw new ExitException();
 			}
@@ -69,7 +130,18 @@ public enum ApplyMigration implements CompileParameter {
 
 		@Override
 		public void execute(Context context, String sql) throws ExitException {
-			PostgresConnection.execute(context, sql);
+			if (isTimed(context)) {
+				PostgresConnection.executeTimed(context, sql);
+			} else if (isOnline(context)) {
+				PostgresConnection.executeOnline(context, sql);
+			} else {
+				PostgresConnection.execute(context, sql);
+			}
+		}
+
+		@Override
+		public List<String> analyze(Context context, String sql) throws ExitException {
+			return PostgresConnection.analyzeMigration(context, sql);
 		}
 	};
 
@@ -83,6 +155,11 @@ public enum ApplyMigration implements CompileParameter {
 		public void execute(Context context, String sql) throws ExitException {
 			OracleConnection.execute(context, sql);
 		}
+
+		@Override
+		public List<String> analyze(Context context, String sql) {
+			return Collections.emptyList();
+		}
 	};
 
 
@@ -90,6 +167,8 @@ public enum ApplyMigration implements CompileParameter {
 		String getDName();
 
 		void execute(final Context context, final String sql) throws ExitException;
+
+		List<String> analyze(final Context context, final String sql) throws ExitException;
 	}
 
 	private static void applyMigrationScript(final Context context, final File file, final DB db) throws ExitException {
@@ -105,25 +184,44 @@ public enum ApplyMigration implements CompileParameter {
 			return;
 		}
 		final String[] descriptions = Migration.extractDescriptions(sql);
-		if (descriptions.length > 2) {
-			for (int i = 2; i < descriptions.length; i += 2) {
-				context.show(descriptions[i]);
-			}
-			if (hasDestructive(descriptions)) {
-				context.show();
-				context.show("Destructive migration detected for " + db.getDName() + ".");
-				if (context.contains(Force.INSTANCE)) {
-					context.show("Applying destructive migration due to force option.");
+		for (int i = 2; i < descriptions.length; i += 2) {
+			context.show(descriptions[i]);
+		}
+		final List<String> lockImpact = db.analyze(context, sql);
+		if (!lockImpact.isEmpty()) {
+			context.show();
+			context.show("Lock impact for " + db.getDName() + ":");
+			for (final String line : lockImpact) {
+				if (line.startsWith("[HIGH]")) {
+					context.warning(line);
 				} else {
-					if (!context.canInteract()) {
-						context.error("Use force option to apply database migration.");
-						throw new ExitException();
-					}
-					final String input = context.ask("Apply migration (y/N):");
-					if (!"y".equalsIgnoreCase(input)) {
-						context.error("Migration canceled.");
-						throw new ExitException();
-					}
+					context.show(line);
+				}
+			}
+		}
+		if (isDryRun(context)) {
+			final String name = file.getName().endsWith(".sql")
+					? file.getName().substring(0, file.getName().length() - 4)
+					: file.getName();
+			final File report = new File(file.getParentFile(), name + "-dry-run-" + new Date().getTime() + ".tsv");
+			context.show("Running migration in a transaction which will be rolled back...");
+			PostgresConnection.dryRun(context, sql, report);
+			return;
+		}
+		if (descriptions.length > 2 && hasDestructive(descriptions)) {
+			context.show();
+			context.show("Destructive migration detected for " + db.getDName() + ".");
+			if (context.contains(Force.INSTANCE)) {
+				context.show("Applying destructive migration due to force option.");
+			} else {
+				if (!context.canInteract()) {
+					context.error("Use force option to apply database migration.");
+					throw new ExitException();
+				}
+				final String input = context.ask("Apply migration (y/N):");
+				if (!"y".equalsIgnoreCase(input)) {
+					context.error("Migration canceled.");
+					throw new ExitException();
 				}
 			}
 		}
@@ -148,6 +246,27 @@ public enum ApplyMigration implements CompileParameter {
 				"This helps with the workflow during early development, so that developer doesn't need to inspect the script,\n" +
 				"connect to the database and apply the script manually.\n" +
 				"\n" +
+				"With apply=timed Postgres script is executed statement by statement inside a single transaction.\n" +
+				"Duration and command tag of each statement is logged, slow statements are shown during the migration\n" +
+				"and the slowest statements are listed at the end.\n" +
+				"\n" +
+				"With apply=dry-run Postgres script is executed the same way, but the transaction is always rolled back.\n" +
+				"Time spent waiting on locks is measured from a separate session for each statement.\n" +
+				"When it can't be measured (e.g. Postgres older than 9.2), lock wait is reported as unavailable.\n" +
+				"Timing report is saved next to the migration script as a tab separated file,\n" +
+				"so timings of different DSL changes on a copy of the production database can be compared.\n" +
+				"\n" +
+				"Before Postgres migration is applied, statements are checked for locks which block writes while a table is\n" +
+				"scanned or rewritten (type changes, new columns with default, index builds, constraint validation...).\n" +
+				"Such statements are listed with table size estimates from pg_class.\n" +
+				"\n" +
+				"With apply=online Postgres migration is applied with less blocking of concurrent traffic:\n" +
+				"regular indexes are built with CREATE INDEX CONCURRENTLY after the main transaction,\n" +
+				"named foreign key and check constraints are added as NOT VALID and validated afterwards,\n" +
+				"while the main transaction uses lock_timeout and is retried when a lock can't be acquired in time.\n" +
+				"Migration is recorded in the main transaction, so when a step after it fails,\n" +
+				"SQL which finishes the migration is printed and must be executed manually.\n" +
+				"\n" +
 				"Ownership of the database or superuser is required for the apply migration to work.";
 	}
 }
@@ -0,0 +1,42 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+
+public enum BuildCache implements CompileParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "build-cache";
+	}
+
+	@Override
+	public String getUsage() {
+		return null;
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Reuse previously compiled libraries when sources and dependencies didn't change";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "Compiled Java, Scala and .NET libraries are kept in the /DSL-Platform-cache/build-cache folder\n" +
+				"of the system temporary path, so they survive between runs even when custom temporary path is used.\n" +
+				"They are identified by a hash of the generated sources, dependencies, compiler options and compiler.\n" +
+				"When nothing has changed since a previous successful build, the library is restored from the cache\n" +
+				"and javac, scalac or csc is not invoked.\n" +
+				"Only a few most recent builds of each library are kept. Cache can be cleared by deleting the build-cache folder.";
+	}
+}
@@ -1,10 +1,16 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.Downloader;
 import com.dslplatform.compiler.client.ExitException;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
 
 class DatabaseInfo {
 	final String database;
@@ -19,29 +25,165 @@ class DatabaseInfo {
 		this.dsl = dsl;
 	}
 
-	private static String unescape(final String element) {
-		return element.replace("\\\"", "\"").replace("\\\\", "\\");
+	static Map<String, String> convertToMap(final String dsls, final Context context) throws ExitException {
+		if (dsls == null) {
+			return new LinkedHashMap<String, String>();
+		}
+		return convertToMap(new StringReader(dsls), context);
 	}
 
-	static Map<String, String> convertToMap(final String dsls, final Context context) throws ExitException {
+	/**
+	 * Decode hstore text in a single pass.
+	 * Keys and values can be quoted (with backslash escapes) or unquoted, NULL values are decoded as empty strings.
+	 */
+	static Map<String, String> convertToMap(final Reader dsls, final Context context) throws ExitException {
 		final Map<String, String> tuples = new LinkedHashMap<String, String>();
-		if (dsls == null || dsls.length() == 0) {
-			return tuples;
-		}
-		final int endLength = dsls.length() - 1;
-		if (dsls.charAt(0) != '"' || dsls.charAt(endLength) != '"') {
-			context.error("Invalid DSL found in database. Unable to parse it as map: " + dsls);
+		final HstoreReader reader = new HstoreReader(dsls);
+		try {
+			int c = reader.skipWhitespace();
+			while (c != -1) {
+				final String key = reader.readElement(c);
+				if (key == null || reader.skipWhitespace() != '=' || reader.read() != '>') {
+					throw reader.invalid("expecting => after key");
+				}
+				final String value = reader.readElement(reader.skipWhitespace());
+				tuples.put(key, value != null ? value : "");
+				c = reader.skipWhitespace();
+				if (c == ',') {
+					c = reader.skipWhitespace();
+				} else if (c != -1) {
+					throw reader.invalid("expecting , after value");
+				}
+			}
+		} catch (IOException ex) {
+			context.error("Invalid DSL found in database. Unable to parse it as map: " + ex.getMessage());
 			throw new ExitException();
 		}
-		final String[] pairs = dsls.substring(1, endLength).split("\", ?\"", -1);
-		for (final String pair : pairs) {
-			final String[] kv = pair.split("\"=>\"", -1);
-			if (kv.length != 2) {
-				context.error("Invalid DSL found in database. Unable to parse it as map: " + dsls);
-				throw new ExitException();
+		return tuples;
+	}
+
+	private static class HstoreReader {
+		private final Reader reader;
+		private final char[] buffer = new char[8192];
+		private final StringBuilder element = new StringBuilder();
+		private int length;
+		private int position;
+		private long offset;
+
+		HstoreReader(final Reader reader) {
+			this.reader = reader;
+		}
+
+		int read() throws IOException {
+			if (position == length && !fill()) {
+				return -1;
 			}
-			tuples.put(unescape(kv[0]), unescape(kv[1]));
+			return buffer[position++];
 		}
-		return tuples;
+
+		int skipWhitespace() throws IOException {
+			int c = read();
+			while (c != -1 && Character.isWhitespace(c)) {
+				c = read();
+			}
+			return c;
+		}
+
+		IOException invalid(final String reason) {
+			return new IOException(reason + " at position " + (offset + position));
+		}
+
+		//returns null for unquoted NULL
+		String readElement(final int first) throws IOException {
+			element.setLength(0);
+			if (first == '"') {
+				int c = read();
+				while (c != '"') {
+					if (c == '\\') {
+						c = read();
+					}
+					if (c == -1) {
+						throw invalid("unterminated quoted element");
+					}
+					element.append((char) c);
+					c = read();
+				}
+				return element.toString();
+			}
+			if (first == -1 || first == ',' || first == '=') {
+				throw invalid("expecting element");
+			}
+			element.append((char) first);
+			while (position < length || fill()) {
+				final char c = buffer[position];
+				if (c == ',' || c == '=' || Character.isWhitespace(c)) {
+					break;
+				}
+				element.append(c);
+				position++;
+			}
+			final String value = element.toString();
+			return "NULL".equalsIgnoreCase(value) ? null : value;
+		}
+
+		private boolean fill() throws IOException {
+			offset += length;
+			length = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if (length <= 0) {
+				length = 0;
+				return false;
+			}
+			return true;
+		}
+	}
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static MessageDigest md5() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	static String md5(final String value) {
+		return Downloader.toHex(md5().digest(value.getBytes(UTF8)));
+	}
+
+	/**
+	 * Hash of the DSL files which doesn't depend on their order.
+	 * Entry hashes are sorted and hashed again, so the same value can be calculated inside the database.
+	 */
+	static String hash(final Map<String, String> dsls) {
+		final List<String> entries = new ArrayList<String>(dsls.size());
+		for (final Map.Entry<String, String> kv : dsls.entrySet()) {
+			entries.add(md5(kv.getKey()) + md5(kv.getValue()));
+		}
+		Collections.sort(entries);
+		final StringBuilder sb = new StringBuilder(entries.size() * 64);
+		for (final String e : entries) {
+			sb.append(e);
+		}
+		return md5(sb.toString());
+	}
+
+	private static String escape(final String element) {
+		return element.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	/**
+	 * Text representation of the DSL files, as stored in the migration table.
+	 */
+	static String serialize(final Map<String, String> dsls) {
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<String, String> kv : dsls.entrySet()) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append('"').append(escape(kv.getKey())).append("\"=>\"").append(escape(kv.getValue())).append('"');
+		}
+		return sb.toString();
 	}
 }
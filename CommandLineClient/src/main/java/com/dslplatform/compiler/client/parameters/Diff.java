@@ -1,6 +1,7 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.DependentParameter;
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.ExitException;
 import com.dslplatform.compiler.client.diff.diff_match_patch;
@@ -8,7 +9,7 @@ import org.fusesource.jansi.Ansi;
 
 import java.util.*;
 
-public enum Diff implements CompileParameter {
+public enum Diff implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -22,6 +23,11 @@ public enum Diff implements CompileParameter {
 	}
 
 	private static void compareDsls(final Context context, final Map<String, String> previousDsl) throws ExitException {
+		//previous DSL is not loaded when it's the same as the current one
+		if (previousDsl == null) {
+			context.show("No changes found in DSL");
+			return;
+		}
 		final Map<String, String> currentDsl = DslPath.getCurrentDsl(context);
 
 		final Set<String> currentFiles = new HashSet<String>(currentDsl.keySet());
@@ -115,6 +121,16 @@ public enum Diff implements CompileParameter {
 		}
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return new CompileParameter[]{Parse.INSTANCE};
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		if (context.contains(INSTANCE)) {
@@ -132,13 +148,15 @@ public enum Diff implements CompileParameter {
 	public void run(final Context context) throws ExitException {
 		if (context.contains(INSTANCE)) {
 			if (context.contains(PostgresConnection.INSTANCE)) {
-				final Map<String, String> previousDsl = PostgresConnection.getDatabaseDsl(context);
+				final boolean same = PostgresConnection.hasSameDsl(context);
+				final Map<String, String> previousDsl = same ? null : PostgresConnection.getDatabaseDsl(context);
 				context.show("Comparing Postgres DSL diff...");
 				context.show();
 				compareDsls(context, previousDsl);
 			}
 			if (context.contains(OracleConnection.INSTANCE)) {
-				final Map<String, String> previousDsl = OracleConnection.getDatabaseDsl(context);
+				final boolean same = OracleConnection.hasSameDsl(context);
+				final Map<String, String> previousDsl = same ? null : OracleConnection.getDatabaseDsl(context);
 				context.show("Comparing Oracle DSL diff...");
 				context.show();
 				compareDsls(context, previousDsl);
@@ -1,9 +1,10 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.DependentParameter;
 import com.dslplatform.compiler.client.Context;
 
-public enum DisableColors implements CompileParameter {
+public enum DisableColors implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -11,6 +12,16 @@ public enum DisableColors implements CompileParameter {
 	@Override
 	public String getUsage() { return null; }
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		return true;
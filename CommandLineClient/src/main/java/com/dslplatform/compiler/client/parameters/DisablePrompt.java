@@ -2,7 +2,7 @@ package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
 
-public enum DisablePrompt implements CompileParameter {
+public enum DisablePrompt implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -10,6 +10,16 @@ public enum DisablePrompt implements CompileParameter {
 	@Override
 	public String getUsage() { return null; }
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		return true;
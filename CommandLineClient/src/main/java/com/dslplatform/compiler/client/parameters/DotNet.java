@@ -4,7 +4,7 @@ import com.dslplatform.compiler.client.*;
 
 import java.util.Collections;
 
-public enum DotNet implements CompileParameter {
+public enum DotNet implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -40,6 +40,16 @@ public enum DotNet implements CompileParameter {
 		}
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		if (context.contains(INSTANCE)) {
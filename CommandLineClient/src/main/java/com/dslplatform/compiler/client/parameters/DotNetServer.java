@@ -0,0 +1,69 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.DependentParameter;
+import com.dslplatform.compiler.client.Context;
+
+public enum DotNetServer implements DependentParameter {
+	INSTANCE;
+
+	private static final String UNSUPPORTED = "dotnet_server_unsupported:";
+
+	@Override
+	public String getAlias() {
+		return "dotnet-server";
+	}
+
+	@Override
+	public String getUsage() {
+		return null;
+	}
+
+	/**
+	 * Compilers which don't understand the shared option (mcs, legacy csc) are remembered
+	 * so they are not retried for every target.
+	 */
+	public static boolean isSupported(final Context context, final String compiler) {
+		return context.contains(INSTANCE) && context.load(UNSUPPORTED + compiler) == null;
+	}
+
+	public static void markUnsupported(final Context context, final String compiler) {
+		context.cache(UNSUPPORTED + compiler, Boolean.TRUE);
+	}
+
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Compile .NET libraries through a long-lived compiler server";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "Roslyn based csc can keep the compiler loaded in a shared server process (shared option).\n" +
+				"This avoids compiler startup and reference assembly loading for every .NET library.\n" +
+				"When the compiler doesn't support the server (mcs, legacy csc) it will be used as before.\n" +
+				"With this option .NET libraries are not recompiled when sources and references\n" +
+				"are the same as in a previous build.\n" +
+				"\n" +
+				"Example:\n" +
+				"\tdotnet-server dotnet=/usr/bin/csc";
+	}
+}
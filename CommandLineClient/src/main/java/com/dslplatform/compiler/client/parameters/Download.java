@@ -1,14 +1,17 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import com.dslplatform.compiler.client.maven.ArtifactResolver;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public enum Download implements CompileParameter {
 	INSTANCE;
@@ -62,6 +65,14 @@ public enum Download implements CompileParameter {
 		return downloadZip(dependencies, context, name, zip);
 	}
 
+	private static final ConcurrentMap<String, Object> LIBRARY_LOCKS = new ConcurrentHashMap<String, Object>();
+
+	private static Object libraryLock(final String id) {
+		final Object lock = new Object();
+		final Object previous = LIBRARY_LOCKS.putIfAbsent(id, lock);
+		return previous != null ? previous : lock;
+	}
+
 	public static boolean checkJars(
 			final Context context,
 			final String name,
@@ -69,6 +80,19 @@ public enum Download implements CompileParameter {
 			final String id,
 			final String path,
 			final String... libraries) throws ExitException {
+		//targets can share dependency folder, so concurrent checks for the same library must be serialized
+		synchronized (libraryLock(id)) {
+			return checkLibraryJars(context, name, zip, id, path, libraries);
+		}
+	}
+
+	private static boolean checkLibraryJars(
+			final Context context,
+			final String name,
+			final String zip,
+			final String id,
+			final String path,
+			final String[] libraries) throws ExitException {
 		final File dependencies = Dependencies.getDependencies(context, name, id, zip, true);
 		final File[] found = dependencies.listFiles(new FilenameFilter() {
 			@Override
@@ -92,16 +116,20 @@ public enum Download implements CompileParameter {
 					throw new ExitException();
 				}
 			}
-			final Either<String> tryMaven = libraries.length > 0 && path != null ? Maven.findMaven(context) : Either.<String>fail("Library not defined");
-			if (!tryMaven.isSuccess()) {
+			if (libraries.length == 0 || path == null) {
 				if (zip == null) {
-					context.error("Unable to find Maven. Dependency can't be downloaded.");
+					context.error("Library not defined. Dependency can't be downloaded.");
 					throw new ExitException();
 				}
 				return downloadZip(dependencies, context, name, zip);
 			}
+			final ArtifactResolver resolver =
+					new ArtifactResolver(
+							context,
+							ArtifactResolver.defaultLocalRepository(),
+							libraryRepositories(context));
 			for (final String library : libraries) {
-				if (!downloadLibrary(context, name, path, dependencies, tryMaven, library, zip)) {
+				if (!downloadLibrary(context, name, path, dependencies, resolver, library, zip)) {
 					return false;
 				}
 			}
@@ -115,43 +143,97 @@ public enum Download implements CompileParameter {
 		return true;
 	}
 
+	private static List<String> libraryRepositories(final Context context) {
+		final List<String> repositories = new ArrayList<String>(2);
+		for (final Mirror.Repository r : Arrays.asList(Mirror.Repository.SONATYPE, Mirror.Repository.MAVEN_CENTRAL)) {
+			final String url = Mirror.url(context, r);
+			//in offline mode only mirrors in local folders can be used
+			if (!context.contains(Offline.INSTANCE) || url.startsWith("file:")) {
+				repositories.add(url);
+			}
+		}
+		return repositories;
+	}
+
 	private static boolean downloadLibrary(
 			final Context context,
 			final String name,
 			final String path,
 			final File dependencies,
-			final Either<String> tryMaven,
+			final ArtifactResolver resolver,
 			final String library,
 			final String zip) throws ExitException {
-		context.show("Downloading " + name + " (" + library + ") from Sonatype...");
+		context.show("Downloading " + name + " (" + library + ") from " + (context.contains(Offline.INSTANCE) ? "local repository" : "Sonatype") + "...");
+		final String groupId = path.replace('/', '.');
+		final Either<String> version = resolver.findRelease(groupId, library);
+		if (!version.isSuccess()) {
+			context.error("Error downloading library info from Sonatype.");
+			context.error(version.whyNot());
+			return false;
+		}
+		final Either<List<File>> resolved = resolver.resolve(groupId, library, version.get());
+		if (!resolved.isSuccess()) {
+			context.warning("Unable to resolve " + name + " library dependencies without Maven.");
+			context.warning(resolved.whyNot());
+			return downloadLibraryWithMaven(context, name, path, dependencies, library, version.get(), zip);
+		}
 		try {
-			final URL maven = new URL("https://oss.sonatype.org/content/repositories/releases/" + path + "/" + library + "/maven-metadata.xml");
-			final Either<Document> doc = Utils.readXml(maven.openConnection().getInputStream());
-			if (!doc.isSuccess()) {
-				context.error("Error downloading library info from Sonatype.");
-				context.error(doc.whyNot());
-				return false;
+			for (final File jar : resolved.get()) {
+				context.log("Copying " + jar.getName() + " to " + dependencies.getAbsolutePath());
+				Utils.copyFile(jar, new File(dependencies, jar.getName()));
+			}
+		} catch (IOException ex) {
+			context.error("Unable to copy " + name + " library dependencies.");
+			context.error(ex);
+			return promptForAlternative(dependencies, context, name, zip);
+		}
+		return true;
+	}
+
+	private static List<String> mavenArguments(final Context context, final File dependencies, final File pomFile) {
+		final List<String> arguments = new ArrayList<String>();
+		if (context.contains(Offline.INSTANCE)) {
+			arguments.add("-o");
+		}
+		arguments.add("dependency:copy-dependencies");
+		arguments.add("\"-DoutputDirectory=" + dependencies.getAbsolutePath() + "\"");
+		arguments.add("\"-f=" + pomFile.getAbsolutePath() + "\"");
+		return arguments;
+	}
+
+	private static boolean downloadLibraryWithMaven(
+			final Context context,
+			final String name,
+			final String path,
+			final File dependencies,
+			final String library,
+			final String version,
+			final String zip) throws ExitException {
+		final Either<String> tryMaven = Maven.findMaven(context);
+		if (!tryMaven.isSuccess()) {
+			if (zip == null) {
+				context.error("Unable to find Maven. Dependency can't be downloaded.");
+				throw new ExitException();
 			}
-			final Element root = doc.get().getDocumentElement();
-			final Element versioning = (Element) root.getElementsByTagName("versioning").item(0);
-			final String version = versioning.getElementsByTagName("release").item(0).getTextContent();
-			final String sharedUrl = "https://oss.sonatype.org/content/repositories/releases/" +
+			return promptForAlternative(dependencies, context, name, zip);
+		}
+		try {
+			final String sharedUrl = Mirror.url(context, Mirror.Repository.SONATYPE) + "/" +
 					path + "/" + library + "/" + version + "/" + library + "-" + version;
 			final URL pomUrl = new URL(sharedUrl + ".pom");
 			final File pomFile = new File(dependencies, library + "-" + version + ".pom");
-			Utils.downloadFile(pomFile, pomUrl);
+			Utils.downloadFile(context, pomFile, pomUrl);
 			final URL jarUrl = new URL(sharedUrl + ".jar");
-			Utils.downloadFile(new File(dependencies, library + "-" + version + ".jar"), jarUrl);
+			Utils.downloadFile(context, new File(dependencies, library + "-" + version + ".jar"), jarUrl);
 			context.show("Downloading " + name + " library dependencies with Maven...");
 			final Either<Utils.CommandResult> gatherDeps =
-					Utils.runCommand(
+					Utils.runTool(
 							context,
+							"mvn",
 							tryMaven.get(),
 							pomFile.getParentFile(),
-							Arrays.asList(
-									"dependency:copy-dependencies",
-									"\"-DoutputDirectory=" + dependencies.getAbsolutePath() + "\"",
-									"\"-f=" + pomFile.getAbsolutePath() + "\""));
+							mavenArguments(context, dependencies, pomFile),
+							ProcessRunner.NATIVE);
 			if (!gatherDeps.isSuccess()) {
 				context.error("Error gathering dependencies with Maven.");
 				context.error(gatherDeps.whyNot());
@@ -189,6 +271,8 @@ public enum Download implements CompileParameter {
 	public String getDetailedDescription() {
 		return "Always download missing dependencies.\n" +
 				"Dependencies will be checked for latest version.\n" +
-				"Dependencies will be downloaded through Maven or from DSL Platform website.";
+				"Dependencies will be resolved from Sonatype and Maven Central, with Maven as a fallback for unsupported POM features,\n" +
+				"or downloaded from DSL Platform website.\n" +
+				"Download locations can be changed with the mirror option.";
 	}
 }
@@ -9,8 +9,11 @@ import java.lang.management.ManagementFactory;
 import java.net.*;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-public enum DslCompiler implements CompileParameter, ParameterParser {
+public enum DslCompiler implements DependentParameter, ParameterParser {
 	INSTANCE;
 
 	@Override
@@ -26,6 +29,9 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 	private final static Charset UTF_8 = Charset.forName("UTF-8");
 
 	private static final String DSL_COMPILER_SOCKET = "dsl-compiler-socket";
+	private static final String DSL_COMPILER_VERSION = "dsl-compiler-version";
+	private static final long VERSION_TIMEOUT = 30000;
+	private static final Pattern VERSION_PATTERN = Pattern.compile("DSL Platform[^\\n]*?(\\d+(?:\\.\\d+)+)");
 
 	public static Map<String, String> compile(
 			final Context context,
@@ -84,9 +90,13 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 		final File compiler = new File(context.get(INSTANCE));
 		arguments.add("path=" + System.getProperty("user.dir"));
 		context.notify("DSL", arguments);
-		return socket != null
-				? runCompilerSocket(context, socket, arguments)
-				: runCompilerFile(context, compiler, arguments);
+		if (socket == null) {
+			return runCompilerFile(context, compiler, arguments);
+		}
+		//single connection with shared response buffer, so requests must not interleave
+		synchronized (socket) {
+			return runCompilerSocket(context, socket, arguments);
+		}
 	}
 
 	public static class ParseError {
@@ -252,7 +262,7 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 			}
 		}
 
-		private Either<ParseResult> parseTokens(final Socket socket, final String dsl) throws IOException {
+		private Either<ParseResult> parseTokens(final Socket socket, final String dsl) throws IOException, ExitException {
 			final byte[] dslUtf8 = dsl.getBytes(UTF_8);
 			final String command = "tokens=" + dslUtf8.length + " format=json include-length keep-alive\n";
 			try {
@@ -433,13 +443,22 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 		}
 	}
 
-	private static ByteStream getByteStream(Context context) {
-		ByteStream os = context.load("dsl-stream");
-		if (os == null) {
-			os = new ByteStream();
-			context.cache("dsl-stream", os);
-		}
-		return os;
+	private static ByteStream getByteStream(Context context) throws ExitException {
+		return context.load("dsl-stream", new Callable<ByteStream>() {
+			@Override
+			public ByteStream call() {
+				return new ByteStream();
+			}
+		});
+	}
+
+	//compiler response can be larger than the capture limit, so complete output is kept on disk
+	private static Either<Utils.CommandResult> runCompilerProcess(
+			final Context context,
+			final String command,
+			final File path,
+			final List<String> arguments) {
+		return new ProcessRunner(context, UTF_8).spillOutput(true).run(command, path, arguments);
 	}
 
 	private static Either<byte[]> runCompilerFile(
@@ -448,19 +467,19 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 			final List<String> arguments) throws ExitException {
 		final Either<Utils.CommandResult> result;
 		if (Utils.isWindows()) {
-			result = Utils.runCommand(context, compiler.getAbsolutePath(), compiler.getParentFile(), arguments);
+			result = runCompilerProcess(context, compiler.getAbsolutePath(), compiler.getParentFile(), arguments);
 		} else {
 			final Either<String> mono = Mono.findMono(context);
 			if (mono.isSuccess()) {
 				arguments.add(0, compiler.getAbsolutePath());
-				final Either<Utils.CommandResult> firstTry = Utils.runCommand(context, mono.get(), compiler.getParentFile(), arguments);
+				final Either<Utils.CommandResult> firstTry = runCompilerProcess(context, mono.get(), compiler.getParentFile(), arguments);
 				if (!firstTry.isSuccess()) {
 					context.warning("Running Mono failed. Mono is buggy, so retry is in order... in 1 second");
 					try {
 						Thread.sleep(1000);
 					} catch (InterruptedException ignore) {
 					}
-					result = Utils.runCommand(context, mono.get(), compiler.getParentFile(), arguments);
+					result = runCompilerProcess(context, mono.get(), compiler.getParentFile(), arguments);
 				} else {
 					result = firstTry;
 				}
@@ -473,9 +492,14 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 			return Either.fail(result.whyNot());
 		}
 		if (result.get().exitCode != 0) {
+			result.get().discard();
 			return Either.fail(result.get().output + result.get().error);
 		}
-		return Either.success(result.get().output.getBytes(UTF_8));
+		try {
+			return Either.success(result.get().fullOutput().getBytes(UTF_8));
+		} catch (IOException ex) {
+			return Either.fail(ex);
+		}
 	}
 
 	public static Either<String> migration(
@@ -519,6 +543,61 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 		return Either.success(context.notify("MIGRATION", sql));
 	}
 
+	/**
+	 * Check if the compiler which will be used has the specified version.
+	 * Version is read from the compiler banner. When it can't be detected it's considered different.
+	 */
+	public static boolean hasVersion(final Context context, final String version) throws ExitException {
+		return version != null && version.length() > 0 && version.equals(version(context));
+	}
+
+	/**
+	 * Version of the compiler which will be used or empty string when it can't be detected.
+	 */
+	static String version(final Context context) throws ExitException {
+		return context.load(DSL_COMPILER_VERSION, new Callable<String>() {
+			@Override
+			public String call() throws ExitException {
+				return detectVersion(context);
+			}
+		});
+	}
+
+	private static String detectVersion(final Context context) throws ExitException {
+		final String value = context.get(INSTANCE);
+		final File compiler = value == null ? null : new File(value);
+		if (compiler == null || !compiler.isFile()) {
+			return "";
+		}
+		final String command;
+		final List<String> arguments = new ArrayList<String>();
+		if (Utils.isWindows()) {
+			command = compiler.getAbsolutePath();
+		} else {
+			final Either<String> mono = Mono.findMono(context);
+			if (!mono.isSuccess()) {
+				return "";
+			}
+			command = mono.get();
+			arguments.add(compiler.getAbsolutePath());
+		}
+		final Either<Utils.CommandResult> result =
+				new ProcessRunner(context, UTF_8)
+						.timeout(VERSION_TIMEOUT)
+						.logOutput(false)
+						.run(command, compiler.getParentFile(), arguments);
+		if (!result.isSuccess()) {
+			context.log(result.explainError());
+			return "";
+		}
+		return extractCompilerVersion(result.get().output + result.get().error);
+	}
+
+	static String extractCompilerVersion(final String banner) {
+		final Matcher matcher = VERSION_PATTERN.matcher(banner);
+		return matcher.find() ? matcher.group(1) : "";
+	}
+
 	public static Either<Boolean> parse(final Context context, final List<File> dsls) throws ExitException {
 		final List<String> arguments = new ArrayList<String>();
 		for (final File f : dsls) {
@@ -542,6 +621,16 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 		}
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return new CompileParameter[]{TempPath.INSTANCE};
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		final String value = context.contains(INSTANCE) ? context.get(INSTANCE) : null;
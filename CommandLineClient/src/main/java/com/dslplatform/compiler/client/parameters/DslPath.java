@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 public enum DslPath implements CompileParameter {
 	INSTANCE;
@@ -25,24 +26,21 @@ public enum DslPath implements CompileParameter {
 	private static final String CACHE_FILE_NAME = "current_dsl_file_cache";
 
 	public static Map<String, String> getCurrentDsl(final Context context) throws ExitException {
-		final Map<String, String> cache = context.load(CACHE_MAP_NAME);
-		if (cache != null) {
-			return cache;
-		}
-		findDsls(context);
+		//files and their content are loaded together
+		getDslPaths(context);
 		return context.load(CACHE_MAP_NAME);
 	}
 
 	public static List<File> getDslPaths(final Context context) throws ExitException {
-		final List<File> cache = context.load(CACHE_FILE_NAME);
-		if (cache != null) {
-			return cache;
-		}
-		findDsls(context);
-		return context.load(CACHE_FILE_NAME);
+		return context.load(CACHE_FILE_NAME, new Callable<List<File>>() {
+			@Override
+			public List<File> call() throws ExitException {
+				return findDsls(context);
+			}
+		});
 	}
 
-	private static void findDsls(final Context context) throws ExitException {
+	private static List<File> findDsls(final Context context) throws ExitException {
 		String value = context.get(INSTANCE);
 		if (value == null) {
 			if (!(new File("./dsl").exists())) {
@@ -76,7 +74,7 @@ public enum DslPath implements CompileParameter {
 			}
 		}
 		context.cache(CACHE_MAP_NAME, dslMap);
-		context.cache(CACHE_FILE_NAME, dslFiles);
+		return dslFiles;
 	}
 
 	@Override
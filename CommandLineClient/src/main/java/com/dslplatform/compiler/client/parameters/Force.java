@@ -1,9 +1,10 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.DependentParameter;
 import com.dslplatform.compiler.client.Context;
 
-public enum Force implements CompileParameter {
+public enum Force implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -16,6 +17,16 @@ public enum Force implements CompileParameter {
 		return null;
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		return true;
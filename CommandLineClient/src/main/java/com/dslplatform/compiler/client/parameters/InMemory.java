@@ -0,0 +1,73 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.ParameterParser;
+
+public enum InMemory implements CompileParameter, ParameterParser {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "in-memory";
+	}
+
+	@Override
+	public String getUsage() {
+		return "sources";
+	}
+
+	@Override
+	public Either<Boolean> tryParse(final String name, final String value, final Context context) {
+		if ("in-memory".equals(name)) {
+			context.put(INSTANCE, value);
+			return Either.success(true);
+		} else {
+			return Either.success(false);
+		}
+	}
+
+	/**
+	 * Should generated sources be written to the temporary folder even when they are compiled from memory.
+	 */
+	public static boolean keepSources(final Context context) {
+		return "sources".equalsIgnoreCase(context.get(INSTANCE));
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		if (context.contains(INSTANCE)) {
+			final String value = context.get(INSTANCE);
+			if (value != null && value.length() > 0 && !"sources".equalsIgnoreCase(value)) {
+				context.error("Unknown in-memory option: " + value + ". Only sources is supported.");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Compile Java libraries from memory, without temporary source and class files";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "Generated Java sources are usually saved to the temporary folder,\n" +
+				"compiled with javac into class files and then packaged with jar.\n" +
+				"In memory mode sources are passed directly to the Java compiler of the running JVM\n" +
+				"and compiled classes are written straight into the jar.\n" +
+				"This requires running on a JDK. When the compiler is not available, java path is specified\n" +
+				"or incremental/build-cache options are used, regular compilation is done instead.\n" +
+				"Generated sources will still be saved to the temporary folder with in-memory=sources\n" +
+				"\n" +
+				"Example:\n" +
+				"\tin-memory\n" +
+				"\tin-memory=sources";
+	}
+}
@@ -0,0 +1,40 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+
+public enum Incremental implements CompileParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "incremental";
+	}
+
+	@Override
+	public String getUsage() {
+		return null;
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Recompile only changed Java sources and update existing jar";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "Java libraries are compiled from scratch by default.\n" +
+				"In incremental mode hashes of sources and class dependencies from the previous build are kept in the temporary folder.\n" +
+				"Only changed sources and classes which depend on them are recompiled, and the existing jar is updated.\n" +
+				"If the previous state is missing or doesn't match the existing jar, full build is done instead.";
+	}
+}
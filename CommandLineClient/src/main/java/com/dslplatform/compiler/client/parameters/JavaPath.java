@@ -6,8 +6,9 @@ import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
 
-public enum JavaPath implements CompileParameter {
+public enum JavaPath implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -32,21 +33,37 @@ public enum JavaPath implements CompileParameter {
 
 	private static Either<String> getCommand(final Context context, final String name, final String description) {
 		if (context.contains(INSTANCE)) {
-			final String file = context.load(CACHE_FILE_PREFIX + name);
-			return Either.success(file);
+			return Either.success(context.<String>load(CACHE_FILE_PREFIX + name));
 		}
+		final String file;
+		try {
+			//lookup runs only once, even when command is requested by multiple targets at the same time
+			file = context.load(CACHE_FILE_PREFIX + name, new Callable<String>() {
+				@Override
+				public String call() {
+					return findCommand(context, name);
+				}
+			});
+		} catch (ExitException ex) {
+			return Either.fail(ex);
+		}
+		if (file == null) {
+			return Either.fail("Unable to find " + description + ". Add it to path or specify java compile option.");
+		}
+		return Either.success(file);
+	}
+
+	private static String findCommand(final Context context, final String name) {
 		final String envJH = System.getenv("JAVA_HOME");
 		final String envJDK = System.getenv("JDK_HOME");
 		final Either<String> path = Utils.findCommand(context, null, name, "Usage: " + name);
 		if (path.isSuccess()) {
-			context.cache(CACHE_FILE_PREFIX + name, path.get());
-			return Either.success(path.get());
+			return path.get();
 		}
 		if (envJH != null) {
 			final Either<String> homePath = Utils.findCommand(context, new File(envJH, "bin").getPath(), name, "Usage: " + name);
 			if (homePath.isSuccess()) {
-				context.cache(CACHE_FILE_PREFIX + name, homePath.get());
-				return Either.success(homePath.get());
+				return homePath.get();
 			} else {
 				context.warning("Invalid JAVA_HOME environment variable specified: " + envJH);
 			}
@@ -56,19 +73,30 @@ public enum JavaPath implements CompileParameter {
 		if (envJDK != null) {
 			final Either<String> homePath = Utils.findCommand(context, new File(envJDK, "bin").getPath(), name, "Usage: " + name);
 			if (homePath.isSuccess()) {
-				context.cache(CACHE_FILE_PREFIX + name, homePath.get());
-				return Either.success(homePath.get());
+				return homePath.get();
 			} else {
 				context.warning("Invalid JDK_HOME environment variable specified: " + envJDK);
 			}
 		} else {
 			context.warning(name + " not found on PATH. JDK_HOME environment variable not set.");
 		}
-		return Either.fail("Unable to find " + description + ". Add it to path or specify java compile option.");
+		return null;
 	}
 
 	private final static SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd-HH-mm");
 
+	/**
+	 * Version written to the manifest of compiled libraries.
+	 */
+	public static String implementationVersion(final Context context) {
+		if (context.contains(Version.INSTANCE)) {
+			return context.get(Version.INSTANCE);
+		}
+		synchronized (DATE_FORMAT) {
+			return DATE_FORMAT.format(new Date());
+		}
+	}
+
 	public static synchronized Either<Utils.CommandResult> makeArchive(
 			final Context context,
 			final File classOut,
@@ -90,10 +118,7 @@ public enum JavaPath implements CompileParameter {
 			}
 		}
 		try {
-			final String version = context.contains(Version.INSTANCE)
-					? context.get(Version.INSTANCE)
-					: DATE_FORMAT.format(new Date());
-			Utils.saveFile(context, manifest, "Implementation-Version: " + version + "\n");
+			Utils.saveFile(context, manifest, "Implementation-Version: " + implementationVersion(context) + "\n");
 		} catch (IOException e) {
 			context.error("Can't create manifest: " + manifest);
 			return Either.fail(e);
@@ -121,7 +146,7 @@ public enum JavaPath implements CompileParameter {
 			}
 		}
 		context.show("Running jar for " + output.getName() + "...");
-		final Either<Utils.CommandResult> execArchive = Utils.runCommand(context, jar, classOut, jarArguments);
+		final Either<Utils.CommandResult> execArchive = Utils.runTool(context, "jar", jar, classOut, jarArguments, ProcessRunner.NATIVE);
 		if (!execArchive.isSuccess()) {
 			return Either.fail(execArchive.whyNot());
 		}
@@ -133,6 +158,33 @@ public enum JavaPath implements CompileParameter {
 		return Either.success(execArchive.get());
 	}
 
+	/**
+	 * Replace or add specified class files (relative to classOut) in the existing archive.
+	 */
+	public static synchronized Either<Utils.CommandResult> updateArchive(
+			final Context context,
+			final File classOut,
+			final File output,
+			final List<String> classFiles) {
+		final Either<String> tryJar = getJarCommand(context);
+		if (!tryJar.isSuccess()) {
+			return Either.fail(tryJar.whyNot());
+		}
+		final List<String> jarArguments = new ArrayList<String>(classFiles.size() + 2);
+		jarArguments.add("uf");
+		jarArguments.add(output.getAbsolutePath());
+		jarArguments.addAll(classFiles);
+		context.show("Updating " + classFiles.size() + " classes in " + output.getName() + "...");
+		final Either<Utils.CommandResult> execArchive = Utils.runTool(context, "jar", tryJar.get(), classOut, jarArguments, ProcessRunner.NATIVE);
+		if (!execArchive.isSuccess()) {
+			return Either.fail(execArchive.whyNot());
+		}
+		if (execArchive.get().error.length() > 0) {
+			return Either.fail(execArchive.get().error);
+		}
+		return execArchive;
+	}
+
 	private static List<String> makeJarArguments(
 			final Context context,
 			final File source,
@@ -172,6 +224,16 @@ public enum JavaPath implements CompileParameter {
 		return jarArguments;
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		if (context.contains(INSTANCE)) {
@@ -0,0 +1,102 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.JobScheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public enum Jobs implements CompileParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "jobs";
+	}
+
+	@Override
+	public String getUsage() {
+		return "slots";
+	}
+
+	public static void report(final Context context) {
+		final JobScheduler.Metrics metrics = JobScheduler.usage(context).metrics(JobScheduler.global().getSlots());
+		if (metrics.jobs == 0) {
+			return;
+		}
+		if (context.contains(INSTANCE)) {
+			context.show("Compiler jobs: " + metrics);
+		} else {
+			context.log("Compiler jobs: " + metrics);
+		}
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		if (!context.contains(INSTANCE)) {
+			return true;
+		}
+		final String value = context.get(INSTANCE);
+		if (value == null || value.length() == 0) {
+			context.error("Number of job slots not provided. Example: jobs=4,memory=8192,scalac=2048");
+			return false;
+		}
+		int slots = Runtime.getRuntime().availableProcessors();
+		int memory = JobScheduler.global().getMemory();
+		final Map<String, Integer> weights = new HashMap<String, Integer>();
+		for (final String part : value.split(",")) {
+			final int eq = part.indexOf('=');
+			final String name = eq == -1 ? null : part.substring(0, eq).trim();
+			final String number = eq == -1 ? part.trim() : part.substring(eq + 1).trim();
+			final int parsed;
+			try {
+				parsed = Integer.parseInt(number);
+			} catch (NumberFormatException ex) {
+				context.error("Invalid number in jobs parameter: " + part);
+				return false;
+			}
+			if (parsed <= 0) {
+				context.error("Jobs parameter values must be positive. Found: " + part);
+				return false;
+			}
+			if (name == null) {
+				slots = parsed;
+			} else if ("memory".equalsIgnoreCase(name)) {
+				memory = parsed;
+			} else {
+				weights.put(name.toLowerCase(), parsed);
+			}
+		}
+		if (JobScheduler.configureGlobal(slots, memory, weights)) {
+			context.log("Compiler jobs limited to " + slots + " slots and " + memory + "MB");
+		} else {
+			final JobScheduler global = JobScheduler.global();
+			context.warning("Compiler jobs are already configured in this process with " + global.getSlots() + " slots and "
+					+ global.getMemory() + "MB. Ignoring: jobs=" + value);
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Limit concurrently running external compilers by CPU slots and memory";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "External compilers (javac, scalac, csc, jar and mvn) are started through a shared scheduler.\n" +
+				"Each compiler takes a single slot and an estimated amount of memory (in MB).\n" +
+				"By default number of slots matches the number of processors and memory is 3/4 of physical memory.\n" +
+				"Default estimates are: scalac=1536, javac=512, csc=512, mvn=512, jar=128.\n" +
+				"Limits are shared by all runs within the same process, so only the first configuration is used.\n" +
+				"\n" +
+				"Example:\n" +
+				"\tjobs=2\n" +
+				"\tjobs=4,memory=8192,scalac=2048";
+	}
+}
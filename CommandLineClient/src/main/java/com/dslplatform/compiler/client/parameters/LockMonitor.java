@@ -0,0 +1,83 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.DependentParameter;
+
+public enum LockMonitor implements DependentParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "lock-monitor";
+	}
+
+	@Override
+	public String getUsage() {
+		return null;
+	}
+
+	/**
+	 * Lock wait budget in milliseconds. 0 when migration should not be canceled.
+	 */
+	public static long getBudget(final Context context) {
+		final String value = context.get(INSTANCE);
+		return value == null || value.length() == 0 ? 0 : Long.parseLong(value) * 1000;
+	}
+
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		if (!context.contains(INSTANCE)) {
+			return true;
+		}
+		if (!context.contains(PostgresConnection.INSTANCE) || !context.contains(ApplyMigration.INSTANCE)) {
+			context.warning("Lock monitor is used only when migration is applied to a Postgres database.");
+		}
+		final String value = context.get(INSTANCE);
+		if (value == null || value.length() == 0) {
+			return true;
+		}
+		try {
+			if (Long.parseLong(value) <= 0) {
+				context.error("Lock wait budget must be a positive number of seconds. Found: " + value);
+				return false;
+			}
+		} catch (NumberFormatException ex) {
+			context.error("Lock wait budget must be a positive number of seconds. Found: " + value);
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Monitor lock waits while migration is applied to Postgres";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "While migration is applied, a separate Postgres session checks pg_stat_activity and pg_locks.\n" +
+				"When migration waits on a lock, blocking sessions are shown together with their running query and the wait duration.\n" +
+				"Optionally, lock wait budget in seconds can be specified.\n" +
+				"When total lock wait exceeds the budget while migration is still waiting on a lock, it is canceled and its transaction is rolled back.\n" +
+				"Monitoring requires Postgres 9.2 or newer. Before 9.6 blocking sessions are detected by locks held on the same object.\n" +
+				"\n" +
+				"Example:\n" +
+				"\tlock-monitor apply\n" +
+				"\tlock-monitor=30 apply=timed";
+	}
+}
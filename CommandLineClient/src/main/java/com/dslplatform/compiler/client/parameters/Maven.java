@@ -4,7 +4,7 @@ import com.dslplatform.compiler.client.*;
 
 import java.util.Collections;
 
-public enum Maven implements CompileParameter {
+public enum Maven implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -33,6 +33,16 @@ public enum Maven implements CompileParameter {
 		return Either.fail("Unable to find mvn. Add it to path or specify maven compile option.");
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		if (context.contains(INSTANCE)) {
@@ -6,7 +6,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
-public enum Migration implements CompileParameter {
+public enum Migration implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -42,11 +42,22 @@ public enum Migration implements CompileParameter {
 		return new String[0];
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return new CompileParameter[]{Parse.INSTANCE};
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		if (context.contains(INSTANCE)) {
 			if (!context.contains(PostgresConnection.INSTANCE)
-					&& !context.contains(OracleConnection.INSTANCE)) {
+					&& !context.contains(OracleConnection.INSTANCE)
+					&& !context.contains(Tenants.INSTANCE)) {
 				context.error("Connection string is required to create a migration script.\n"
 						+ "Neither Oracle or Postgres connection string found");
 				return false;
@@ -71,31 +82,64 @@ public enum Migration implements CompileParameter {
 		return true;
 	}
 
+	/**
+	 * Folder where migration scripts are saved: SQL path or temporary project folder.
+	 */
+	static File migrationPath(final Context context) throws ExitException {
+		final String value = context.get(SqlPath.INSTANCE);
+		final File path;
+		if (!context.contains(SqlPath.INSTANCE) || value == null || value.length() == 0) {
+			path = TempPath.getTempProjectPath(context);
+		} else {
+			path = new File(value);
+		}
+		if (!path.exists()) {
+			context.error("Error accessing SQL path (" + path.getAbsolutePath() + ").");
+			throw new ExitException();
+		}
+		return path;
+	}
+
 	@Override
 	public void run(final Context context) throws ExitException {
 		if (context.contains(Migration.INSTANCE)) {
-			final String value = context.get(SqlPath.INSTANCE);
-			final File path;
-			if (!context.contains(SqlPath.INSTANCE) || value == null || value.length() == 0) {
-				path = TempPath.getTempProjectPath(context);
-			} else {
-				path = new File(value);
-			}
-			if (!path.exists()) {
-				context.error("Error accessing SQL path (" + path.getAbsolutePath() + ").");
-				throw new ExitException();
-			}
+			final File path = migrationPath(context);
 			if (context.contains(PostgresConnection.INSTANCE)) {
-				final DatabaseInfo dbInfo = PostgresConnection.getDatabaseDslAndVersion(context);
-				createMigration(context, path, dbInfo, POSTGRES_MIGRATION_FILE_NAME);
+				if (isApplied(context, PostgresConnection.hasSameDsl(context), PostgresConnection.appliedCompilerVersion(context), "Postgres")) {
+					saveMigration(context, path, "Postgres", "", POSTGRES_MIGRATION_FILE_NAME);
+				} else {
+					final DatabaseInfo dbInfo = PostgresConnection.getDatabaseDslAndVersion(context);
+					createMigration(context, path, dbInfo, POSTGRES_MIGRATION_FILE_NAME);
+				}
 			}
 			if (context.contains(OracleConnection.INSTANCE)) {
-				final DatabaseInfo dbInfo = OracleConnection.getDatabaseDslAndVersion(context);
-				createMigration(context, path, dbInfo, ORACLE_MIGRATION_FILE_NAME);
+				if (isApplied(context, OracleConnection.hasSameDsl(context), OracleConnection.appliedCompilerVersion(context), "Oracle")) {
+					saveMigration(context, path, "Oracle", "", ORACLE_MIGRATION_FILE_NAME);
+				} else {
+					final DatabaseInfo dbInfo = OracleConnection.getDatabaseDslAndVersion(context);
+					createMigration(context, path, dbInfo, ORACLE_MIGRATION_FILE_NAME);
+				}
 			}
 		}
 	}
 
+	private static boolean isApplied(
+			final Context context,
+			final boolean sameDsl,
+			final String compilerVersion,
+			final String database) throws ExitException {
+		if (!sameDsl) {
+			return false;
+		}
+		if (!DslCompiler.hasVersion(context, compilerVersion)) {
+			context.log("DSL is the same as the last one applied to " + database
+					+ ", but it was applied with a different compiler (" + compilerVersion + "). Full migration will be created.");
+			return false;
+		}
+		context.log("DSL and compiler are the same as the last ones applied to " + database + ". Migration is not required.");
+		return true;
+	}
+
 	private static void createMigration(
 			final Context context,
 			final File path,
@@ -109,8 +153,16 @@ public enum Migration implements CompileParameter {
 			context.error(migration.whyNot());
 			throw new ExitException();
 		}
-		final String script = migration.get();
-		final String sqlFileName = dbInfo.database.toLowerCase() + "-sql-migration-" + (new Date().getTime());
+		saveMigration(context, path, dbInfo.database, migration.get(), file);
+	}
+
+	private static void saveMigration(
+			final Context context,
+			final File path,
+			final String database,
+			final String script,
+			final String file) throws ExitException {
+		final String sqlFileName = database.toLowerCase() + "-sql-migration-" + (new Date().getTime());
 		final File sqlFile = new File(path.getAbsolutePath(), sqlFileName + ".sql");
 		try {
 			Utils.saveFile(context, sqlFile, script);
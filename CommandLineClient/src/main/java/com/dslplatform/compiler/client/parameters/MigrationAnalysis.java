@@ -0,0 +1,373 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Context;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Static analysis of a Postgres migration script.
+ * Each statement is classified by the lock it takes and by the work done while the lock is held
+ * (full table scan or complete table rewrite). Table size estimates are loaded from pg_class,
+ * so the impact of heavy statements on large tables can be shown before the migration is applied.
+ */
+final class MigrationAnalysis {
+
+	private MigrationAnalysis() {
+	}
+
+	enum Lock {
+		ROW_EXCLUSIVE("ROW EXCLUSIVE", false),
+		SHARE_UPDATE_EXCLUSIVE("SHARE UPDATE EXCLUSIVE", false),
+		SHARE("SHARE", true),
+		SHARE_ROW_EXCLUSIVE("SHARE ROW EXCLUSIVE", true),
+		ACCESS_EXCLUSIVE("ACCESS EXCLUSIVE", true);
+
+		final String description;
+		final boolean blocksWrites;
+
+		Lock(final String description, final boolean blocksWrites) {
+			this.description = description;
+			this.blocksWrites = blocksWrites;
+		}
+	}
+
+	enum Impact {
+		BRIEF("brief lock"),
+		SCAN("full table scan"),
+		REWRITE("table rewrite");
+
+		final String description;
+
+		Impact(final String description) {
+			this.description = description;
+		}
+	}
+
+	static final class Finding {
+		final int statement;
+		final String relation;
+		final Lock lock;
+		final Impact impact;
+		final String reason;
+		long rows = -1;
+		long bytes = -1;
+
+		Finding(final int statement, final String relation, final Lock lock, final Impact impact, final String reason) {
+			this.statement = statement;
+			this.relation = relation;
+			this.lock = lock;
+			this.impact = impact;
+			this.reason = reason;
+		}
+
+		boolean isHeavy() {
+			return impact != Impact.BRIEF && (lock.blocksWrites || impact == Impact.REWRITE);
+		}
+
+		boolean isLarge() {
+			return rows > LARGE_TABLE_ROWS || bytes > LARGE_TABLE_BYTES;
+		}
+	}
+
+	private static final long LARGE_TABLE_ROWS = 1000000;
+	private static final long LARGE_TABLE_BYTES = 100L * 1024 * 1024;
+
+	private static final String NAME = "((?:\"[^\"]+\"|[\\w$]+)(?:\\s*\\.\\s*(?:\"[^\"]+\"|[\\w$]+))?)";
+
+	private static final Pattern COMMAND = Pattern.compile(
+			"(?:^|\\bTHEN|\\bELSE|\\bBEGIN|\\bLOOP)\\s*(ALTER\\s+TABLE|CREATE\\s+(?:UNIQUE\\s+)?INDEX|DROP\\s+TABLE|TRUNCATE"
+					+ "|UPDATE|DELETE\\s+FROM|VACUUM\\s+FULL|CLUSTER)\\b",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern ALTER_TABLE = Pattern.compile(
+			"^ALTER\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?(?:ONLY\\s+)?" + NAME, Pattern.CASE_INSENSITIVE);
+	private static final Pattern CREATE_INDEX = Pattern.compile(
+			"^CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(CONCURRENTLY\\s+)?.*?\\bON\\s+(?:ONLY\\s+)?" + NAME,
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	private static final Pattern OTHER = Pattern.compile(
+			"^(?:DROP\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?|TRUNCATE\\s+(?:TABLE\\s+)?(?:ONLY\\s+)?|UPDATE\\s+(?:ONLY\\s+)?"
+					+ "|DELETE\\s+FROM\\s+(?:ONLY\\s+)?|VACUUM\\s+FULL\\s+|CLUSTER\\s+)" + NAME,
+			Pattern.CASE_INSENSITIVE);
+
+	private static final Pattern TYPE_CHANGE = Pattern.compile(
+			"\\bALTER\\s+(?:COLUMN\\s+)?(?:\"[^\"]+\"|\\w+)\\s+(?:SET\\s+DATA\\s+)?TYPE\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern ADD_COLUMN_DEFAULT = Pattern.compile(
+			"\\bADD\\s+(?:COLUMN\\s+)?(?!CONSTRAINT\\b)[^,]*?\\bDEFAULT\\s+([^,]*)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern VOLATILE_DEFAULT = Pattern.compile(
+			"\\b(nextval|random|clock_timestamp|timeofday|uuid_generate_v[14]|gen_random_uuid)\\s*\\(", Pattern.CASE_INSENSITIVE);
+	private static final Pattern SET_NOT_NULL = Pattern.compile("\\bSET\\s+NOT\\s+NULL\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern ADD_INDEX_CONSTRAINT = Pattern.compile(
+			"\\bADD\\s+(?:CONSTRAINT\\s+(?:\"[^\"]+\"|\\w+)\\s+)?(?:PRIMARY\\s+KEY|UNIQUE)\\b(?!\\s+USING\\s+INDEX)",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern ADD_FOREIGN_KEY = Pattern.compile(
+			"\\bADD\\s+(?:CONSTRAINT\\s+(?:\"[^\"]+\"|\\w+)\\s+)?FOREIGN\\s+KEY\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern ADD_CHECK = Pattern.compile(
+			"\\bADD\\s+(?:CONSTRAINT\\s+(?:\"[^\"]+\"|\\w+)\\s+)?CHECK\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern NOT_VALID = Pattern.compile("\\bNOT\\s+VALID\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern VALIDATE = Pattern.compile("\\bVALIDATE\\s+CONSTRAINT\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern SET_STORAGE = Pattern.compile(
+			"\\bSET\\s+(?:LOGGED|UNLOGGED|TABLESPACE|WITHOUT\\s+OIDS)\\b", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Classify statements of the script.
+	 * Commands inside DO blocks are analyzed as well, since migrations use them for conditional changes.
+	 *
+	 * @param sql     migration script
+	 * @param version Postgres major version, used for version dependent behavior. 0 when unknown
+	 */
+	static List<Finding> classify(final String sql, final int version) {
+		final List<Finding> findings = new ArrayList<Finding>();
+		final List<String> statements = PostgresScript.split(sql);
+		for (int i = 0; i < statements.size(); i++) {
+			final String statement = statements.get(i);
+			if (statement.regionMatches(true, 0, "DO", 0, 2)) {
+				final int open = statement.indexOf('$');
+				final int tagEnd = open == -1 ? -1 : statement.indexOf('$', open + 1);
+				final int close = tagEnd == -1 ? -1 : statement.lastIndexOf(statement.substring(open, tagEnd + 1));
+				if (close > tagEnd) {
+					for (final String inner : PostgresScript.split(statement.substring(tagEnd + 1, close))) {
+						classifyCommand(i + 1, inner, version, findings);
+					}
+				}
+			} else {
+				classifyCommand(i + 1, statement, version, findings);
+			}
+		}
+		return findings;
+	}
+
+	private static void classifyCommand(
+			final int index,
+			final String fragment,
+			final int version,
+			final List<Finding> findings) {
+		final Matcher command = COMMAND.matcher(fragment);
+		if (!command.find()) {
+			return;
+		}
+		final String sql = fragment.substring(command.start(1)).trim();
+		final String keyword = command.group(1).toUpperCase(Locale.ENGLISH).replaceAll("\\s+", " ");
+		if (keyword.equals("ALTER TABLE")) {
+			final Matcher name = ALTER_TABLE.matcher(sql);
+			if (name.find()) {
+				findings.add(classifyAlter(index, name.group(1), sql.substring(name.end()), version));
+			}
+		} else if (keyword.startsWith("CREATE")) {
+			final Matcher name = CREATE_INDEX.matcher(sql);
+			if (name.find()) {
+				final boolean concurrently = name.group(1) != null;
+				findings.add(new Finding(index, name.group(2),
+						concurrently ? Lock.SHARE_UPDATE_EXCLUSIVE : Lock.SHARE, Impact.SCAN,
+						concurrently ? "concurrent index build" : "index build"));
+			}
+		} else {
+			final Matcher name = OTHER.matcher(sql);
+			if (!name.find()) {
+				return;
+			}
+			if (keyword.equals("UPDATE") || keyword.equals("DELETE FROM")) {
+				findings.add(new Finding(index, name.group(1), Lock.ROW_EXCLUSIVE, Impact.SCAN, "data change"));
+			} else if (keyword.equals("VACUUM FULL") || keyword.equals("CLUSTER")) {
+				findings.add(new Finding(index, name.group(1), Lock.ACCESS_EXCLUSIVE, Impact.REWRITE, keyword.toLowerCase(Locale.ENGLISH)));
+			} else {
+				findings.add(new Finding(index, name.group(1), Lock.ACCESS_EXCLUSIVE, Impact.BRIEF, keyword.toLowerCase(Locale.ENGLISH)));
+			}
+		}
+	}
+
+	private static Finding classifyAlter(final int index, final String relation, final String actions, final int version) {
+		if (TYPE_CHANGE.matcher(actions).find()) {
+			return new Finding(index, relation, Lock.ACCESS_EXCLUSIVE, Impact.REWRITE, "column type change");
+		}
+		if (SET_STORAGE.matcher(actions).find()) {
+			return new Finding(index, relation, Lock.ACCESS_EXCLUSIVE, Impact.REWRITE, "storage change");
+		}
+		final Matcher defaultValue = ADD_COLUMN_DEFAULT.matcher(actions);
+		if (defaultValue.find() && !defaultValue.group(1).trim().toUpperCase(Locale.ENGLISH).startsWith("NULL")) {
+			//since Postgres 11 non volatile defaults are stored in the catalog
+			if (version < 11 || VOLATILE_DEFAULT.matcher(defaultValue.group(1)).find()) {
+				return new Finding(index, relation, Lock.ACCESS_EXCLUSIVE, Impact.REWRITE, "new column with default");
+			}
+		}
+		final boolean notValid = NOT_VALID.matcher(actions).find();
+		if (ADD_INDEX_CONSTRAINT.matcher(actions).find()) {
+			return new Finding(index, relation, Lock.ACCESS_EXCLUSIVE, Impact.SCAN, "unique index build");
+		}
+		if (SET_NOT_NULL.matcher(actions).find()) {
+			return new Finding(index, relation, Lock.ACCESS_EXCLUSIVE, Impact.SCAN, "not null validation");
+		}
+		if (ADD_CHECK.matcher(actions).find() && !notValid) {
+			return new Finding(index, relation, Lock.ACCESS_EXCLUSIVE, Impact.SCAN, "check constraint validation");
+		}
+		if (ADD_FOREIGN_KEY.matcher(actions).find()) {
+			return new Finding(index, relation, Lock.SHARE_ROW_EXCLUSIVE, notValid ? Impact.BRIEF : Impact.SCAN,
+					notValid ? "foreign key without validation" : "foreign key validation");
+		}
+		if (VALIDATE.matcher(actions).find()) {
+			return new Finding(index, relation, Lock.SHARE_UPDATE_EXCLUSIVE, Impact.SCAN, "constraint validation");
+		}
+		return new Finding(index, relation, Lock.ACCESS_EXCLUSIVE, Impact.BRIEF, "table definition change");
+	}
+
+	/**
+	 * Schema and name of the relation. Schema is null for unqualified names.
+	 */
+	private static String[] splitName(final String relation) {
+		final String[] result = new String[2];
+		final Matcher part = Pattern.compile("\"([^\"]+)\"|([\\w$]+)").matcher(relation);
+		final List<String> parts = new ArrayList<String>(2);
+		while (part.find()) {
+			parts.add(part.group(1) != null ? part.group(1) : part.group(2).toLowerCase(Locale.ENGLISH));
+		}
+		if (parts.size() == 1) {
+			result[1] = parts.get(0);
+		} else if (parts.size() > 1) {
+			result[0] = parts.get(0);
+			result[1] = parts.get(1);
+		}
+		return result;
+	}
+
+	private static String literal(final String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+	private static void add(final Map<String, List<Finding>> byName, final String key, final Finding finding) {
+		List<Finding> list = byName.get(key);
+		if (list == null) {
+			list = new ArrayList<Finding>();
+			byName.put(key, list);
+		}
+		list.add(finding);
+	}
+
+	/**
+	 * Attach row and size estimates from pg_class to findings.
+	 * Estimates are as fresh as the last VACUUM/ANALYZE on the table.
+	 * Unqualified names are resolved through the search_path of the session, the same way the script will resolve them.
+	 */
+	static void estimate(final PostgresSession session, final Context context, final List<Finding> findings) throws SQLException {
+		final Map<String, List<Finding>> qualified = new LinkedHashMap<String, List<Finding>>();
+		final Map<String, List<Finding>> unqualified = new LinkedHashMap<String, List<Finding>>();
+		final List<String> qualifiedValues = new ArrayList<String>();
+		for (final Finding f : findings) {
+			final String[] name = splitName(f.relation);
+			if (name[1] == null) {
+				continue;
+			}
+			if (name[0] == null) {
+				add(unqualified, name[1], f);
+			} else {
+				final String key = name[0] + "." + name[1];
+				if (!qualified.containsKey(key)) {
+					qualifiedValues.add("(" + literal(name[0]) + ", " + literal(name[1]) + ")");
+				}
+				add(qualified, key, f);
+			}
+		}
+		if (qualified.isEmpty() && unqualified.isEmpty()) {
+			return;
+		}
+		final StringBuilder sb = new StringBuilder();
+		if (!qualified.isEmpty()) {
+			sb.append("SELECT 'q', n.nspname || '.' || c.relname, c.reltuples::bigint, pg_total_relation_size(c.oid) " +
+					"FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+					"WHERE (n.nspname, c.relname) IN (");
+			for (int i = 0; i < qualifiedValues.size(); i++) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				sb.append(qualifiedValues.get(i));
+			}
+			sb.append(")");
+		}
+		if (!unqualified.isEmpty()) {
+			if (sb.length() > 0) {
+				sb.append(" UNION ALL ");
+			}
+			//only the first relation with that name in search_path is visible
+			sb.append("SELECT 'u', c.relname, c.reltuples::bigint, pg_total_relation_size(c.oid) " +
+					"FROM pg_class c WHERE pg_table_is_visible(c.oid) AND c.relname IN (");
+			boolean first = true;
+			for (final String name : unqualified.keySet()) {
+				if (!first) {
+					sb.append(", ");
+				}
+				first = false;
+				sb.append(literal(name));
+			}
+			sb.append(")");
+		}
+		for (final String[] row : session.query(sb.toString(), context)) {
+			final List<Finding> list = ("q".equals(row[0]) ? qualified : unqualified).get(row[1]);
+			if (list == null) {
+				continue;
+			}
+			for (final Finding f : list) {
+				f.rows = Long.parseLong(row[2]);
+				f.bytes = Long.parseLong(row[3]);
+			}
+		}
+	}
+
+	static String formatSize(final long bytes) {
+		if (bytes < 1024) {
+			return bytes + " B";
+		}
+		final String[] units = {"kB", "MB", "GB", "TB"};
+		double value = bytes / 1024.0;
+		int unit = 0;
+		while (value >= 1024 && unit < units.length - 1) {
+			value /= 1024;
+			unit++;
+		}
+		return String.format(Locale.ENGLISH, "%.1f %s", value, units[unit]);
+	}
+
+	/**
+	 * Warnings for statements which hold a blocking lock while scanning or rewriting a table,
+	 * followed by a summary of the estimated work.
+	 */
+	static List<String> warnings(final List<Finding> findings) {
+		final List<String> result = new ArrayList<String>();
+		long rewriteBytes = 0;
+		long scanBytes = 0;
+		int rewrites = 0;
+		int scans = 0;
+		int exclusive = 0;
+		for (final Finding f : findings) {
+			if (f.lock == Lock.ACCESS_EXCLUSIVE) {
+				exclusive++;
+			}
+			if (!f.isHeavy()) {
+				continue;
+			}
+			if (f.impact == Impact.REWRITE) {
+				rewrites++;
+				rewriteBytes += Math.max(0, f.bytes);
+			} else {
+				scans++;
+				scanBytes += Math.max(0, f.bytes);
+			}
+			final StringBuilder sb = new StringBuilder();
+			sb.append(f.isLarge() ? "[HIGH] " : "[LOW]  ");
+			sb.append("Statement ").append(f.statement).append(": ").append(f.reason).append(" on ").append(f.relation);
+			sb.append(" - ").append(f.lock.description).append(" lock");
+			if (f.bytes >= 0) {
+				sb.append(", ").append(f.impact.description).append(" of ").append(formatSize(f.bytes));
+				sb.append(" (~").append(Math.max(0, f.rows)).append(" rows)");
+			} else {
+				sb.append(", ").append(f.impact.description);
+			}
+			result.add(sb.toString());
+		}
+		if (!result.isEmpty() || exclusive > 0) {
+			result.add("Estimated cost: " + rewrites + " table rewrite(s) of " + formatSize(rewriteBytes)
+					+ ", " + scans + " scan(s) under lock of " + formatSize(scanBytes)
+					+ ", " + exclusive + " statement(s) with ACCESS EXCLUSIVE lock.");
+		}
+		return result;
+	}
+}
@@ -0,0 +1,150 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.*;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+public enum Mirror implements CompileParameter, ParameterParser {
+	INSTANCE;
+
+	public enum Repository {
+		DSL_PLATFORM("dsl-platform", "https://compiler.dsl-platform.com:8443/platform/download"),
+		SONATYPE("sonatype", "https://oss.sonatype.org/content/repositories/releases"),
+		MAVEN_CENTRAL("maven-central", "https://repo1.maven.org/maven2"),
+		GITHUB("github", "https://github.com");
+
+		public final String name;
+		public final String defaultUrl;
+
+		Repository(final String name, final String defaultUrl) {
+			this.name = name;
+			this.defaultUrl = defaultUrl;
+		}
+
+		static Repository from(final String name) {
+			for (final Repository r : values()) {
+				if (r.name.equalsIgnoreCase(name)) {
+					return r;
+				}
+			}
+			return null;
+		}
+	}
+
+	@Override
+	public String getAlias() {
+		return "mirror";
+	}
+
+	@Override
+	public String getUsage() {
+		return "url";
+	}
+
+	/**
+	 * Base url for the repository, without the trailing slash.
+	 * Mirror defined for the repository takes precedence over the default location.
+	 */
+	public static String url(final Context context, final Repository repository) {
+		final String mirror = context.get("mirror:" + repository.name);
+		if (mirror != null) {
+			return mirror;
+		}
+		if (repository == Repository.DSL_PLATFORM && context.contains(INSTANCE)) {
+			return context.get(INSTANCE);
+		}
+		return repository.defaultUrl;
+	}
+
+	public static boolean hasMirror(final Context context, final Repository repository) {
+		return context.contains("mirror:" + repository.name)
+				|| repository == Repository.DSL_PLATFORM && context.contains(INSTANCE);
+	}
+
+	private static Either<String> normalize(final String value) {
+		final String url;
+		if (value.contains("://") || value.startsWith("file:")) {
+			url = value;
+		} else {
+			final File path = new File(value);
+			if (!path.isDirectory()) {
+				return Either.fail("Mirror path not found: " + path.getAbsolutePath());
+			}
+			url = path.toURI().toString();
+		}
+		try {
+			new URL(url);
+		} catch (MalformedURLException ex) {
+			return Either.fail("Invalid mirror url: " + value + ". " + ex.getMessage());
+		}
+		return Either.success(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+	}
+
+	@Override
+	public Either<Boolean> tryParse(final String name, final String value, final Context context) {
+		if (!name.toLowerCase().startsWith("mirror:")) {
+			return Either.success(false);
+		}
+		final Repository repository = Repository.from(name.substring("mirror:".length()));
+		if (repository == null) {
+			final StringBuilder sb = new StringBuilder("Unknown mirror repository in: ").append(name).append(". Supported repositories:");
+			for (final Repository r : Repository.values()) {
+				sb.append(" ").append(r.name);
+			}
+			return Either.fail(sb.toString());
+		}
+		if (value == null || value.length() == 0) {
+			return Either.fail("Mirror parameter detected, but it's missing url as argument. Parameter: " + name);
+		}
+		final Either<String> url = normalize(value);
+		if (!url.isSuccess()) {
+			return Either.fail(url.explainError());
+		}
+		context.put("mirror:" + repository.name, url.get());
+		return Either.success(true);
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		if (context.contains(INSTANCE)) {
+			final String value = context.get(INSTANCE);
+			final Either<String> url = value == null || value.length() == 0
+					? Either.<String>fail("Mirror url not provided")
+					: normalize(value);
+			if (!url.isSuccess()) {
+				context.error(url.explainError());
+				return false;
+			}
+			context.put(INSTANCE, url.get());
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Alternative location for compiler and library downloads";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("Compiler and dependencies are downloaded from public repositories.\n");
+		sb.append("When those are not reachable, mirror with the same layout can be used instead.\n");
+		sb.append("Mirror can be an url or a local folder.\n");
+		sb.append("mirror=url will replace DSL Platform downloads, while specific repository can be replaced with mirror:repository=url\n\n");
+		sb.append("Supported repositories:\n");
+		for (final Repository r : Repository.values()) {
+			sb.append(r.name).append(" - ").append(r.defaultUrl).append("\n");
+		}
+		sb.append("\nExample:\n");
+		sb.append("\tmirror=http://build-server/dsl-platform\n");
+		sb.append("\tmirror:maven-central=/var/maven-mirror\n");
+		return sb.toString();
+	}
+}
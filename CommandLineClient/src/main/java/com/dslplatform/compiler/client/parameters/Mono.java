@@ -4,7 +4,7 @@ import com.dslplatform.compiler.client.*;
 
 import java.util.Collections;
 
-public enum Mono implements CompileParameter {
+public enum Mono implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -29,6 +29,16 @@ public enum Mono implements CompileParameter {
 		}
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		if (context.contains(INSTANCE)) {
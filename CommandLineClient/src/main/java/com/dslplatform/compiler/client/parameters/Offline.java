@@ -0,0 +1,42 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+
+public enum Offline implements CompileParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "offline";
+	}
+
+	@Override
+	public String getUsage() {
+		return null;
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Don't access the network. Use only local cache and mirrors in local folders";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "In offline mode compiler and dependencies are not checked for newer versions.\n" +
+				"Missing files can only be resolved from mirrors located in local folders\n" +
+				"and from the local Maven repository.\n" +
+				"\n" +
+				"Example:\n" +
+				"\toffline download mirror=/var/dsl-platform-mirror";
+	}
+}
@@ -0,0 +1,139 @@
+package com.dslplatform.compiler.client.parameters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Split Postgres migration into a main transaction and steps which are executed after it with weaker locks.
+ * Regular indexes are built concurrently after the main transaction is committed,
+ * while named foreign key and check constraints are added as NOT VALID and validated afterwards.
+ * Unique indexes stay in the main transaction since constraints later in the script can depend on them,
+ * as do indexes which are commented, altered or dropped later in the script.
+ */
+final class OnlineMigration {
+
+	final List<String> main = new ArrayList<String>();
+	final List<String> after = new ArrayList<String>();
+
+	private OnlineMigration() {
+	}
+
+	private static final String NAME = "(?:\"[^\"]+\"|[\\w$]+)(?:\\s*\\.\\s*(?:\"[^\"]+\"|[\\w$]+))?";
+
+	private static final Pattern PART = Pattern.compile("\"([^\"]+)\"|([\\w$]+)");
+
+	private static final Pattern CREATE_INDEX = Pattern.compile(
+			"^CREATE\\s+INDEX\\s+(?!CONCURRENTLY\\b)(?:IF\\s+NOT\\s+EXISTS\\s+)?(?:(?!ON\\b)(" + NAME + ")\\s+)?ON\\b",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern CONCURRENT_INDEX = Pattern.compile(
+			"^CREATE\\s+INDEX\\s+CONCURRENTLY\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?(?!ON\\b)(" + NAME + ")\\s+ON\\s+(?:ONLY\\s+)?(" + NAME + ")",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern INDEX_REFERENCE = Pattern.compile(
+			"^(?:COMMENT\\s+ON\\s+INDEX|ALTER\\s+INDEX(?:\\s+IF\\s+EXISTS)?|DROP\\s+INDEX(?:\\s+CONCURRENTLY)?(?:\\s+IF\\s+EXISTS)?)\\s+("
+					+ NAME + "(?:\\s*,\\s*" + NAME + ")*)",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern ADD_CONSTRAINT = Pattern.compile(
+			"^ALTER\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?(ONLY\\s+)?(" + NAME + ")\\s+ADD\\s+CONSTRAINT\\s+((?:\"[^\"]+\"|[\\w$]+))\\s+(?:FOREIGN\\s+KEY|CHECK)\\b",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern NOT_VALID = Pattern.compile("\\bNOT\\s+VALID\\s*$", Pattern.CASE_INSENSITIVE);
+
+	static OnlineMigration plan(final String sql) {
+		final OnlineMigration plan = new OnlineMigration();
+		final List<String> statements = PostgresScript.split(sql);
+		final Map<String, Integer> lastReference = new HashMap<String, Integer>();
+		for (int i = 0; i < statements.size(); i++) {
+			final Matcher reference = INDEX_REFERENCE.matcher(statements.get(i));
+			if (reference.find()) {
+				for (final String name : reference.group(1).split("\\s*,\\s*(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)")) {
+					lastReference.put(objectName(name), i);
+				}
+			}
+		}
+		for (int i = 0; i < statements.size(); i++) {
+			final String statement = statements.get(i);
+			final Matcher index = CREATE_INDEX.matcher(statement);
+			if (index.find()) {
+				final Integer referenced = index.group(1) != null ? lastReference.get(objectName(index.group(1))) : null;
+				if (referenced != null && referenced > i) {
+					plan.main.add(statement);
+					continue;
+				}
+				final int at = statement.toUpperCase(Locale.ENGLISH).indexOf("INDEX") + 5;
+				plan.after.add("CREATE INDEX CONCURRENTLY" + statement.substring(at));
+				continue;
+			}
+			final Matcher constraint = ADD_CONSTRAINT.matcher(statement);
+			if (constraint.find()
+					&& !NOT_VALID.matcher(statement).find()
+					&& isSingleAction(statement, constraint.end())) {
+				plan.main.add(statement + " NOT VALID");
+				plan.after.add("ALTER TABLE " + (constraint.group(1) != null ? "ONLY " : "")
+						+ constraint.group(2) + " VALIDATE CONSTRAINT " + constraint.group(3));
+				continue;
+			}
+			plan.main.add(statement);
+		}
+		return plan;
+	}
+
+	/**
+	 * SQL which finishes the migration when a step after the main transaction fails.
+	 * Failed concurrent build leaves an INVALID index behind, so it's dropped before the index is built again.
+	 */
+	List<String> recovery(final int failedStep) {
+		final List<String> sql = new ArrayList<String>();
+		for (int i = failedStep; i < after.size(); i++) {
+			final String step = after.get(i);
+			final Matcher index = CONCURRENT_INDEX.matcher(step);
+			if (i == failedStep && index.find()) {
+				final String name = index.group(1);
+				final String table = index.group(2);
+				final Matcher part = PART.matcher(table);
+				final String schema = name.indexOf('.') == -1 && part.find() && part.end() < table.length()
+						? table.substring(0, part.end()) + "."
+						: "";
+				sql.add("DROP INDEX CONCURRENTLY IF EXISTS " + schema + name);
+			}
+			sql.add(step);
+		}
+		return sql;
+	}
+
+	//unqualified name as Postgres sees it: quoted identifiers are case sensitive, others are folded to lower case
+	private static String objectName(final String name) {
+		final Matcher part = PART.matcher(name);
+		String last = name;
+		while (part.find()) {
+			last = part.group(1) != null ? part.group(1) : part.group(2).toLowerCase(Locale.ENGLISH);
+		}
+		return last;
+	}
+
+	//NOT VALID can be appended only when the constraint is the last (and only) action of the statement
+	private static boolean isSingleAction(final String statement, final int from) {
+		int depth = 0;
+		char quote = 0;
+		for (int i = from; i < statement.length(); i++) {
+			final char c = statement.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
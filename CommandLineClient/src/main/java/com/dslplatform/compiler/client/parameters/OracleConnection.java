@@ -1,20 +1,23 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.DependentParameter;
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.ExitException;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public enum OracleConnection implements CompileParameter {
+public enum OracleConnection implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -28,6 +31,7 @@ public enum OracleConnection implements CompileParameter {
 	}
 
 	private static final String CACHE_NAME = "oracle_dsl_cache";
+	private static final String HASH_CACHE_NAME = "oracle_dsl_hash";
 	private static final String ORACLE_CUSTOM_DRIVER = "oracle_jdbc_driver";
 
 	public static Map<String, String> getDatabaseDsl(final Context context) throws ExitException {
@@ -50,6 +54,79 @@ public enum OracleConnection implements CompileParameter {
 				: driver.connect(url, null);
 	}
 
+	/**
+	 * Compare the last applied DSL with the current one without downloading the whole snapshot.
+	 * Stored text is hashed inside the database (requires access to DBMS_CRYPTO).
+	 * When hash can't be calculated, or files are stored in a different order, full snapshot will be used.
+	 */
+	public static boolean hasSameDsl(final Context context) throws ExitException {
+		final Map<String, String> currentDsl = DslPath.getCurrentDsl(context);
+		final DatabaseInfo loaded = context.load(CACHE_NAME);
+		if (loaded != null) {
+			return !loaded.dsl.isEmpty() && loaded.dsl.equals(currentDsl);
+		}
+		return storedHash(context)[0].equalsIgnoreCase(DatabaseInfo.md5(DatabaseInfo.serialize(currentDsl)));
+	}
+
+	/**
+	 * Version of the compiler which created the last applied migration or empty string when unknown.
+	 */
+	public static String appliedCompilerVersion(final Context context) throws ExitException {
+		final DatabaseInfo loaded = context.load(CACHE_NAME);
+		final String version = loaded != null ? loaded.compilerVersion : storedHash(context)[1];
+		return version == null ? "" : version;
+	}
+
+	private static String[] storedHash(final Context context) throws ExitException {
+		return context.load(HASH_CACHE_NAME, new Callable<String[]>() {
+			@Override
+			public String[] call() {
+				return loadDslHash(context);
+			}
+		});
+	}
+
+	private static String[] loadDslHash(final Context context) {
+		final String connectionString = "jdbc:oracle:thin:" + context.get(INSTANCE);
+		Connection conn = null;
+		try {
+			conn = getConnection(context, connectionString);
+			final Statement stmt = conn.createStatement();
+			final ResultSet migrationExist =
+					stmt.executeQuery(
+							"SELECT COUNT(*) FROM sys.all_tables t\n" +
+									"WHERE t.OWNER = '-NGS-' AND t.TABLE_NAME = 'DATABASE_MIGRATION'");
+			final boolean hasTable = migrationExist.next() && migrationExist.getLong(1) > 0;
+			migrationExist.close();
+			final String[] hash = new String[]{"", ""};
+			if (hasTable) {
+				final ResultSet lastMigration =
+						stmt.executeQuery("SELECT RAWTOHEX(DBMS_CRYPTO.HASH(sq.Dsls, 2)), sq.Version\n" +
+								"FROM (SELECT m.Dsls, m.Version FROM \"-NGS-\".Database_Migration m ORDER BY m.Ordinal DESC) sq\n" +
+								"WHERE RowNum = 1");
+				if (lastMigration.next()) {
+					if (lastMigration.getString(1) != null) {
+						hash[0] = lastMigration.getString(1);
+					}
+					if (lastMigration.getString(2) != null) {
+						hash[1] = lastMigration.getString(2);
+					}
+				}
+				lastMigration.close();
+			}
+			stmt.close();
+			return hash;
+		} catch (SQLException ex) {
+			//hash is only an optimization, full snapshot will be loaded instead
+			context.log("Unable to calculate DSL hash in the database: " + ex.getMessage());
+			return new String[]{"", ""};
+		} finally {
+			if (conn != null) {
+				cleanup(conn, context);
+			}
+		}
+	}
+
 	public static DatabaseInfo getDatabaseDslAndVersion(final Context context) throws ExitException {
 		final DatabaseInfo cache = context.load(CACHE_NAME);
 		if (cache != null) {
@@ -97,22 +174,29 @@ public enum OracleConnection implements CompileParameter {
 		}
 		try {
 			final ResultSet lastMigration =
-					stmt.executeQuery("SELECT sq.Dsls, sq.Version\n" +
-							"FROM (SELECT m.Dsls, m.Version FROM \"-NGS-\".Database_Migration m ORDER BY m.Ordinal DESC) sq\n" +
+					stmt.executeQuery("SELECT sq.Version, sq.Dsls\n" +
+							"FROM (SELECT m.Version, m.Dsls FROM \"-NGS-\".Database_Migration m ORDER BY m.Ordinal DESC) sq\n" +
 							"WHERE RowNum = 1");
-			final String lastDsl;
+			//snapshot is decoded directly from the character stream, without loading it as a single string
 			final String compiler;
+			final Map<String, String> dslMap;
 			if (lastMigration.next()) {
-				lastDsl = lastMigration.getString(1);
-				compiler = lastMigration.getString(2);
+				compiler = lastMigration.getString(1);
+				final Reader dsls = lastMigration.getCharacterStream(2);
+				try {
+					dslMap = dsls != null ? DatabaseInfo.convertToMap(dsls, context) : new HashMap<String, String>();
+				} catch (ExitException ex) {
+					cleanup(conn, context);
+					throw ex;
+				}
 			} else {
-				lastDsl = compiler = "";
+				compiler = "";
+				dslMap = new HashMap<String, String>();
 			}
 			lastMigration.close();
 			stmt.close();
 			conn.close();
-			if (lastDsl != null && lastDsl.length() > 0) {
-				final Map<String, String> dslMap = DatabaseInfo.convertToMap(lastDsl, context);
+			if (!dslMap.isEmpty()) {
 				final DatabaseInfo result = new DatabaseInfo("Oracle", compiler, oracle, dslMap);
 				context.cache(CACHE_NAME, result);
 				return result;
@@ -140,25 +224,92 @@ public enum OracleConnection implements CompileParameter {
 			context.error(e);
 			throw new ExitException();
 		}
-		final int migrationEnds = sql.indexOf("MIGRATION_DESCRIPTION*/");
-		final String rawSql = migrationEnds == -1 ? sql : sql.substring(migrationEnds + "MIGRATION_DESCRIPTION*/".length());
-		final String[] parts = rawSql.contains("\r\n") ? rawSql.split("\r\n/\r\n") : rawSql.split("\n/\n");
+		final List<String> statements = OracleScript.split(sql);
+		final List<OracleScript.Batch> batches = OracleScript.group(statements, BATCH_STATEMENTS, BATCH_LENGTH);
+		final long[] durations = new long[statements.size()];
+		final long startAt = System.currentTimeMillis();
+		int index = 0;
+		String current = null;
 		try {
-			for (final String part : parts) {
-				final String trimmed = part.trim();
-				if (trimmed.length() > 0) {
-					context.log(trimmed);
-					stmt.execute(trimmed);
+			for (final OracleScript.Batch batch : batches) {
+				if (!batch.isBatched()) {
+					current = batch.statements.get(0);
+					context.log(current);
+					final long start = System.currentTimeMillis();
+					stmt.execute(current);
+					durations[index++] = System.currentTimeMillis() - start;
+					continue;
+				}
+				for (final String statement : batch.statements) {
+					context.log(statement);
+				}
+				current = null;
+				final CallableStatement cs = conn.prepareCall(OracleScript.block(batch));
+				try {
+					cs.registerOutParameter(1, Types.VARCHAR);
+					cs.execute();
+					final long[] batchDurations = OracleScript.durations(cs.getString(1), batch.statements.size());
+					for (final long duration : batchDurations) {
+						durations[index++] = duration;
+					}
+				} catch (SQLException ex) {
+					final int failed = OracleScript.failedStatement(ex.getMessage());
+					if (failed >= 0) {
+						index += failed;
+						current = batch.statements.get(failed);
+					} else {
+						current = batch.statements.get(0);
+					}
+					final SQLException original = OracleScript.statementError(ex);
+					throw original != null ? original : ex;
+				} finally {
+					cs.close();
 				}
 			}
 			stmt.close();
 			conn.close();
 		} catch (SQLException ex) {
-			context.error("Error executing SQL script");
+			context.error("Error executing SQL script on statement " + (index + 1) + " of " + statements.size() + ":");
+			if (current != null) {
+				context.error(current);
+			}
 			context.error(ex);
 			cleanup(conn, context);
 			throw new ExitException();
 		}
+		final long total = System.currentTimeMillis() - startAt;
+		context.show("Script with " + statements.size() + " statements executed in " + total + "ms using "
+				+ batches.size() + " round trips (" + (statements.size() * 1000 / Math.max(1, total)) + " statements/s)");
+		showSlowest(context, statements, durations);
+	}
+
+	private static final int BATCH_STATEMENTS = 100;
+	private static final int BATCH_LENGTH = 100000;
+	private static final int SLOWEST_STATEMENTS = 10;
+
+	private static void showSlowest(final Context context, final List<String> statements, final long[] durations) {
+		final List<Integer> order = new ArrayList<Integer>(statements.size());
+		for (int i = 0; i < statements.size(); i++) {
+			context.log((i + 1) + "/" + statements.size() + " " + durations[i] + "ms: "
+					+ PostgresScript.preview(statements.get(i), 100));
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer left, final Integer right) {
+				final long l = durations[left];
+				final long r = durations[right];
+				return l < r ? 1 : l > r ? -1 : left - right;
+			}
+		});
+		if (order.isEmpty()) {
+			return;
+		}
+		context.show("Slowest statements:");
+		for (int i = 0; i < order.size() && i < SLOWEST_STATEMENTS; i++) {
+			final int at = order.get(i);
+			context.show(String.format("%8dms  #%-5d %s", durations[at], at + 1, PostgresScript.preview(statements.get(at), 80)));
+		}
 	}
 
 	private static void cleanup(final Connection conn, final Context context) {
@@ -244,6 +395,16 @@ public enum OracleConnection implements CompileParameter {
 		return true;
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		if (!context.contains(INSTANCE)) {
@@ -0,0 +1,164 @@
+package com.dslplatform.compiler.client.parameters;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Oracle migration script split on / lines and grouped into batches.
+ * Consecutive DDL statements are executed through EXECUTE IMMEDIATE inside a single anonymous block,
+ * so each batch costs a single round trip. Statements are still resolved and executed one by one on the server.
+ * Since DDL commits implicitly, batch has the same effect as executing its statements one by one.
+ * DML and anonymous blocks are executed on their own, so they are committed after each statement as before,
+ * instead of being rolled back together with the failed block.
+ * Stored code (packages, procedures, triggers, types...) is always executed on its own,
+ * since it's reported as created with compilation errors instead of failing.
+ */
+final class OracleScript {
+
+	private OracleScript() {
+	}
+
+	static final String STATEMENT_MARKER = "DSL_BATCH_STATEMENT ";
+
+	static final class Batch {
+		final List<String> statements = new ArrayList<String>();
+		int length;
+
+		boolean isBatched() {
+			return statements.size() > 1;
+		}
+	}
+
+	private static final Pattern DDL = Pattern.compile(
+			"^(?:CREATE|ALTER|DROP|COMMENT|RENAME|TRUNCATE|GRANT|REVOKE)\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern STORED_CODE = Pattern.compile(
+			"^CREATE\\s+(?:OR\\s+REPLACE\\s+)?(?:(?:NON)?EDITIONABLE\\s+)?"
+					+ "(?:PACKAGE|PROCEDURE|FUNCTION|TRIGGER|TYPE|LIBRARY|JAVA|AND\\s+(?:RESOLVE|COMPILE)\\s+JAVA)\\b",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern STATEMENT_ID = Pattern.compile(STATEMENT_MARKER + "(\\d+)");
+	private static final Pattern STATEMENT_ERROR = Pattern.compile(
+			STATEMENT_MARKER + "\\d+ SQLCODE (-?\\d+): (.*)", Pattern.DOTALL);
+
+	static List<String> split(final String sql) {
+		final int migrationEnds = sql.indexOf("MIGRATION_DESCRIPTION*/");
+		final String rawSql = migrationEnds == -1 ? sql : sql.substring(migrationEnds + "MIGRATION_DESCRIPTION*/".length());
+		final String[] parts = rawSql.contains("\r\n") ? rawSql.split("\r\n/\r\n") : rawSql.split("\n/\n");
+		final List<String> statements = new ArrayList<String>(parts.length);
+		for (final String part : parts) {
+			final String trimmed = part.trim();
+			if (trimmed.length() > 0) {
+				statements.add(trimmed);
+			}
+		}
+		return statements;
+	}
+
+	//PL/SQL string literal is limited to 32K bytes
+	private static final int MAX_LITERAL = 8000;
+
+	static boolean canBatch(final String statement) {
+		return statement.length() <= MAX_LITERAL
+				&& DDL.matcher(statement).find()
+				&& !STORED_CODE.matcher(statement).find();
+	}
+
+	/**
+	 * Group consecutive statements which can be executed dynamically.
+	 * Batch is limited by the number of statements and by the size of the generated block.
+	 */
+	static List<Batch> group(final List<String> statements, final int maxStatements, final int maxLength) {
+		final List<Batch> batches = new ArrayList<Batch>();
+		Batch current = null;
+		for (final String statement : statements) {
+			if (!canBatch(statement)) {
+				final Batch single = new Batch();
+				single.statements.add(statement);
+				batches.add(single);
+				current = null;
+				continue;
+			}
+			if (current == null
+					|| current.statements.size() >= maxStatements
+					|| current.length + statement.length() > maxLength) {
+				current = new Batch();
+				batches.add(current);
+			}
+			current.statements.add(statement);
+			current.length += statement.length();
+		}
+		return batches;
+	}
+
+	private static String literal(final String statement) {
+		//dynamic SQL is executed without the terminator
+		final String sql = statement.endsWith(";") ? statement.substring(0, statement.length() - 1) : statement;
+		return "'" + sql.replace("'", "''") + "'";
+	}
+
+	/**
+	 * Anonymous block which executes all statements of the batch.
+	 * Duration of each statement (in hundredths of a second) is returned through the first bind parameter
+	 * as a comma separated list. On failure, index of the failed statement and the original error code
+	 * are reported in the error message, while the original error is kept on the error stack.
+	 */
+	static String block(final Batch batch) {
+		final StringBuilder sb = new StringBuilder(batch.length * 2 + 200);
+		sb.append("DECLARE\n  n PLS_INTEGER := 0;\n  t PLS_INTEGER;\n  d VARCHAR2(32767);\nBEGIN\n");
+		for (int i = 0; i < batch.statements.size(); i++) {
+			sb.append("  n := ").append(i + 1).append("; t := DBMS_UTILITY.GET_TIME;\n");
+			sb.append("  EXECUTE IMMEDIATE ").append(literal(batch.statements.get(i))).append(";\n");
+			sb.append("  d := d || (DBMS_UTILITY.GET_TIME - t) || ',';\n");
+		}
+		sb.append("  ? := d;\nEXCEPTION WHEN OTHERS THEN\n");
+		sb.append("  RAISE_APPLICATION_ERROR(-20001, '").append(STATEMENT_MARKER)
+				.append("' || n || ' SQLCODE ' || SQLCODE || ': ' || SQLERRM, TRUE);\nEND;");
+		return sb.toString();
+	}
+
+	/**
+	 * Index (starting from 0) of the failed statement inside the batch, or -1 when unknown.
+	 */
+	static int failedStatement(final String message) {
+		if (message == null) {
+			return -1;
+		}
+		final Matcher matcher = STATEMENT_ID.matcher(message);
+		return matcher.find() ? Integer.parseInt(matcher.group(1)) - 1 : -1;
+	}
+
+	/**
+	 * Error raised by the failed statement inside the batch, or null when the error was not raised by the batch.
+	 */
+	static SQLException statementError(final SQLException batchError) {
+		final String message = batchError.getMessage();
+		final Matcher matcher = message != null ? STATEMENT_ERROR.matcher(message) : null;
+		if (matcher == null || !matcher.find()) {
+			return null;
+		}
+		final int sqlCode = Integer.parseInt(matcher.group(1));
+		//no data found is the only error reported with a positive SQLCODE
+		final int errorCode = sqlCode == 100 ? 1403 : -sqlCode;
+		return new SQLException(matcher.group(2).trim(), null, errorCode, batchError);
+	}
+
+	/**
+	 * Durations in milliseconds from the list returned by the block.
+	 */
+	static long[] durations(final String value, final int count) {
+		final long[] result = new long[count];
+		if (value == null) {
+			return result;
+		}
+		final String[] parts = value.split(",");
+		for (int i = 0; i < parts.length && i < count; i++) {
+			if (parts[i].length() > 0) {
+				//timer can wrap around
+				result[i] = Math.max(0, Long.parseLong(parts[i].trim()) * 10);
+			}
+		}
+		return result;
+	}
+}
@@ -4,7 +4,7 @@ import com.dslplatform.compiler.client.*;
 
 import java.util.Map;
 
-public enum Parse implements CompileParameter {
+public enum Parse implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -17,6 +17,16 @@ public enum Parse implements CompileParameter {
 		return null;
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		if (context.contains(INSTANCE)) {
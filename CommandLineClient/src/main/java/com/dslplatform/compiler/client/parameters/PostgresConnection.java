@@ -1,21 +1,19 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.DependentParameter;
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.ExitException;
-import org.postgresql.PGProperty;
-import org.postgresql.core.*;
-import org.postgresql.core.v3.*;
-import org.postgresql.util.*;
+import com.dslplatform.compiler.client.Utils;
 
-import javax.net.SocketFactory;
+import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.regex.*;
 
-public enum PostgresConnection implements CompileParameter {
+public enum PostgresConnection implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -29,7 +27,7 @@ public enum PostgresConnection implements CompileParameter {
 	}
 
 	private static final String CACHE_NAME = "postgres_dsl_cache";
-	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String HASH_CACHE_NAME = "postgres_dsl_hash";
 
 	public static Map<String, String> getDatabaseDsl(final Context context) throws ExitException {
 		return getDatabaseDslAndVersion(context).dsl;
@@ -45,226 +43,502 @@ public enum PostgresConnection implements CompileParameter {
 	}
 
 	public static DatabaseInfo getDatabaseDslAndVersion(final Context context) throws ExitException {
-		final DatabaseInfo cache = context.load(CACHE_NAME);
-		if (cache != null) {
-			return cache;
+		return context.load(CACHE_NAME, new Callable<DatabaseInfo>() {
+			@Override
+			public DatabaseInfo call() throws ExitException {
+				return loadDatabaseInfo(context);
+			}
+		});
+	}
+
+	/**
+	 * Compare the last applied DSL with the current one without downloading the whole snapshot.
+	 * Hash is calculated inside the database, so only the hash is transferred.
+	 */
+	public static boolean hasSameDsl(final Context context) throws ExitException {
+		final String current = DatabaseInfo.hash(DslPath.getCurrentDsl(context));
+		final DatabaseInfo loaded = context.load(CACHE_NAME);
+		if (loaded != null) {
+			return !loaded.dsl.isEmpty() && current.equals(DatabaseInfo.hash(loaded.dsl));
 		}
-		final String value = context.get(INSTANCE);
-		final String connectionString = "jdbc:postgresql://" + value;
-		Connection conn;
-		Statement stmt;
-		final String postgres;
-		try {
-			conn = DriverManager.getConnection(connectionString);
-			stmt = conn.createStatement();
-			final ResultSet pgVersion = stmt.executeQuery("SELECT version()");
-			if (pgVersion.next()) {
-				postgres = extractPostgresVersion(pgVersion.getString(1), context);
-			} else {
-				postgres = "";
+		return current.equals(storedHash(context)[0]);
+	}
+
+	/**
+	 * Version of the compiler which created the last applied migration or empty string when unknown.
+	 * Same DSL can produce different SQL with a different compiler, so it must be compared before skipping the migration.
+	 */
+	public static String appliedCompilerVersion(final Context context) throws ExitException {
+		final DatabaseInfo loaded = context.load(CACHE_NAME);
+		final String version = loaded != null ? loaded.compilerVersion : storedHash(context)[1];
+		return version == null ? "" : version;
+	}
+
+	private static String[] storedHash(final Context context) throws ExitException {
+		return context.load(HASH_CACHE_NAME, new Callable<String[]>() {
+			@Override
+			public String[] call() throws ExitException {
+				return loadDslHash(context);
 			}
-			pgVersion.close();
+		});
+	}
+
+	private static String[] loadDslHash(final Context context) throws ExitException {
+		try {
+			return queryDslHashAndVersion(session(context), context);
+		} catch (SQLException ex) {
+			//hash is only an optimization, full snapshot will be loaded instead
+			context.log("Unable to calculate DSL hash in the database: " + ex.getMessage());
+			return new String[]{"", ""};
+		}
+	}
+
+	private static boolean hasMigrationTable(final PostgresSession session, final Context context) throws SQLException {
+		final List<String[]> table = session.query(
+				"SELECT EXISTS(SELECT 1 FROM pg_tables " +
+						"WHERE schemaname = '-NGS-' AND tablename = 'database_migration')", context);
+		return !table.isEmpty() && "t".equals(table.get(0)[0]);
+	}
+
+	/**
+	 * Query which calculates DatabaseInfo.hash of the specified hstore expression.
+	 */
+	static String dslHashQuery(final String hstore) {
+		return "SELECT md5(string_agg(md5(key) || md5(value), '' ORDER BY (md5(key) || md5(value)) COLLATE \"C\")) " +
+				"FROM each(" + hstore + ")";
+	}
+
+	/**
+	 * Hash of the last applied DSL (as calculated by DatabaseInfo.hash) and version of the compiler which applied it.
+	 * Empty strings are returned when DSL was not applied yet.
+	 */
+	static String[] queryDslHashAndVersion(final PostgresSession session, final Context context) throws SQLException {
+		if (!hasMigrationTable(session, context)) {
+			return new String[]{"", ""};
+		}
+		final List<String[]> hash = session.query(
+				"SELECT (" + dslHashQuery("m.dsls") + "), m.version FROM \"-NGS-\".database_migration m ORDER BY m.ordinal DESC LIMIT 1",
+				context);
+		if (hash.isEmpty()) {
+			return new String[]{"", ""};
+		}
+		return new String[]{
+				hash.get(0)[0] == null ? "" : hash.get(0)[0],
+				hash.get(0)[1] == null ? "" : hash.get(0)[1]};
+	}
+
+	static String queryVersion(final PostgresSession session, final Context context) throws SQLException {
+		final List<String[]> version = session.query("SELECT version()", context);
+		return version.isEmpty() ? "" : extractPostgresVersion(version.get(0)[0], context);
+	}
+
+	private static PostgresSession session(final Context context) throws ExitException {
+		try {
+			return PostgresSession.from(context);
 		} catch (SQLException e) {
-			context.error("Error opening connection to " + connectionString);
+			context.error("Error opening connection to jdbc:postgresql://" + context.get(INSTANCE));
 			context.error(e);
 			throw new ExitException();
 		}
-		final DatabaseInfo emptyResult = new DatabaseInfo("Postgres", "", postgres, new HashMap<String, String>());
+	}
+
+	private static DatabaseInfo loadDatabaseInfo(final Context context) throws ExitException {
 		try {
-			final ResultSet migrationExist =
-					stmt.executeQuery(
-							"SELECT EXISTS(SELECT 1 FROM pg_tables " +
-									"WHERE schemaname = '-NGS-' AND tablename = 'database_migration')");
-			final boolean hasTable = migrationExist.next() && migrationExist.getBoolean(1);
-			migrationExist.close();
-			if (!hasTable) {
-				stmt.close();
-				conn.close();
-				context.cache(CACHE_NAME, emptyResult);
-				return emptyResult;
-			}
+			return queryDatabaseInfo(session(context), context);
 		} catch (SQLException ex) {
-			context.error("Error checking for migration table in -NGS- schema");
+			context.error("Error loading previous DSL from migration table in -NGS- schema");
 			context.error(ex);
-			cleanup(conn, context);
 			throw new ExitException();
 		}
+	}
+
+	static DatabaseInfo queryDatabaseInfo(final PostgresSession session, final Context context) throws SQLException, ExitException {
+		final List<String[]> info = session.query(
+				"SELECT version(), EXISTS(SELECT 1 FROM pg_tables " +
+						"WHERE schemaname = '-NGS-' AND tablename = 'database_migration')", context);
+		final String postgres = info.isEmpty() ? "" : extractPostgresVersion(info.get(0)[0], context);
+		final boolean hasTable = !info.isEmpty() && "t".equals(info.get(0)[1]);
+		final DatabaseInfo emptyResult = new DatabaseInfo("Postgres", "", postgres, new HashMap<String, String>());
+		if (!hasTable) {
+			return emptyResult;
+		}
+		final List<String[]> lastMigration =
+				session.query("SELECT dsls, version FROM \"-NGS-\".database_migration ORDER BY ordinal DESC LIMIT 1", context);
+		final String lastDsl = lastMigration.isEmpty() ? "" : lastMigration.get(0)[0];
+		final String compiler = lastMigration.isEmpty() ? "" : lastMigration.get(0)[1];
+		if (lastDsl != null && lastDsl.length() > 0) {
+			final Map<String, String> dslMap = DatabaseInfo.convertToMap(lastDsl, context);
+			return new DatabaseInfo("Postgres", compiler, postgres, dslMap);
+		}
+		return emptyResult;
+	}
+
+	public static void execute(final Context context, final String sql) throws ExitException {
+		final PostgresSession session = session(context);
+		final PostgresLockMonitor monitor = startMonitor(context, session, false);
 		try {
-			final ResultSet lastMigration =
-					stmt.executeQuery("SELECT dsls, version FROM \"-NGS-\".database_migration ORDER BY ordinal DESC LIMIT 1");
-			final String lastDsl;
-			final String compiler;
-			if (lastMigration.next()) {
-				lastDsl = lastMigration.getString(1);
-				compiler = lastMigration.getString(2);
-			} else {
-				lastDsl = compiler = "";
-			}
-			lastMigration.close();
-			stmt.close();
-			conn.close();
-			if (lastDsl != null && lastDsl.length() > 0) {
-				final Map<String, String> dslMap = DatabaseInfo.convertToMap(lastDsl, context);
-				final DatabaseInfo result = new DatabaseInfo("Postgres", compiler, postgres, dslMap);
-				context.cache(CACHE_NAME, result);
-				return result;
-			}
+			final long startAt = System.currentTimeMillis();
+			session.execute(sql, context);
+			final long endAt = System.currentTimeMillis();
+			context.log("Script executed in " + (endAt - startAt) + "ms");
 		} catch (SQLException ex) {
-			context.error("Error loading previous DSL from migration table in -NGS- schema");
+			context.error("Error executing SQL script");
 			context.error(ex);
-			cleanup(conn, context);
+			explainCancel(context, monitor, ex);
 			throw new ExitException();
+		} finally {
+			stopMonitor(context, monitor);
 		}
-		context.cache(CACHE_NAME, emptyResult);
-		return emptyResult;
 	}
 
-	public static void execute(final Context context, final String sql) throws ExitException {
-		final String connectionString = "jdbc:postgresql://" + context.get(INSTANCE);
-		String[] parts = context.get(INSTANCE).split("/");
-		Properties props = parse(connectionString);
-		if (props == null || parts.length < 2) {
-			context.error("Unable to parse connection properties");
-			throw new ExitException();
+	/**
+	 * Start lock monitoring of the session when requested with lock-monitor option.
+	 *
+	 * @param measure start monitoring even without the option, to measure lock waits of statements
+	 */
+	private static PostgresLockMonitor startMonitor(
+			final Context context,
+			final PostgresSession session,
+			final boolean measure) {
+		final boolean requested = context.contains(LockMonitor.INSTANCE);
+		if (!requested && !measure) {
+			return null;
 		}
-		PGStream pgStream = null;
-		ProtocolConnection connection = null;
+		final int pid;
 		try {
-			try {
-				String server = parts[0];
-				String database = parts[1].indexOf('?') == -1 ? parts[1] : parts[1].substring(0, parts[1].indexOf('?'));
-				String[] info = server.split(":");
-				HostSpec hostSpec = new HostSpec(info[0], info.length == 2 ? Integer.parseInt(info[1]) : 5432);
-				int timeout = PGProperty.CONNECT_TIMEOUT.getInt(props) * 1000;
-
-				pgStream = new PGStream(SocketFactory.getDefault(), hostSpec, timeout);
-				connection = DslConnectionFactory.openConnection(pgStream, database, props);
-			} catch (Exception e) {
-				context.error("Error opening connection to " + connectionString);
-				context.error(e);
-				throw new ExitException();
-			}
-			try {
-				final long startAt = System.currentTimeMillis();
-				byte[] sqlBytes = sql.getBytes(UTF8);
-				pgStream.SendChar('Q');
-				pgStream.SendInteger4(5 + sqlBytes.length);
-				pgStream.Send(sqlBytes);
-				pgStream.SendChar(0);
-				pgStream.flush();
-				checkResponse(pgStream, context);
-				final long endAt = System.currentTimeMillis();
-				context.log("Script executed in " + (endAt - startAt) + "ms");
-			} catch (Exception ex) {
-				context.error("Error executing SQL script");
-				context.error(ex);
-				throw new ExitException();
+			pid = Integer.parseInt(session.query("SELECT pg_backend_pid()", context).get(0)[0]);
+		} catch (SQLException ex) {
+			context.warning("Unable to start lock monitoring: " + ex.getMessage());
+			return null;
+		}
+		return PostgresLockMonitor.start(
+				context,
+				session.connectionString,
+				pid,
+				requested ? LOCK_MONITOR_MS : LOCK_SAMPLING_MS,
+				requested,
+				requested ? LockMonitor.getBudget(context) : 0);
+	}
+
+	private static void stopMonitor(final Context context, final PostgresLockMonitor monitor) {
+		if (monitor != null) {
+			monitor.close();
+		}
+	}
+
+	private static void explainCancel(final Context context, final PostgresLockMonitor monitor, final SQLException ex) {
+		if (monitor != null && monitor.isCanceled(ex)) {
+			context.error("Migration was canceled since lock wait budget was exceeded.");
+		}
+	}
+
+	/**
+	 * Lock impact warnings for the migration script, with table estimates from the current database.
+	 */
+	static List<String> analyzeMigration(final Context context, final String sql) throws ExitException {
+		final PostgresSession session = session(context);
+		int major = 0;
+		List<MigrationAnalysis.Finding> findings;
+		try {
+			final String version = queryVersion(session, context);
+			final int dot = version.indexOf('.');
+			if (dot > 0) {
+				major = Integer.parseInt(version.substring(0, dot));
 			}
-		} finally {
-			try {
-				if (pgStream != null) {
-					pgStream.close();
+			findings = MigrationAnalysis.classify(sql, major);
+			MigrationAnalysis.estimate(session, context, findings);
+		} catch (SQLException ex) {
+			context.log("Unable to load table estimates: " + ex.getMessage());
+			findings = MigrationAnalysis.classify(sql, major);
+		}
+		return MigrationAnalysis.warnings(findings);
+	}
+
+	private static final class Timing {
+		final int index;
+		final String statement;
+		final String tag;
+		final long duration;
+		final long lockWait;
+
+		Timing(final int index, final String statement, final String tag, final long duration, final long lockWait) {
+			this.index = index;
+			this.statement = statement;
+			this.tag = tag;
+			this.duration = duration;
+			this.lockWait = lockWait;
+		}
+	}
+
+	private static final int SLOW_STATEMENT_MS = 1000;
+	private static final int SLOWEST_STATEMENTS = 10;
+	private static final int LOCK_SAMPLING_MS = 50;
+	private static final int LOCK_MONITOR_MS = 200;
+	private static final String ONLINE_LOCK_TIMEOUT = "5s";
+	private static final int ONLINE_ATTEMPTS = 5;
+	private static final int ONLINE_RETRY_DELAY_MS = 2000;
+
+	private static final Pattern TRANSACTION_CONTROL =
+			Pattern.compile("^(BEGIN|COMMIT|END|ROLLBACK|START\\s+TRANSACTION)\\b", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Statements of a single script executed one by one in the current transaction.
+	 * Progress is shown while the script is running and timings are collected for the report.
+	 */
+	private static final class ScriptRun {
+		final List<String> statements;
+		final List<Timing> timings;
+		final long startAt = System.currentTimeMillis();
+		String current;
+
+		ScriptRun(final List<String> statements) {
+			this.statements = statements;
+			this.timings = new ArrayList<Timing>(statements.size());
+		}
+
+		void execute(final Context context, final PostgresSession session, final PostgresLockMonitor monitor) throws SQLException {
+			final int total = statements.size();
+			int milestone = 0;
+			for (int i = 0; i < total; i++) {
+				current = statements.get(i);
+				if (TRANSACTION_CONTROL.matcher(current).find()) {
+					context.warning("Skipping " + current + " since the whole script is executed in a single transaction");
+					continue;
+				}
+				if (monitor != null) {
+					monitor.take();
+				}
+				final long start = System.currentTimeMillis();
+				final String tag = session.command(current, context);
+				final long duration = System.currentTimeMillis() - start;
+				final long lockWait = monitor != null ? monitor.take() : 0;
+				final Timing timing = new Timing(i + 1, current, tag != null ? tag : "", duration, lockWait);
+				timings.add(timing);
+				context.log(String.format("%d/%d %dms %s: %s", timing.index, total, duration, timing.tag, PostgresScript.preview(current, 100)));
+				if (duration >= SLOW_STATEMENT_MS) {
+					context.show("Statement " + timing.index + " took " + duration + "ms"
+							+ (lockWait > 0 ? " (waited " + lockWait + "ms on locks)" : "")
+							+ ": " + PostgresScript.preview(current, 80));
+				}
+				final int percent = (i + 1) * 10 / total;
+				if (percent > milestone) {
+					milestone = percent;
+					context.show("Executed " + (i + 1) + "/" + total + " statements ("
+							+ (percent * 10) + "%) in " + elapsed() + "ms");
 				}
-			} catch (Exception ignore) {
 			}
-			try {
-				if (connection != null) {
-					connection.close();
+			current = null;
+		}
+
+		long elapsed() {
+			return System.currentTimeMillis() - startAt;
+		}
+
+		void showSlowest(final Context context) {
+			if (timings.isEmpty()) {
+				return;
+			}
+			final List<Timing> sorted = new ArrayList<Timing>(timings);
+			Collections.sort(sorted, new Comparator<Timing>() {
+				@Override
+				public int compare(final Timing left, final Timing right) {
+					return left.duration < right.duration ? 1 : left.duration > right.duration ? -1 : left.index - right.index;
 				}
-			} catch (Exception ignore) {
+			});
+			context.show("Slowest statements:");
+			for (int i = 0; i < sorted.size() && i < SLOWEST_STATEMENTS; i++) {
+				final Timing t = sorted.get(i);
+				context.show(String.format("%8dms  #%-5d %-16s %s", t.duration, t.index, t.tag, PostgresScript.preview(t.statement, 80)));
 			}
 		}
 	}
 
-	private static void checkResponse(PGStream pgStream, Context context) throws IOException {
-		do {
-			int c = pgStream.ReceiveChar();
-			switch (c) {
-				case 'A':
-					pgStream.ReceiveInteger4();
-					pgStream.ReceiveInteger4();
-					pgStream.ReceiveString();
-					pgStream.ReceiveString();
-					break;
-				case 'C':
-					int len = pgStream.ReceiveInteger4();
-					pgStream.ReceiveString(len - 5);
-					pgStream.ReceiveChar();
-					break;
-				case 'D':
-					try {
-						pgStream.ReceiveTupleV3();
-					} catch (OutOfMemoryError ignore) {
-					}
-					break;
-				case 'E':
-					int lenE = pgStream.ReceiveInteger4();
-					String totalMessage = pgStream.ReceiveString(lenE - 4);
-					ServerErrorMessage errorMsg = new ServerErrorMessage(totalMessage, 0);
-					throw new IOException(new PSQLException(errorMsg));
-				case 'I':
-					pgStream.ReceiveInteger4();
-					break;
-				case 'Z':
-					if (pgStream.ReceiveInteger4() != 5) {
-						throw new IOException("unexpected length of ReadyForQuery message");
-					}
-					return;
-				case 'N':
-					int lenN = pgStream.ReceiveInteger4();
-					String totalWarning = pgStream.ReceiveString(lenN - 4);
-					ServerErrorMessage warningMsg = new ServerErrorMessage(totalWarning, 0);
-					context.log(warningMsg.getMessage());
-					break;
-				default:
-					int lenSkip = pgStream.ReceiveInteger4();
-					pgStream.Skip(lenSkip - 4);
-					break;
-			}
-		} while (true);
+	/**
+	 * Execute the script statement by statement inside a single transaction.
+	 * Duration and command tag of each statement is logged, slow statements and progress are shown while
+	 * the script is running and the slowest statements are listed at the end.
+	 */
+	public static void executeTimed(final Context context, final String sql) throws ExitException {
+		final PostgresSession session = session(context);
+		final ScriptRun run = new ScriptRun(PostgresScript.split(sql));
+		final PostgresLockMonitor monitor = startMonitor(context, session, false);
+		try {
+			session.execute("BEGIN", context);
+			run.execute(context, session, monitor);
+			session.execute("COMMIT", context);
+		} catch (SQLException ex) {
+			context.error("Error executing SQL script. Transaction was rolled back. Failed statement:");
+			context.error(PostgresScript.preview(run.current != null ? run.current : "COMMIT", 500));
+			context.error(ex);
+			explainCancel(context, monitor, ex);
+			run.showSlowest(context);
+			throw new ExitException();
+		} finally {
+			stopMonitor(context, monitor);
+		}
+		context.show("Script with " + run.statements.size() + " statements executed in " + run.elapsed() + "ms");
+		run.showSlowest(context);
 	}
 
-	private static void cleanup(final Connection conn, final Context context) {
+	private static boolean isLockFailure(final SQLException ex) {
+		//lock_not_available or deadlock_detected
+		return "55P03".equals(ex.getSQLState()) || "40P01".equals(ex.getSQLState());
+	}
+
+	/**
+	 * Execute the script with minimal blocking of concurrent traffic.
+	 * Main transaction runs with lock_timeout and is retried when a lock can't be acquired in time.
+	 * Indexes are built concurrently and constraints are validated after the main transaction is committed.
+	 */
+	public static void executeOnline(final Context context, final String sql) throws ExitException {
+		final PostgresSession session = session(context);
+		final PostgresLockMonitor monitor = startMonitor(context, session, false);
 		try {
-			conn.close();
-		} catch (SQLException ex2) {
-			context.error("Error cleaning up connection.");
-			context.error(ex2);
+			executeOnline(context, session, OnlineMigration.plan(sql), monitor);
+		} finally {
+			stopMonitor(context, monitor);
 		}
 	}
 
-	private static Properties parse(final String connectionString) {
-		final int questionIndex = connectionString.indexOf('?');
-		if (questionIndex == -1) {
-			return new Properties();
+	private static void executeOnline(
+			final Context context,
+			final PostgresSession session,
+			final OnlineMigration plan,
+			final PostgresLockMonitor monitor) throws ExitException {
+		final long startAt = System.currentTimeMillis();
+		context.show("Online migration: " + plan.main.size() + " statements in the main transaction and "
+				+ plan.after.size() + " steps after it.");
+		for (int attempt = 1; ; attempt++) {
+			final ScriptRun run = new ScriptRun(plan.main);
+			try {
+				session.execute("BEGIN", context);
+				session.execute("SET LOCAL lock_timeout = '" + ONLINE_LOCK_TIMEOUT + "'", context);
+				run.execute(context, session, monitor);
+				session.execute("COMMIT", context);
+				context.show("Main transaction committed in " + run.elapsed() + "ms (attempt " + attempt + ")");
+				run.showSlowest(context);
+				break;
+			} catch (SQLException ex) {
+				if (isLockFailure(ex) && attempt < ONLINE_ATTEMPTS) {
+					context.warning("Unable to acquire lock within " + ONLINE_LOCK_TIMEOUT + " on: "
+							+ PostgresScript.preview(run.current != null ? run.current : "COMMIT", 80));
+					context.warning("Transaction was rolled back. Retrying (" + (attempt + 1) + "/" + ONLINE_ATTEMPTS
+							+ ") in " + (ONLINE_RETRY_DELAY_MS * attempt) + "ms ...");
+					try {
+						Thread.sleep(ONLINE_RETRY_DELAY_MS * attempt);
+					} catch (InterruptedException ignore) {
+						throw new ExitException();
+					}
+					continue;
+				}
+				context.error("Error executing SQL script. Transaction was rolled back. Failed statement:");
+				context.error(PostgresScript.preview(run.current != null ? run.current : "COMMIT", 500));
+				context.error(ex);
+				explainCancel(context, monitor, ex);
+				throw new ExitException();
+			}
 		}
-		final String[] args = connectionString.substring(questionIndex + 1).split("&");
-		final Properties map = new Properties();
-		for (final String a : args) {
-			final String[] vals = a.split("=");
-			if (vals.length != 2) {
-				return null;
+		for (int i = 0; i < plan.after.size(); i++) {
+			final String step = plan.after.get(i);
+			context.show("Step " + (i + 1) + "/" + plan.after.size() + ": " + PostgresScript.preview(step, 100));
+			final long start = System.currentTimeMillis();
+			try {
+				session.execute(step, context);
+			} catch (SQLException ex) {
+				context.error("Error executing step " + (i + 1) + ". Main migration is already committed.");
+				context.error(ex);
+				explainCancel(context, monitor, ex);
+				context.error("Migration is recorded in the database, so the DSL will not be reported as changed on the next run.");
+				context.error("Migration must be finished manually with the following SQL:");
+				for (final String recovery : plan.recovery(i)) {
+					context.error(recovery + ";");
+				}
+				throw new ExitException();
 			}
-			map.put(vals[0], vals[1]);
+			context.show("Step " + (i + 1) + " finished in " + (System.currentTimeMillis() - start) + "ms");
+		}
+		context.show("Online migration finished in " + (System.currentTimeMillis() - startAt) + "ms");
+	}
+
+	/**
+	 * Execute the script inside a transaction which is always rolled back.
+	 * Besides statement durations, time spent waiting on locks is measured from a separate session.
+	 * Timing report is saved as a tab separated file, so reports for different migrations can be compared.
+	 */
+	public static void dryRun(final Context context, final String sql, final File report) throws ExitException {
+		final PostgresSession session = session(context);
+		final ScriptRun run = new ScriptRun(PostgresScript.split(sql));
+		String failure = null;
+		final PostgresLockMonitor monitor = startMonitor(context, session, true);
+		try {
+			session.execute("BEGIN", context);
+			run.execute(context, session, monitor);
+			session.execute("ROLLBACK", context);
+		} catch (SQLException ex) {
+			//failed transaction is rolled back by the session
+			failure = ex.getMessage();
+			context.error("Dry run failed on statement:");
+			context.error(PostgresScript.preview(run.current != null ? run.current : "ROLLBACK", 500));
+			context.error(ex);
+			explainCancel(context, monitor, ex);
+		} finally {
+			stopMonitor(context, monitor);
+		}
+		long lockWait = 0;
+		for (final Timing t : run.timings) {
+			lockWait += t.lockWait;
+		}
+		//without the monitor statements report zero lock wait, which would be mistaken for no waiting
+		final boolean monitored = monitor != null && monitor.isComplete();
+		if (!monitored) {
+			context.warning("Lock wait was not monitored for the whole dry run. Lock wait in the report is incomplete.");
+		}
+		context.show("Dry run of " + run.statements.size() + " statements finished in " + run.elapsed() + "ms"
+				+ " (lock wait " + (monitored ? lockWait + "ms" : "unavailable") + "). All changes were rolled back.");
+		run.showSlowest(context);
+		final StringBuilder sb = new StringBuilder();
+		final String database = session.connectionString.indexOf('?') == -1
+				? session.connectionString
+				: session.connectionString.substring(0, session.connectionString.indexOf('?'));
+		sb.append("# database\t").append(database).append('\n');
+		sb.append("# started\t").append(new Date(run.startAt)).append('\n');
+		sb.append("# statements\t").append(run.statements.size()).append('\n');
+		sb.append("# duration_ms\t").append(run.elapsed()).append('\n');
+		sb.append("# lock_wait_ms\t").append(monitored ? Long.toString(lockWait) : "unavailable").append('\n');
+		sb.append("# result\t").append(failure == null ? "rolled back" : "failed: " + failure.replaceAll("\\s+", " ")).append('\n');
+		sb.append("index\tduration_ms\tlock_wait_ms\ttag\tfingerprint\tstatement\n");
+		for (final Timing t : run.timings) {
+			sb.append(t.index).append('\t')
+					.append(t.duration).append('\t')
+					.append(t.lockWait).append('\t')
+					.append(t.tag).append('\t')
+					.append(DatabaseInfo.md5(t.statement), 0, 8).append('\t')
+					.append(PostgresScript.preview(t.statement, 200)).append('\n');
+		}
+		try {
+			Utils.saveFile(context, report, sb.toString());
+			context.show("Dry run report saved to " + report.getAbsolutePath());
+		} catch (IOException ex) {
+			context.error("Error saving dry run report to " + report.getAbsolutePath());
+			context.error(ex);
+			throw new ExitException();
+		}
+		if (failure != null) {
+			throw new ExitException();
 		}
-		return map;
 	}
 
 	private static boolean testConnection(final Context context) throws ExitException {
 		final String connectionString = context.get(INSTANCE);
 		try {
-			final Connection conn = DriverManager.getConnection("jdbc:postgresql://" + connectionString);
-			final Statement stmt = conn.createStatement();
-			stmt.execute(";");
-			stmt.close();
-			conn.close();
+			PostgresSession.from(context);
 		} catch (SQLException e) {
 			context.warning("Error connecting to the database.");
 			context.warning(e);
 			final boolean dbDoesntExists = "3D000".equals(e.getSQLState());
 			final boolean dbMissingPassword = "08004".equals(e.getSQLState());
 			final boolean dbWrongPassword = "28P01".equals(e.getSQLState());
-			final Properties args = parse(connectionString);
+			final Properties args = PostgresSession.parse(connectionString);
 			if (args == null) {
 				context.show();
 				context.error("Invalid connection string provided: " + connectionString);
@@ -272,6 +546,7 @@ public enum PostgresConnection implements CompileParameter {
 				return false;
 			}
 			if (dbDoesntExists && context.contains(Force.INSTANCE) && context.contains(ApplyMigration.INSTANCE)
+					&& !ApplyMigration.isDryRun(context)
 					&& args.containsKey("user") && args.containsKey("password")) {
 				final int sl = connectionString.indexOf("/");
 				final String dbName = connectionString.substring(sl + 1, connectionString.indexOf("?"));
@@ -290,11 +565,13 @@ public enum PostgresConnection implements CompileParameter {
 						newCs.append(kv.getKey()).append("=").append(kv.getValue());
 						newCs.append("&");
 					}
-					final Connection conn = DriverManager.getConnection("jdbc:postgresql://" + newCs.toString());
-					final Statement stmt = conn.createStatement();
-					stmt.execute("CREATE DATABASE \"" + dbName + "\"");
-					stmt.close();
-					conn.close();
+					//database is created from the maintenance database, so this session can't be reused
+					final PostgresSession maintenance = PostgresSession.open(newCs.toString());
+					try {
+						maintenance.execute("CREATE DATABASE \"" + dbName + "\"", context);
+					} finally {
+						maintenance.close();
+					}
 				} catch (SQLException ex) {
 					context.error("Error creating new database: " + dbName);
 					context.error(ex);
@@ -361,6 +638,16 @@ public enum PostgresConnection implements CompileParameter {
 		return true;
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		if (!context.contains(INSTANCE)) {
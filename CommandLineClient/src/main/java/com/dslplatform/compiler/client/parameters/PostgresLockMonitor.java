@@ -0,0 +1,243 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Context;
+
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Observe a Postgres backend from a separate session and measure how long it was waiting on locks.
+ * Backend state is sampled from pg_stat_activity and pg_locks, so measured wait is accurate up to the sampling interval.
+ * Before Postgres 9.6 there is no pg_blocking_pids, so blockers are sessions holding a granted lock on the same object.
+ * When reporting is enabled, sessions which block the backend are shown while it's waiting.
+ * When lock wait budget is exceeded while the backend is waiting on a lock, statement running in it is canceled.
+ */
+final class PostgresLockMonitor implements Runnable, Closeable {
+	private static final long REPORT_AFTER_MS = 1000;
+	private static final long REPORT_EVERY_MS = 5000;
+
+	private final Context context;
+	private final PostgresSession session;
+	private final int pid;
+	private final String stateSql;
+	private final String blockersSql;
+	private final long interval;
+	private final boolean report;
+	private final long budget;
+	private final Thread thread;
+	private volatile boolean running = true;
+	private volatile boolean canceled;
+	private volatile boolean stopped;
+	private long waitingSince;
+	private long waited;
+	private long total;
+	private long lastReport;
+	private String lastBlockers;
+
+	private PostgresLockMonitor(
+			final Context context,
+			final PostgresSession session,
+			final int pid,
+			final int version,
+			final long interval,
+			final boolean report,
+			final long budget) {
+		this.context = context;
+		this.session = session;
+		this.pid = pid;
+		this.stateSql = stateQuery(version, pid);
+		this.blockersSql = blockersQuery(version, pid);
+		this.interval = interval;
+		this.report = report;
+		this.budget = budget;
+		this.thread = new Thread(this, "postgres-lock-monitor");
+		this.thread.setDaemon(true);
+	}
+
+	static String stateQuery(final int version, final int pid) {
+		return "SELECT " + (version >= 90600 ? "a.wait_event_type = 'Lock'" : "a.waiting") + ", " +
+				"(SELECT string_agg(l.mode || COALESCE(' on ' || l.relation::regclass::text, ''), ', ') " +
+				"FROM pg_locks l WHERE l.pid = a.pid AND NOT l.granted) " +
+				"FROM pg_stat_activity a WHERE a.pid = " + pid;
+	}
+
+	static String blockersQuery(final int version, final int pid) {
+		final String columns = "b.pid, b.usename, b.state, EXTRACT(EPOCH FROM now() - b.xact_start)::bigint, " +
+				"regexp_replace(left(b.query, 100), '\\s+', ' ', 'g')";
+		if (version >= 90600) {
+			return "SELECT " + columns + " FROM pg_stat_activity b WHERE b.pid = ANY(pg_blocking_pids(" + pid + "))";
+		}
+		return "SELECT DISTINCT " + columns + " FROM pg_locks w " +
+				"JOIN pg_locks h ON h.granted AND h.pid <> w.pid AND h.locktype = w.locktype " +
+				"AND h.database IS NOT DISTINCT FROM w.database AND h.relation IS NOT DISTINCT FROM w.relation " +
+				"AND h.page IS NOT DISTINCT FROM w.page AND h.tuple IS NOT DISTINCT FROM w.tuple " +
+				"AND h.virtualxid IS NOT DISTINCT FROM w.virtualxid AND h.transactionid IS NOT DISTINCT FROM w.transactionid " +
+				"JOIN pg_stat_activity b ON b.pid = h.pid " +
+				"WHERE w.pid = " + pid + " AND NOT w.granted";
+	}
+
+	/**
+	 * Start monitoring the backend with provided pid.
+	 * Since this is only a diagnostic, null is returned when monitoring session can't be opened
+	 * or the server is older than Postgres 9.2.
+	 *
+	 * @param report show blocking sessions while the backend is waiting
+	 * @param budget total lock wait in ms after which the running statement is canceled. 0 for no limit
+	 */
+	static PostgresLockMonitor start(
+			final Context context,
+			final String connectionString,
+			final int pid,
+			final long interval,
+			final boolean report,
+			final long budget) {
+		final PostgresSession session;
+		try {
+			session = PostgresSession.open(connectionString);
+		} catch (SQLException ex) {
+			context.warning("Unable to open monitoring session. Lock waits will not be monitored: " + ex.getMessage());
+			return null;
+		}
+		final int version;
+		try {
+			version = Integer.parseInt(session.query("SELECT current_setting('server_version_num')", context).get(0)[0]);
+		} catch (SQLException ex) {
+			session.close();
+			context.warning("Unable to detect Postgres version. Lock waits will not be monitored: " + ex.getMessage());
+			return null;
+		}
+		if (version < 90200) {
+			session.close();
+			context.warning("Lock monitoring requires Postgres 9.2 or newer. Lock waits will not be monitored.");
+			return null;
+		}
+		final PostgresLockMonitor monitor = new PostgresLockMonitor(context, session, pid, version, interval, report, budget);
+		monitor.thread.start();
+		return monitor;
+	}
+
+	/**
+	 * Lock wait measured since the last call.
+	 */
+	synchronized long take() {
+		final long now = System.currentTimeMillis();
+		long result = waited;
+		if (waitingSince != 0) {
+			result += now - waitingSince;
+			total += now - waitingSince;
+			waitingSince = now;
+		}
+		waited = 0;
+		return result;
+	}
+
+	/**
+	 * Was the backend observed until the monitor was closed.
+	 * When sampling fails, monitoring stops and later lock waits are not measured.
+	 */
+	boolean isComplete() {
+		return !stopped;
+	}
+
+	/**
+	 * Did the statement fail since it was canceled due to exceeded lock wait budget.
+	 */
+	boolean isCanceled(final SQLException failure) {
+		//query_canceled
+		return canceled && "57014".equals(failure.getSQLState());
+	}
+
+	//returns duration of the current wait
+	private synchronized long sample(final boolean waiting) {
+		final long now = System.currentTimeMillis();
+		if (waiting && waitingSince == 0) {
+			waitingSince = now;
+		} else if (!waiting && waitingSince != 0) {
+			waited += now - waitingSince;
+			total += now - waitingSince;
+			waitingSince = 0;
+		}
+		return waitingSince == 0 ? 0 : now - waitingSince;
+	}
+
+	private synchronized long totalWait() {
+		return total + (waitingSince == 0 ? 0 : System.currentTimeMillis() - waitingSince);
+	}
+
+	private String blockers() throws SQLException {
+		final List<String[]> rows = session.query(blockersSql, context);
+		final StringBuilder sb = new StringBuilder();
+		for (final String[] row : rows) {
+			sb.append("\n  blocked by pid ").append(row[0])
+					.append(" (").append(row[1]).append(", ").append(row[2]);
+			if (row[3] != null) {
+				sb.append(", transaction running for ").append(row[3]).append("s");
+			}
+			sb.append("): ").append(row[4]);
+		}
+		return sb.toString();
+	}
+
+	private void report(final long waiting, final String lock) throws SQLException {
+		final long now = System.currentTimeMillis();
+		if (waiting == 0) {
+			if (lastReport != 0) {
+				context.show("Migration continued after waiting on locks. Total lock wait: " + totalWait() + "ms");
+				lastReport = 0;
+				lastBlockers = null;
+			}
+			return;
+		}
+		if (waiting < REPORT_AFTER_MS) {
+			return;
+		}
+		final String blockers = blockers();
+		if (now - lastReport >= REPORT_EVERY_MS || !blockers.equals(lastBlockers)) {
+			context.warning("Migration is waiting " + waiting + "ms" + (lock != null ? " for " + lock : " on a lock") + blockers);
+			lastReport = now;
+			lastBlockers = blockers;
+		}
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				final List<String[]> state = session.query(stateSql, context);
+				final boolean waiting = !state.isEmpty() && "t".equals(state.get(0)[0]);
+				final long current = sample(waiting);
+				if (report) {
+					report(current, waiting ? state.get(0)[1] : null);
+				}
+				//statement is canceled only while it's waiting on a lock, not after the wait is over
+				if (budget > 0 && !canceled && waiting && totalWait() > budget) {
+					canceled = true;
+					context.error("Lock wait budget of " + budget + "ms exceeded. Canceling migration ...");
+					session.query("SELECT pg_cancel_backend(" + pid + ")", context);
+				}
+				Thread.sleep(interval);
+			} catch (InterruptedException ignore) {
+				return;
+			} catch (SQLException ex) {
+				if (running) {
+					stopped = true;
+					context.warning("Lock monitoring stopped. Lock waits will not be "
+							+ (budget > 0 ? "limited" : "measured") + " from now on: " + ex.getMessage());
+				}
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join(interval * 10);
+		} catch (InterruptedException ignore) {
+		}
+		session.close();
+	}
+}
@@ -0,0 +1,143 @@
+package com.dslplatform.compiler.client.parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split Postgres script into separate statements.
+ * Semicolons inside string literals, quoted identifiers, dollar quoted bodies and comments are not treated as separators.
+ * Comments in front of a statement are not included in it.
+ */
+final class PostgresScript {
+
+	private PostgresScript() {
+	}
+
+	static List<String> split(final String sql) {
+		final List<String> statements = new ArrayList<String>();
+		final int len = sql.length();
+		int start = -1;
+		int i = 0;
+		while (i < len) {
+			final char c = sql.charAt(i);
+			if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+				i = skipLineComment(sql, i);
+				continue;
+			}
+			if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+				i = skipBlockComment(sql, i);
+				continue;
+			}
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+			if (c == ';') {
+				if (start != -1) {
+					statements.add(sql.substring(start, i).trim());
+					start = -1;
+				}
+				i++;
+				continue;
+			}
+			if (start == -1) {
+				start = i;
+			}
+			if (c == '\'') {
+				final boolean escaped = i > 0 && (sql.charAt(i - 1) == 'E' || sql.charAt(i - 1) == 'e')
+						&& (i == 1 || !isIdentifier(sql.charAt(i - 2)));
+				i = skipQuoted(sql, i, '\'', escaped);
+			} else if (c == '"') {
+				i = skipQuoted(sql, i, '"', false);
+			} else if (c == '$' && (i == 0 || !isIdentifier(sql.charAt(i - 1)))) {
+				i = skipDollarQuoted(sql, i);
+			} else {
+				i++;
+			}
+		}
+		if (start != -1) {
+			statements.add(sql.substring(start).trim());
+		}
+		return statements;
+	}
+
+	/**
+	 * Short single line description of the statement, used in progress and reports.
+	 */
+	static String preview(final String statement, final int maxLength) {
+		final String line = statement.replaceAll("\\s+", " ");
+		return line.length() <= maxLength ? line : line.substring(0, maxLength - 3) + "...";
+	}
+
+	private static boolean isIdentifier(final char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	private static int skipLineComment(final String sql, final int at) {
+		final int end = sql.indexOf('\n', at);
+		return end == -1 ? sql.length() : end + 1;
+	}
+
+	//Postgres block comments can be nested
+	private static int skipBlockComment(final String sql, final int at) {
+		int depth = 0;
+		int i = at;
+		while (i < sql.length() - 1) {
+			final char c = sql.charAt(i);
+			final char n = sql.charAt(i + 1);
+			if (c == '/' && n == '*') {
+				depth++;
+				i += 2;
+			} else if (c == '*' && n == '/') {
+				depth--;
+				i += 2;
+				if (depth == 0) {
+					return i;
+				}
+			} else {
+				i++;
+			}
+		}
+		return sql.length();
+	}
+
+	private static int skipQuoted(final String sql, final int at, final char quote, final boolean backslash) {
+		int i = at + 1;
+		while (i < sql.length()) {
+			final char c = sql.charAt(i);
+			if (backslash && c == '\\') {
+				i += 2;
+			} else if (c == quote) {
+				if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+					i += 2;
+				} else {
+					return i + 1;
+				}
+			} else {
+				i++;
+			}
+		}
+		return sql.length();
+	}
+
+	private static int skipDollarQuoted(final String sql, final int at) {
+		int i = at + 1;
+		while (i < sql.length()) {
+			final char c = sql.charAt(i);
+			if (c == '$') {
+				break;
+			}
+			if (!(Character.isLetter(c) || c == '_' || i > at + 1 && Character.isDigit(c))) {
+				//positional parameter such as $1 or a plain dollar sign
+				return at + 1;
+			}
+			i++;
+		}
+		if (i >= sql.length()) {
+			return sql.length();
+		}
+		final String tag = sql.substring(at, i + 1);
+		final int end = sql.indexOf(tag, i + 1);
+		return end == -1 ? sql.length() : end + tag.length();
+	}
+}
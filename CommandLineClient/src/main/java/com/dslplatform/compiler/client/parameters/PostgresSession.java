@@ -0,0 +1,257 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Context;
+import org.postgresql.PGProperty;
+import org.postgresql.core.PGStream;
+import org.postgresql.core.ProtocolConnection;
+import org.postgresql.core.v3.DslConnectionFactory;
+import org.postgresql.util.HostSpec;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+import org.postgresql.util.ServerErrorMessage;
+
+import javax.net.SocketFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Single authenticated Postgres session which is reused for all database operations during a run.
+ * Session is kept in the context and closed when the context is closed.
+ * Queries are sent through the simple query protocol, so scripts can contain multiple statements.
+ */
+final class PostgresSession implements Closeable {
+	private static final String CACHE_NAME = "postgres_session";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	final String connectionString;
+	private final PGStream stream;
+	private final ProtocolConnection connection;
+	private boolean broken;
+
+	private PostgresSession(final String connectionString, final PGStream stream, final ProtocolConnection connection) {
+		this.connectionString = connectionString;
+		this.stream = stream;
+		this.connection = connection;
+	}
+
+	static Properties parse(final String connectionString) {
+		final int questionIndex = connectionString.indexOf('?');
+		if (questionIndex == -1) {
+			return new Properties();
+		}
+		final String[] args = connectionString.substring(questionIndex + 1).split("&");
+		final Properties map = new Properties();
+		for (final String a : args) {
+			if (a.length() == 0) {
+				continue;
+			}
+			final String[] vals = a.split("=");
+			if (vals.length != 2) {
+				return null;
+			}
+			map.put(vals[0], vals[1]);
+		}
+		return map;
+	}
+
+	/**
+	 * Open a new session. Connection string is defined without the jdbc:postgresql:// part.
+	 */
+	static PostgresSession open(final String connectionString) throws SQLException {
+		final String[] parts = connectionString.split("/");
+		final Properties props = parse(connectionString);
+		if (props == null || parts.length < 2) {
+			throw new PSQLException("Unable to parse connection properties", PSQLState.CONNECTION_UNABLE_TO_CONNECT);
+		}
+		if (props.getProperty("user") == null) {
+			throw new PSQLException("User not provided in connection string", PSQLState.CONNECTION_UNABLE_TO_CONNECT);
+		}
+		final String server = parts[0];
+		final String database = parts[1].indexOf('?') == -1 ? parts[1] : parts[1].substring(0, parts[1].indexOf('?'));
+		final String[] info = server.split(":");
+		final PGStream stream;
+		try {
+			final HostSpec hostSpec = new HostSpec(info[0], info.length == 2 ? Integer.parseInt(info[1]) : 5432);
+			final int timeout = PGProperty.CONNECT_TIMEOUT.getInt(props) * 1000;
+			stream = new PGStream(SocketFactory.getDefault(), hostSpec, timeout);
+		} catch (NumberFormatException ex) {
+			throw new PSQLException("Invalid port in connection string: " + server, PSQLState.CONNECTION_UNABLE_TO_CONNECT, ex);
+		} catch (IOException ex) {
+			throw new PSQLException("Unable to connect to " + server, PSQLState.CONNECTION_UNABLE_TO_CONNECT, ex);
+		}
+		try {
+			return new PostgresSession(connectionString, stream, DslConnectionFactory.openConnection(stream, database, props));
+		} catch (SQLException ex) {
+			try {
+				stream.close();
+			} catch (IOException ignore) {
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Session for the current connection string.
+	 * Existing session is reused while it's usable and the connection string didn't change.
+	 */
+	static synchronized PostgresSession from(final Context context) throws SQLException {
+		final String connectionString = context.get(PostgresConnection.INSTANCE);
+		final PostgresSession current = context.load(CACHE_NAME);
+		if (current != null) {
+			if (current.connectionString.equals(connectionString) && current.isUsable()) {
+				return current;
+			}
+			current.close();
+			context.cache(CACHE_NAME, null);
+		}
+		final PostgresSession session = open(connectionString);
+		context.log("Opened Postgres session to " + session.connection.getHostSpec());
+		context.cache(CACHE_NAME, session);
+		return session;
+	}
+
+	private synchronized boolean isUsable() {
+		return !broken && !connection.isClosed();
+	}
+
+	/**
+	 * Run the query and collect returned rows as strings.
+	 * All result sets are returned in the same list.
+	 */
+	synchronized List<String[]> query(final String sql, final Context context) throws SQLException {
+		final List<String[]> rows = new ArrayList<String[]>();
+		send(sql);
+		receive(context, rows);
+		return rows;
+	}
+
+	/**
+	 * Execute the script without collecting its results.
+	 */
+	synchronized void execute(final String sql, final Context context) throws SQLException {
+		send(sql);
+		receive(context, null);
+	}
+
+	/**
+	 * Execute a single statement and return its command tag, eg. INSERT 0 5 or ALTER TABLE.
+	 */
+	synchronized String command(final String sql, final Context context) throws SQLException {
+		send(sql);
+		return receive(context, null);
+	}
+
+	private void send(final String sql) throws SQLException {
+		if (broken) {
+			throw new PSQLException("Postgres session is no longer usable", PSQLState.CONNECTION_DOES_NOT_EXIST);
+		}
+		try {
+			final byte[] sqlBytes = sql.getBytes(UTF8);
+			stream.SendChar('Q');
+			stream.SendInteger4(5 + sqlBytes.length);
+			stream.Send(sqlBytes);
+			stream.SendChar(0);
+			stream.flush();
+		} catch (IOException ex) {
+			broken = true;
+			throw new PSQLException("Error sending query to Postgres", PSQLState.CONNECTION_FAILURE, ex);
+		}
+	}
+
+	//errors are reported only after ReadyForQuery, so the session stays usable for the next query
+	private String receive(final Context context, final List<String[]> rows) throws SQLException {
+		ServerErrorMessage error = null;
+		OutOfMemoryError outOfMemory = null;
+		String tag = null;
+		try {
+			while (true) {
+				final int c = stream.ReceiveChar();
+				switch (c) {
+					case 'A':
+						stream.ReceiveInteger4();
+						stream.ReceiveInteger4();
+						stream.ReceiveString();
+						stream.ReceiveString();
+						break;
+					case 'C':
+						final int len = stream.ReceiveInteger4();
+						tag = stream.ReceiveString(len - 5);
+						stream.ReceiveChar();
+						break;
+					case 'D':
+						try {
+							final byte[][] tuple = stream.ReceiveTupleV3();
+							if (rows != null) {
+								final String[] row = new String[tuple.length];
+								for (int i = 0; i < tuple.length; i++) {
+									row[i] = tuple[i] != null ? new String(tuple[i], UTF8) : null;
+								}
+								rows.add(row);
+							}
+						} catch (OutOfMemoryError ex) {
+							//rest of the row was already consumed, so the stream is still in sync.
+							//Skipped rows are fine when results are not used, but query results must be complete
+							if (rows != null && outOfMemory == null) {
+								outOfMemory = ex;
+							}
+						}
+						break;
+					case 'E':
+						final int lenE = stream.ReceiveInteger4();
+						error = new ServerErrorMessage(stream.ReceiveString(lenE - 4), 0);
+						break;
+					case 'I':
+						stream.ReceiveInteger4();
+						break;
+					case 'Z':
+						if (stream.ReceiveInteger4() != 5) {
+							throw new IOException("unexpected length of ReadyForQuery message");
+						}
+						final int status = stream.ReceiveChar();
+						if (status == 'E') {
+							//script failed inside an explicit transaction block
+							send("ROLLBACK");
+							receive(context, null);
+						}
+						if (error != null) {
+							throw new PSQLException(error);
+						}
+						if (outOfMemory != null) {
+							throw new PSQLException("Not enough memory to read query result", PSQLState.UNEXPECTED_ERROR, outOfMemory);
+						}
+						return tag;
+					case 'N':
+						final int lenN = stream.ReceiveInteger4();
+						final ServerErrorMessage warning = new ServerErrorMessage(stream.ReceiveString(lenN - 4), 0);
+						context.log(warning.getMessage());
+						break;
+					default:
+						final int lenSkip = stream.ReceiveInteger4();
+						stream.Skip(lenSkip - 4);
+						break;
+				}
+			}
+		} catch (IOException ex) {
+			broken = true;
+			throw new PSQLException("Error reading response from Postgres", PSQLState.CONNECTION_FAILURE, ex);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		broken = true;
+		try {
+			connection.close();
+		} catch (Exception ignore) {
+		}
+		try {
+			stream.close();
+		} catch (Exception ignore) {
+		}
+	}
+}
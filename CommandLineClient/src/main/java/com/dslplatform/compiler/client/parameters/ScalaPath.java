@@ -4,7 +4,7 @@ import com.dslplatform.compiler.client.*;
 
 import java.io.File;
 
-public enum ScalaPath implements CompileParameter {
+public enum ScalaPath implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -34,6 +34,16 @@ public enum ScalaPath implements CompileParameter {
 		}
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		if (context.contains(INSTANCE)) {
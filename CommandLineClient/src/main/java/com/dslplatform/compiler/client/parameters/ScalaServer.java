@@ -0,0 +1,137 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+public enum ScalaServer implements DependentParameter, ParameterParser {
+	INSTANCE;
+
+	private static final String CACHE_NAME = "fsc_command";
+	private static final int DEFAULT_IDLE_MINUTES = 30;
+
+	@Override
+	public String getAlias() {
+		return "scala-server";
+	}
+
+	@Override
+	public String getUsage() {
+		return "minutes";
+	}
+
+	@Override
+	public Either<Boolean> tryParse(final String name, final String value, final Context context) {
+		if ("scala-server".equals(name)) {
+			context.put(INSTANCE, value);
+			return Either.success(true);
+		} else {
+			return Either.success(false);
+		}
+	}
+
+	/**
+	 * Minutes after which idle compile server will shut down.
+	 */
+	public static int idleMinutes(final Context context) {
+		final String value = context.get(INSTANCE);
+		return value == null || value.length() == 0 ? DEFAULT_IDLE_MINUTES : Integer.parseInt(value);
+	}
+
+	/**
+	 * Find fsc client next to the Scala compiler which will be used and make sure compile server can be reached.
+	 * Server is started (or its caches are reset) before any compilation,
+	 * so that unavailable server is not confused with compilation errors reported through it.
+	 * Client is resolved only once for each compiler, even when asked for from multiple threads.
+	 */
+	public static Either<String> connect(final Context context, final String scalac) {
+		try {
+			return context.load(CACHE_NAME + ":" + scalac, new Callable<Either<String>>() {
+				@Override
+				public Either<String> call() {
+					return startClient(context, scalac);
+				}
+			});
+		} catch (ExitException ex) {
+			return Either.fail("Unable to start Scala compile server client");
+		}
+	}
+
+	private static Either<String> startClient(final Context context, final String scalac) {
+		final File compiler = new File(scalac);
+		final String name = compiler.getName().replace("scalac", "fsc");
+		final String fsc = compiler.getParentFile() == null ? name : new File(compiler.getParentFile(), name).getPath();
+		if (!Utils.testCommand(context, fsc, "Usage: fsc")) {
+			return Either.fail("Unable to find Scala compile server client: " + fsc);
+		}
+		final Either<Utils.CommandResult> reset = Utils.runTool(
+				context,
+				"fsc",
+				fsc,
+				null,
+				Arrays.asList("-max-idle", Integer.toString(idleMinutes(context)), "-reset"),
+				ProcessRunner.NATIVE);
+		if (!reset.isSuccess()) {
+			return Either.fail("Unable to run Scala compile server client: " + reset.whyNot());
+		}
+		if (reset.get().exitCode != 0) {
+			return Either.fail("Unable to reach Scala compile server (exit code " + reset.get().exitCode + "): "
+					+ (reset.get().output + reset.get().error).trim());
+		}
+		return Either.success(fsc);
+	}
+
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		if (!context.contains(INSTANCE)) {
+			return true;
+		}
+		final String value = context.get(INSTANCE);
+		if (value != null && value.length() > 0) {
+			try {
+				if (Integer.parseInt(value) <= 0) {
+					context.error("Scala server idle time must be positive. Found: " + value);
+					return false;
+				}
+			} catch (NumberFormatException ex) {
+				context.error("Invalid number of minutes for scala-server: " + value);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Compile Scala libraries through a long-lived compile server (fsc)";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "Starting scalac and warming up the compiler takes most of the time of Scala builds.\n" +
+				"Scala compile server (fsc) keeps the compiler loaded in a background JVM.\n" +
+				"Server is shared between targets and invocations, and communicates with the client over a local socket.\n" +
+				"Server will shut down after it was idle for specified number of minutes (" + DEFAULT_IDLE_MINUTES + " by default).\n" +
+				"Server is reached before the first compilation. If it can't be reached, regular scalac will be used instead.\n" +
+				"\n" +
+				"Example:\n" +
+				"\tscala-server\n" +
+				"\tscala-server=120";
+	}
+}
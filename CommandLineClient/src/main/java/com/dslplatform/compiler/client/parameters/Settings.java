@@ -6,7 +6,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-public enum Settings implements CompileParameter, ParameterParser {
+public enum Settings implements DependentParameter, ParameterParser {
 	INSTANCE;
 
 	@Override
@@ -87,6 +87,16 @@ public enum Settings implements CompileParameter, ParameterParser {
 		return Either.success(false);
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		final List<String> settings = new ArrayList<String>();
@@ -0,0 +1,111 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.ExitException;
+
+import java.io.*;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public enum SrcJar implements CompileParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "srcjar";
+	}
+
+	@Override
+	public String getUsage() {
+		return "path";
+	}
+
+	/**
+	 * Location of the source archive for the target.
+	 * Archives are placed into the specified folder or, when folder is not specified,
+	 * into a project specific folder of the persistent cache, since temporary folder is cleaned up on each run.
+	 */
+	static File archiveFor(final Context context, final String target) throws ExitException {
+		final String value = context.get(INSTANCE);
+		if (value != null && value.length() > 0) {
+			return new File(value, target + ".srcjar");
+		}
+		final String project = Integer.toHexString(new File(System.getProperty("user.dir")).getAbsolutePath().hashCode());
+		final File folder = new File(new File(TempPath.getCachePath(context), "srcjar"), project);
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			context.error("Unable to create folder for source archives: " + folder.getAbsolutePath());
+			throw new ExitException();
+		}
+		return new File(folder, target + ".srcjar");
+	}
+
+	/**
+	 * Stream all sources into a single compressed archive.
+	 * Archive is first written to a temporary file, so consumers never see a partial archive.
+	 */
+	static void write(final File archive, final Map<String, String> sources) throws IOException {
+		final File temp = new File(archive.getAbsolutePath() + ".tmp");
+		final ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 65536));
+		try {
+			final Writer writer = new OutputStreamWriter(zip, "UTF-8");
+			for (final Map.Entry<String, String> kv : sources.entrySet()) {
+				zip.putNextEntry(new ZipEntry(kv.getKey()));
+				writer.write(kv.getValue());
+				writer.flush();
+				zip.closeEntry();
+			}
+		} finally {
+			zip.close();
+		}
+		if (archive.exists() && !archive.delete() || !temp.renameTo(archive)) {
+			if (!temp.delete()) {
+				temp.deleteOnExit();
+			}
+			throw new IOException("Unable to create source archive: " + archive.getAbsolutePath());
+		}
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		if (context.contains(INSTANCE)) {
+			final String value = context.get(INSTANCE);
+			if (value != null && value.length() > 0) {
+				final File path = new File(value);
+				if (!path.exists() && !path.mkdirs()) {
+					context.error("Unable to create folder for source archives: " + path.getAbsolutePath());
+					return false;
+				}
+				if (!path.isDirectory()) {
+					context.error("Source archive path is not a folder: " + path.getAbsolutePath());
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Save generated sources of each target into a single source archive";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "Generated sources are usually saved as separate files in package folders.\n" +
+				"For large models this creates thousands of files, which is slow on network file systems.\n" +
+				"With this option sources for each target are streamed into a single compressed archive (target.srcjar)\n" +
+				"which build tools can use directly or extract when needed.\n" +
+				"Separate files are written only when a local build step requires them.\n" +
+				"Archives are placed into the specified folder, or into the DSL-Platform-cache folder of the system temporary path.\n" +
+				"\n" +
+				"Example:\n" +
+				"\tsrcjar settings=source-only\n" +
+				"\tsrcjar=/var/build/sources";
+	}
+}
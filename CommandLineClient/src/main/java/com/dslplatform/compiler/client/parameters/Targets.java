@@ -5,8 +5,11 @@ import com.dslplatform.compiler.client.parameters.build.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
-public enum Targets implements CompileParameter, ParameterParser {
+public enum Targets implements DependentParameter, ParameterParser {
 	INSTANCE;
 
 	@Override
@@ -144,6 +147,24 @@ public enum Targets implements CompileParameter, ParameterParser {
 		return Either.success(false);
 	}
 
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		//build actions don't need the DSL compiler during check, only the tools and temporary folder
+		return new CompileParameter[]{
+				TempPath.INSTANCE,
+				Settings.INSTANCE,
+				DotNet.INSTANCE,
+				Mono.INSTANCE,
+				Maven.INSTANCE,
+				JavaPath.INSTANCE,
+				ScalaPath.INSTANCE};
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return new CompileParameter[]{Parse.INSTANCE};
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		final List<String> targets = new ArrayList<String>();
@@ -192,15 +213,81 @@ public enum Targets implements CompileParameter, ParameterParser {
 			context.error("Please check your DSL folder: " + context.get(DslPath.INSTANCE));
 			return false;
 		}
-		if (!Settings.hasSourceOnly(context)) {
+		if (!Settings.hasSourceOnly(context) && !checkActions(context, options)) {
+			return false;
+		}
+		context.cache(CACHE_NAME, options);
+		return true;
+	}
+
+	private static final int MAX_PARALLEL_CHECKS = 4;
+
+	private static boolean checkActions(final Context context, final List<Option> options) throws ExitException {
+		//checks can prompt for download confirmation, so they are run in parallel only when prompts are not possible
+		if (options.size() == 1 || context.canInteract()) {
 			for (final Option o : options) {
 				if (!o.action.check(context)) {
 					return false;
 				}
 			}
+			return true;
 		}
-		context.cache(CACHE_NAME, options);
-		return true;
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(options.size(), MAX_PARALLEL_CHECKS));
+		final Map<Option, Future<Boolean>> results = new LinkedHashMap<Option, Future<Boolean>>();
+		try {
+			for (final Option o : options) {
+				results.put(o, executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws ExitException {
+						context.show("Preparing dependencies for " + o.value + " ...");
+						final long startAt = System.currentTimeMillis();
+						final boolean success = o.action.check(context);
+						final long duration = System.currentTimeMillis() - startAt;
+						if (success) {
+							context.show("Dependencies for " + o.value + " prepared in " + duration + "ms");
+						}
+						return success;
+					}
+				}));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		final List<String> failures = new ArrayList<String>();
+		boolean exitRequested = false;
+		for (final Map.Entry<Option, Future<Boolean>> kv : results.entrySet()) {
+			try {
+				if (!kv.getValue().get()) {
+					failures.add(kv.getKey().value);
+				}
+			} catch (ExecutionException ex) {
+				if (!(ex.getCause() instanceof ExitException)) {
+					context.error("Unexpected error while preparing dependencies for " + kv.getKey().value);
+					context.error(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+				}
+				exitRequested = true;
+				failures.add(kv.getKey().value);
+			} catch (InterruptedException ex) {
+				context.error(ex);
+				exitRequested = true;
+				failures.add(kv.getKey().value);
+			}
+		}
+		if (failures.isEmpty()) {
+			return true;
+		}
+		final StringBuilder summary = new StringBuilder("Unable to prepare dependencies for: ");
+		for (int i = 0; i < failures.size(); i++) {
+			if (i > 0) {
+				summary.append(", ");
+			}
+			summary.append(failures.get(i));
+		}
+		context.error(summary.toString());
+		if (exitRequested) {
+			throw new ExitException();
+		}
+		return false;
 	}
 
 	@Override
@@ -212,35 +299,231 @@ public enum Targets implements CompileParameter, ParameterParser {
 		compile(context, targets);
 	}
 
-	private void compile(Context context, List<Option> targets) throws ExitException {
+	private static class Stage {
+		final Option target;
+		final Map<String, String> files;
+		final long requestTime;
+		long writeTime;
+		boolean written;
+
+		Stage(final Option target, final Map<String, String> files, final long requestTime) {
+			this.target = target;
+			this.files = files;
+			this.requestTime = requestTime;
+		}
+	}
+
+	private static final Stage END = new Stage(null, null, 0);
+	private static final int PIPELINE_CAPACITY = 1;
+
+	private static Thread startStage(final String name, final AtomicReference<Exception> failure, final Callable<Void> stage) {
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					stage.call();
+				} catch (InterruptedException ignore) {
+				} catch (Exception ex) {
+					failure.compareAndSet(null, ex);
+				}
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	private static void writeSources(final Context context, final String temp, final Stage stage) throws ExitException {
+		final long start = System.currentTimeMillis();
+		try {
+			for (final Map.Entry<String, String> kv : stage.files.entrySet()) {
+				final String fullName = stage.target.name() + "/" + kv.getKey() + stage.target.extension;
+				saveFile(context, temp, stage.target.convertToPath, fullName, kv.getValue());
+			}
+		} catch (IOException e) {
+			context.error("Can't create temporary target file. Compilation results can't be saved locally.");
+			context.error(e);
+			throw new ExitException();
+		}
+		stage.writeTime += System.currentTimeMillis() - start;
+		stage.written = true;
+	}
+
+	private static void writeArchive(final Context context, final Stage stage) throws ExitException {
+		final long start = System.currentTimeMillis();
+		final File archive = SrcJar.archiveFor(context, stage.target.value);
+		try {
+			SrcJar.write(archive, sourcePaths(stage));
+		} catch (IOException e) {
+			context.error("Can't create source archive for " + stage.target.value + ".");
+			context.error(e);
+			throw new ExitException();
+		}
+		stage.writeTime += System.currentTimeMillis() - start;
+		context.show("Sources for " + stage.target.value + " saved to: " + archive.getAbsolutePath());
+	}
+
+	private static Map<String, String> sourcePaths(final Stage stage) {
+		final Map<String, String> sources = new LinkedHashMap<String, String>();
+		for (final Map.Entry<String, String> kv : stage.files.entrySet()) {
+			sources.put(sourcePath(stage.target.convertToPath, kv.getKey() + stage.target.extension), kv.getValue());
+		}
+		return sources;
+	}
+
+	private static final long PIPELINE_POLL = 100;
+
+	/**
+	 * Signal end of stages. Blocks until the consumer accepts it, unless the pipeline was stopped.
+	 */
+	static <T> void putEnd(final BlockingQueue<T> queue, final T end, final AtomicBoolean stopped) {
+		try {
+			while (!stopped.get() && !queue.offer(end, PIPELINE_POLL, TimeUnit.MILLISECONDS)) {
+			}
+		} catch (InterruptedException ignore) {
+		}
+	}
+
+	/**
+	 * Next stage from the queue. When producer is gone without signaling the end, end is returned
+	 * so consumer doesn't wait forever.
+	 */
+	static <T> T next(final BlockingQueue<T> queue, final T end, final Thread producer) throws InterruptedException {
+		while (true) {
+			final T stage = queue.poll(PIPELINE_POLL, TimeUnit.MILLISECONDS);
+			if (stage != null) {
+				return stage;
+			}
+			if (!producer.isAlive()) {
+				final T last = queue.poll();
+				return last != null ? last : end;
+			}
+		}
+	}
+
+	/**
+	 * Compiler requests, writing of sources and build actions run as a pipeline.
+	 * While sources of target N are being compiled, compiler is already processing target N+1.
+	 * Build actions run on the calling thread, since they can interact with the user.
+	 * In memory mode sources of targets which support it are not written to disk,
+	 * unless in memory build turns out not to be possible.
+	 * In srcjar mode sources are streamed into a single archive per target
+	 * and separate files are written only when a build action requires them.
+	 */
+	private void compile(final Context context, final List<Option> targets) throws ExitException {
 		final List<File> dsls = DslPath.getDslPaths(context);
 		final List<String> settings = Settings.get(context);
 		final String temp = TempPath.getTempProjectPath(context).getAbsolutePath();
 		final boolean sourceOnly = Settings.hasSourceOnly(context);
-		for (final Option t : targets) {
-			Map<String, String> files =
-					DslCompiler.compile(
-							context,
-							t.value,
-							settings,
-							context.get(Namespace.INSTANCE),
-							context.get(Version.INSTANCE),
-							dsls);
-			try {
-				for (final Map.Entry<String, String> kv : files.entrySet()) {
-					final String fullName = t.name() + "/" + kv.getKey() + t.extension;
-					saveFile(context, temp, t.convertToPath, fullName, kv.getValue());
+		final boolean inMemory = !sourceOnly && context.contains(InMemory.INSTANCE);
+		final boolean srcJar = context.contains(SrcJar.INSTANCE);
+		final boolean keepSources = !inMemory || InMemory.keepSources(context);
+		final BlockingQueue<Stage> generated = new ArrayBlockingQueue<Stage>(PIPELINE_CAPACITY);
+		final BlockingQueue<Stage> written = new ArrayBlockingQueue<Stage>(PIPELINE_CAPACITY);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		final AtomicBoolean stopped = new AtomicBoolean();
+		final long startAt = System.currentTimeMillis();
+		final Thread requests = startStage("dsl-compiler-requests", failure, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				try {
+					for (final Option t : targets) {
+						final long start = System.currentTimeMillis();
+						final Map<String, String> files =
+								DslCompiler.compile(
+										context,
+										t.value,
+										settings,
+										context.get(Namespace.INSTANCE),
+										context.get(Version.INSTANCE),
+										dsls);
+						generated.put(new Stage(t, files, System.currentTimeMillis() - start));
+					}
+				} finally {
+					putEnd(generated, END, stopped);
 				}
-			} catch (IOException e) {
-				context.error("Can't create temporary target file. Compilation results can't be saved locally.");
-				context.error(e);
-				throw new ExitException();
+				return null;
+			}
+		});
+		final Thread writer = startStage("dsl-compiler-writer", failure, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				try {
+					Stage stage;
+					while ((stage = next(generated, END, requests)) != END) {
+						final boolean buildsInMemory = inMemory && stage.target.action instanceof InMemoryBuildAction;
+						if (srcJar) {
+							writeArchive(context, stage);
+							if (!sourceOnly && stage.target.action != null && !buildsInMemory) {
+								writeSources(context, temp, stage);
+							}
+						} else if (keepSources || !buildsInMemory) {
+							writeSources(context, temp, stage);
+						}
+						written.put(stage);
+					}
+				} finally {
+					putEnd(written, END, stopped);
+				}
+				return null;
 			}
-			context.notify("TARGET", t);
-			if (!sourceOnly && t.action != null) {
-				t.action.build(new File(temp, t.name()), context);
+		});
+		long requestTotal = 0;
+		long writeTotal = 0;
+		long buildTotal = 0;
+		try {
+			Stage stage;
+			while ((stage = next(written, END, writer)) != END) {
+				context.notify("TARGET", stage.target);
+				final long start = System.currentTimeMillis();
+				if (!sourceOnly && stage.target.action != null) {
+					final boolean builtInMemory = inMemory
+							&& stage.target.action instanceof InMemoryBuildAction
+							&& ((InMemoryBuildAction) stage.target.action).build(sourcePaths(stage), context);
+					if (!builtInMemory) {
+						if (!stage.written) {
+							writeSources(context, temp, stage);
+						}
+						stage.target.action.build(new File(temp, stage.target.name()), context);
+					}
+				}
+				final long buildTime = System.currentTimeMillis() - start;
+				context.log("Target " + stage.target.value + ": compiler " + stage.requestTime + "ms, write "
+						+ stage.writeTime + "ms, build " + buildTime + "ms");
+				requestTotal += stage.requestTime;
+				writeTotal += stage.writeTime;
+				buildTotal += buildTime;
 			}
+		} catch (InterruptedException ex) {
+			context.error(ex);
+			throw new ExitException();
+		} finally {
+			stopped.set(true);
+			requests.interrupt();
+			writer.interrupt();
 		}
+		final Exception error = failure.get();
+		if (error instanceof ExitException) {
+			throw (ExitException) error;
+		} else if (error != null) {
+			context.error("Unexpected error while processing targets");
+			context.error(error);
+			throw new ExitException();
+		}
+		if (targets.size() > 1) {
+			context.show("Targets processed in " + (System.currentTimeMillis() - startAt) + "ms (compiler: "
+					+ requestTotal + "ms, write: " + writeTotal + "ms, build: " + buildTotal + "ms)");
+		}
+		Jobs.report(context);
+	}
+
+	private static String sourcePath(final boolean escapeName, final String name) {
+		final String cleanName = name.replace(':', '_').replace('<', '_').replace('>', '_');
+		if (!escapeName) {
+			return cleanName;
+		}
+		final String nameOnly = cleanName.contains(".") ? cleanName.substring(0, cleanName.lastIndexOf('.')) : cleanName;
+		return nameOnly.replace(".", "/").replace("\\", "/") + cleanName.substring(nameOnly.length());
 	}
 
 	private static void saveFile(
@@ -249,11 +532,7 @@ public enum Targets implements CompileParameter, ParameterParser {
 			final boolean escapeName,
 			final String name,
 			final String content) throws ExitException, IOException {
-		final String cleanName = name.replace(':', '_').replace('<', '_').replace('>', '_');
-		final String nameOnly = cleanName.contains(".") ? cleanName.substring(0, cleanName.lastIndexOf('.')) : cleanName;
-		final File file = escapeName
-				? new File(temp, nameOnly.replace(".", "/").replace("\\", "/") + cleanName.substring(nameOnly.length()))
-				: new File(temp, cleanName);
+		final File file = new File(temp, sourcePath(escapeName, name));
 		final File parentPath = file.getParentFile();
 		if (!parentPath.exists()) {
 			if (!parentPath.mkdirs()) {
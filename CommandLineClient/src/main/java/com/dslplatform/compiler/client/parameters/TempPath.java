@@ -5,8 +5,9 @@ import com.dslplatform.compiler.client.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
-public enum TempPath implements CompileParameter {
+public enum TempPath implements DependentParameter {
 	INSTANCE;
 
 	@Override
@@ -28,9 +29,13 @@ public enum TempPath implements CompileParameter {
 	public static File getTempRootPath(final Context context) throws ExitException {
 		File temp = context.load(CACHE_NAME);
 		if (temp == null) {
-			if (prepareSystemTempPath(context)) {
-				temp = context.load(CACHE_NAME);
-			}
+			//system path is prepared only once, even when asked for from multiple threads
+			temp = context.load(CACHE_NAME, new Callable<File>() {
+				@Override
+				public File call() {
+					return prepareSystemTempPath(context) ? context.<File>load(CACHE_NAME) : null;
+				}
+			});
 			if (temp == null) {
 				context.error("Unable to setup temporary path");
 				throw new ExitException();
@@ -39,6 +44,27 @@ public enum TempPath implements CompileParameter {
 		return context.contains(INSTANCE) ? temp : temp.getParentFile();
 	}
 
+	private static final String PERSISTENT_CACHE_NAME = "persistent_cache_path";
+
+	/**
+	 * Location for state which must survive between runs (update checks, build caches...).
+	 * Temporary path is cleaned up on each run, so this folder is kept outside of it, even when custom temporary path is used.
+	 */
+	public static File getCachePath(final Context context) throws ExitException {
+		final File path = context.load(PERSISTENT_CACHE_NAME, new Callable<File>() {
+			@Override
+			public File call() {
+				final File cache = new File(System.getProperty("java.io.tmpdir"), "DSL-Platform-cache");
+				return cache.isDirectory() || cache.mkdirs() ? cache : null;
+			}
+		});
+		if (path == null) {
+			context.error("Unable to setup cache path");
+			throw new ExitException();
+		}
+		return path;
+	}
+
 	private static boolean prepareSystemTempPath(final Context context) {
 		try {
 			final String projectLocation = System.getProperty("user.dir");
@@ -82,7 +108,17 @@ public enum TempPath implements CompileParameter {
 	}
 
 	@Override
-	public boolean check(final Context context) {
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public boolean check(final Context context) throws ExitException {
 		if (context.contains(INSTANCE)) {
 			final String value = context.get(INSTANCE);
 			if (value != null && value.length() > 0) {
@@ -137,6 +173,8 @@ public enum TempPath implements CompileParameter {
 	@Override
 	public String getDetailedDescription() {
 		return "Files downloaded from DSL Platform will be stored to temporary path.\n" +
-				"When unspecified /DSL-Platform folder in system default temporary path will be used.";
+				"When unspecified /DSL-Platform folder in system default temporary path will be used.\n" +
+				"State which is reused between runs (update checks, build caches) is kept in /DSL-Platform-cache\n" +
+				"folder of the system temporary path, since temporary path is cleaned up on each run.";
 	}
 }
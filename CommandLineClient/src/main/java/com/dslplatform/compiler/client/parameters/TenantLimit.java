@@ -0,0 +1,76 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.DependentParameter;
+
+public enum TenantLimit implements DependentParameter {
+	INSTANCE;
+
+	private static final int DEFAULT_LIMIT = 4;
+
+	@Override
+	public String getAlias() {
+		return "tenant-limit";
+	}
+
+	@Override
+	public String getUsage() {
+		return "count";
+	}
+
+	/**
+	 * Number of tenant databases which are processed at the same time.
+	 */
+	public static int get(final Context context) {
+		final String value = context.get(INSTANCE);
+		return value == null || value.length() == 0 ? DEFAULT_LIMIT : Integer.parseInt(value);
+	}
+
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		if (!context.contains(INSTANCE)) {
+			return true;
+		}
+		final String value = context.get(INSTANCE);
+		try {
+			if (value == null || Integer.parseInt(value) <= 0) {
+				context.error("Tenant limit must be a positive number. Found: " + value);
+				return false;
+			}
+		} catch (NumberFormatException ex) {
+			context.error("Tenant limit must be a positive number. Found: " + value);
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Maximum number of tenant databases migrated at the same time";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "When migrating multiple tenant databases, databases are checked and migrated in parallel.\n" +
+				"Limit protects the database servers (and connection poolers) from too many concurrent sessions.\n" +
+				"By default " + DEFAULT_LIMIT + " databases are processed at the same time.\n" +
+				"\n" +
+				"Example:\n" +
+				"\ttenants=tenants.txt tenant-limit=16 apply";
+	}
+}
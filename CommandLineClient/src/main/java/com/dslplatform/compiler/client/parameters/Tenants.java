@@ -0,0 +1,456 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+public enum Tenants implements DependentParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "tenants";
+	}
+
+	@Override
+	public String getUsage() {
+		return "file_or_list";
+	}
+
+	private static final String CACHE_NAME = "tenant_connections";
+
+	static final class Tenant {
+		final String connectionString;
+		final String name;
+		String version;
+		String hash;
+		String compiler;
+		DatabaseInfo snapshot;
+		String script;
+		int migration;
+		String status;
+		String error;
+		long duration;
+
+		Tenant(final String connectionString) {
+			this.connectionString = connectionString;
+			//credentials are not shown in the report
+			final int question = connectionString.indexOf('?');
+			this.name = question == -1 ? connectionString : connectionString.substring(0, question);
+		}
+	}
+
+	private interface Work {
+		void process(Tenant tenant) throws Exception;
+	}
+
+	/**
+	 * Queries used while checking a tenant database.
+	 */
+	interface TenantDatabase {
+		String version() throws SQLException;
+
+		/**
+		 * Hash of the last applied DSL and version of the compiler which applied it.
+		 */
+		String[] dslHashAndCompiler() throws SQLException;
+
+		DatabaseInfo snapshot() throws SQLException, ExitException;
+	}
+
+	private static TenantDatabase database(final PostgresSession session, final Context context) {
+		return new TenantDatabase() {
+			@Override
+			public String version() throws SQLException {
+				return PostgresConnection.queryVersion(session, context);
+			}
+
+			@Override
+			public String[] dslHashAndCompiler() throws SQLException {
+				return PostgresConnection.queryDslHashAndVersion(session, context);
+			}
+
+			@Override
+			public DatabaseInfo snapshot() throws SQLException, ExitException {
+				return PostgresConnection.queryDatabaseInfo(session, context);
+			}
+		};
+	}
+
+	/**
+	 * Detect Postgres version, the hash of the last applied DSL and the compiler which applied it.
+	 * When hash can't be calculated in the database, full snapshot is loaded and hashed locally.
+	 */
+	static void inspect(final Tenant tenant, final TenantDatabase database, final Context context) throws SQLException, ExitException {
+		tenant.version = database.version();
+		try {
+			final String[] hash = database.dslHashAndCompiler();
+			tenant.hash = hash[0];
+			tenant.compiler = hash[1];
+		} catch (SQLException ex) {
+			context.log("Unable to calculate DSL hash in " + tenant.name + ": " + ex.getMessage() + ". Loading previous DSL instead.");
+			tenant.snapshot = database.snapshot();
+			tenant.hash = tenant.snapshot.dsl.isEmpty() ? "" : DatabaseInfo.hash(tenant.snapshot.dsl);
+			tenant.compiler = tenant.snapshot.compilerVersion == null ? "" : tenant.snapshot.compilerVersion;
+		}
+	}
+
+	static List<String> parse(final String value, final Context context) {
+		final File file = new File(value);
+		final String content;
+		if (file.isFile()) {
+			final Either<String> read = Utils.readFile(file);
+			if (!read.isSuccess()) {
+				context.error("Unable to read tenants file: " + file.getAbsolutePath());
+				return null;
+			}
+			content = read.get();
+		} else {
+			content = value.replace(',', '\n');
+		}
+		final List<String> connections = new ArrayList<String>();
+		for (final String row : content.split("\n")) {
+			final String line = row.trim();
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+			if (!line.contains("/")) {
+				context.error("Invalid tenant connection string: " + line + ". An example: localhost:5432/Tenant1?user=migration");
+				return null;
+			}
+			if (!connections.contains(line)) {
+				connections.add(line);
+			}
+		}
+		return connections;
+	}
+
+	private static void processAll(
+			final Context context,
+			final List<Tenant> tenants,
+			final int limit,
+			final String description,
+			final Work work) throws ExitException {
+		if (tenants.isEmpty()) {
+			return;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(limit, tenants.size()), new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread t = new Thread(r, "tenant-" + description);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		final List<Future<?>> futures = new ArrayList<Future<?>>(tenants.size());
+		try {
+			for (final Tenant t : tenants) {
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						final long start = System.currentTimeMillis();
+						try {
+							work.process(t);
+						} catch (Exception ex) {
+							t.status = "FAILED";
+							t.error = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getName();
+						}
+						final long duration = System.currentTimeMillis() - start;
+						t.duration += duration;
+						context.log(description + " " + t.name + " finished in " + duration + "ms");
+					}
+				}));
+			}
+			for (final Future<?> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException ex) {
+			throw new ExitException();
+		} catch (ExecutionException ex) {
+			context.error(ex);
+			throw new ExitException();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static List<Tenant> withoutFailures(final List<Tenant> tenants) {
+		final List<Tenant> result = new ArrayList<Tenant>(tenants.size());
+		for (final Tenant t : tenants) {
+			if (t.error == null) {
+				result.add(t);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Databases are grouped by Postgres version, the hash of the last applied DSL and the compiler which applied it.
+	 * Databases which already have the current DSL applied with the current compiler are marked as unchanged.
+	 */
+	static Map<String, List<Tenant>> group(
+			final List<Tenant> tenants,
+			final String currentHash,
+			final String currentCompiler) {
+		final Map<String, List<Tenant>> groups = new LinkedHashMap<String, List<Tenant>>();
+		for (final Tenant t : withoutFailures(tenants)) {
+			if (currentHash.equals(t.hash) && currentCompiler.length() > 0 && currentCompiler.equals(t.compiler)) {
+				t.status = "UNCHANGED";
+				continue;
+			}
+			final String key = t.version + ":" + t.compiler + ":" + t.hash;
+			List<Tenant> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<Tenant>();
+				groups.put(key, group);
+			}
+			group.add(t);
+		}
+		return groups;
+	}
+
+	/**
+	 * Migration is created once per group, with a single compiler invocation.
+	 */
+	private static void createMigrations(
+			final Context context,
+			final List<Tenant> tenants,
+			final String currentHash) throws ExitException {
+		final Map<String, List<Tenant>> groups = group(tenants, currentHash, DslCompiler.version(context));
+		if (groups.isEmpty()) {
+			return;
+		}
+		final File path = Migration.migrationPath(context);
+		final List<File> currentDsl = DslPath.getDslPaths(context);
+		final long timestamp = new Date().getTime();
+		int index = 0;
+		//compiler uses the same temporary files for the previous DSL, so migrations are created one by one
+		for (final List<Tenant> group : groups.values()) {
+			index++;
+			final Tenant first = group.get(0);
+			final String failure;
+			String script = null;
+			final long start = System.currentTimeMillis();
+			PostgresSession session = null;
+			try {
+				final DatabaseInfo info;
+				if (first.snapshot != null) {
+					info = first.snapshot;
+				} else {
+					session = PostgresSession.open(first.connectionString);
+					info = PostgresConnection.queryDatabaseInfo(session, context);
+				}
+				context.show("Creating SQL migration " + index + " for " + group.size() + " database(s) ...");
+				final Either<String> migration = DslCompiler.migration(context, info, currentDsl);
+				if (migration.isSuccess()) {
+					script = migration.get();
+					failure = null;
+				} else {
+					failure = "Error creating SQL migration: " + migration.explainError();
+				}
+			} catch (Exception ex) {
+				failGroup(group, "Unable to load previous DSL: " + ex.getMessage());
+				continue;
+			} finally {
+				if (session != null) {
+					session.close();
+				}
+			}
+			first.duration += System.currentTimeMillis() - start;
+			if (failure != null) {
+				failGroup(group, failure);
+				continue;
+			}
+			if (script.length() == 0) {
+				for (final Tenant t : group) {
+					t.status = "UNCHANGED";
+				}
+				continue;
+			}
+			final File sqlFile = new File(path, "postgres-sql-migration-" + timestamp + "-" + index + ".sql");
+			try {
+				Utils.saveFile(context, sqlFile, script);
+			} catch (IOException ex) {
+				context.error("Error saving migration script to " + sqlFile.getAbsolutePath());
+				context.error(ex);
+				throw new ExitException();
+			}
+			context.show("Migration " + index + " for " + group.size() + " database(s) saved to " + sqlFile.getAbsolutePath());
+			for (final Tenant t : group) {
+				t.script = script;
+				t.migration = index;
+				t.status = "PENDING";
+			}
+		}
+	}
+
+	private static void failGroup(final List<Tenant> group, final String error) {
+		for (final Tenant t : group) {
+			t.status = "FAILED";
+			t.error = error;
+		}
+	}
+
+	private static void confirmDestructive(final Context context, final List<Tenant> pending) throws ExitException {
+		final Set<Integer> destructive = new TreeSet<Integer>();
+		for (final Tenant t : pending) {
+			if (ApplyMigration.hasDestructive(Migration.extractDescriptions(t.script))) {
+				destructive.add(t.migration);
+			}
+		}
+		if (destructive.isEmpty()) {
+			return;
+		}
+		context.show("Destructive migration detected in migration(s): " + destructive);
+		if (context.contains(Force.INSTANCE)) {
+			context.show("Applying destructive migration due to force option.");
+		} else if (!context.canInteract()) {
+			context.error("Use force option to apply database migration.");
+			throw new ExitException();
+		} else {
+			final String input = context.ask("Apply migration to all tenant databases (y/N):");
+			if (!"y".equalsIgnoreCase(input)) {
+				context.error("Migration canceled.");
+				throw new ExitException();
+			}
+		}
+	}
+
+	private static void report(final Context context, final List<Tenant> tenants) throws ExitException {
+		final Map<String, Integer> totals = new TreeMap<String, Integer>();
+		context.show();
+		context.show("Tenant migration report:");
+		for (final Tenant t : tenants) {
+			final StringBuilder sb = new StringBuilder();
+			sb.append(String.format("  %-9s %8dms  %s", t.status, t.duration, t.name));
+			if (t.migration > 0) {
+				sb.append(" (migration ").append(t.migration).append(")");
+			}
+			if (t.error != null) {
+				sb.append(": ").append(t.error);
+				context.error(sb.toString());
+			} else {
+				context.show(sb.toString());
+			}
+			final Integer count = totals.get(t.status);
+			totals.put(t.status, count == null ? 1 : count + 1);
+		}
+		context.show("Tenants: " + tenants.size() + " " + totals);
+		if (totals.containsKey("FAILED")) {
+			throw new ExitException();
+		}
+	}
+
+	private static void migrate(final Context context, final List<String> connections) throws ExitException {
+		final List<Tenant> tenants = new ArrayList<Tenant>(connections.size());
+		for (final String cs : connections) {
+			tenants.add(new Tenant(cs));
+		}
+		final int limit = TenantLimit.get(context);
+		final String currentHash = DatabaseInfo.hash(DslPath.getCurrentDsl(context));
+		context.show("Checking " + tenants.size() + " tenant database(s) ...");
+		processAll(context, tenants, limit, "Checking", new Work() {
+			@Override
+			public void process(final Tenant tenant) throws Exception {
+				final PostgresSession session = PostgresSession.open(tenant.connectionString);
+				try {
+					inspect(tenant, database(session, context), context);
+				} finally {
+					session.close();
+				}
+			}
+		});
+		createMigrations(context, tenants, currentHash);
+		if (context.contains(ApplyMigration.INSTANCE)) {
+			final List<Tenant> pending = new ArrayList<Tenant>();
+			for (final Tenant t : tenants) {
+				if ("PENDING".equals(t.status)) {
+					pending.add(t);
+				}
+			}
+			if (!pending.isEmpty()) {
+				confirmDestructive(context, pending);
+				context.show("Applying migrations to " + pending.size() + " tenant database(s) ...");
+				processAll(context, pending, limit, "Migrating", new Work() {
+					@Override
+					public void process(final Tenant tenant) throws Exception {
+						final PostgresSession session = PostgresSession.open(tenant.connectionString);
+						try {
+							session.execute(tenant.script, context);
+						} finally {
+							session.close();
+						}
+						tenant.status = "MIGRATED";
+					}
+				});
+			}
+		}
+		report(context, tenants);
+	}
+
+	@Override
+	public CompileParameter[] getCheckDependencies() {
+		return NONE;
+	}
+
+	@Override
+	public CompileParameter[] getRunDependencies() {
+		//tenants are migrated at the same point as the main database
+		return new CompileParameter[]{Parse.INSTANCE, Targets.INSTANCE, ApplyMigration.INSTANCE};
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		if (!context.contains(INSTANCE)) {
+			return true;
+		}
+		final String value = context.get(INSTANCE);
+		if (value == null || value.length() == 0) {
+			context.error("Tenants not provided. Specify a file with connection strings or a comma separated list.");
+			return false;
+		}
+		final List<String> connections = parse(value, context);
+		if (connections == null) {
+			return false;
+		}
+		if (connections.isEmpty()) {
+			context.error("No tenant connection strings found in: " + value);
+			return false;
+		}
+		context.cache(CACHE_NAME, connections);
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) throws ExitException {
+		final List<String> connections = context.load(CACHE_NAME);
+		if (connections != null) {
+			migrate(context, connections);
+		}
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Create and apply migrations for multiple tenant databases";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "When the same model is used in many Postgres databases (one database per tenant),\n" +
+				"tenants can be migrated in a single invocation.\n" +
+				"Tenants are specified as a file with one connection string per line or as a comma separated list.\n" +
+				"Databases are grouped by the last applied DSL, so migration is created only once for each distinct group.\n" +
+				"Migration scripts are saved to the SQL path and, with apply option, applied in parallel.\n" +
+				"Report with status and duration for each database is shown at the end.\n" +
+				"Number of databases processed at the same time is limited with tenant-limit option.\n" +
+				"\n" +
+				"Example:\n" +
+				"\ttenants=tenants.txt migration\n" +
+				"\ttenants=tenants.txt tenant-limit=16 apply force\n" +
+				"\ttenants=db1:5432/Tenant1?user=migration,db2:5432/Tenant2?user=migration";
+	}
+}
@@ -0,0 +1,135 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.ExitException;
+
+import java.io.*;
+import java.util.Properties;
+
+public enum UpdateInterval implements CompileParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "update-interval";
+	}
+
+	@Override
+	public String getUsage() {
+		return "minutes";
+	}
+
+	private static final String CHECKS_FILE = "update-checks.properties";
+
+	private static long intervalMillis(final Context context) {
+		final String value = context.get(INSTANCE);
+		return value == null ? 0 : Long.parseLong(value) * 60 * 1000;
+	}
+
+	private static File checksFile(final Context context) {
+		try {
+			return new File(TempPath.getCachePath(context), CHECKS_FILE);
+		} catch (ExitException ignore) {
+			return null;
+		}
+	}
+
+	private static synchronized Properties loadChecks(final File file) {
+		final Properties checks = new Properties();
+		if (file != null && file.exists()) {
+			try {
+				final InputStream is = new FileInputStream(file);
+				try {
+					checks.load(is);
+				} finally {
+					is.close();
+				}
+			} catch (IOException ignore) {
+			}
+		}
+		return checks;
+	}
+
+	/**
+	 * Last modified info from the previous check, if it was done within the update interval.
+	 */
+	public static Long recentCheck(final Context context, final String name) {
+		final long interval = intervalMillis(context);
+		if (interval <= 0 || name == null) {
+			return null;
+		}
+		final String value = loadChecks(checksFile(context)).getProperty(name);
+		if (value == null) {
+			return null;
+		}
+		final String[] parts = value.split(";");
+		try {
+			final long checkedAt = Long.parseLong(parts[0]);
+			final long now = System.currentTimeMillis();
+			return parts.length == 2 && checkedAt <= now && now - checkedAt < interval
+					? Long.parseLong(parts[1])
+					: null;
+		} catch (NumberFormatException ignore) {
+			return null;
+		}
+	}
+
+	public static synchronized void rememberCheck(final Context context, final String name, final long lastModified) {
+		if (intervalMillis(context) <= 0 || name == null || lastModified == 0) {
+			return;
+		}
+		final File file = checksFile(context);
+		if (file == null) {
+			return;
+		}
+		final Properties checks = loadChecks(file);
+		checks.setProperty(name, System.currentTimeMillis() + ";" + lastModified);
+		try {
+			final OutputStream os = new FileOutputStream(file);
+			try {
+				checks.store(os, "Last modified checks from DSL Platform");
+			} finally {
+				os.close();
+			}
+		} catch (IOException ex) {
+			context.log("Unable to save update check info: " + ex.getMessage());
+		}
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		if (context.contains(INSTANCE)) {
+			final String value = context.get(INSTANCE);
+			try {
+				if (value == null || Long.parseLong(value) < 0) {
+					context.error("Update interval must be a non-negative number of minutes. Found: " + value);
+					return false;
+				}
+			} catch (NumberFormatException ex) {
+				context.error("Update interval must be a non-negative number of minutes. Found: " + value);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Skip checking for new compiler and dependency versions for specified number of minutes";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "With download option compiler and dependencies are checked for newer versions on each run.\n" +
+				"Update interval specifies how long (in minutes) the result of the last check is considered fresh.\n" +
+				"While fresh, no request is sent to the DSL Platform.\n" +
+				"\n" +
+				"Example:\n" +
+				"\tupdate-interval=1440";
+	}
+}
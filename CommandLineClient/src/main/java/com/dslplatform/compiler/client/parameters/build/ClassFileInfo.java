@@ -0,0 +1,198 @@
+package com.dslplatform.compiler.client.parameters.build;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal class file reader.
+ * Extracts class name, SourceFile attribute, classes referenced from the constant pool
+ * and values of compile-time constant fields.
+ * Constants are inlined by javac into classes which use them, so their usage can't be detected from references.
+ */
+class ClassFileInfo {
+	final String name;
+	final String sourceFile;
+	final Set<String> references;
+	final String constants;
+
+	private ClassFileInfo(final String name, final String sourceFile, final Set<String> references, final String constants) {
+		this.name = name;
+		this.sourceFile = sourceFile;
+		this.references = references;
+		this.constants = constants;
+	}
+
+	private static final Pattern DESCRIPTOR_TYPE = Pattern.compile("L([A-Za-z_$][\\w$/]*);");
+
+	/**
+	 * Path of the source file relative to the source root, based on the package and SourceFile attribute.
+	 */
+	String sourcePath() {
+		if (sourceFile == null) {
+			return null;
+		}
+		final int slash = name.lastIndexOf('/');
+		return slash == -1 ? sourceFile : name.substring(0, slash + 1) + sourceFile;
+	}
+
+	private static void skipAttributes(final DataInputStream dis) throws IOException {
+		final int count = dis.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			dis.readUnsignedShort();
+			skip(dis, dis.readInt());
+		}
+	}
+
+	private static void skip(final DataInputStream dis, final long bytes) throws IOException {
+		long left = bytes;
+		while (left > 0) {
+			final long skipped = dis.skip(left);
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			left -= skipped;
+		}
+	}
+
+	private static void skipMembers(final DataInputStream dis) throws IOException {
+		final int count = dis.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			dis.readUnsignedShort();
+			dis.readUnsignedShort();
+			dis.readUnsignedShort();
+			skipAttributes(dis);
+		}
+	}
+
+	static ClassFileInfo read(final File file) throws IOException {
+		final DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			return read(dis);
+		} finally {
+			dis.close();
+		}
+	}
+
+	static ClassFileInfo read(final DataInputStream dis) throws IOException {
+		if (dis.readInt() != 0xCAFEBABE) {
+			throw new IOException("Invalid class file");
+		}
+		dis.readUnsignedShort();
+		dis.readUnsignedShort();
+		final int poolSize = dis.readUnsignedShort();
+		final String[] utf8 = new String[poolSize];
+		final int[] classes = new int[poolSize];
+		final String[] values = new String[poolSize];
+		final int[] strings = new int[poolSize];
+		for (int i = 1; i < poolSize; i++) {
+			final int tag = dis.readUnsignedByte();
+			switch (tag) {
+				case 1:
+					utf8[i] = dis.readUTF();
+					break;
+				case 7:
+					classes[i] = dis.readUnsignedShort();
+					break;
+				case 8:
+					strings[i] = dis.readUnsignedShort();
+					break;
+				case 16:
+				case 19:
+				case 20:
+					dis.readUnsignedShort();
+					break;
+				case 15:
+					skip(dis, 3);
+					break;
+				case 3:
+					values[i] = "I" + dis.readInt();
+					break;
+				case 4:
+					values[i] = "F" + Integer.toHexString(dis.readInt());
+					break;
+				case 9:
+				case 10:
+				case 11:
+				case 12:
+				case 17:
+				case 18:
+					dis.readInt();
+					break;
+				case 5:
+					values[i] = "J" + dis.readLong();
+					i++;
+					break;
+				case 6:
+					values[i] = "D" + Long.toHexString(dis.readLong());
+					i++;
+					break;
+				default:
+					throw new IOException("Unknown constant pool tag: " + tag);
+			}
+		}
+		dis.readUnsignedShort();
+		final String name = utf8[classes[dis.readUnsignedShort()]];
+		final Set<String> references = new HashSet<String>();
+		for (final int index : classes) {
+			final String ref = index == 0 ? null : utf8[index];
+			if (ref == null) {
+				continue;
+			}
+			if (ref.startsWith("[")) {
+				addDescriptorTypes(ref, references);
+			} else {
+				references.add(ref);
+			}
+		}
+		for (final String value : utf8) {
+			if (value != null && value.indexOf(';') != -1) {
+				addDescriptorTypes(value, references);
+			}
+		}
+		references.remove(name);
+		dis.readUnsignedShort();
+		final int interfaces = dis.readUnsignedShort();
+		for (int i = 0; i < interfaces; i++) {
+			dis.readUnsignedShort();
+		}
+		final Map<String, String> constants = new TreeMap<String, String>();
+		final int fields = dis.readUnsignedShort();
+		for (int i = 0; i < fields; i++) {
+			dis.readUnsignedShort();
+			final String field = utf8[dis.readUnsignedShort()] + ":" + utf8[dis.readUnsignedShort()];
+			final int fieldAttributes = dis.readUnsignedShort();
+			for (int j = 0; j < fieldAttributes; j++) {
+				final String attribute = utf8[dis.readUnsignedShort()];
+				final int length = dis.readInt();
+				if ("ConstantValue".equals(attribute)) {
+					final int index = dis.readUnsignedShort();
+					constants.put(field, strings[index] != 0 ? "S" + utf8[strings[index]] : values[index]);
+				} else {
+					skip(dis, length);
+				}
+			}
+		}
+		skipMembers(dis);
+		String sourceFile = null;
+		final int attributes = dis.readUnsignedShort();
+		for (int i = 0; i < attributes; i++) {
+			final String attribute = utf8[dis.readUnsignedShort()];
+			final int length = dis.readInt();
+			if ("SourceFile".equals(attribute)) {
+				sourceFile = utf8[dis.readUnsignedShort()];
+			} else {
+				skip(dis, length);
+			}
+		}
+		return new ClassFileInfo(name, sourceFile, references, constants.isEmpty() ? null : constants.toString());
+	}
+
+	private static void addDescriptorTypes(final String descriptor, final Set<String> references) {
+		final Matcher matcher = DESCRIPTOR_TYPE.matcher(descriptor);
+		while (matcher.find()) {
+			references.add(matcher.group(1));
+		}
+	}
+}
@@ -5,8 +5,9 @@ import com.dslplatform.compiler.client.parameters.Dependencies;
 import com.dslplatform.compiler.client.parameters.Download;
 
 import java.io.File;
+import java.util.Map;
 
-public class CompileJavaClient implements BuildAction {
+public class CompileJavaClient implements InMemoryBuildAction {
 
 	private final String name;
 	private final String zip;
@@ -38,9 +39,28 @@ public class CompileJavaClient implements BuildAction {
 	@Override
 	public void build(final File sources, final Context context) throws ExitException {
 		final File libDeps = Dependencies.getDependencies(context, name, library);
+		final File model = model(context);
+		verify(JavaCompilation.compile(library, libDeps, sources, model, null, context), model, context);
+	}
+
+	@Override
+	public boolean build(final Map<String, String> sources, final Context context) throws ExitException {
+		final File libDeps = Dependencies.getDependencies(context, name, library);
+		final File model = model(context);
+		final Either<String> compilation = JavaCompilation.compileInMemory(sources, libDeps, model, null, context);
+		if (compilation == null) {
+			return false;
+		}
+		verify(compilation, model, context);
+		return true;
+	}
+
+	private File model(final Context context) {
 		final String customJar = context.get(library);
-		final File model = new File(customJar != null ? customJar : jar);
-		final Either<String> compilation = JavaCompilation.compile(library, libDeps, sources, model, null, context);
+		return new File(customJar != null ? customJar : jar);
+	}
+
+	private void verify(final Either<String> compilation, final File model, final Context context) throws ExitException {
 		if (!compilation.isSuccess()) {
 			context.error("Error during " + name + " library compilation.");
 			context.error(compilation.whyNot());
@@ -8,7 +8,7 @@ import com.dslplatform.compiler.client.parameters.Namespace;
 import java.io.File;
 import java.util.*;
 
-public class CompileRevenjJava implements BuildAction {
+public class CompileRevenjJava implements InMemoryBuildAction {
 
 	private final String id;
 	private final String zip;
@@ -31,14 +31,37 @@ public class CompileRevenjJava implements BuildAction {
 	@Override
 	public void build(final File sources, final Context context) throws ExitException {
 		final File libDeps = Dependencies.getDependencies(context, "Revenj.Java", id);
+		final File model = model(context);
+		verify(JavaCompilation.compile("revenj", libDeps, sources, model, services(context), context), model, context);
+	}
+
+	@Override
+	public boolean build(final Map<String, String> sources, final Context context) throws ExitException {
+		final File libDeps = Dependencies.getDependencies(context, "Revenj.Java", id);
+		final File model = model(context);
+		final Either<String> compilation = JavaCompilation.compileInMemory(sources, libDeps, model, services(context), context);
+		if (compilation == null) {
+			return false;
+		}
+		verify(compilation, model, context);
+		return true;
+	}
+
+	private File model(final Context context) {
 		final String customJar = context.get(id);
-		final File model = new File(customJar != null ? customJar : "./generated-server-model.jar");
+		return new File(customJar != null ? customJar : "./generated-server-model.jar");
+	}
+
+	private static Map<String, List<String>> services(final Context context) {
 		final String namespace = context.get(Namespace.INSTANCE);
 		final String bootClass = namespace != null && namespace.length() > 0 ? namespace + ".Boot" : "Boot";
 		//TODO: not sure if service should be registered without namespace
 		final Map<String, List<String>> services = new HashMap<String, List<String>>();
 		services.put("org.revenj.extensibility.SystemAspect", Collections.singletonList(bootClass));
-		final Either<String> compilation = JavaCompilation.compile("revenj", libDeps, sources, model, services, context);
+		return services;
+	}
+
+	private static void verify(final Either<String> compilation, final File model, final Context context) throws ExitException {
 		if (!compilation.isSuccess()) {
 			context.error("Error during Revenj.Java library compilation.");
 			context.error(compilation.whyNot());
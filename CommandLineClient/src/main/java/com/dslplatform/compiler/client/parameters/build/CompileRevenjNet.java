@@ -3,6 +3,8 @@ package com.dslplatform.compiler.client.parameters.build;
 import com.dslplatform.compiler.client.*;
 import com.dslplatform.compiler.client.parameters.Dependencies;
 import com.dslplatform.compiler.client.parameters.Download;
+import com.dslplatform.compiler.client.parameters.Mirror;
+import com.dslplatform.compiler.client.parameters.Offline;
 
 import javax.net.ssl.HttpsURLConnection;
 import java.io.File;
@@ -71,6 +73,26 @@ public class CompileRevenjNet implements BuildAction {
 		}
 	}
 
+	private static final String FALLBACK_TAG = "1.3.1";
+
+	private static String latestTag(final Context context, final String name, final String github) throws IOException {
+		if (context.contains(Offline.INSTANCE) || Mirror.hasMirror(context, Mirror.Repository.GITHUB)) {
+			context.log("Latest release can only be detected on GitHub. Will continue with tag " + FALLBACK_TAG);
+			return FALLBACK_TAG;
+		}
+		final URL latest = new URL(github + "/ngs-doo/revenj/releases/latest");
+		final HttpsURLConnection conn = (HttpsURLConnection) latest.openConnection();
+		conn.setInstanceFollowRedirects(false);
+		conn.setUseCaches(false);
+		conn.connect();
+		if (conn.getResponseCode() != 302) {
+			context.warning("Error downloading " + name + " from GitHub. Will continue with tag " + FALLBACK_TAG + ". Expecting redirect. Got: " + conn.getResponseCode());
+			return FALLBACK_TAG;
+		}
+		final String redirect = conn.getHeaderField("Location");
+		return redirect.substring(redirect.lastIndexOf('/') + 1);
+	}
+
 	private static boolean downloadFromGithub(
 			final Context context,
 			final String name,
@@ -90,23 +112,12 @@ public class CompileRevenjNet implements BuildAction {
 		}
 		try {
 			context.show("Downloading " + name + " from GitHub...");
-			final URL latest = new URL("https://github.com/ngs-doo/revenj/releases/latest");
-			final HttpsURLConnection conn = (HttpsURLConnection) latest.openConnection();
-			conn.setInstanceFollowRedirects(false);
-			conn.setUseCaches(false);
-			conn.connect();
-			final String tag;
-			if (conn.getResponseCode() != 302) {
-				context.warning("Error downloading " + name + " from GitHub. Will continue with tag 1.3.1. Expecting redirect. Got: " + conn.getResponseCode());
-				tag = "1.3.1";
-			} else {
-				final String redirect = conn.getHeaderField("Location");
-				tag = redirect.substring(redirect.lastIndexOf('/') + 1);
-			}
-			final URL coreUrl = new URL("https://github.com/ngs-doo/revenj/releases/download/" + tag + "/" + zip + ".zip");
+			final String github = Mirror.url(context, Mirror.Repository.GITHUB);
+			final String tag = latestTag(context, name, github);
+			final URL coreUrl = new URL(github + "/ngs-doo/revenj/releases/download/" + tag + "/" + zip + ".zip");
 			Utils.unpackZip(context, target, coreUrl);
 			if (additionalZip != null) {
-				final URL zipUrl = new URL("https://github.com/ngs-doo/revenj/releases/download/" + tag + "/" + additionalZip + ".zip");
+				final URL zipUrl = new URL(github + "/ngs-doo/revenj/releases/download/" + tag + "/" + additionalZip + ".zip");
 				Utils.unpackZip(context, target, zipUrl);
 			}
 		} catch (IOException ex) {
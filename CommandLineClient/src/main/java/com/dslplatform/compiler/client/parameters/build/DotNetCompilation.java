@@ -2,12 +2,15 @@ package com.dslplatform.compiler.client.parameters.build;
 
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.ProcessRunner;
 import com.dslplatform.compiler.client.Utils;
 import com.dslplatform.compiler.client.parameters.DotNet;
+import com.dslplatform.compiler.client.parameters.DotNetServer;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 class DotNetCompilation {
@@ -19,11 +22,7 @@ class DotNetCompilation {
 			final File output,
 			final Context context,
 			final boolean force32Bit) {
-		if (output.exists() && !output.isDirectory()) {
-			if (!output.delete()) {
-				return Either.fail("Failed to remove previous .NET model: " + output.getAbsolutePath());
-			}
-		} else if (output.exists() && output.isDirectory()) {
+		if (output.exists() && output.isDirectory()) {
 			return Either.fail("Expecting to find file. Found folder at: " + output.getAbsolutePath());
 		}
 		final Either<String> tryCompiler = force32Bit ? DotNet.findCompiler(context, true) : DotNet.findCompiler(context);
@@ -37,6 +36,18 @@ class DotNetCompilation {
 				return name.toLowerCase().endsWith(".dll");
 			}
 		});
+		final File[] dependencyFiles = dependencyFiles(libraries, dependencies);
+		final String options = "csc " + Arrays.toString(references) + " " + force32Bit;
+		//compiler server mode skips recompilation of unchanged libraries even without the build cache
+		final OutputCache cache = context.contains(DotNetServer.INSTANCE)
+				? OutputCache.create(context, compiler, source, ".cs", dependencyFiles, output, options)
+				: OutputCache.prepare(context, compiler, source, ".cs", dependencyFiles, output, options);
+		if (cache != null && cache.restore(output)) {
+			return Either.success("");
+		}
+		if (output.exists() && !output.delete()) {
+			return Either.fail("Failed to remove previous .NET model: " + output.getAbsolutePath());
+		}
 		final char escapeChar = Utils.isWindows() ? '/' : '-';
 		final List<String> arguments = new ArrayList<String>();
 		arguments.add(escapeChar + "target:library");
@@ -55,7 +66,13 @@ class DotNetCompilation {
 		arguments.add(escapeChar + "warn:0");
 		arguments.add(escapeChar + "recurse:*.cs");
 		context.notify("CSC", arguments);
-		final Either<Utils.CommandResult> execCompile = Utils.runCommand(context, compiler, source, arguments);
+		final boolean shared = DotNetServer.isSupported(context, compiler);
+		Either<Utils.CommandResult> execCompile = runCompiler(context, compiler, source, arguments, shared, escapeChar);
+		if (shared && execCompile.isSuccess() && rejectedShared(execCompile.get(), escapeChar)) {
+			context.log(compiler + " doesn't support compiler server. Compiling without it.");
+			DotNetServer.markUnsupported(context, compiler);
+			execCompile = runCompiler(context, compiler, source, arguments, false, escapeChar);
+		}
 		if (!execCompile.isSuccess()) {
 			return Either.fail(execCompile.whyNot());
 		}
@@ -75,6 +92,53 @@ class DotNetCompilation {
 			}
 			return Either.fail(compilation.output);
 		}
+		if (cache != null) {
+			cache.store(output);
+		}
 		return Either.success(compilation.output);
 	}
+
+	private static Either<Utils.CommandResult> runCompiler(
+			final Context context,
+			final String compiler,
+			final File source,
+			final List<String> arguments,
+			final boolean shared,
+			final char escapeChar) {
+		final List<String> compilerArguments = new ArrayList<String>(arguments.size() + 1);
+		if (shared) {
+			compilerArguments.add(escapeChar + "shared");
+		}
+		//Microsoft compiler writes in the console code page unless asked for UTF-8
+		final boolean utf8 = escapeChar == '/';
+		if (utf8) {
+			compilerArguments.add("/utf8output");
+		}
+		compilerArguments.addAll(arguments);
+		final Either<Utils.CommandResult> execCompile = Utils.runTool(
+				context,
+				"csc",
+				compiler,
+				source,
+				compilerArguments,
+				utf8 ? ProcessRunner.UTF_8 : ProcessRunner.NATIVE);
+		if (execCompile.isSuccess()) {
+			context.log(compiler + (shared ? " (compiler server)" : "") + " finished in " + execCompile.get().duration + "ms");
+		}
+		return execCompile;
+	}
+
+	private static boolean rejectedShared(final Utils.CommandResult compilation, final char escapeChar) {
+		final String option = escapeChar + "shared";
+		return compilation.exitCode != 0
+				&& (compilation.output.contains(option) || compilation.error.contains(option));
+	}
+
+	private static File[] dependencyFiles(final File libraries, final String[] dependencies) {
+		final File[] files = new File[dependencies.length];
+		for (int i = 0; i < dependencies.length; i++) {
+			files[i] = new File(libraries, dependencies[i]);
+		}
+		return files;
+	}
 }
@@ -0,0 +1,17 @@
+package com.dslplatform.compiler.client.parameters.build;
+
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.ExitException;
+
+import java.util.Map;
+
+/**
+ * Build action which can work on generated sources without them being saved to disk.
+ */
+public interface InMemoryBuildAction extends BuildAction {
+	/**
+	 * Build from sources in memory. Sources are identified by their relative path.
+	 * Returns false when in memory build is not possible and regular build should be used instead.
+	 */
+	boolean build(final Map<String, String> sources, final Context context) throws ExitException;
+}
@@ -0,0 +1,207 @@
+package com.dslplatform.compiler.client.parameters.build;
+
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.JobScheduler;
+import com.dslplatform.compiler.client.parameters.JavaPath;
+
+import javax.tools.*;
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Java compilation through the compiler of the running JVM.
+ * Sources are read from memory and compiled classes are kept in memory until they are written into the jar.
+ */
+class InMemoryJavaCompilation {
+
+	private static class Source extends SimpleJavaFileObject {
+		private final String content;
+
+		Source(final URI uri, final String content) {
+			super(uri, Kind.SOURCE);
+			this.content = content;
+		}
+
+		@Override
+		public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+			return content;
+		}
+	}
+
+	private static class CompiledClass extends SimpleJavaFileObject {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		CompiledClass(final String path) {
+			super(URI.create("memory:///" + path), Kind.CLASS);
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			return bytes;
+		}
+	}
+
+	private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+		final Map<String, CompiledClass> classes = new TreeMap<String, CompiledClass>();
+
+		MemoryFileManager(final StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(
+				final Location location,
+				final String className,
+				final JavaFileObject.Kind kind,
+				final FileObject sibling) throws IOException {
+			if (kind != JavaFileObject.Kind.CLASS) {
+				return super.getJavaFileForOutput(location, className, kind, sibling);
+			}
+			final String path = className.replace('.', '/') + ".class";
+			final CompiledClass compiled = new CompiledClass(path);
+			classes.put(path, compiled);
+			return compiled;
+		}
+	}
+
+	static boolean isAvailable() {
+		return ToolProvider.getSystemJavaCompiler() != null;
+	}
+
+	static Either<String> compile(
+			final Map<String, String> sources,
+			final File[] externalJars,
+			final File output,
+			final Map<String, List<String>> services,
+			final Context context) {
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			return Either.fail("Java compiler is not available in the running JVM");
+		}
+		final List<JavaFileObject> units = new ArrayList<JavaFileObject>(sources.size());
+		try {
+			for (final Map.Entry<String, String> kv : sources.entrySet()) {
+				units.add(new Source(new URI("string", null, "/" + kv.getKey(), null), kv.getValue()));
+			}
+		} catch (URISyntaxException ex) {
+			return Either.fail(ex);
+		}
+		if (units.isEmpty()) {
+			return Either.fail("Unable to find Java generated sources for: " + output.getName());
+		}
+		final StringBuilder classPath = new StringBuilder();
+		for (final File j : externalJars) {
+			if (classPath.length() > 0) {
+				classPath.append(File.pathSeparatorChar);
+			}
+			classPath.append(j.getAbsolutePath());
+		}
+		final List<String> options = Arrays.asList("-Xlint:none", "-classpath", classPath.toString());
+		context.notify("JAVAC", options);
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		final MemoryFileManager fileManager = new MemoryFileManager(compiler.getStandardFileManager(diagnostics, null, null));
+		context.show("Compiling " + output.getName() + " in memory ...");
+		final long start = System.currentTimeMillis();
+		final boolean success;
+		final JobScheduler.Lease lease;
+		try {
+			lease = JobScheduler.global().acquire("javac", JobScheduler.usage(context));
+		} catch (InterruptedException ex) {
+			return Either.fail(ex);
+		}
+		try {
+			success = compiler.getTask(null, fileManager, diagnostics, options, null, units).call();
+		} finally {
+			lease.release();
+			try {
+				fileManager.close();
+			} catch (IOException ignore) {
+			}
+		}
+		context.log("In memory javac for " + output.getName() + " finished in " + (System.currentTimeMillis() - start) + "ms");
+		final StringBuilder messages = new StringBuilder();
+		final StringBuilder errors = new StringBuilder();
+		for (final Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+			final String source = d.getSource() != null ? d.getSource().getName() + ":" + d.getLineNumber() + ": " : "";
+			final String message = source + d.getMessage(null);
+			messages.append(message).append("\n");
+			if (d.getKind() == Diagnostic.Kind.ERROR) {
+				errors.append(message).append("\n");
+			}
+		}
+		if (!success) {
+			return Either.fail(errors.length() > 0 ? errors.toString() : messages.toString());
+		}
+		try {
+			writeJar(fileManager.classes, output, services, context);
+		} catch (IOException ex) {
+			return Either.fail(ex);
+		}
+		return Either.success(messages.toString());
+	}
+
+	private static void addEntry(
+			final JarOutputStream jar,
+			final Set<String> folders,
+			final String path,
+			final byte[] content) throws IOException {
+		int slash = path.indexOf('/');
+		while (slash != -1) {
+			final String folder = path.substring(0, slash + 1);
+			if (folders.add(folder)) {
+				jar.putNextEntry(new JarEntry(folder));
+				jar.closeEntry();
+			}
+			slash = path.indexOf('/', slash + 1);
+		}
+		jar.putNextEntry(new JarEntry(path));
+		jar.write(content);
+		jar.closeEntry();
+	}
+
+	private static void writeJar(
+			final Map<String, CompiledClass> classes,
+			final File output,
+			final Map<String, List<String>> services,
+			final Context context) throws IOException {
+		final Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, JavaPath.implementationVersion(context));
+		final File temp = new File(output.getAbsolutePath() + ".tmp");
+		final JarOutputStream jar = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(temp)), manifest);
+		try {
+			final Set<String> folders = new HashSet<String>();
+			folders.add("META-INF/");
+			if (services != null) {
+				for (final Map.Entry<String, List<String>> kv : services.entrySet()) {
+					final StringBuilder sb = new StringBuilder();
+					for (final String it : kv.getValue()) {
+						sb.append(it).append("\n");
+					}
+					addEntry(jar, folders, "META-INF/services/" + kv.getKey(), sb.toString().getBytes("UTF-8"));
+				}
+			}
+			for (final Map.Entry<String, CompiledClass> kv : classes.entrySet()) {
+				addEntry(jar, folders, kv.getKey(), kv.getValue().bytes.toByteArray());
+			}
+		} catch (IOException ex) {
+			jar.close();
+			if (!temp.delete()) {
+				temp.deleteOnExit();
+			}
+			throw ex;
+		}
+		jar.close();
+		if (output.exists() && !output.delete() || !temp.renameTo(output)) {
+			throw new IOException("Unable to replace " + output.getAbsolutePath());
+		}
+		context.log("Written " + classes.size() + " classes to " + output.getAbsolutePath());
+	}
+}
@@ -0,0 +1,361 @@
+package com.dslplatform.compiler.client.parameters.build;
+
+import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.parameters.JavaPath;
+import com.dslplatform.compiler.client.parameters.TempPath;
+import com.dslplatform.compiler.client.parameters.Version;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Java compilation which keeps state of the previous build in the persistent cache folder.
+ * State consists of compiled classes, hashes of the sources and dependencies between classes.
+ * Only changed sources and sources of classes which reference classes from changed sources are recompiled.
+ * Since compile-time constants are inlined without a reference to their class,
+ * change of any constant value in the recompiled classes results in a full build.
+ */
+class IncrementalJavaCompilation {
+	private static final String OPTIONS = "options";
+	private static final String JAR_SIZE = "jar.size";
+	private static final String JAR_MODIFIED = "jar.modified";
+	private static final String SOURCE = "source.";
+	private static final String CLASS = "class.";
+	private static final String DEPENDENCIES = "deps.";
+	private static final String CONSTANTS = "const.";
+
+	private final Context context;
+	private final String javac;
+	private final File[] externalJars;
+	private final File source;
+	private final File output;
+	private final Map<String, List<String>> services;
+	private final File classes;
+	private final File stateFile;
+
+	private IncrementalJavaCompilation(
+			final Context context,
+			final String javac,
+			final File[] externalJars,
+			final File source,
+			final File output,
+			final Map<String, List<String>> services,
+			final File stateDir) {
+		this.context = context;
+		this.javac = javac;
+		this.externalJars = externalJars;
+		this.source = source;
+		this.output = output;
+		this.services = services;
+		this.classes = new File(stateDir, "classes");
+		this.stateFile = new File(stateDir, "state.properties");
+	}
+
+	static Either<String> compile(
+			final String name,
+			final String javac,
+			final File[] externalJars,
+			final File source,
+			final File output,
+			final Map<String, List<String>> services,
+			final Context context) {
+		final File stateDir;
+		try {
+			final File root = new File(TempPath.getCachePath(context), "incremental");
+			stateDir = new File(root, name + "-" + Integer.toHexString(output.getAbsolutePath().hashCode()));
+		} catch (ExitException ex) {
+			return Either.fail("Unable to prepare folder for incremental compilation state");
+		}
+		return new IncrementalJavaCompilation(context, javac, externalJars, source, output, services, stateDir).compile();
+	}
+
+	private String optionsKey() {
+		final StringBuilder sb = new StringBuilder(javac);
+		for (final File j : externalJars) {
+			sb.append('|').append(j.getAbsolutePath()).append(':').append(j.length()).append(':').append(j.lastModified());
+		}
+		if (services != null) {
+			sb.append('|').append(new TreeMap<String, List<String>>(services));
+		}
+		sb.append('|').append(context.get(Version.INSTANCE));
+		return sb.toString();
+	}
+
+	private Either<Map<String, String>> hashSources() {
+		final Map<String, String> hashes = new TreeMap<String, String>();
+		final int len = source.getAbsolutePath().length() + 1;
+		try {
+			for (final File f : Utils.findFiles(context, source, Collections.singletonList(".java"))) {
+				hashes.put(f.getAbsolutePath().substring(len).replace(File.separatorChar, '/'), Downloader.sha1(f));
+			}
+		} catch (IOException ex) {
+			return Either.fail(ex);
+		}
+		return Either.success(hashes);
+	}
+
+	private Properties loadState() {
+		if (!stateFile.exists()) {
+			return null;
+		}
+		final Properties state = new Properties();
+		try {
+			final InputStream is = new FileInputStream(stateFile);
+			try {
+				state.load(is);
+			} finally {
+				is.close();
+			}
+		} catch (IOException ex) {
+			context.log("Unable to read incremental state: " + ex.getMessage());
+			return null;
+		}
+		return state;
+	}
+
+	private boolean isConsistent(final Properties state, final String options) {
+		if (state == null) {
+			context.log("Previous incremental state not found");
+			return false;
+		}
+		if (!options.equals(state.getProperty(OPTIONS))) {
+			context.log("Compilation options or dependencies changed since the previous build");
+			return false;
+		}
+		if (!classes.isDirectory() || !output.isFile()
+				|| !String.valueOf(output.length()).equals(state.getProperty(JAR_SIZE))
+				|| !String.valueOf(output.lastModified()).equals(state.getProperty(JAR_MODIFIED))) {
+			context.log("Output doesn't match the previous incremental state");
+			return false;
+		}
+		return true;
+	}
+
+	private Either<String> compile() {
+		final Either<Map<String, String>> current = hashSources();
+		if (!current.isSuccess()) {
+			return Either.fail(current.whyNot());
+		}
+		if (current.get().isEmpty()) {
+			return Either.fail("Unable to find Java generated sources in: " + source.getAbsolutePath());
+		}
+		final String options = optionsKey();
+		final Properties state = loadState();
+		if (!isConsistent(state, options)) {
+			return fullBuild(current.get(), options);
+		}
+		final Set<String> changed = new TreeSet<String>();
+		final Set<String> removed = new TreeSet<String>();
+		for (final Map.Entry<String, String> kv : current.get().entrySet()) {
+			if (!kv.getValue().equals(state.getProperty(SOURCE + kv.getKey()))) {
+				changed.add(kv.getKey());
+			}
+		}
+		final Map<String, String> classSources = new HashMap<String, String>();
+		final Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+		for (final String key : state.stringPropertyNames()) {
+			if (key.startsWith(SOURCE) && !current.get().containsKey(key.substring(SOURCE.length()))) {
+				removed.add(key.substring(SOURCE.length()));
+			} else if (key.startsWith(CLASS)) {
+				classSources.put(key.substring(CLASS.length()), state.getProperty(key));
+			} else if (key.startsWith(DEPENDENCIES)) {
+				final String className = key.substring(DEPENDENCIES.length());
+				for (final String dep : state.getProperty(key).split(" ")) {
+					Set<String> users = dependents.get(dep);
+					if (users == null) {
+						users = new HashSet<String>();
+						dependents.put(dep, users);
+					}
+					users.add(className);
+				}
+			}
+		}
+		if (changed.isEmpty() && removed.isEmpty()) {
+			context.show(output.getName() + " is up to date. Skipping javac.");
+			return Either.success("");
+		}
+		final Set<String> toCompile = new TreeSet<String>(changed);
+		for (final Map.Entry<String, String> kv : classSources.entrySet()) {
+			if (!changed.contains(kv.getValue()) && !removed.contains(kv.getValue())) {
+				continue;
+			}
+			final Set<String> users = dependents.get(kv.getKey());
+			if (users == null) {
+				continue;
+			}
+			for (final String user : users) {
+				final String userSource = classSources.get(user);
+				if (userSource != null && current.get().containsKey(userSource)) {
+					toCompile.add(userSource);
+				}
+			}
+		}
+		context.show("Incremental compilation of " + output.getName() + ": " + changed.size() + " changed, "
+				+ removed.size() + " removed, " + (toCompile.size() - changed.size()) + " dependent sources");
+		final Set<String> staleSources = new HashSet<String>(toCompile);
+		staleSources.addAll(removed);
+		for (final Map.Entry<String, String> kv : classSources.entrySet()) {
+			if (staleSources.contains(kv.getValue())) {
+				final File classFile = new File(classes, kv.getKey() + ".class");
+				if (classFile.exists() && !classFile.delete()) {
+					return fullBuild(current.get(), options);
+				}
+			}
+		}
+		//state is no longer valid until this build finishes
+		if (!stateFile.delete()) {
+			return Either.fail("Unable to invalidate incremental state: " + stateFile.getAbsolutePath());
+		}
+		final List<String> sources = new ArrayList<String>(toCompile.size());
+		for (final String s : toCompile) {
+			sources.add(s.replace('/', File.separatorChar));
+		}
+		final Either<String> compilation = sources.isEmpty()
+				? Either.success("")
+				: JavaCompilation.runJavac(context, javac, source, classes, externalJars, sources, output.getName());
+		if (!compilation.isSuccess()) {
+			context.warning("Incremental compilation failed. Running full build.");
+			return fullBuild(current.get(), options);
+		}
+		final Either<Map<String, ClassFileInfo>> analysis = analyze();
+		if (!analysis.isSuccess()) {
+			return Either.fail(analysis.whyNot());
+		}
+		for (final Map.Entry<String, String> kv : classSources.entrySet()) {
+			if (!staleSources.contains(kv.getValue())) {
+				continue;
+			}
+			final ClassFileInfo info = analysis.get().get(kv.getKey());
+			final String previous = state.getProperty(CONSTANTS + kv.getKey());
+			final String constants = info != null ? info.constants : null;
+			if (previous == null ? constants != null : !previous.equals(constants)) {
+				context.log("Constants in " + kv.getKey() + " changed. Classes which inlined them must be recompiled.");
+				return fullBuild(current.get(), options);
+			}
+		}
+		//classes of deleted or renamed types would stay in the jar if it was only updated
+		boolean classesRemoved = !removed.isEmpty();
+		for (final Map.Entry<String, String> kv : classSources.entrySet()) {
+			if (staleSources.contains(kv.getValue()) && !analysis.get().containsKey(kv.getKey())) {
+				classesRemoved = true;
+				break;
+			}
+		}
+		Either<Utils.CommandResult> archive = Either.success(null);
+		if (!classesRemoved) {
+			final List<String> updated = new ArrayList<String>();
+			for (final ClassFileInfo info : analysis.get().values()) {
+				if (staleSources.contains(info.sourcePath())) {
+					updated.add(info.name.replace('/', File.separatorChar) + ".class");
+				}
+			}
+			if (!updated.isEmpty()) {
+				archive = JavaPath.updateArchive(context, classes, output, updated);
+			}
+		} else {
+			//entries can't be removed from the existing jar, so it's recreated
+			archive = JavaPath.makeArchive(context, classes, output, services);
+		}
+		if (!archive.isSuccess()) {
+			return Either.fail(archive.whyNot());
+		}
+		saveState(current.get(), options, analysis.get());
+		return compilation;
+	}
+
+	private Either<String> fullBuild(final Map<String, String> sourceHashes, final String options) {
+		context.log("Running full build for " + output.getName());
+		try {
+			if (stateFile.exists() && !stateFile.delete()) {
+				return Either.fail("Unable to remove incremental state: " + stateFile.getAbsolutePath());
+			}
+			if (classes.exists()) {
+				Utils.deletePath(classes);
+			}
+		} catch (IOException ex) {
+			return Either.fail(ex);
+		}
+		if (!classes.exists() && !classes.mkdirs()) {
+			return Either.fail("Error creating folder for Java class files: " + classes.getAbsolutePath());
+		}
+		final List<String> sources = Utils.listSources(source, context, ".java");
+		final Either<String> compilation = JavaCompilation.runJavac(context, javac, source, classes, externalJars, sources, output.getName());
+		if (!compilation.isSuccess()) {
+			return compilation;
+		}
+		if (output.exists() && !output.delete()) {
+			return Either.fail("Failed to remove previous Java model: " + output.getAbsolutePath());
+		}
+		final Either<Utils.CommandResult> archive = JavaPath.makeArchive(context, classes, output, services);
+		if (!archive.isSuccess()) {
+			return Either.fail(archive.whyNot());
+		}
+		final Either<Map<String, ClassFileInfo>> analysis = analyze();
+		if (analysis.isSuccess()) {
+			saveState(sourceHashes, options, analysis.get());
+		} else {
+			context.warning("Unable to analyze compiled classes. Next build will not be incremental.");
+			context.log(analysis.explainError());
+		}
+		return compilation;
+	}
+
+	private Either<Map<String, ClassFileInfo>> analyze() {
+		final Map<String, ClassFileInfo> result = new HashMap<String, ClassFileInfo>();
+		try {
+			for (final File f : Utils.findFiles(context, classes, Collections.singletonList(".class"))) {
+				final ClassFileInfo info = ClassFileInfo.read(f);
+				result.put(info.name, info);
+			}
+		} catch (IOException ex) {
+			return Either.fail(ex);
+		}
+		return Either.success(result);
+	}
+
+	private void saveState(
+			final Map<String, String> sourceHashes,
+			final String options,
+			final Map<String, ClassFileInfo> analysis) {
+		final Properties state = new Properties();
+		for (final Map.Entry<String, String> kv : sourceHashes.entrySet()) {
+			state.setProperty(SOURCE + kv.getKey(), kv.getValue());
+		}
+		for (final ClassFileInfo info : analysis.values()) {
+			final String sourcePath = info.sourcePath();
+			if (sourcePath == null || !sourceHashes.containsKey(sourcePath)) {
+				context.log("Unable to detect source of " + info.name + ". Next build will not be incremental.");
+				return;
+			}
+			state.setProperty(CLASS + info.name, sourcePath);
+			if (info.constants != null) {
+				state.setProperty(CONSTANTS + info.name, info.constants);
+			}
+			final StringBuilder deps = new StringBuilder();
+			for (final String ref : info.references) {
+				if (analysis.containsKey(ref)) {
+					if (deps.length() > 0) {
+						deps.append(' ');
+					}
+					deps.append(ref);
+				}
+			}
+			if (deps.length() > 0) {
+				state.setProperty(DEPENDENCIES + info.name, deps.toString());
+			}
+		}
+		state.setProperty(OPTIONS, options);
+		state.setProperty(JAR_SIZE, String.valueOf(output.length()));
+		state.setProperty(JAR_MODIFIED, String.valueOf(output.lastModified()));
+		try {
+			final OutputStream os = new FileOutputStream(stateFile);
+			try {
+				state.store(os, "Incremental compilation state for " + output.getAbsolutePath());
+			} finally {
+				os.close();
+			}
+		} catch (IOException ex) {
+			context.warning("Unable to save incremental compilation state: " + ex.getMessage());
+		}
+	}
+}
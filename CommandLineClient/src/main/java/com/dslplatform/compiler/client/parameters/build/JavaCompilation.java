@@ -2,8 +2,12 @@ package com.dslplatform.compiler.client.parameters.build;
 
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.ProcessRunner;
 import com.dslplatform.compiler.client.Utils;
+import com.dslplatform.compiler.client.parameters.BuildCache;
+import com.dslplatform.compiler.client.parameters.Incremental;
 import com.dslplatform.compiler.client.parameters.JavaPath;
+import com.dslplatform.compiler.client.parameters.Version;
 
 import java.io.File;
 import java.io.FilenameFilter;
@@ -18,11 +22,7 @@ class JavaCompilation {
 			final File output,
 			final Map<String, List<String>> services,
 			final Context context) {
-		if (output.exists() && !output.isDirectory()) {
-			if (!output.delete()) {
-				return Either.fail("Failed to remove previous Java model: " + output.getAbsolutePath());
-			}
-		} else if (output.exists() && output.isDirectory()) {
+		if (output.exists() && output.isDirectory()) {
 			return Either.fail("Expecting to find file. Found folder at: " + output.getAbsolutePath());
 		}
 		if (output.getParentFile() != null && !output.getParentFile().exists()) {
@@ -36,12 +36,60 @@ class JavaCompilation {
 			return Either.fail(tryCompiler.whyNot());
 		}
 		final String javac = tryCompiler.get();
-		final File classOut = new File(source, "compile-" + name);
-		if (classOut.exists() && !classOut.delete()) {
-			return Either.fail("Can't remove folder with compiled files: " + classOut.getAbsolutePath());
+		final File[] externalJars = libraries.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return name.toLowerCase().endsWith(".jar");
+			}
+		});
+		if (externalJars.length == 0) {
+			return Either.fail("Unable to find dependencies in: " + libraries.getAbsolutePath());
 		}
-		if (!classOut.mkdirs()) {
-			return Either.fail("Error creating temporary folder for Java class files: " + classOut.getAbsolutePath());
+		final OutputCache cache = OutputCache.prepare(context, javac, source, ".java", externalJars, output,
+				"javac " + (services == null ? "" : new TreeMap<String, List<String>>(services).toString()) + " " + context.get(Version.INSTANCE));
+		if (cache != null && cache.restore(output)) {
+			return Either.success("");
+		}
+		final Either<String> compilation = context.contains(Incremental.INSTANCE)
+				? IncrementalJavaCompilation.compile(name, javac, externalJars, source, output, services, context)
+				: compileAll(name, javac, externalJars, source, output, services, context);
+		if (cache != null && compilation.isSuccess()) {
+			cache.store(output);
+		}
+		return compilation;
+	}
+
+	/**
+	 * Compile sources without saving them to disk.
+	 * Returns null when in memory compilation can't be used and sources should be compiled from disk.
+	 */
+	static Either<String> compileInMemory(
+			final Map<String, String> sources,
+			final File libraries,
+			final File output,
+			final Map<String, List<String>> services,
+			final Context context) {
+		if (context.contains(Incremental.INSTANCE) || context.contains(BuildCache.INSTANCE)) {
+			context.log("In memory compilation is not used together with incremental or build cache options");
+			return null;
+		}
+		//compiler of the running JVM would ignore the configured Java and its language level
+		if (context.contains(JavaPath.INSTANCE)) {
+			context.log("Java path is specified. Compiling " + output.getName() + " with the configured javac from disk.");
+			return null;
+		}
+		if (!InMemoryJavaCompilation.isAvailable()) {
+			context.log("Java compiler is not available in the running JVM. Compiling " + output.getName() + " from disk.");
+			return null;
+		}
+		if (output.exists() && output.isDirectory()) {
+			return Either.fail("Expecting to find file. Found folder at: " + output.getAbsolutePath());
+		}
+		if (output.getParentFile() != null && !output.getParentFile().exists()) {
+			context.show("Output folder not found. Will create one in: " + output.getParent());
+			if (!output.getParentFile().mkdirs()) {
+				return Either.fail("Unable to create output folder for: " + output.getAbsolutePath());
+			}
 		}
 		final File[] externalJars = libraries.listFiles(new FilenameFilter() {
 			@Override
@@ -49,29 +97,69 @@ class JavaCompilation {
 				return name.toLowerCase().endsWith(".jar");
 			}
 		});
-		if (externalJars.length == 0) {
+		if (externalJars == null || externalJars.length == 0) {
 			return Either.fail("Unable to find dependencies in: " + libraries.getAbsolutePath());
 		}
+		return InMemoryJavaCompilation.compile(sources, externalJars, output, services, context);
+	}
 
+	private static Either<String> compileAll(
+			final String name,
+			final String javac,
+			final File[] externalJars,
+			final File source,
+			final File output,
+			final Map<String, List<String>> services,
+			final Context context) {
+		if (output.exists() && !output.delete()) {
+			return Either.fail("Failed to remove previous Java model: " + output.getAbsolutePath());
+		}
+		final File classOut = new File(source, "compile-" + name);
+		if (classOut.exists() && !classOut.delete()) {
+			return Either.fail("Can't remove folder with compiled files: " + classOut.getAbsolutePath());
+		}
+		if (!classOut.mkdirs()) {
+			return Either.fail("Error creating temporary folder for Java class files: " + classOut.getAbsolutePath());
+		}
+		final List<String> sources = Utils.listSources(source, context, ".java");
+		if (sources.isEmpty()) {
+			return Either.fail("Unable to find Java generated sources in: " + source.getAbsolutePath());
+		}
+		final Either<String> compilation = runJavac(context, javac, source, classOut, externalJars, sources, output.getName());
+		if (!compilation.isSuccess()) {
+			return compilation;
+		}
+		final Either<Utils.CommandResult> tryArchive = JavaPath.makeArchive(context, classOut, output, services);
+		if (!tryArchive.isSuccess()) {
+			return Either.fail(tryArchive.whyNot());
+		}
+		return compilation;
+	}
+
+	static Either<String> runJavac(
+			final Context context,
+			final String javac,
+			final File source,
+			final File classOut,
+			final File[] externalJars,
+			final List<String> sources,
+			final String outputName) {
 		final List<String> javacArguments = new ArrayList<String>();
 		javacArguments.add("-encoding");
 		javacArguments.add("UTF-8");
 		javacArguments.add("-Xlint:none"); // notices still get emitted to the stderr
 		javacArguments.add("-d");
-		javacArguments.add("compile-" + name);
+		javacArguments.add(classOut.getAbsolutePath());
 		javacArguments.add("-cp");
-		final StringBuilder classPath = new StringBuilder(".");
+		final StringBuilder classPath = new StringBuilder(classOut.getAbsolutePath());
 		for (final File j : externalJars) {
 			classPath.append(File.pathSeparatorChar).append(j.getAbsolutePath());
 		}
 		javacArguments.add(classPath.toString());
 		context.notify("JAVAC", javacArguments);
-		List<String> sources = Utils.listSources(source, context, ".java");
-		if (sources.isEmpty())
-			return Either.fail("Unable to find Java generated sources in: " + source.getAbsolutePath());
 		javacArguments.addAll(sources);
-		context.show("Running javac for " + output.getName() + " ...");
-		final Either<Utils.CommandResult> execCompile = Utils.runCommand(context, javac, source, javacArguments);
+		context.show("Running javac for " + outputName + " ...");
+		final Either<Utils.CommandResult> execCompile = Utils.runTool(context, "javac", javac, source, javacArguments, ProcessRunner.NATIVE);
 		if (!execCompile.isSuccess()) {
 			return Either.fail(execCompile.whyNot());
 		}
@@ -95,11 +183,6 @@ class JavaCompilation {
 			}
 			return Either.fail(compilation.output);
 		}
-
-		final Either<Utils.CommandResult> tryArchive = JavaPath.makeArchive(context, classOut, output, services);
-		if (!tryArchive.isSuccess()) {
-			return Either.fail(tryArchive.whyNot());
-		}
 		return Either.success(compilation.output);
 	}
 }
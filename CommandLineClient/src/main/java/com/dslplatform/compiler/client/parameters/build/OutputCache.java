@@ -0,0 +1,180 @@
+package com.dslplatform.compiler.client.parameters.build;
+
+import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.parameters.BuildCache;
+import com.dslplatform.compiler.client.parameters.TempPath;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Compiled libraries from previous builds, identified by a hash of everything which goes into the compiler.
+ * Entries are kept in the persistent cache folder, few per library name.
+ */
+class OutputCache {
+	private static final int ENTRIES_PER_LIBRARY = 3;
+
+	private final Context context;
+	private final File folder;
+	private final String key;
+
+	private OutputCache(final Context context, final File folder, final String key) {
+		this.context = context;
+		this.folder = folder;
+		this.key = key;
+	}
+
+	/**
+	 * Prepare cache entry for the output.
+	 * Returns null when cache is not enabled or key could not be calculated.
+	 */
+	static OutputCache prepare(
+			final Context context,
+			final String compiler,
+			final File source,
+			final String extension,
+			final File[] dependencies,
+			final File output,
+			final String options) {
+		if (!context.contains(BuildCache.INSTANCE)) {
+			return null;
+		}
+		return create(context, compiler, source, extension, dependencies, output, options);
+	}
+
+	/**
+	 * Prepare cache entry for the output regardless of the build-cache option.
+	 * Returns null when key could not be calculated.
+	 */
+	static OutputCache create(
+			final Context context,
+			final String compiler,
+			final File source,
+			final String extension,
+			final File[] dependencies,
+			final File output,
+			final String options) {
+		final StringBuilder manifest = new StringBuilder();
+		manifest.append("compiler ").append(compiler);
+		final File compilerFile = new File(compiler);
+		if (compilerFile.isFile()) {
+			manifest.append(' ').append(compilerFile.length()).append(' ').append(compilerFile.lastModified());
+		}
+		manifest.append('\n').append("options ").append(options).append('\n');
+		try {
+			final int len = source.getAbsolutePath().length() + 1;
+			final Map<String, File> sources = new TreeMap<String, File>();
+			for (final File f : Utils.findFiles(context, source, Collections.singletonList(extension))) {
+				sources.put(f.getAbsolutePath().substring(len).replace(File.separatorChar, '/'), f);
+			}
+			if (sources.isEmpty()) {
+				return null;
+			}
+			for (final Map.Entry<String, File> kv : sources.entrySet()) {
+				manifest.append("source ").append(kv.getKey()).append(' ').append(Downloader.sha1(kv.getValue())).append('\n');
+			}
+			final Map<String, File> deps = new TreeMap<String, File>();
+			for (final File d : dependencies) {
+				deps.put(d.getName(), d);
+			}
+			for (final Map.Entry<String, File> kv : deps.entrySet()) {
+				manifest.append("dependency ").append(kv.getKey()).append(' ').append(Downloader.sha1(kv.getValue())).append('\n');
+			}
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			final String key = Downloader.toHex(digest.digest(manifest.toString().getBytes("UTF-8")));
+			final File root = new File(TempPath.getCachePath(context), "build-cache");
+			return new OutputCache(context, new File(root, output.getName()), key);
+		} catch (IOException ex) {
+			context.log("Unable to calculate build cache key: " + ex.getMessage());
+		} catch (NoSuchAlgorithmException ex) {
+			context.log("Unable to calculate build cache key: " + ex.getMessage());
+		} catch (ExitException ex) {
+			context.log("Unable to find folder for build cache");
+		}
+		return null;
+	}
+
+	private File entry() {
+		return new File(folder, key);
+	}
+
+	/**
+	 * Put the cached library to the output location, unless output already matches it.
+	 */
+	boolean restore(final File output) {
+		final File entry = entry();
+		if (!entry.isFile()) {
+			context.log("Build cache miss for " + output.getName());
+			return false;
+		}
+		try {
+			if (!output.isFile() || output.length() != entry.length()
+					|| !Downloader.sha1(output).equals(Downloader.sha1(entry))) {
+				if (output.exists() && !output.delete()) {
+					context.log("Unable to replace " + output.getAbsolutePath() + " from build cache");
+					return false;
+				}
+				if (output.getParentFile() != null && !output.getParentFile().exists() && !output.getParentFile().mkdirs()) {
+					return false;
+				}
+				Utils.copyFile(entry, output);
+			}
+			//keep recently used entries around for longer
+			entry.setLastModified(System.currentTimeMillis());
+		} catch (IOException ex) {
+			context.log("Unable to restore " + output.getName() + " from build cache: " + ex.getMessage());
+			return false;
+		}
+		context.show("Sources for " + output.getName() + " didn't change. Using library from build cache.");
+		return true;
+	}
+
+	void store(final File output) {
+		if (!output.isFile()) {
+			return;
+		}
+		if (!folder.exists() && !folder.mkdirs()) {
+			context.log("Unable to create build cache folder: " + folder.getAbsolutePath());
+			return;
+		}
+		final File temp = new File(folder, key + ".tmp");
+		try {
+			Utils.copyFile(output, temp);
+			final File entry = entry();
+			if (entry.exists() && !entry.delete() || !temp.renameTo(entry)) {
+				context.log("Unable to save " + output.getName() + " to build cache");
+				if (!temp.delete()) {
+					temp.deleteOnExit();
+				}
+				return;
+			}
+		} catch (IOException ex) {
+			context.log("Unable to save " + output.getName() + " to build cache: " + ex.getMessage());
+			return;
+		}
+		prune();
+	}
+
+	private void prune() {
+		final File[] entries = folder.listFiles();
+		if (entries == null || entries.length <= ENTRIES_PER_LIBRARY) {
+			return;
+		}
+		Arrays.sort(entries, new Comparator<File>() {
+			@Override
+			public int compare(final File left, final File right) {
+				final long l = left.lastModified();
+				final long r = right.lastModified();
+				return l > r ? -1 : l < r ? 1 : 0;
+			}
+		});
+		for (int i = ENTRIES_PER_LIBRARY; i < entries.length; i++) {
+			if (!entries[i].delete()) {
+				context.log("Unable to remove old build cache entry: " + entries[i].getAbsolutePath());
+			}
+		}
+	}
+}
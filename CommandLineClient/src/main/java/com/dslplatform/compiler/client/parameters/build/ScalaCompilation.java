@@ -2,15 +2,19 @@ package com.dslplatform.compiler.client.parameters.build;
 
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.ProcessRunner;
 import com.dslplatform.compiler.client.Utils;
 import com.dslplatform.compiler.client.parameters.JavaPath;
 import com.dslplatform.compiler.client.parameters.ScalaPath;
+import com.dslplatform.compiler.client.parameters.ScalaServer;
+import com.dslplatform.compiler.client.parameters.Version;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 class ScalaCompilation {
 
@@ -21,11 +25,7 @@ class ScalaCompilation {
 			final File output,
 			final Map<String, List<String>> services,
 			final Context context) {
-		if (output.exists() && !output.isDirectory()) {
-			if (!output.delete()) {
-				return Either.fail("Failed to remove previous Scala model: " + output.getAbsolutePath());
-			}
-		} else if (output.exists() && output.isDirectory()) {
+		if (output.exists() && output.isDirectory()) {
 			return Either.fail("Expecting to find file. Found folder at: " + output.getAbsolutePath());
 		}
 		final Either<String> tryCompiler = ScalaPath.findCompiler(context);
@@ -33,13 +33,6 @@ class ScalaCompilation {
 			return Either.fail(tryCompiler.whyNot());
 		}
 		final String scalac = tryCompiler.get();
-		final File classOut = new File(source, "compile-" + name);
-		if (classOut.exists() && !classOut.delete()) {
-			return Either.fail("Can't remove folder with compiled files: " + classOut.getAbsolutePath());
-		}
-		if (!classOut.mkdirs()) {
-			return Either.fail("Error creating temporary folder for Scala class files: " + classOut.getAbsolutePath());
-		}
 		final File[] externalJars = libraries.listFiles(new FilenameFilter() {
 			@Override
 			public boolean accept(final File dir, final String name) {
@@ -49,16 +42,45 @@ class ScalaCompilation {
 		if (externalJars.length == 0) {
 			return Either.fail("Unable to find dependencies in: " + libraries.getAbsolutePath());
 		}
+		final OutputCache cache = OutputCache.prepare(context, scalac, source, ".scala", externalJars, output,
+				"scalac " + (services == null ? "" : new TreeMap<String, List<String>>(services).toString()) + " " + context.get(Version.INSTANCE));
+		if (cache != null && cache.restore(output)) {
+			return Either.success("");
+		}
+		final Either<String> compilation = compileAll(name, scalac, externalJars, source, output, services, context);
+		if (cache != null && compilation.isSuccess()) {
+			cache.store(output);
+		}
+		return compilation;
+	}
 
+	private static Either<String> compileAll(
+			final String name,
+			final String scalac,
+			final File[] externalJars,
+			final File source,
+			final File output,
+			final Map<String, List<String>> services,
+			final Context context) {
+		if (output.exists() && !output.delete()) {
+			return Either.fail("Failed to remove previous Scala model: " + output.getAbsolutePath());
+		}
+		final File classOut = new File(source, "compile-" + name);
+		if (classOut.exists() && !classOut.delete()) {
+			return Either.fail("Can't remove folder with compiled files: " + classOut.getAbsolutePath());
+		}
+		if (!classOut.mkdirs()) {
+			return Either.fail("Error creating temporary folder for Scala class files: " + classOut.getAbsolutePath());
+		}
 		final List<String> scalacArguments = new ArrayList<String>();
 		scalacArguments.add("-encoding");
 		scalacArguments.add("UTF8");
 		scalacArguments.add("-optimise");
 		scalacArguments.add("-nowarn");
 		scalacArguments.add("-d");
-		scalacArguments.add("compile-" + name);
+		scalacArguments.add(classOut.getAbsolutePath());
 		scalacArguments.add("-classpath");
-		final StringBuilder classPath = new StringBuilder(".");
+		final StringBuilder classPath = new StringBuilder(source.getAbsolutePath());
 		for (final File j : externalJars) {
 			classPath.append(File.pathSeparatorChar).append(j.getAbsolutePath());
 		}
@@ -68,12 +90,48 @@ class ScalaCompilation {
 		if (sources.isEmpty())
 			return Either.fail("Unable to find Scala generated sources in: " + source.getAbsolutePath());
 		scalacArguments.addAll(sources);
-		context.show("Running scalac for " + output.getName());
-		final Either<Utils.CommandResult> execCompile = Utils.runCommand(context, scalac, source, scalacArguments);
+		Either<String> compilation = null;
+		if (context.contains(ScalaServer.INSTANCE)) {
+			//server is reached before compilation, so errors reported through it are not retried with scalac
+			final Either<String> fsc = ScalaServer.connect(context, scalac);
+			if (fsc.isSuccess()) {
+				final List<String> fscArguments = new ArrayList<String>();
+				fscArguments.add("-max-idle");
+				fscArguments.add(Integer.toString(ScalaServer.idleMinutes(context)));
+				fscArguments.addAll(scalacArguments);
+				context.show("Running fsc for " + output.getName());
+				compilation = runCompiler(context, "fsc", fsc.get(), source, fscArguments, output.getName());
+			} else {
+				context.warning(fsc.whyNot() + ". Falling back to scalac.");
+			}
+		}
+		if (compilation == null) {
+			context.show("Running scalac for " + output.getName());
+			compilation = runCompiler(context, "scalac", scalac, source, scalacArguments, output.getName());
+		}
+		if (!compilation.isSuccess()) {
+			return compilation;
+		}
+		final Either<Utils.CommandResult> tryArchive = JavaPath.makeArchive(context, classOut, output, services);
+		if (!tryArchive.isSuccess()) {
+			return Either.fail(tryArchive.whyNot());
+		}
+		return compilation;
+	}
+
+	private static Either<String> runCompiler(
+			final Context context,
+			final String tool,
+			final String command,
+			final File source,
+			final List<String> arguments,
+			final String outputName) {
+		final Either<Utils.CommandResult> execCompile = Utils.runTool(context, tool, command, source, arguments, ProcessRunner.NATIVE);
 		if (!execCompile.isSuccess()) {
 			return Either.fail(execCompile.whyNot());
 		}
 		final Utils.CommandResult compilation = execCompile.get();
+		context.show(tool + " for " + outputName + " finished in " + compilation.duration + "ms");
 		if (compilation.error.length() > 0) {
 			return Either.fail(compilation.error);
 		}
@@ -89,11 +147,6 @@ class ScalaCompilation {
 			}
 			return Either.fail(compilation.output);
 		}
-		final String compilationOutput = compilation.output;
-		final Either<Utils.CommandResult> tryArchive = JavaPath.makeArchive(context, classOut, output, services);
-		if (!tryArchive.isSuccess()) {
-			return Either.fail(tryArchive.whyNot());
-		}
-		return Either.success(compilationOutput);
+		return Either.success(compilation.output);
 	}
 }
@@ -0,0 +1,128 @@
+package com.dslplatform.compiler.client;
+
+import com.dslplatform.compiler.client.parameters.Force;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ContextTest {
+
+	private static class CapturingContext extends Context {
+		final ByteArrayOutputStream buffer;
+
+		CapturingContext(final ByteArrayOutputStream buffer) {
+			super(new PrintStream(buffer, true));
+			this.buffer = buffer;
+		}
+	}
+
+	@Test
+	public void parametersWithoutValue() {
+		final Context context = new Context();
+		assertFalse(context.contains(Force.INSTANCE));
+		context.put(Force.INSTANCE, null);
+		assertTrue(context.contains(Force.INSTANCE));
+		assertNull(context.get(Force.INSTANCE));
+		context.put("custom", "");
+		assertTrue(context.contains("custom"));
+		assertEquals("", context.get("custom"));
+		context.cache("value", 1);
+		context.cache("value", null);
+		assertNull(context.load("value"));
+	}
+
+	@Test
+	public void factoryIsCalledOnce() throws Exception {
+		final Context context = new Context();
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		final ExecutorService executor = Executors.newFixedThreadPool(16);
+		final List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (int i = 0; i < 64; i++) {
+			results.add(executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					start.await();
+					return context.load("shared", new Callable<Object>() {
+						@Override
+						public Object call() throws InterruptedException {
+							calls.incrementAndGet();
+							Thread.sleep(20);
+							return new Object();
+						}
+					});
+				}
+			}));
+		}
+		start.countDown();
+		final Object first = results.get(0).get();
+		for (final Future<Object> f : results) {
+			assertSame(first, f.get());
+		}
+		executor.shutdown();
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void noCrossTalkBetweenContexts() throws Exception {
+		final int contexts = 8;
+		final int lines = 500;
+		final List<CapturingContext> all = new ArrayList<CapturingContext>();
+		final ExecutorService executor = Executors.newFixedThreadPool(contexts * 2);
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Future<?>> tasks = new ArrayList<Future<?>>();
+		for (int c = 0; c < contexts; c++) {
+			final CapturingContext context = new CapturingContext(new ByteArrayOutputStream());
+			context.put("disable-colors", null);
+			all.add(context);
+			final String name = "context" + c;
+			//two threads per context, writing and reading parameters and cache concurrently
+			for (int t = 0; t < 2; t++) {
+				final int thread = t;
+				tasks.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						for (int i = 0; i < lines; i++) {
+							context.put("name", name);
+							context.put(name + "-" + thread + "-" + i, Integer.toString(i));
+							assertEquals(name, context.get("name"));
+							assertEquals(name, context.load("owner", new Callable<String>() {
+								@Override
+								public String call() {
+									return name;
+								}
+							}));
+							context.show(name + ":" + thread + ":" + i);
+						}
+						return null;
+					}
+				}));
+			}
+		}
+		start.countDown();
+		for (final Future<?> f : tasks) {
+			f.get();
+		}
+		executor.shutdown();
+		for (int c = 0; c < contexts; c++) {
+			final CapturingContext context = all.get(c);
+			final String[] output = context.buffer.toString().split("\n");
+			assertEquals(2 * lines, output.length);
+			for (final String line : output) {
+				assertTrue(line, line.startsWith("context" + c + ":"));
+			}
+			for (int i = 0; i < lines; i++) {
+				assertEquals(Integer.toString(i), context.get("context" + c + "-0-" + i));
+				assertEquals(Integer.toString(i), context.get("context" + c + "-1-" + i));
+			}
+		}
+	}
+}
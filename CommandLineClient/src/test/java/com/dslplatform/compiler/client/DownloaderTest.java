@@ -0,0 +1,240 @@
+package com.dslplatform.compiler.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DownloaderTest {
+	private HttpServer server;
+	private File folder;
+	private byte[] content;
+	private boolean acceptRanges;
+	private boolean ignoreRanges;
+	private int truncateRequests;
+	private String lastModified;
+	private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+	private final List<String> validators = Collections.synchronizedList(new ArrayList<String>());
+
+	@Before
+	public void setup() throws IOException {
+		content = new byte[100000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i * 31 + i / 7);
+		}
+		acceptRanges = true;
+		ignoreRanges = false;
+		truncateRequests = 0;
+		lastModified = "Tue, 15 Nov 1994 08:12:31 GMT";
+		folder = File.createTempFile("downloader", "-test");
+		assertTrue(folder.delete());
+		assertTrue(folder.mkdirs());
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/file.bin", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		server.stop(0);
+		Utils.deletePath(folder);
+		assertTrue(folder.delete());
+	}
+
+	private synchronized boolean shouldTruncate() {
+		if (truncateRequests > 0) {
+			truncateRequests--;
+			return true;
+		}
+		return false;
+	}
+
+	private void serve(final HttpExchange exchange) throws IOException {
+		if (acceptRanges) {
+			exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+		}
+		if (lastModified != null) {
+			exchange.getResponseHeaders().set("Last-Modified", lastModified);
+		}
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Content-Length", Integer.toString(content.length));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		final String range = exchange.getRequestHeaders().getFirst("Range");
+		int from = 0;
+		int to = content.length - 1;
+		final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		if (range != null) {
+			validators.add(ifRange);
+		}
+		if (range != null && acceptRanges && !ignoreRanges && (ifRange == null || ifRange.equals(lastModified))) {
+			ranges.add(range);
+			final String[] parts = range.substring("bytes=".length()).split("-", -1);
+			from = Integer.parseInt(parts[0]);
+			if (parts[1].length() > 0) {
+				to = Integer.parseInt(parts[1]);
+			}
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + content.length);
+			exchange.sendResponseHeaders(206, to - from + 1);
+		} else {
+			exchange.sendResponseHeaders(200, content.length);
+		}
+		final OutputStream os = exchange.getResponseBody();
+		if (shouldTruncate()) {
+			os.write(content, from, (to - from + 1) / 2);
+			os.flush();
+			//drop the connection in the middle of the response
+			try {
+				os.close();
+			} catch (IOException ignore) {
+			}
+			return;
+		}
+		os.write(content, from, to - from + 1);
+		os.close();
+	}
+
+	private URL url() throws IOException {
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/file.bin");
+	}
+
+	//short timeout, since truncated responses are detected only through the read timeout
+	private static Downloader downloader() {
+		return new Downloader(new ContextMock(), 1000);
+	}
+
+	private byte[] read(final File file) throws IOException {
+		final FileInputStream fis = new FileInputStream(file);
+		try {
+			final byte[] result = new byte[(int) file.length()];
+			int offset = 0;
+			while (offset < result.length) {
+				offset += fis.read(result, offset, result.length - offset);
+			}
+			return result;
+		} finally {
+			fis.close();
+		}
+	}
+
+	@Test
+	public void resumesInterruptedDownload() throws IOException {
+		truncateRequests = 1;
+		final File target = new File(folder, "file.bin");
+		final Either<Downloader.Result> result = downloader().download(url(), target);
+		assertTrue(result.isSuccess());
+		assertTrue(Arrays.equals(content, read(target)));
+		assertEquals(Collections.singletonList("bytes=" + (content.length / 2) + "-"), ranges);
+		assertFalse(new File(folder, "file.bin.part").exists());
+	}
+
+	@Test
+	public void withoutValidatorInterruptedDownloadIsRestarted() throws IOException {
+		lastModified = null;
+		truncateRequests = 1;
+		final File target = new File(folder, "file.bin");
+		final Either<Downloader.Result> result = downloader().download(url(), target);
+		assertTrue(result.isSuccess());
+		assertTrue(Arrays.equals(content, read(target)));
+		assertTrue(ranges.isEmpty());
+	}
+
+	@Test
+	public void largeFileIsDownloadedInParallelRanges() throws IOException {
+		final File target = new File(folder, "file.bin");
+		final Either<Downloader.Result> result =
+				new Downloader(new ContextMock(), 3, 1000, 4, 5000).download(url(), target);
+		assertTrue(result.isSuccess());
+		assertTrue(Arrays.equals(content, read(target)));
+		assertEquals(4, ranges.size());
+		assertEquals(Collections.nCopies(4, lastModified), validators);
+	}
+
+	@Test
+	public void ignoredRangeFallsBackToSingleStream() throws IOException {
+		ignoreRanges = true;
+		final File target = new File(folder, "file.bin");
+		final Either<Downloader.Result> result =
+				new Downloader(new ContextMock(), 3, 1000, 4, 5000).download(url(), target);
+		assertTrue(result.isSuccess());
+		assertTrue(Arrays.equals(content, read(target)));
+		assertTrue(ranges.isEmpty());
+	}
+
+	@Test
+	public void withoutValidatorFileIsNotDownloadedInRanges() throws IOException {
+		lastModified = null;
+		final File target = new File(folder, "file.bin");
+		final Either<Downloader.Result> result =
+				new Downloader(new ContextMock(), 3, 1000, 4, 5000).download(url(), target);
+		assertTrue(result.isSuccess());
+		assertTrue(Arrays.equals(content, read(target)));
+		assertTrue(validators.isEmpty());
+	}
+
+	@Test
+	public void interruptedRangeIsRetried() throws IOException {
+		truncateRequests = 2;
+		final File target = new File(folder, "file.bin");
+		final Either<Downloader.Result> result =
+				new Downloader(new ContextMock(), 3, 1000, 4, 5000).download(url(), target);
+		assertTrue(result.isSuccess());
+		assertTrue(Arrays.equals(content, read(target)));
+		assertEquals(6, ranges.size());
+	}
+
+	@Test
+	public void withoutRangeSupportDownloadIsRestarted() throws IOException {
+		acceptRanges = false;
+		truncateRequests = 1;
+		final File target = new File(folder, "file.bin");
+		final Either<Downloader.Result> result = downloader().download(url(), target);
+		assertTrue(result.isSuccess());
+		assertTrue(Arrays.equals(content, read(target)));
+	}
+
+	@Test
+	public void checksumMismatchIsRejected() throws IOException {
+		final File target = new File(folder, "file.bin");
+		final Either<Downloader.Result> result =
+				downloader().download(url(), target, "0000000000000000000000000000000000000000");
+		assertFalse(result.isSuccess());
+		assertTrue(result.explainError().contains("Checksum mismatch"));
+		assertFalse(target.exists());
+		assertFalse(new File(folder, "file.bin.part").exists());
+	}
+
+	@Test
+	public void existingFileIsReplaced() throws IOException {
+		final File target = new File(folder, "file.bin");
+		Utils.saveFile(new ContextMock(), target, "old content");
+		final File expected = new File(folder, "expected.bin");
+		final Either<Downloader.Result> first = downloader().download(url(), expected);
+		assertTrue(first.isSuccess());
+		final Either<Downloader.Result> result = downloader().download(url(), target, first.get().sha1);
+		assertTrue(result.isSuccess());
+		assertEquals(content.length, target.length());
+	}
+}
@@ -0,0 +1,97 @@
+package com.dslplatform.compiler.client;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class JobSchedulerTest {
+
+	private static int maxConcurrent(final JobScheduler scheduler, final List<String> tools) throws InterruptedException {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger max = new AtomicInteger();
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (final String tool : tools) {
+			final Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						final JobScheduler.Lease lease = scheduler.acquire(tool);
+						try {
+							final int current = running.incrementAndGet();
+							synchronized (max) {
+								if (current > max.get()) {
+									max.set(current);
+								}
+							}
+							Thread.sleep(30);
+							running.decrementAndGet();
+						} finally {
+							lease.release();
+						}
+					} catch (InterruptedException ignore) {
+					}
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		for (final Thread t : threads) {
+			t.join();
+		}
+		return max.get();
+	}
+
+	@Test
+	public void limitsBySlots() throws InterruptedException {
+		final JobScheduler scheduler = new JobScheduler(2, 100000, Collections.<String, Integer>emptyMap());
+		assertEquals(2, maxConcurrent(scheduler, Collections.nCopies(6, "javac")));
+		final JobScheduler.Metrics metrics = scheduler.metrics();
+		assertEquals(6, metrics.jobs);
+		assertTrue(metrics.totalWait > 0);
+		assertTrue(metrics.utilization() > 0);
+	}
+
+	@Test
+	public void limitsByMemory() throws InterruptedException {
+		final JobScheduler scheduler = new JobScheduler(8, 2000, Collections.singletonMap("scalac", 1500));
+		assertEquals(1, maxConcurrent(scheduler, Collections.nCopies(3, "scalac")));
+	}
+
+	@Test
+	public void oversizedJobRunsAlone() throws InterruptedException {
+		final JobScheduler scheduler = new JobScheduler(4, 1000, Collections.singletonMap("scalac", 5000));
+		assertEquals(1, maxConcurrent(scheduler, Collections.nCopies(2, "scalac")));
+		assertEquals(2, scheduler.metrics().jobs);
+	}
+
+	@Test
+	public void globalSchedulerIsConfiguredOnce() {
+		final JobScheduler current = JobScheduler.global();
+		final Map<String, Integer> weights = Collections.emptyMap();
+		assertTrue(JobScheduler.configureGlobal(current.getSlots(), current.getMemory(), weights));
+		final JobScheduler configured = JobScheduler.global();
+		assertFalse(JobScheduler.configureGlobal(current.getSlots() + 1, current.getMemory(), weights));
+		assertSame(configured, JobScheduler.global());
+		assertTrue(JobScheduler.configureGlobal(current.getSlots(), current.getMemory(), weights));
+		assertSame(configured, JobScheduler.global());
+	}
+
+	@Test
+	public void usageIsTrackedPerContext() throws InterruptedException {
+		final JobScheduler scheduler = new JobScheduler(2, 100000, Collections.<String, Integer>emptyMap());
+		final ContextMock first = new ContextMock();
+		final ContextMock second = new ContextMock();
+		scheduler.acquire("javac", JobScheduler.usage(first)).release();
+		scheduler.acquire("javac", JobScheduler.usage(first)).release();
+		scheduler.acquire("javac", JobScheduler.usage(second)).release();
+		assertEquals(2, JobScheduler.usage(first).metrics(2).jobs);
+		assertEquals(1, JobScheduler.usage(second).metrics(2).jobs);
+		assertEquals(3, scheduler.metrics().jobs);
+	}
+}
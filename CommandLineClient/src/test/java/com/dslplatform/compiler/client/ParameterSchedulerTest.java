@@ -0,0 +1,312 @@
+package com.dslplatform.compiler.client;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ParameterSchedulerTest {
+
+	private static abstract class TestParameter implements DependentParameter {
+		private final String alias;
+		private final CompileParameter[] dependencies;
+		final AtomicInteger runs = new AtomicInteger();
+
+		TestParameter(final String alias, final CompileParameter... dependencies) {
+			this.alias = alias;
+			this.dependencies = dependencies;
+		}
+
+		@Override
+		public String getAlias() {
+			return alias;
+		}
+
+		@Override
+		public String getUsage() {
+			return null;
+		}
+
+		@Override
+		public CompileParameter[] getCheckDependencies() {
+			return dependencies;
+		}
+
+		@Override
+		public CompileParameter[] getRunDependencies() {
+			return dependencies;
+		}
+
+		@Override
+		public void run(final Context context) throws ExitException {
+			runs.incrementAndGet();
+			context.show(alias + " run");
+		}
+
+		@Override
+		public String getShortDescription() {
+			return null;
+		}
+
+		@Override
+		public String getDetailedDescription() {
+			return alias + " description";
+		}
+	}
+
+	private static class Output {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final Context context = new Context(new PrintStream(buffer, true)) {
+		};
+
+		List<String> lines() {
+			final String value = buffer.toString().trim();
+			return value.length() == 0 ? new ArrayList<String>() : Arrays.asList(value.split("\\r?\\n"));
+		}
+	}
+
+	@Test
+	public void independentChecksRunInParallel() {
+		final CountDownLatch latch = new CountDownLatch(2);
+		final TestParameter first = new TestParameter("first") {
+			@Override
+			public boolean check(final Context context) {
+				latch.countDown();
+				try {
+					return latch.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+					return false;
+				}
+			}
+		};
+		final TestParameter second = new TestParameter("second") {
+			@Override
+			public boolean check(final Context context) {
+				latch.countDown();
+				try {
+					return latch.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+					return false;
+				}
+			}
+		};
+		final Output output = new Output();
+		assertTrue(Main.processContext(output.context, Arrays.<CompileParameter>asList(first, second)));
+		assertEquals(Arrays.asList("first run", "second run"), output.lines());
+	}
+
+	@Test
+	public void outputIsInParameterOrder() {
+		final CountDownLatch secondDone = new CountDownLatch(1);
+		final TestParameter first = new TestParameter("first") {
+			@Override
+			public boolean check(final Context context) throws ExitException {
+				try {
+					assertTrue(secondDone.await(10, TimeUnit.SECONDS));
+				} catch (InterruptedException ex) {
+					throw new ExitException();
+				}
+				context.show("first check");
+				return true;
+			}
+		};
+		final TestParameter second = new TestParameter("second") {
+			@Override
+			public boolean check(final Context context) {
+				context.show("second check");
+				secondDone.countDown();
+				return true;
+			}
+		};
+		final Output output = new Output();
+		assertTrue(Main.processContext(output.context, Arrays.<CompileParameter>asList(first, second)));
+		assertEquals(Arrays.asList("first check", "second check", "first run", "second run"), output.lines());
+	}
+
+	@Test
+	public void dependenciesAreProcessedFirst() {
+		final TestParameter second = new TestParameter("second") {
+			@Override
+			public boolean check(final Context context) {
+				context.cache("second", Boolean.TRUE);
+				return true;
+			}
+		};
+		final TestParameter first = new TestParameter("first", second) {
+			@Override
+			public boolean check(final Context context) {
+				context.show("second checked: " + context.load("second"));
+				return true;
+			}
+		};
+		final Output output = new Output();
+		assertTrue(Main.processContext(output.context, Arrays.<CompileParameter>asList(first, second)));
+		assertEquals(Arrays.asList("second checked: true", "second run", "first run"), output.lines());
+	}
+
+	@Test
+	public void failedCheckStopsLaterParameters() {
+		final TestParameter first = new TestParameter("first") {
+			@Override
+			public boolean check(final Context context) {
+				context.show("first check");
+				return true;
+			}
+		};
+		final TestParameter second = new TestParameter("second") {
+			@Override
+			public boolean check(final Context context) {
+				context.error("second failed");
+				return false;
+			}
+		};
+		final TestParameter third = new TestParameter("third", second) {
+			@Override
+			public boolean check(final Context context) {
+				context.show("third check");
+				return true;
+			}
+		};
+		final Output output = new Output();
+		assertFalse(Main.processContext(output.context, Arrays.<CompileParameter>asList(first, second, third)));
+		final List<String> lines = output.lines();
+		assertEquals("first check", lines.get(0));
+		assertTrue(lines.get(1).contains("second failed"));
+		assertEquals("second description", lines.get(lines.size() - 1));
+		assertFalse(lines.contains("third check"));
+		assertEquals(0, first.runs.get() + second.runs.get() + third.runs.get());
+	}
+
+	@Test
+	public void parametersWithoutDependenciesWaitForPrevious() {
+		final AtomicInteger order = new AtomicInteger();
+		final TestParameter first = new TestParameter("first") {
+			@Override
+			public boolean check(final Context context) throws ExitException {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ex) {
+					throw new ExitException();
+				}
+				return order.compareAndSet(0, 1);
+			}
+		};
+		final CompileParameter legacy = new CompileParameter() {
+			@Override
+			public String getAlias() {
+				return "legacy";
+			}
+
+			@Override
+			public String getUsage() {
+				return null;
+			}
+
+			@Override
+			public boolean check(final Context context) {
+				return order.compareAndSet(1, 2);
+			}
+
+			@Override
+			public void run(final Context context) {
+			}
+
+			@Override
+			public String getShortDescription() {
+				return null;
+			}
+
+			@Override
+			public String getDetailedDescription() {
+				return null;
+			}
+		};
+		final TestParameter last = new TestParameter("last") {
+			@Override
+			public boolean check(final Context context) {
+				return order.compareAndSet(2, 3);
+			}
+		};
+		final Output output = new Output();
+		assertTrue(Main.processContext(output.context, Arrays.asList(first, legacy, last)));
+		assertEquals(3, order.get());
+	}
+
+	@Test
+	public void startedParametersAreAwaitedAfterFailure() {
+		final CountDownLatch secondStarted = new CountDownLatch(1);
+		final AtomicInteger secondFinished = new AtomicInteger();
+		final TestParameter first = new TestParameter("first") {
+			@Override
+			public boolean check(final Context context) throws ExitException {
+				try {
+					assertTrue(secondStarted.await(10, TimeUnit.SECONDS));
+				} catch (InterruptedException ex) {
+					throw new ExitException();
+				}
+				context.error("first failed");
+				return false;
+			}
+		};
+		final TestParameter second = new TestParameter("second") {
+			@Override
+			public boolean check(final Context context) throws ExitException {
+				secondStarted.countDown();
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException ignore) {
+				}
+				context.show("second check");
+				try {
+					context.ask("Continue (y/N):");
+				} catch (ExitException ex) {
+					secondFinished.incrementAndGet();
+					throw ex;
+				}
+				return true;
+			}
+		};
+		final Output output = new Output();
+		assertFalse(Main.processContext(output.context, Arrays.<CompileParameter>asList(first, second)));
+		assertEquals(1, secondFinished.get());
+		final List<String> lines = output.lines();
+		assertTrue(lines.get(0).contains("first failed"));
+		assertFalse(lines.contains("second check"));
+		assertEquals("first description", lines.get(lines.size() - 1));
+	}
+
+	@Test
+	public void firstFailureInParameterOrderIsReported() {
+		final CountDownLatch secondFailed = new CountDownLatch(1);
+		final TestParameter first = new TestParameter("first") {
+			@Override
+			public boolean check(final Context context) throws ExitException {
+				try {
+					assertTrue(secondFailed.await(10, TimeUnit.SECONDS));
+				} catch (InterruptedException ex) {
+					throw new ExitException();
+				}
+				return false;
+			}
+		};
+		final TestParameter second = new TestParameter("second") {
+			@Override
+			public boolean check(final Context context) {
+				secondFailed.countDown();
+				return false;
+			}
+		};
+		final Output output = new Output();
+		assertFalse(Main.processContext(output.context, Arrays.<CompileParameter>asList(first, second)));
+		final List<String> lines = output.lines();
+		assertEquals("first description", lines.get(lines.size() - 1));
+	}
+}
@@ -0,0 +1,94 @@
+package com.dslplatform.compiler.client;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+
+public class ProcessRunnerTest {
+
+	@Before
+	public void requiresShell() {
+		assumeFalse(Utils.isWindows());
+	}
+
+	@Test
+	public void capturesOutputAndExitCode() {
+		final Either<Utils.CommandResult> result =
+				new ProcessRunner(new ContextMock(), ProcessRunner.UTF_8)
+						.run("sh", null, Arrays.asList("-c", "echo out; echo err 1>&2; exit 3"));
+		assertTrue(result.isSuccess());
+		assertEquals("out\n", result.get().output);
+		assertEquals("err\n", result.get().error);
+		assertEquals(3, result.get().exitCode);
+		assertNull(result.get().outputFile);
+		assertTrue(result.get().duration >= 0);
+	}
+
+	@Test
+	public void outputIsDecodedWithProvidedCharset() throws IOException {
+		final String script = "i=0; while [ $i -lt 200 ]; do printf 'caf\\303\\251\\n'; i=$((i+1)); done";
+		final Either<Utils.CommandResult> utf8 =
+				new ProcessRunner(new ContextMock(), ProcessRunner.UTF_8)
+						.captureLimit(100)
+						.spillOutput(true)
+						.run("sh", null, Arrays.asList("-c", script));
+		assertTrue(utf8.isSuccess());
+		assertTrue(utf8.get().output.endsWith("caf\u00e9\n"));
+		assertTrue(utf8.get().fullOutput().startsWith("caf\u00e9\ncaf\u00e9\n"));
+		final Either<Utils.CommandResult> latin1 =
+				new ProcessRunner(new ContextMock(), Charset.forName("ISO-8859-1"))
+						.run("sh", null, Arrays.asList("-c", "printf 'caf\\303\\251'"));
+		assertTrue(latin1.isSuccess());
+		assertEquals("caf\u00c3\u00a9", latin1.get().output);
+	}
+
+	@Test
+	public void largeOutputIsSpilledToFile() throws IOException {
+		final Either<Utils.CommandResult> result =
+				new ProcessRunner(new ContextMock(), ProcessRunner.UTF_8)
+						.captureLimit(1000)
+						.spillOutput(true)
+						.run("sh", null, Arrays.asList("-c", "i=0; while [ $i -lt 2000 ]; do echo line$i; i=$((i+1)); done"));
+		assertTrue(result.isSuccess());
+		final Utils.CommandResult cr = result.get();
+		assertEquals(1000, cr.output.length());
+		assertTrue(cr.output.endsWith("line1999\n"));
+		assertNotNull(cr.outputFile);
+		assertTrue(cr.peakBuffered <= 1000);
+		final String full = cr.fullOutput();
+		assertEquals(cr.outputSize, full.length());
+		assertTrue(full.startsWith("line0\nline1\n"));
+		assertTrue(full.endsWith("line1999\n"));
+		assertFalse(cr.outputFile.exists());
+	}
+
+	@Test
+	public void withoutSpillOnlyEndOfOutputIsKept() {
+		final Either<Utils.CommandResult> result =
+				new ProcessRunner(new ContextMock(), ProcessRunner.UTF_8)
+						.captureLimit(1000)
+						.run("sh", null, Arrays.asList("-c", "i=0; while [ $i -lt 2000 ]; do echo line$i; i=$((i+1)); done"));
+		assertTrue(result.isSuccess());
+		assertEquals(1000, result.get().output.length());
+		assertTrue(result.get().output.endsWith("line1999\n"));
+		assertNull(result.get().outputFile);
+	}
+
+	@Test
+	public void processIsStoppedAfterTimeout() {
+		final long start = System.currentTimeMillis();
+		final Either<Utils.CommandResult> result =
+				new ProcessRunner(new ContextMock(), ProcessRunner.UTF_8)
+						.timeout(200)
+						.run("sleep", null, Arrays.asList("10"));
+		assertFalse(result.isSuccess());
+		assertTrue(result.explainError().contains("did not finish"));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+}
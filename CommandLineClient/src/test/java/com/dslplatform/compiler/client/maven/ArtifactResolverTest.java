@@ -0,0 +1,159 @@
+package com.dslplatform.compiler.client.maven;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ArtifactResolverTest {
+	private File remote;
+	private File local;
+	private ArtifactResolver resolver;
+
+	@Before
+	public void setup() throws IOException {
+		final File root = File.createTempFile("resolver", "-test");
+		assertTrue(root.delete());
+		remote = new File(root, "remote");
+		local = new File(root, "local");
+		assertTrue(remote.mkdirs());
+		assertTrue(local.mkdirs());
+		resolver = new ArtifactResolver(new ContextMock(), local, Collections.singletonList(remote.toURI().toString()));
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		final File root = remote.getParentFile();
+		Utils.deletePath(root);
+		assertTrue(root.delete());
+	}
+
+	private void publish(final String groupId, final String artifactId, final String version, final String body) throws IOException {
+		final File folder = new File(remote, groupId.replace('.', '/') + "/" + artifactId + "/" + version);
+		assertTrue(folder.exists() || folder.mkdirs());
+		final ContextMock context = new ContextMock();
+		Utils.saveFile(context, new File(folder, artifactId + "-" + version + ".pom"),
+				"<project><groupId>" + groupId + "</groupId><artifactId>" + artifactId + "</artifactId>"
+						+ "<version>" + version + "</version>" + body + "</project>");
+		Utils.saveFile(context, new File(folder, artifactId + "-" + version + ".jar"), artifactId + version);
+	}
+
+	private static String dependency(final String groupId, final String artifactId, final String version, final String extra) {
+		return "<dependency><groupId>" + groupId + "</groupId><artifactId>" + artifactId + "</artifactId>"
+				+ (version != null ? "<version>" + version + "</version>" : "") + extra + "</dependency>";
+	}
+
+	private static List<String> names(final List<File> files) {
+		final List<String> result = new ArrayList<String>();
+		for (final File f : files) {
+			result.add(f.getName());
+		}
+		return result;
+	}
+
+	@Test
+	public void resolvesTransitiveWithNearestWins() throws IOException {
+		publish("org.test", "root", "1.0", "<dependencies>"
+				+ dependency("org.test", "b", "1.0", "")
+				+ dependency("org.test", "c", "1.0", "<scope>runtime</scope>")
+				+ dependency("org.test", "opt", "1.0", "<optional>true</optional>")
+				+ dependency("org.test", "tst", "1.0", "<scope>test</scope>")
+				+ "</dependencies>");
+		publish("org.test", "b", "1.0", "");
+		publish("org.test", "b", "2.0", "");
+		publish("org.test", "c", "1.0", "<dependencies>"
+				+ dependency("org.test", "b", "2.0", "")
+				+ dependency("org.test", "d", "1.0", "")
+				+ "</dependencies>");
+		publish("org.test", "d", "1.0", "");
+		final Either<List<File>> result = resolver.resolve("org.test", "root", "1.0");
+		assertTrue(result.isSuccess());
+		assertEquals(Arrays.asList("root-1.0.jar", "b-1.0.jar", "c-1.0.jar", "d-1.0.jar"), names(result.get()));
+		for (final File f : result.get()) {
+			assertTrue(f.getAbsolutePath().startsWith(local.getAbsolutePath()));
+		}
+	}
+
+	@Test
+	public void inheritsParentPropertiesAndManagement() throws IOException {
+		publish("org.test", "parent", "3", "<packaging>pom</packaging>"
+				+ "<properties><lib.version>2.0</lib.version></properties>"
+				+ "<dependencyManagement><dependencies>"
+				+ dependency("org.test", "lib", "${lib.version}", "")
+				+ "</dependencies></dependencyManagement>");
+		publish("org.test", "child", "1.0", "<parent><groupId>org.test</groupId><artifactId>parent</artifactId><version>3</version></parent>"
+				+ "<dependencies>" + dependency("org.test", "lib", null, "") + "</dependencies>");
+		publish("org.test", "lib", "2.0", "");
+		final Either<List<File>> result = resolver.resolve("org.test", "child", "1.0");
+		assertTrue(result.isSuccess());
+		assertEquals(Arrays.asList("child-1.0.jar", "lib-2.0.jar"), names(result.get()));
+	}
+
+	@Test
+	public void inheritedManagementIsResolvedWithChildProperties() throws IOException {
+		publish("org.test", "grandparent", "1", "<packaging>pom</packaging>"
+				+ "<properties><lib.version>1.0</lib.version></properties>"
+				+ "<dependencyManagement><dependencies>"
+				+ dependency("org.test", "lib", "${lib.version}", "")
+				+ dependency("org.test", "sibling", "${project.version}", "")
+				+ dependency("org.test", "bom", "${bom.version}", "<type>pom</type><scope>import</scope>")
+				+ "</dependencies></dependencyManagement>");
+		publish("org.test", "parent", "2", "<packaging>pom</packaging>"
+				+ "<parent><groupId>org.test</groupId><artifactId>grandparent</artifactId><version>1</version></parent>"
+				+ "<properties><lib.version>2.0</lib.version></properties>");
+		publish("org.test", "child", "5.0", "<parent><groupId>org.test</groupId><artifactId>parent</artifactId><version>2</version></parent>"
+				+ "<properties><bom.version>3</bom.version></properties>"
+				+ "<dependencies>"
+				+ dependency("org.test", "lib", null, "")
+				+ dependency("org.test", "sibling", null, "")
+				+ dependency("org.test", "managed", null, "")
+				+ "</dependencies>");
+		publish("org.test", "bom", "3", "<packaging>pom</packaging><dependencyManagement><dependencies>"
+				+ dependency("org.test", "managed", "${project.version}.1", "")
+				+ "</dependencies></dependencyManagement>");
+		publish("org.test", "lib", "2.0", "");
+		publish("org.test", "sibling", "5.0", "");
+		publish("org.test", "managed", "3.1", "");
+		final Either<List<File>> result = resolver.resolve("org.test", "child", "5.0");
+		assertTrue(result.isSuccess());
+		assertEquals(Arrays.asList("child-5.0.jar", "lib-2.0.jar", "sibling-5.0.jar", "managed-3.1.jar"), names(result.get()));
+	}
+
+	@Test
+	public void respectsExclusions() throws IOException {
+		publish("org.test", "root", "1.0", "<dependencies>"
+				+ dependency("org.test", "a", "1.0", "<exclusions><exclusion><groupId>org.test</groupId><artifactId>x</artifactId></exclusion></exclusions>")
+				+ "</dependencies>");
+		publish("org.test", "a", "1.0", "<dependencies>" + dependency("org.test", "x", "1.0", "") + "</dependencies>");
+		final Either<List<File>> result = resolver.resolve("org.test", "root", "1.0");
+		assertTrue(result.isSuccess());
+		assertEquals(Arrays.asList("root-1.0.jar", "a-1.0.jar"), names(result.get()));
+	}
+
+	@Test
+	public void versionRangeIsNotSupported() throws IOException {
+		publish("org.test", "root", "1.0", "<dependencies>" + dependency("org.test", "a", "[1.0,2.0)", "") + "</dependencies>");
+		final Either<List<File>> result = resolver.resolve("org.test", "root", "1.0");
+		assertFalse(result.isSuccess());
+		assertTrue(result.explainError().contains("version range"));
+	}
+
+	@Test
+	public void findsReleaseFromMetadata() throws IOException {
+		final File folder = new File(remote, "org/test/root");
+		assertTrue(folder.mkdirs());
+		Utils.saveFile(new ContextMock(), new File(folder, "maven-metadata.xml"),
+				"<metadata><versioning><release>1.2</release><versions><version>1.1</version><version>1.2</version></versions></versioning></metadata>");
+		final Either<String> version = resolver.findRelease("org.test", "root");
+		assertTrue(version.isSuccess());
+		assertEquals("1.2", version.get());
+	}
+}
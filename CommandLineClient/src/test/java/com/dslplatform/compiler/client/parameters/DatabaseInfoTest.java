@@ -0,0 +1,179 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.ExitException;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class DatabaseInfoTest {
+
+	private static Map<String, String> dsl(final String... pairs) {
+		final Map<String, String> map = new LinkedHashMap<String, String>();
+		for (int i = 0; i < pairs.length; i += 2) {
+			map.put(pairs[i], pairs[i + 1]);
+		}
+		return map;
+	}
+
+	@Test
+	public void hashDoesntDependOnOrder() {
+		final String first = DatabaseInfo.hash(dsl("/a.dsl", "module A;", "/b.dsl", "module B;"));
+		final String second = DatabaseInfo.hash(dsl("/b.dsl", "module B;", "/a.dsl", "module A;"));
+		assertEquals(first, second);
+		assertEquals(32, first.length());
+	}
+
+	@Test
+	public void hashDetectsChanges() {
+		final String original = DatabaseInfo.hash(dsl("/a.dsl", "module A;", "/b.dsl", "module B;"));
+		assertNotEquals(original, DatabaseInfo.hash(dsl("/a.dsl", "module A;", "/b.dsl", "module B { }")));
+		assertNotEquals(original, DatabaseInfo.hash(dsl("/a.dsl", "module A;", "/c.dsl", "module B;")));
+		assertNotEquals(original, DatabaseInfo.hash(dsl("/a.dsl", "module A;")));
+		//content moved between files is a different snapshot
+		assertNotEquals(
+				DatabaseInfo.hash(dsl("/a.dsl", "module A;", "/b.dsl", "")),
+				DatabaseInfo.hash(dsl("/a.dsl", "", "/b.dsl", "module A;")));
+	}
+
+	private static final Map<String, String> HASHED_DSL = dsl(
+			"/b.dsl", "module B;",
+			"/\u0161\u0111\u010d.dsl", "module C { \"\u017e\" }",
+			"/a.dsl", "module A;");
+
+	@Test
+	public void hashMatchesExpectedDigest() {
+		//digests calculated independently from the md5 of each key and value
+		assertEquals("4589b8007fb36b66aab3e463fcac351f", DatabaseInfo.hash(dsl("/b.dsl", "module B;", "/a.dsl", "module A;")));
+		assertEquals("dafd726c7088e402ddcd810b6d56ecbf", DatabaseInfo.hash(HASHED_DSL));
+		assertEquals("d41d8cd98f00b204e9800998ecf8427e", DatabaseInfo.md5(""));
+	}
+
+	/**
+	 * Run with -Dpostgres=localhost:5432/database?user=...&password=... on a database with hstore extension
+	 */
+	@Test
+	public void hashMatchesDatabaseCalculation() throws Exception {
+		final String connectionString = System.getProperty("postgres");
+		assumeTrue(connectionString != null);
+		final PostgresSession session = PostgresSession.open(connectionString);
+		try {
+			final String literal = "'" + DatabaseInfo.serialize(HASHED_DSL).replace("'", "''") + "'::hstore";
+			final List<String[]> result = session.query(PostgresConnection.dslHashQuery(literal), new ContextMock());
+			assertEquals(DatabaseInfo.hash(HASHED_DSL), result.get(0)[0]);
+		} finally {
+			session.close();
+		}
+	}
+
+	@Test
+	public void serializedTextCanBeParsed() throws ExitException {
+		final Map<String, String> original = dsl(
+				"/a.dsl", "module A { entity \"quoted\" }",
+				"/b\\c.dsl", "module B { \\\\ backslash }",
+				"/\u0161\u0111\u010d.dsl", "module C;");
+		final Map<String, String> parsed = DatabaseInfo.convertToMap(DatabaseInfo.serialize(original), new ContextMock());
+		assertEquals(original, parsed);
+	}
+
+	@Test
+	public void separatorsInsideContent() throws ExitException {
+		final Map<String, String> original = dsl(
+				"/a.dsl", "module A { \", \" }",
+				"/b.dsl", "module B { \"=>\" }",
+				"/c.dsl", "");
+		final String text = DatabaseInfo.serialize(original);
+		assertEquals(original, DatabaseInfo.convertToMap(text, new ContextMock()));
+	}
+
+	@Test
+	public void postgresOutputFormat() throws ExitException {
+		final Map<String, String> parsed = DatabaseInfo.convertToMap(
+				"\"/a.dsl\"=>\"module A;\",\"/b.dsl\" => \"x\\\\y\", c=>NULL", new ContextMock());
+		assertEquals(dsl("/a.dsl", "module A;", "/b.dsl", "x\\y", "c", ""), parsed);
+		assertTrue(DatabaseInfo.convertToMap("", new ContextMock()).isEmpty());
+		assertTrue(DatabaseInfo.convertToMap((String) null, new ContextMock()).isEmpty());
+	}
+
+	@Test
+	public void invalidText() {
+		final String[] invalid = {"\"a\"=>", "\"a\"=\"b\"", "\"a\"=>\"b", "\"a\"=>\"b\" \"c\"=>\"d\"", "=>\"b\""};
+		for (final String text : invalid) {
+			final ContextMock context = new ContextMock();
+			try {
+				DatabaseInfo.convertToMap(text, context);
+				fail("Expecting failure for: " + text);
+			} catch (ExitException ignore) {
+				assertTrue(context.hasError);
+			}
+		}
+	}
+
+	private static String generate(final int files, final int size) {
+		final Map<String, String> dsls = new LinkedHashMap<String, String>();
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < files; i++) {
+			sb.setLength(0);
+			sb.append("module M").append(i).append(" {\n");
+			while (sb.length() < size) {
+				sb.append("  aggregate \"Entity").append(sb.length()).append("\" { string name; int\\? value; }\n");
+			}
+			sb.append("}\n");
+			dsls.put("/module" + i + ".dsl", sb.toString());
+		}
+		return DatabaseInfo.serialize(dsls);
+	}
+
+	//parser used before streaming hstore decoding: split on separators and replace escapes
+	private static Map<String, String> legacyConvertToMap(final String dsls) {
+		final Map<String, String> tuples = new LinkedHashMap<String, String>();
+		final String[] pairs = dsls.substring(1, dsls.length() - 1).split("\", ?\"", -1);
+		for (final String pair : pairs) {
+			final String[] kv = pair.split("\"=>\"", -1);
+			assertEquals(2, kv.length);
+			tuples.put(
+					kv[0].replace("\\\"", "\"").replace("\\\\", "\\"),
+					kv[1].replace("\\\"", "\"").replace("\\\\", "\\"));
+		}
+		return tuples;
+	}
+
+	@Test
+	public void largeSnapshotMatchesLegacyParser() throws ExitException {
+		final String text = generate(200, 5000);
+		final Map<String, String> expected = legacyConvertToMap(text);
+		assertEquals(200, expected.size());
+		final Map<String, String> streamed = DatabaseInfo.convertToMap(new StringReader(text), new ContextMock());
+		assertEquals(expected, streamed);
+		assertEquals(expected, DatabaseInfo.convertToMap(text, new ContextMock()));
+	}
+
+	/**
+	 * Run with -Dbenchmark=true
+	 */
+	@Test
+	public void largeSnapshotParsing() throws ExitException {
+		assumeTrue(Boolean.getBoolean("benchmark"));
+		final String text = generate(1600, 5000);
+		assertTrue(text.length() > 8 * 1024 * 1024);
+		long legacyTotal = 0;
+		long streamedTotal = 0;
+		for (int run = 0; run < 5; run++) {
+			final long legacyStart = System.nanoTime();
+			final Map<String, String> expected = legacyConvertToMap(text);
+			legacyTotal += System.nanoTime() - legacyStart;
+			final long streamedStart = System.nanoTime();
+			final Map<String, String> streamed = DatabaseInfo.convertToMap(text, new ContextMock());
+			streamedTotal += System.nanoTime() - streamedStart;
+			assertEquals(expected.size(), streamed.size());
+		}
+		assertTrue("streamed: " + streamedTotal / 1000000 + "ms, legacy: " + legacyTotal / 1000000 + "ms",
+				streamedTotal < legacyTotal);
+	}
+}
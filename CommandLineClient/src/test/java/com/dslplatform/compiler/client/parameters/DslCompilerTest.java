@@ -0,0 +1,17 @@
+package com.dslplatform.compiler.client.parameters;
+
+import org.junit.Test;
+
+import static com.dslplatform.compiler.client.parameters.DslCompiler.extractCompilerVersion;
+import static org.junit.Assert.assertEquals;
+
+public class DslCompilerTest {
+
+	@Test
+	public void compilerVersionFromBanner() {
+		assertEquals("1.9.6874.23489", extractCompilerVersion("DSL Platform - Compiler (1.9.6874.23489)\nUsage: ..."));
+		assertEquals("2.0.1", extractCompilerVersion("Error: missing arguments\nDSL Platform v2.0.1 Copyright 2015\n"));
+		assertEquals("", extractCompilerVersion("Usage: dsl-compiler 2.0\nDSL Platform\n"));
+		assertEquals("", extractCompilerVersion(""));
+	}
+}
@@ -0,0 +1,110 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.ContextMock;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class MigrationAnalysisTest {
+
+	private static MigrationAnalysis.Finding single(final String sql, final int version) {
+		final List<MigrationAnalysis.Finding> findings = MigrationAnalysis.classify(sql, version);
+		assertEquals(1, findings.size());
+		return findings.get(0);
+	}
+
+	@Test
+	public void columnTypeChangeRewritesTable() {
+		final MigrationAnalysis.Finding f = single("ALTER TABLE \"mod\".\"Item\" ALTER COLUMN \"price\" TYPE NUMERIC", 12);
+		assertEquals("\"mod\".\"Item\"", f.relation);
+		assertEquals(MigrationAnalysis.Lock.ACCESS_EXCLUSIVE, f.lock);
+		assertEquals(MigrationAnalysis.Impact.REWRITE, f.impact);
+	}
+
+	@Test
+	public void defaultDependsOnVersion() {
+		final String sql = "ALTER TABLE mod.item ADD COLUMN flag BOOL NOT NULL DEFAULT false";
+		assertEquals(MigrationAnalysis.Impact.REWRITE, single(sql, 10).impact);
+		assertEquals(MigrationAnalysis.Impact.BRIEF, single(sql, 11).impact);
+		assertEquals(MigrationAnalysis.Impact.REWRITE,
+				single("ALTER TABLE mod.item ADD COLUMN id INT DEFAULT nextval('seq')", 12).impact);
+		assertEquals(MigrationAnalysis.Impact.BRIEF, single("ALTER TABLE mod.item ADD COLUMN note TEXT", 9).impact);
+	}
+
+	@Test
+	public void constraintsAndIndexes() {
+		assertEquals(MigrationAnalysis.Impact.SCAN,
+				single("ALTER TABLE a ALTER COLUMN b SET NOT NULL", 12).impact);
+		final MigrationAnalysis.Finding fk = single("ALTER TABLE a ADD CONSTRAINT fk FOREIGN KEY (b) REFERENCES c", 12);
+		assertEquals(MigrationAnalysis.Lock.SHARE_ROW_EXCLUSIVE, fk.lock);
+		assertEquals(MigrationAnalysis.Impact.SCAN, fk.impact);
+		assertEquals(MigrationAnalysis.Impact.BRIEF,
+				single("ALTER TABLE a ADD CONSTRAINT fk FOREIGN KEY (b) REFERENCES c NOT VALID", 12).impact);
+		final MigrationAnalysis.Finding index = single("CREATE INDEX ix ON \"mod\".\"Item\" (name)", 12);
+		assertEquals(MigrationAnalysis.Lock.SHARE, index.lock);
+		assertEquals("\"mod\".\"Item\"", index.relation);
+		assertEquals(MigrationAnalysis.Lock.SHARE_UPDATE_EXCLUSIVE,
+				single("CREATE UNIQUE INDEX CONCURRENTLY ix ON mod.item (name)", 12).lock);
+	}
+
+	@Test
+	public void commandsInsideDoBlocks() {
+		final String sql = "/*MIGRATION_DESCRIPTION\nMIGRATION_DESCRIPTION*/\n"
+				+ "CREATE TABLE mod.other (id int);\n"
+				+ "DO $$ BEGIN\n"
+				+ "IF NOT EXISTS(SELECT * FROM pg_attribute WHERE attname = 'x') THEN\n"
+				+ "  ALTER TABLE mod.item ALTER x TYPE BIGINT;\n"
+				+ "END IF;\n"
+				+ "UPDATE mod.item SET x = 0 WHERE x IS NULL;\n"
+				+ "END $$ LANGUAGE plpgsql;";
+		final List<MigrationAnalysis.Finding> findings = MigrationAnalysis.classify(sql, 12);
+		assertEquals(2, findings.size());
+		assertEquals(2, findings.get(0).statement);
+		assertEquals(MigrationAnalysis.Impact.REWRITE, findings.get(0).impact);
+		assertEquals(MigrationAnalysis.Lock.ROW_EXCLUSIVE, findings.get(1).lock);
+	}
+
+	@Test
+	public void warningsIncludeEstimates() {
+		final List<MigrationAnalysis.Finding> findings = MigrationAnalysis.classify(
+				"ALTER TABLE big ALTER c TYPE TEXT;ALTER TABLE small ALTER c SET NOT NULL;ALTER TABLE small DROP COLUMN d", 12);
+		findings.get(0).rows = 5000000;
+		findings.get(0).bytes = 3L * 1024 * 1024 * 1024;
+		findings.get(1).rows = 10;
+		findings.get(1).bytes = 8192;
+		final List<String> warnings = MigrationAnalysis.warnings(findings);
+		assertEquals(3, warnings.size());
+		assertTrue(warnings.get(0), warnings.get(0).startsWith("[HIGH] Statement 1: column type change on big"));
+		assertTrue(warnings.get(0), warnings.get(0).contains("table rewrite of 3.0 GB"));
+		assertTrue(warnings.get(1), warnings.get(1).startsWith("[LOW]  Statement 2"));
+		assertTrue(warnings.get(2), warnings.get(2).contains("3 statement(s) with ACCESS EXCLUSIVE"));
+	}
+
+	/**
+	 * Run with -Dpostgres=localhost:5432/database?user=...&password=...
+	 */
+	@Test
+	public void unqualifiedNamesAreResolvedThroughSearchPath() throws Exception {
+		final String connectionString = System.getProperty("postgres");
+		assumeTrue(connectionString != null);
+		final PostgresSession session = PostgresSession.open(connectionString);
+		try {
+			final ContextMock context = new ContextMock();
+			//temporary schema is the first one in search_path
+			session.execute("CREATE TEMP TABLE estimate_probe AS SELECT generate_series(1, 1000) AS id", context);
+			session.execute("ANALYZE estimate_probe", context);
+			final List<MigrationAnalysis.Finding> findings = MigrationAnalysis.classify(
+					"ALTER TABLE estimate_probe ALTER COLUMN id TYPE BIGINT;\n" +
+							"ALTER TABLE public.estimate_probe ALTER COLUMN id TYPE BIGINT", 12);
+			MigrationAnalysis.estimate(session, context, findings);
+			assertEquals(1000, findings.get(0).rows);
+			assertTrue(findings.get(0).bytes > 0);
+			assertEquals(-1, findings.get(1).rows);
+		} finally {
+			session.close();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.Utils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+public class MirrorTest {
+
+	@Test
+	public void defaultRepositoryUrl() {
+		final ContextMock ctx = new ContextMock();
+		assertEquals(Mirror.Repository.MAVEN_CENTRAL.defaultUrl, Mirror.url(ctx, Mirror.Repository.MAVEN_CENTRAL));
+		assertFalse(Mirror.hasMirror(ctx, Mirror.Repository.MAVEN_CENTRAL));
+	}
+
+	@Test
+	public void canParseRepositoryMirror() {
+		final ContextMock ctx = new ContextMock();
+		final Either<Boolean> result = Mirror.INSTANCE.tryParse("mirror:maven-central", "http://mirror/maven2/", ctx);
+		assertTrue(result.isSuccess());
+		assertTrue(result.get());
+		assertEquals("http://mirror/maven2", Mirror.url(ctx, Mirror.Repository.MAVEN_CENTRAL));
+		assertEquals(Mirror.Repository.SONATYPE.defaultUrl, Mirror.url(ctx, Mirror.Repository.SONATYPE));
+	}
+
+	@Test
+	public void unknownRepositoryIsRejected() {
+		final Either<Boolean> result = Mirror.INSTANCE.tryParse("mirror:unknown", "http://mirror", new ContextMock());
+		assertFalse(result.isSuccess());
+		assertTrue(result.explainError().contains("maven-central"));
+	}
+
+	@Test
+	public void localFolderMirrorWorksOffline() throws IOException {
+		final File folder = File.createTempFile("mirror", "-test");
+		assertTrue(folder.delete());
+		assertTrue(folder.mkdirs());
+		try {
+			final ContextMock ctx = new ContextMock();
+			Utils.saveFile(ctx, new File(folder, "library.txt"), "content");
+			ctx.put(Offline.INSTANCE, null);
+			ctx.put(Mirror.INSTANCE, folder.getAbsolutePath());
+			assertTrue(Mirror.INSTANCE.check(ctx));
+			assertTrue(Mirror.url(ctx, Mirror.Repository.DSL_PLATFORM).startsWith("file:"));
+			final File target = new File(folder, "downloaded.txt");
+			Utils.downloadFile(ctx, target, new URL(Mirror.url(ctx, Mirror.Repository.DSL_PLATFORM) + "/library.txt"));
+			assertEquals("content", Utils.readFile(target).get());
+			try {
+				Utils.downloadFile(ctx, target, new URL("http://localhost/library.txt"));
+				fail("Expecting offline failure");
+			} catch (IOException ex) {
+				assertTrue(ex.getMessage().contains("Offline"));
+			}
+		} finally {
+			Utils.deletePath(folder);
+			assertTrue(folder.delete());
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.dslplatform.compiler.client.parameters;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class OnlineMigrationTest {
+
+	@Test
+	public void indexesAreBuiltConcurrently() {
+		final OnlineMigration plan = OnlineMigration.plan(
+				"CREATE TABLE a(i int);CREATE INDEX ix_a ON a(i);CREATE UNIQUE INDEX ux_a ON a(i);"
+						+ "CREATE INDEX CONCURRENTLY cx_a ON a(i)");
+		assertEquals(Arrays.asList(
+				"CREATE TABLE a(i int)",
+				"CREATE UNIQUE INDEX ux_a ON a(i)",
+				"CREATE INDEX CONCURRENTLY cx_a ON a(i)"), plan.main);
+		assertEquals(Arrays.asList("CREATE INDEX CONCURRENTLY ix_a ON a(i)"), plan.after);
+	}
+
+	@Test
+	public void constraintsAreValidatedAfterwards() {
+		final OnlineMigration plan = OnlineMigration.plan(
+				"ALTER TABLE \"mod\".\"Item\" ADD CONSTRAINT \"fk_owner\" FOREIGN KEY (\"ownerID\", \"x\") REFERENCES \"mod\".\"Owner\" (\"ID\", \"x\") ON DELETE CASCADE;"
+						+ "ALTER TABLE ONLY b ADD CONSTRAINT chk CHECK (x > 0)");
+		assertEquals(Arrays.asList(
+				"ALTER TABLE \"mod\".\"Item\" ADD CONSTRAINT \"fk_owner\" FOREIGN KEY (\"ownerID\", \"x\") REFERENCES \"mod\".\"Owner\" (\"ID\", \"x\") ON DELETE CASCADE NOT VALID",
+				"ALTER TABLE ONLY b ADD CONSTRAINT chk CHECK (x > 0) NOT VALID"), plan.main);
+		assertEquals(Arrays.asList(
+				"ALTER TABLE \"mod\".\"Item\" VALIDATE CONSTRAINT \"fk_owner\"",
+				"ALTER TABLE ONLY b VALIDATE CONSTRAINT chk"), plan.after);
+	}
+
+	@Test
+	public void ineligibleStatementsStayInTransaction() {
+		final String[] statements = {
+				"ALTER TABLE a ADD CONSTRAINT chk CHECK (x > 0), ADD COLUMN y int",
+				"ALTER TABLE a ADD CONSTRAINT chk CHECK (x > 0) NOT VALID",
+				"ALTER TABLE a ADD CONSTRAINT pk PRIMARY KEY (x)",
+				"ALTER TABLE a ADD CHECK (x > 0)",
+				"DO $$ BEGIN CREATE INDEX ix ON a(x); END $$"
+		};
+		final StringBuilder sql = new StringBuilder();
+		for (final String s : statements) {
+			sql.append(s).append(";\n");
+		}
+		final OnlineMigration plan = OnlineMigration.plan(sql.toString());
+		assertEquals(Arrays.asList(statements), plan.main);
+		assertTrue(plan.after.isEmpty());
+	}
+
+	@Test
+	public void referencedIndexesStayInTransaction() {
+		final OnlineMigration plan = OnlineMigration.plan(
+				"CREATE INDEX \"ix_Item\" ON \"mod\".\"Item\"(x);COMMENT ON INDEX \"mod\".\"ix_Item\" IS 'x';"
+						+ "CREATE INDEX IF NOT EXISTS Ix_B ON b(x);ALTER INDEX ix_b RENAME TO ix_c;"
+						+ "CREATE INDEX ix_d ON d(x);DROP INDEX IF EXISTS a, \"s\".ix_d;"
+						+ "DROP INDEX ix_e;CREATE INDEX ix_e ON e(x);"
+						+ "CREATE INDEX ON f(x);CREATE INDEX \"IX_G\" ON g(x);DROP INDEX ix_g");
+		assertEquals(Arrays.asList(
+				"CREATE INDEX \"ix_Item\" ON \"mod\".\"Item\"(x)",
+				"COMMENT ON INDEX \"mod\".\"ix_Item\" IS 'x'",
+				"CREATE INDEX IF NOT EXISTS Ix_B ON b(x)",
+				"ALTER INDEX ix_b RENAME TO ix_c",
+				"CREATE INDEX ix_d ON d(x)",
+				"DROP INDEX IF EXISTS a, \"s\".ix_d",
+				"DROP INDEX ix_e",
+				"DROP INDEX ix_g"), plan.main);
+		assertEquals(Arrays.asList(
+				"CREATE INDEX CONCURRENTLY ix_e ON e(x)",
+				"CREATE INDEX CONCURRENTLY ON f(x)",
+				"CREATE INDEX CONCURRENTLY \"IX_G\" ON g(x)"), plan.after);
+	}
+
+	@Test
+	public void recoveryDropsInvalidIndex() {
+		final OnlineMigration plan = OnlineMigration.plan(
+				"CREATE INDEX \"ix_Item\" ON ONLY \"mod\".\"Item\"(x);CREATE INDEX ix_b ON b(x);"
+						+ "ALTER TABLE b ADD CONSTRAINT chk CHECK (x > 0)");
+		assertEquals(Arrays.asList(
+				"DROP INDEX CONCURRENTLY IF EXISTS \"mod\".\"ix_Item\"",
+				"CREATE INDEX CONCURRENTLY \"ix_Item\" ON ONLY \"mod\".\"Item\"(x)",
+				"CREATE INDEX CONCURRENTLY ix_b ON b(x)",
+				"ALTER TABLE b VALIDATE CONSTRAINT chk"), plan.recovery(0));
+		assertEquals(Arrays.asList(
+				"DROP INDEX CONCURRENTLY IF EXISTS ix_b",
+				"CREATE INDEX CONCURRENTLY ix_b ON b(x)",
+				"ALTER TABLE b VALIDATE CONSTRAINT chk"), plan.recovery(1));
+		assertEquals(Arrays.asList("ALTER TABLE b VALIDATE CONSTRAINT chk"), plan.recovery(2));
+	}
+}
@@ -0,0 +1,101 @@
+package com.dslplatform.compiler.client.parameters;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OracleScriptTest {
+
+	@Test
+	public void splitOnSlashLines() {
+		final List<String> statements = OracleScript.split(
+				"/*MIGRATION_DESCRIPTION\n--CREATE: a\nMIGRATION_DESCRIPTION*/\nCREATE TABLE a (x NUMBER)\n/\n\n/\nBEGIN NULL; END;\n/\n");
+		assertEquals(Arrays.asList("CREATE TABLE a (x NUMBER)", "BEGIN NULL; END;"), statements);
+	}
+
+	@Test
+	public void storedCodeIsNotBatched() {
+		final List<OracleScript.Batch> batches = OracleScript.group(Arrays.asList(
+				"CREATE TABLE a (x NUMBER)",
+				"CREATE INDEX ix ON a (x)",
+				"CREATE OR REPLACE PACKAGE p AS END;",
+				"COMMENT ON TABLE a IS 'it''s'",
+				"BEGIN NULL; END;",
+				"CREATE OR REPLACE TRIGGER t BEFORE INSERT ON a BEGIN NULL; END;",
+				"CREATE OR REPLACE TYPE BODY tb AS END;"), 100, 10000);
+		assertEquals(6, batches.size());
+		assertEquals(2, batches.get(0).statements.size());
+		assertFalse(batches.get(1).isBatched());
+		assertFalse(batches.get(2).isBatched());
+		assertFalse(batches.get(3).isBatched());
+		assertFalse(batches.get(4).isBatched());
+		assertFalse(batches.get(5).isBatched());
+	}
+
+	@Test
+	public void dmlAndBlocksAreNotBatchedWithDdl() {
+		final List<OracleScript.Batch> batches = OracleScript.group(Arrays.asList(
+				"CREATE TABLE a (x NUMBER)",
+				"ALTER TABLE a ADD y NUMBER",
+				"INSERT INTO a (x) VALUES (1)",
+				"UPDATE a SET y = x",
+				"DECLARE c NUMBER; BEGIN DELETE FROM a; END;",
+				"MERGE INTO a USING b ON (a.x = b.x) WHEN MATCHED THEN UPDATE SET a.y = b.y",
+				"DROP TABLE b",
+				"COMMENT ON TABLE a IS 'a'"), 100, 10000);
+		assertEquals(6, batches.size());
+		assertEquals(Arrays.asList("CREATE TABLE a (x NUMBER)", "ALTER TABLE a ADD y NUMBER"), batches.get(0).statements);
+		for (int i = 1; i < 5; i++) {
+			assertFalse(batches.get(i).isBatched());
+		}
+		assertEquals(Arrays.asList("DROP TABLE b", "COMMENT ON TABLE a IS 'a'"), batches.get(5).statements);
+	}
+
+	@Test
+	public void batchesAreLimited() {
+		final List<OracleScript.Batch> byCount = OracleScript.group(
+				Arrays.asList("DROP TABLE a", "DROP TABLE b", "DROP TABLE c", "DROP TABLE d", "DROP TABLE e"), 2, 10000);
+		assertEquals(3, byCount.size());
+		assertEquals(Arrays.asList("DROP TABLE e"), byCount.get(2).statements);
+		final List<OracleScript.Batch> byLength = OracleScript.group(
+				Arrays.asList("DROP TABLE a", "DROP TABLE b", "DROP TABLE c"), 100, 25);
+		assertEquals(2, byLength.size());
+		assertEquals(2, byLength.get(0).statements.size());
+	}
+
+	@Test
+	public void blockEscapesStatements() {
+		final List<OracleScript.Batch> batches = OracleScript.group(
+				Arrays.asList("COMMENT ON TABLE a IS 'it''s';", "DROP TABLE b"), 100, 10000);
+		final String block = OracleScript.block(batches.get(0));
+		assertTrue(block, block.contains("n := 1; t := DBMS_UTILITY.GET_TIME;\n  EXECUTE IMMEDIATE 'COMMENT ON TABLE a IS ''it''''s''';"));
+		assertTrue(block, block.contains("n := 2; t := DBMS_UTILITY.GET_TIME;\n  EXECUTE IMMEDIATE 'DROP TABLE b';"));
+		assertTrue(block, block.contains("? := d;"));
+		assertTrue(block, block.contains("|| ' SQLCODE ' || SQLCODE || ': ' || SQLERRM, TRUE);"));
+	}
+
+	@Test
+	public void failureAndDurations() {
+		assertEquals(2, OracleScript.failedStatement("ORA-20001: DSL_BATCH_STATEMENT 3 SQLCODE -942: ORA-00942: table or view does not exist"));
+		assertEquals(-1, OracleScript.failedStatement("ORA-00942: table or view does not exist"));
+		assertArrayEquals(new long[]{0, 120, 30, 0}, OracleScript.durations("0,12,3,", 4));
+	}
+
+	@Test
+	public void originalErrorIsReported() {
+		final SQLException batchError = new SQLException(
+				"ORA-20001: DSL_BATCH_STATEMENT 2 SQLCODE -955: ORA-00955: name is already used by an existing object\n",
+				"72000", 20001);
+		final SQLException original = OracleScript.statementError(batchError);
+		assertEquals(955, original.getErrorCode());
+		assertEquals("ORA-00955: name is already used by an existing object", original.getMessage());
+		assertSame(batchError, original.getCause());
+		assertEquals(1403, OracleScript.statementError(
+				new SQLException("ORA-20001: DSL_BATCH_STATEMENT 1 SQLCODE 100: ORA-01403: no data found")).getErrorCode());
+		assertNull(OracleScript.statementError(new SQLException("ORA-00942: table or view does not exist")));
+	}
+}
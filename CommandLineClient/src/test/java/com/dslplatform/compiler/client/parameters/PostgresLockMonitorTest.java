@@ -0,0 +1,20 @@
+package com.dslplatform.compiler.client.parameters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PostgresLockMonitorTest {
+
+	@Test
+	public void queriesDependOnVersion() {
+		assertTrue(PostgresLockMonitor.stateQuery(90600, 42).contains("a.wait_event_type = 'Lock'"));
+		assertTrue(PostgresLockMonitor.blockersQuery(90600, 42).contains("pg_blocking_pids(42)"));
+		final String state = PostgresLockMonitor.stateQuery(90500, 42);
+		assertTrue(state.startsWith("SELECT a.waiting, "));
+		assertFalse(state.contains("wait_event_type"));
+		final String blockers = PostgresLockMonitor.blockersQuery(90500, 42);
+		assertFalse(blockers.contains("pg_blocking_pids"));
+		assertTrue(blockers.contains("WHERE w.pid = 42 AND NOT w.granted"));
+	}
+}
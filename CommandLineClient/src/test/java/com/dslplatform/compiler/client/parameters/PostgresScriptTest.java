@@ -0,0 +1,54 @@
+package com.dslplatform.compiler.client.parameters;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PostgresScriptTest {
+
+	@Test
+	public void simpleStatements() {
+		final List<String> statements = PostgresScript.split("CREATE TABLE a(i int);\nINSERT INTO a VALUES(1);  \n\n;SELECT 1");
+		assertEquals(Arrays.asList("CREATE TABLE a(i int)", "INSERT INTO a VALUES(1)", "SELECT 1"), statements);
+	}
+
+	@Test
+	public void leadingCommentsAreSkipped() {
+		final List<String> statements = PostgresScript.split(
+				"/*MIGRATION_DESCRIPTION\n--CREATE: a;\nMIGRATION_DESCRIPTION*/\n-- first; statement\nSELECT 1; /* trailing; */");
+		assertEquals(Arrays.asList("SELECT 1"), statements);
+	}
+
+	@Test
+	public void separatorsInsideLiterals() {
+		final List<String> statements = PostgresScript.split(
+				"SELECT 'a;b', 'it''s;', \"odd;name\" FROM t;SELECT E'\\';', 2;SELECT 3");
+		assertEquals(Arrays.asList(
+				"SELECT 'a;b', 'it''s;', \"odd;name\" FROM t",
+				"SELECT E'\\';', 2",
+				"SELECT 3"), statements);
+	}
+
+	@Test
+	public void dollarQuotedBodies() {
+		final String function = "CREATE FUNCTION f() RETURNS int AS $$ BEGIN RETURN 1; END; $$ LANGUAGE plpgsql";
+		final String block = "DO $body$ BEGIN PERFORM 'x$$;'; EXECUTE $$SELECT 1;$$; END $body$";
+		final List<String> statements = PostgresScript.split(function + ";\n" + block + ";\nSELECT $1;SELECT a$b FROM t");
+		assertEquals(Arrays.asList(function, block, "SELECT $1", "SELECT a$b FROM t"), statements);
+	}
+
+	@Test
+	public void nestedBlockComments() {
+		final List<String> statements = PostgresScript.split("SELECT 1 /* outer /* inner; */ still; */ + 2;SELECT 3 -- done;\n;");
+		assertEquals(Arrays.asList("SELECT 1 /* outer /* inner; */ still; */ + 2", "SELECT 3 -- done;"), statements);
+	}
+
+	@Test
+	public void preview() {
+		assertEquals("ALTER TABLE a ADD b int", PostgresScript.preview("ALTER TABLE a\n\tADD b int", 40));
+		assertEquals("ALTER T...", PostgresScript.preview("ALTER TABLE a ADD b int", 10));
+	}
+}
@@ -0,0 +1,127 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.ExitException;
+import com.dslplatform.compiler.client.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SrcJarTest {
+
+	private File folder;
+
+	@Before
+	public void setup() throws IOException {
+		folder = File.createTempFile("srcjar", "-test");
+		assertTrue(folder.delete());
+		assertTrue(folder.mkdirs());
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Utils.deletePath(folder);
+		assertTrue(folder.delete());
+	}
+
+	private static Map<String, String> generate(final int count) {
+		final Map<String, String> sources = new LinkedHashMap<String, String>();
+		for (int i = 0; i < count; i++) {
+			final String pkg = "model/module" + (i % 50) + "/sub" + (i % 7);
+			final StringBuilder sb = new StringBuilder("package " + pkg.replace('/', '.') + ";\n\npublic class Entity" + i + " {\n");
+			for (int j = 0; j < 20; j++) {
+				sb.append("\tprivate String field").append(j).append(";\n");
+			}
+			sources.put(pkg + "/Entity" + i + ".java", sb.append("}\n").toString());
+		}
+		return sources;
+	}
+
+	@Test
+	public void archiveContainsAllSources() throws IOException {
+		final Map<String, String> sources = new LinkedHashMap<String, String>();
+		sources.put("model/Entity.java", "package model; public class Entity { String \u0161\u0111\u010d; }");
+		sources.put("model/sub/Other.java", "package model.sub; public class Other {}");
+		final File archive = new File(folder, "java_client.srcjar");
+		SrcJar.write(archive, sources);
+		final ZipFile zip = new ZipFile(archive);
+		try {
+			assertEquals(2, zip.size());
+			for (final Map.Entry<String, String> kv : sources.entrySet()) {
+				final ZipEntry entry = zip.getEntry(kv.getKey());
+				assertNotNull(entry);
+				assertEquals(kv.getValue(), Utils.read(zip.getInputStream(entry)));
+			}
+		} finally {
+			zip.close();
+		}
+		assertFalse(new File(folder, "java_client.srcjar.tmp").exists());
+	}
+
+	@Test
+	public void archiveLocation() throws ExitException {
+		final ContextMock context = new ContextMock();
+		context.put(SrcJar.INSTANCE, folder.getAbsolutePath());
+		assertEquals(new File(folder, "java_client.srcjar"), SrcJar.archiveFor(context, "java_client"));
+	}
+
+	@Test
+	public void defaultArchiveLocationIsOutsideTemporaryFolder() throws ExitException {
+		final ContextMock context = new ContextMock();
+		final File temp = new File(folder, "temp");
+		final File cache = new File(folder, "cache");
+		context.put(TempPath.INSTANCE, temp.getAbsolutePath());
+		context.cache("temp_path_cache", temp);
+		context.cache("persistent_cache_path", cache);
+		context.put(SrcJar.INSTANCE, null);
+		final File archive = SrcJar.archiveFor(context, "java_client");
+		assertTrue(archive.getAbsolutePath().startsWith(cache.getAbsolutePath()));
+		assertTrue(archive.getParentFile().isDirectory());
+	}
+
+	/**
+	 * Run with -Dbenchmark=true
+	 */
+	@Test
+	public void looseFilesVsArchive() throws IOException {
+		assumeTrue(Boolean.getBoolean("benchmark"));
+		final Map<String, String> sources = generate(5000);
+		final ContextMock context = new ContextMock();
+		long looseTotal = 0;
+		long archiveTotal = 0;
+		for (int run = 0; run < 3; run++) {
+			final File loose = new File(folder, "loose" + run);
+			final long looseStart = System.nanoTime();
+			for (final Map.Entry<String, String> kv : sources.entrySet()) {
+				final File file = new File(loose, kv.getKey());
+				if (!file.getParentFile().exists()) {
+					assertTrue(file.getParentFile().mkdirs());
+				}
+				Utils.saveFile(context, file, kv.getValue());
+			}
+			looseTotal += System.nanoTime() - looseStart;
+			final File archive = new File(folder, "sources" + run + ".srcjar");
+			final long archiveStart = System.nanoTime();
+			SrcJar.write(archive, sources);
+			archiveTotal += System.nanoTime() - archiveStart;
+			final ZipFile zip = new ZipFile(archive);
+			try {
+				assertEquals(sources.size(), zip.size());
+			} finally {
+				zip.close();
+			}
+		}
+		assertTrue("srcjar: " + archiveTotal / 1000000 + "ms, loose files: " + looseTotal / 1000000 + "ms",
+				archiveTotal < looseTotal);
+	}
+}
@@ -0,0 +1,71 @@
+package com.dslplatform.compiler.client.parameters;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class TargetsTest {
+
+	private static final String END = "END";
+
+	@Test
+	public void endIsDeliveredToSlowConsumer() throws InterruptedException {
+		final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(1);
+		final AtomicBoolean stopped = new AtomicBoolean();
+		final Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					queue.put("first");
+					queue.put("second");
+				} catch (InterruptedException ignore) {
+				} finally {
+					Targets.putEnd(queue, END, stopped);
+				}
+			}
+		});
+		producer.start();
+		final List<String> consumed = new ArrayList<String>();
+		String stage;
+		while ((stage = Targets.next(queue, END, producer)) != END) {
+			//second stage is busy while producer is waiting to signal the end
+			Thread.sleep(300);
+			consumed.add(stage);
+		}
+		assertEquals(Arrays.asList("first", "second"), consumed);
+		producer.join(1000);
+		assertFalse(producer.isAlive());
+	}
+
+	@Test
+	public void consumerStopsWhenProducerDiesWithoutEnd() throws InterruptedException {
+		final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(1);
+		final Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				queue.offer("only");
+			}
+		});
+		producer.start();
+		assertEquals("only", Targets.next(queue, END, producer));
+		assertSame(END, Targets.next(queue, END, producer));
+	}
+
+	@Test
+	public void stoppedPipelineDoesNotBlockProducer() throws InterruptedException {
+		final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(1);
+		queue.put("pending");
+		final AtomicBoolean stopped = new AtomicBoolean(true);
+		final long start = System.currentTimeMillis();
+		Targets.putEnd(queue, END, stopped);
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals("pending", queue.poll());
+	}
+}
@@ -0,0 +1,119 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.ContextMock;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TenantsTest {
+
+	@Test
+	public void commaSeparatedList() {
+		final ContextMock context = new ContextMock();
+		final List<String> tenants = Tenants.parse("db1/Tenant1?user=a, db2:5433/Tenant2?user=b,,db1/Tenant1?user=a", context);
+		assertEquals(Arrays.asList("db1/Tenant1?user=a", "db2:5433/Tenant2?user=b"), tenants);
+	}
+
+	@Test
+	public void fileWithCommentsAndBlankLines() throws Exception {
+		final File file = File.createTempFile("tenants", ".txt");
+		try {
+			final FileOutputStream fos = new FileOutputStream(file);
+			fos.write("# production tenants\ndb1/Tenant1?user=a\n\n  db1/Tenant2?user=a\r\n".getBytes("UTF-8"));
+			fos.close();
+			final ContextMock context = new ContextMock();
+			final List<String> tenants = Tenants.parse(file.getAbsolutePath(), context);
+			assertEquals(Arrays.asList("db1/Tenant1?user=a", "db1/Tenant2?user=a"), tenants);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void invalidConnectionString() {
+		final ContextMock context = new ContextMock();
+		assertNull(Tenants.parse("db1/Tenant1,localhost", context));
+		assertTrue(context.hasError);
+	}
+
+	private static Tenants.TenantDatabase database(final String version, final String hash, final Map<String, String> dsl) {
+		return new Tenants.TenantDatabase() {
+			@Override
+			public String version() {
+				return version;
+			}
+
+			@Override
+			public String[] dslHashAndCompiler() throws SQLException {
+				if (hash == null) {
+					throw new SQLException("function each(hstore) does not exist");
+				}
+				return new String[]{hash, "1.5"};
+			}
+
+			@Override
+			public DatabaseInfo snapshot() {
+				return new DatabaseInfo("Postgres", "1.5", version, dsl);
+			}
+		};
+	}
+
+	private static Tenants.Tenant inspected(final String cs, final Tenants.TenantDatabase database) throws Exception {
+		final Tenants.Tenant tenant = new Tenants.Tenant(cs);
+		Tenants.inspect(tenant, database, new ContextMock());
+		return tenant;
+	}
+
+	@Test
+	public void hashFailureFallsBackToSnapshot() throws Exception {
+		final Map<String, String> dsl = Collections.singletonMap("/a.dsl", "module A;");
+		final Tenants.Tenant tenant = inspected("db1/Tenant1", database("9.6", null, dsl));
+		assertEquals("9.6", tenant.version);
+		assertEquals(DatabaseInfo.hash(dsl), tenant.hash);
+		assertEquals("1.5", tenant.compiler);
+		assertNotNull(tenant.snapshot);
+		assertNull(tenant.error);
+		final Tenants.Tenant empty = inspected("db1/Tenant2", database("9.6", null, new HashMap<String, String>()));
+		assertEquals("", empty.hash);
+	}
+
+	@Test
+	public void tenantsAreGroupedByVersionAndHash() throws Exception {
+		final Map<String, String> previous = Collections.singletonMap("/a.dsl", "module A;");
+		final Map<String, String> current = Collections.singletonMap("/a.dsl", "module A { }");
+		final String previousHash = DatabaseInfo.hash(previous);
+		final String currentHash = DatabaseInfo.hash(current);
+		final Tenants.Tenant first = inspected("db1/Tenant1", database("9.6", previousHash, previous));
+		final Tenants.Tenant fallback = inspected("db1/Tenant2", database("9.6", null, previous));
+		final Tenants.Tenant newer = inspected("db2/Tenant3", database("10.1", previousHash, previous));
+		final Tenants.Tenant migrated = inspected("db2/Tenant4", database("10.1", currentHash, current));
+		final Tenants.Tenant failed = new Tenants.Tenant("db3/Tenant5");
+		failed.status = "FAILED";
+		failed.error = "Connection refused";
+		final Map<String, List<Tenants.Tenant>> groups =
+				Tenants.group(Arrays.asList(first, fallback, newer, migrated, failed), currentHash, "1.5");
+		assertEquals(2, groups.size());
+		assertEquals(Arrays.asList(first, fallback), groups.get("9.6:1.5:" + previousHash));
+		assertEquals(Collections.singletonList(newer), groups.get("10.1:1.5:" + previousHash));
+		assertEquals("UNCHANGED", migrated.status);
+		assertEquals("FAILED", failed.status);
+	}
+
+	@Test
+	public void sameDslFromDifferentCompilerIsMigrated() throws Exception {
+		final Map<String, String> current = Collections.singletonMap("/a.dsl", "module A { }");
+		final String currentHash = DatabaseInfo.hash(current);
+		final Tenants.Tenant tenant = inspected("db1/Tenant1", database("9.6", currentHash, current));
+		final Map<String, List<Tenants.Tenant>> groups =
+				Tenants.group(Collections.singletonList(tenant), currentHash, "1.6");
+		assertEquals(Collections.singletonList(tenant), groups.get("9.6:1.5:" + currentHash));
+		assertNull(tenant.status);
+		final Tenants.Tenant unknown = inspected("db1/Tenant2", database("9.6", currentHash, current));
+		assertEquals(1, Tenants.group(Collections.singletonList(unknown), currentHash, "").size());
+	}
+}
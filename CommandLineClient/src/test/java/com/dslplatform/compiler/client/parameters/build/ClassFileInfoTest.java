@@ -0,0 +1,63 @@
+package com.dslplatform.compiler.client.parameters.build;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ClassFileInfoTest {
+
+	static class Dependent {
+		final List<ClassFileInfo> infos = new ArrayList<ClassFileInfo>();
+		ClassFileInfoTest[] tests;
+	}
+
+	static class Constants {
+		static final int ANSWER = 42;
+		static final long BIG = 1L << 40;
+		static final double RATIO = 0.5;
+		static final String NAME = "name";
+		static final Integer BOXED = 1;
+		static int mutable = 2;
+	}
+
+	private static ClassFileInfo read(final Class<?> type) throws IOException {
+		final InputStream is = type.getResourceAsStream(type.getName().substring(type.getName().lastIndexOf('.') + 1) + ".class");
+		try {
+			return ClassFileInfo.read(new DataInputStream(is));
+		} finally {
+			is.close();
+		}
+	}
+
+	@Test
+	public void nameAndSource() throws IOException {
+		final ClassFileInfo info = read(ClassFileInfoTest.class);
+		assertEquals("com/dslplatform/compiler/client/parameters/build/ClassFileInfoTest", info.name);
+		assertEquals("com/dslplatform/compiler/client/parameters/build/ClassFileInfoTest.java", info.sourcePath());
+		assertFalse(info.references.contains(info.name));
+		assertTrue(info.references.contains("org/junit/Assert"));
+	}
+
+	@Test
+	public void nestedClassReferences() throws IOException {
+		final ClassFileInfo info = read(Dependent.class);
+		assertEquals("com/dslplatform/compiler/client/parameters/build/ClassFileInfoTest$Dependent", info.name);
+		assertEquals("com/dslplatform/compiler/client/parameters/build/ClassFileInfoTest.java", info.sourcePath());
+		assertTrue(info.references.contains("java/util/List"));
+		assertTrue(info.references.contains("com/dslplatform/compiler/client/parameters/build/ClassFileInfoTest"));
+	}
+
+	@Test
+	public void constantValues() throws IOException {
+		final ClassFileInfo info = read(Constants.class);
+		assertEquals("{ANSWER:I=I42, BIG:J=J1099511627776, NAME:Ljava/lang/String;=Sname, RATIO:D=D"
+				+ Long.toHexString(Double.doubleToLongBits(0.5)) + "}", info.constants);
+		assertNull(read(Dependent.class).constants);
+	}
+}
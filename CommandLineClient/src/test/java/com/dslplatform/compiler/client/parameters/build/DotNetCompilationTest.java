@@ -0,0 +1,129 @@
+package com.dslplatform.compiler.client.parameters.build;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.JobScheduler;
+import com.dslplatform.compiler.client.Utils;
+import com.dslplatform.compiler.client.parameters.DotNet;
+import com.dslplatform.compiler.client.parameters.DotNetServer;
+import com.dslplatform.compiler.client.parameters.TempPath;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+
+public class DotNetCompilationTest {
+
+	private File folder;
+	private File libraries;
+	private File sources;
+	private File output;
+	private ContextMock context;
+
+	//stand-in for csc: records arguments and writes the requested output
+	private static final String FAKE_CSC = "#!/bin/sh\n" +
+			"echo \"$@\" >> \"$0.log\"\n" +
+			"for a in \"$@\"; do\n" +
+			"  case \"$a\" in\n" +
+			"    -shared) if [ -n \"$REJECT\" ]; then echo \"error CS2007: Unrecognized option: '-shared'\"; exit 1; fi ;;\n" +
+			"    -out:*) out=\"${a#-out:}\" ;;\n" +
+			"  esac\n" +
+			"done\n" +
+			"cat *.cs > \"$out\"\n";
+
+	@Before
+	public void setup() throws IOException {
+		assumeFalse(Utils.isWindows());
+		folder = File.createTempFile("dotnet", "-test");
+		assertTrue(folder.delete());
+		libraries = new File(folder, "lib");
+		sources = new File(folder, "src");
+		assertTrue(libraries.mkdirs());
+		assertTrue(sources.mkdirs());
+		output = new File(folder, "Model.dll");
+		context = new ContextMock();
+		Utils.saveFile(context, new File(libraries, "Dependency.dll"), "dependency");
+		Utils.saveFile(context, new File(sources, "Model.cs"), "class Model {}");
+		final File temp = new File(folder, "temp");
+		assertTrue(temp.mkdirs());
+		context.put(TempPath.INSTANCE, temp.getAbsolutePath());
+		context.cache("temp_path_cache", temp);
+		final File cache = new File(folder, "cache");
+		assertTrue(cache.mkdirs());
+		context.cache("persistent_cache_path", cache);
+		context.put(DotNetServer.INSTANCE, null);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		if (folder != null) {
+			Utils.deletePath(folder);
+			assertTrue(folder.delete());
+		}
+	}
+
+	private File compiler(final boolean rejectShared) throws IOException {
+		final File csc = new File(folder, rejectShared ? "mcs" : "csc");
+		Utils.saveFile(context, csc, rejectShared ? FAKE_CSC.replace("$REJECT", "reject") : FAKE_CSC);
+		assertTrue(csc.setExecutable(true));
+		context.put(DotNet.INSTANCE, csc.getAbsolutePath());
+		return csc;
+	}
+
+	private List<String> invocations(final File csc) {
+		final Either<String> log = Utils.readFile(new File(csc.getAbsolutePath() + ".log"));
+		assertTrue(log.isSuccess());
+		return Arrays.asList(log.get().trim().split("\n"));
+	}
+
+	private Either<String> compile() {
+		return DotNetCompilation.compile(new String[]{"System.dll"}, libraries, sources, output, context, false);
+	}
+
+	@Test
+	public void unchangedSourcesAreNotRecompiled() throws IOException {
+		final File csc = compiler(false);
+		final int jobs = JobScheduler.global().metrics().jobs;
+		assertTrue(compile().isSuccess());
+		assertEquals("class Model {}", Utils.readFile(output).get());
+		assertTrue(compile().isSuccess());
+		final List<String> calls = invocations(csc);
+		assertEquals(1, calls.size());
+		assertTrue(calls.get(0).startsWith("-shared "));
+		assertTrue(calls.get(0).contains("-r:Dependency.dll"));
+		assertEquals(jobs + 1, JobScheduler.global().metrics().jobs);
+	}
+
+	@Test
+	public void changedSourcesAreRecompiled() throws IOException {
+		final File csc = compiler(false);
+		assertTrue(compile().isSuccess());
+		Utils.saveFile(context, new File(sources, "Model.cs"), "class Model { int x; }");
+		assertTrue(compile().isSuccess());
+		assertEquals("class Model { int x; }", Utils.readFile(output).get());
+		Utils.saveFile(context, new File(libraries, "Dependency.dll"), "new dependency");
+		assertTrue(compile().isSuccess());
+		assertEquals(3, invocations(csc).size());
+	}
+
+	@Test
+	public void compilerWithoutServerSupport() throws IOException {
+		final File mcs = compiler(true);
+		assertTrue(compile().isSuccess());
+		Utils.saveFile(context, new File(sources, "Model.cs"), "class Model { int y; }");
+		assertTrue(compile().isSuccess());
+		final List<String> calls = invocations(mcs);
+		assertEquals(3, calls.size());
+		assertTrue(calls.get(0).startsWith("-shared "));
+		assertFalse(calls.get(1).contains("-shared"));
+		assertFalse(calls.get(2).contains("-shared"));
+		assertEquals("class Model { int y; }", Utils.readFile(output).get());
+	}
+}
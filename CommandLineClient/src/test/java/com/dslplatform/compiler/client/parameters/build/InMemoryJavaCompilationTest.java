@@ -0,0 +1,96 @@
+package com.dslplatform.compiler.client.parameters.build;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.Utils;
+import com.dslplatform.compiler.client.parameters.JavaPath;
+import com.dslplatform.compiler.client.parameters.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class InMemoryJavaCompilationTest {
+
+	private File folder;
+	private File[] dependencies;
+
+	@Before
+	public void setup() throws IOException {
+		assumeTrue(InMemoryJavaCompilation.isAvailable());
+		folder = File.createTempFile("in-memory", "-test");
+		assertTrue(folder.delete());
+		assertTrue(folder.mkdirs());
+		final File dependency = new File(folder, "dependency.jar");
+		final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(dependency));
+		zip.putNextEntry(new ZipEntry("readme.txt"));
+		zip.write(1);
+		zip.closeEntry();
+		zip.close();
+		dependencies = new File[]{dependency};
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		if (folder != null) {
+			Utils.deletePath(folder);
+			assertTrue(folder.delete());
+		}
+	}
+
+	@Test
+	public void classesAreWrittenToJar() throws IOException {
+		final Map<String, String> sources = new LinkedHashMap<String, String>();
+		sources.put("model/Boot.java", "package model; public class Boot { Item item = new Item(); }");
+		sources.put("model/Item.java", "package model; public class Item { class Nested {} }");
+		final Map<String, List<String>> services = new HashMap<String, List<String>>();
+		services.put("model.Service", Collections.singletonList("model.Boot"));
+		final File output = new File(folder, "model.jar");
+		final ContextMock context = new ContextMock();
+		context.put(Version.INSTANCE, "1.2.3");
+		final Either<String> result = InMemoryJavaCompilation.compile(sources, dependencies, output, services, context);
+		assertTrue(result.isSuccess());
+		final JarFile jar = new JarFile(output);
+		try {
+			assertEquals("1.2.3", jar.getManifest().getMainAttributes().getValue("Implementation-Version"));
+			assertNotNull(jar.getEntry("model/Boot.class"));
+			assertNotNull(jar.getEntry("model/Item.class"));
+			assertNotNull(jar.getEntry("model/Item$Nested.class"));
+			assertNotNull(jar.getEntry("META-INF/services/model.Service"));
+		} finally {
+			jar.close();
+		}
+		assertFalse(new File(folder, "model.jar.tmp").exists());
+	}
+
+	@Test
+	public void compilationErrorsAreReported() {
+		final Map<String, String> sources = Collections.singletonMap("model/Broken.java", "package model; public class Broken { Missing m; }");
+		final File output = new File(folder, "broken.jar");
+		final Either<String> result = InMemoryJavaCompilation.compile(sources, dependencies, output, null, new ContextMock());
+		assertFalse(result.isSuccess());
+		assertTrue(result.explainError().contains("Missing"));
+		assertTrue(result.explainError().contains("model/Broken.java"));
+		assertFalse(output.exists());
+	}
+
+	@Test
+	public void configuredJavaIsNotReplacedWithRunningCompiler() {
+		final Map<String, String> sources = Collections.singletonMap("model/Item.java", "package model; public class Item {}");
+		final File output = new File(folder, "model.jar");
+		final ContextMock context = new ContextMock();
+		context.put(JavaPath.INSTANCE, folder.getAbsolutePath());
+		assertNull(JavaCompilation.compileInMemory(sources, folder, output, null, context));
+		assertFalse(output.exists());
+	}
+}
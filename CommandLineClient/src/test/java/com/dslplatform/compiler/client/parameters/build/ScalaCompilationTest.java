@@ -0,0 +1,137 @@
+package com.dslplatform.compiler.client.parameters.build;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.Utils;
+import com.dslplatform.compiler.client.parameters.ScalaPath;
+import com.dslplatform.compiler.client.parameters.ScalaServer;
+import com.dslplatform.compiler.client.parameters.TempPath;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+
+public class ScalaCompilationTest {
+
+	private File folder;
+	private File libraries;
+	private File sources;
+	private File output;
+	private File scalac;
+	private File fsc;
+	private ContextMock context;
+
+	//stand-in for scalac and fsc: records arguments, fails reset when server is down and writes a class file
+	private static final String FAKE_SCALA = "#!/bin/sh\n" +
+			"echo \"$@\" >> \"$0.log\"\n" +
+			"if [ $# -eq 0 ]; then echo \"Usage: $(basename \"$0\")\"; exit 0; fi\n" +
+			"for a in \"$@\"; do\n" +
+			"  if [ \"$a\" = \"-reset\" ]; then\n" +
+			"    if [ -f \"$0.down\" ]; then echo \"Could not connect to compilation daemon.\"; exit 1; fi\n" +
+			"    exit 0\n" +
+			"  fi\n" +
+			"done\n" +
+			"prev=\"\"\n" +
+			"for a in \"$@\"; do\n" +
+			"  if [ \"$prev\" = \"-d\" ]; then out=\"$a\"; fi\n" +
+			"  prev=\"$a\"\n" +
+			"done\n" +
+			"if grep -q broken *.scala; then echo \"Model.scala:1: error: not found: value daemon\"; exit 1; fi\n" +
+			"echo compiled > \"$out/Model.class\"\n";
+
+	@Before
+	public void setup() throws IOException {
+		assumeFalse(Utils.isWindows());
+		folder = File.createTempFile("scala", "-test");
+		assertTrue(folder.delete());
+		libraries = new File(folder, "lib");
+		sources = new File(folder, "src");
+		final File bin = new File(folder, "bin");
+		assertTrue(libraries.mkdirs());
+		assertTrue(sources.mkdirs());
+		assertTrue(bin.mkdirs());
+		output = new File(folder, "model.jar");
+		context = new ContextMock();
+		Utils.saveFile(context, new File(libraries, "dependency.jar"), "dependency");
+		Utils.saveFile(context, new File(sources, "Model.scala"), "class Model");
+		scalac = new File(bin, "scalac");
+		fsc = new File(bin, "fsc");
+		Utils.saveFile(context, scalac, FAKE_SCALA);
+		Utils.saveFile(context, fsc, FAKE_SCALA);
+		assertTrue(scalac.setExecutable(true));
+		assertTrue(fsc.setExecutable(true));
+		final File cache = new File(folder, "cache");
+		assertTrue(cache.mkdirs());
+		context.cache("persistent_cache_path", cache);
+		context.put(TempPath.INSTANCE, folder.getAbsolutePath());
+		context.put(ScalaPath.INSTANCE, scalac.getAbsolutePath());
+		context.put(ScalaServer.INSTANCE, null);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		if (folder != null) {
+			Utils.deletePath(folder);
+			assertTrue(folder.delete());
+		}
+	}
+
+	//only invocations which compiled or reached the server
+	private static List<String> invocations(final File tool) {
+		final List<String> result = new ArrayList<String>();
+		final File log = new File(tool.getAbsolutePath() + ".log");
+		if (!log.exists()) {
+			return result;
+		}
+		for (final String line : Utils.readFile(log).get().split("\n")) {
+			if (line.contains("-reset")) {
+				result.add("reset");
+			} else if (line.contains("-d ")) {
+				result.add("compile");
+			}
+		}
+		return result;
+	}
+
+	private Either<String> compile() {
+		return ScalaCompilation.compile("model", libraries, sources, output, null, context);
+	}
+
+	@Test
+	public void compilesThroughReachableServer() {
+		assertTrue(compile().isSuccess());
+		assertTrue(output.exists());
+		assertEquals(2, invocations(fsc).size());
+		assertEquals("reset", invocations(fsc).get(0));
+		assertEquals("compile", invocations(fsc).get(1));
+		assertTrue(invocations(scalac).isEmpty());
+	}
+
+	@Test
+	public void unreachableServerFallsBackToScalac() throws IOException {
+		Utils.saveFile(context, new File(fsc.getAbsolutePath() + ".down"), "");
+		assertTrue(compile().isSuccess());
+		assertTrue(output.exists());
+		assertEquals(1, invocations(fsc).size());
+		assertEquals("reset", invocations(fsc).get(0));
+		assertEquals(1, invocations(scalac).size());
+		assertTrue(context.hasWarning);
+	}
+
+	@Test
+	public void compilationErrorsFromServerAreNotRetried() throws IOException {
+		Utils.saveFile(context, new File(sources, "Model.scala"), "class Model extends broken");
+		final Either<String> result = compile();
+		assertFalse(result.isSuccess());
+		assertTrue(result.explainError().contains("not found: value daemon"));
+		assertEquals(2, invocations(fsc).size());
+		assertTrue(invocations(scalac).isEmpty());
+	}
+}